@@ -570,7 +570,8 @@ public class RDKitStructureNormalizerNodeModel extends AbstractRDKitNodeModel {
 		// Contains the input rows if result computation fails
 		final BufferedDataContainer port1 = exec.createDataContainer(arrOutSpecs[1]);
 
-		synchronized (STRUCTURE_CHECKER_LOCK) {
+		// Hold the structure checker shared with the newer node version, as this node loads its configuration on its own
+		try (final StructureChecker.Session session = StructureChecker.getInstance().openUnmanaged()) {
 
 			// Setup warning/failure treatment
 			final int iErrorCodeMask = StruCheckCode.getErrorCodeMask(m_modelAdditionalFailureCodesConfiguration.getValues());
@@ -48,17 +48,31 @@
  */
 package org.rdkit.knime.nodes;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.RDKit.RDKFuncs;
 
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataCellTypeConverter;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.data.container.ColumnRearranger;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.context.NodeCreationConfiguration;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 import org.knime.core.node.streamable.InputPortRole;
@@ -68,11 +82,17 @@ import org.knime.core.node.streamable.PartitionInfo;
 import org.knime.core.node.streamable.PortOutput;
 import org.knime.core.node.streamable.StreamableOperator;
 import org.knime.core.node.streamable.StreamableOperatorInternals;
+import org.knime.core.node.workflow.NodeContainer;
+import org.knime.core.node.workflow.NodeContext;
 import org.rdkit.knime.internals.ContextStatistics;
 import org.rdkit.knime.internals.StreamingOperatorInternalsBag;
+import org.rdkit.knime.nodes.AbstractRDKitCellFactory.PrecomputedResultProvider;
+import org.rdkit.knime.nodes.preferences.RDKitNodesPreferencePage;
 import org.rdkit.knime.types.RDKitTypeConversionErrorListener;
 import org.rdkit.knime.types.RDKitTypeConversionErrorProvider;
+import org.rdkit.knime.util.IncrementalResultStore;
 import org.rdkit.knime.util.InputDataInfo;
+import org.rdkit.knime.util.ResultCache;
 import org.rdkit.knime.util.WarningConsolidator;
 
 /**
@@ -93,6 +113,12 @@ public abstract class AbstractRDKitCalculatorNodeModel extends AbstractRDKitNode
    
    /** Context statistics object to count during process how many rows for instance were processed. */
    private ContextStatistics m_contextStatistics = null;
+
+   /** Factories of the last created column rearranger, which are using the result cache. */
+   private List<AbstractRDKitCellFactory> m_listCachingFactories = new ArrayList<AbstractRDKitCellFactory>();
+
+   /** Factories of the last created column rearranger. */
+   private AbstractRDKitCellFactory[] m_arrLastOutputFactories = new AbstractRDKitCellFactory[0];
    
 	//
 	// Constructors
@@ -159,6 +185,19 @@ public abstract class AbstractRDKitCalculatorNodeModel extends AbstractRDKitNode
       super(inPortTypes, outPortTypes, arrInputPortRoles, arrOutputPortRoles);
    }
 
+   /**
+    * Creates a new node model with the ports of the passed in node creation configuration.
+    * Enables distribution and streaming by default under the same conditions as
+    * {@link #AbstractRDKitCalculatorNodeModel(int, int)}, which means that a configuration
+    * with additional optional ports disables it.
+    * 
+    * @param nodeCreationConfig Node creation configuration. Must not be null.
+    */
+   protected AbstractRDKitCalculatorNodeModel(final NodeCreationConfiguration nodeCreationConfig) {
+      super(nodeCreationConfig);
+      autoEnableDistributionAndStreaming();
+   }
+
 	//
 	// Protected Methods
 	//
@@ -254,7 +293,10 @@ public abstract class AbstractRDKitCalculatorNodeModel extends AbstractRDKitNode
          // Alternatively, this could also be changed in KNIME so that it auto-converts also columns,
          // which are marked for removal.
          
-         return createColumnRearranger(0, tableSpec[0]).createStreamableFunction(emptyInternals);
+         final ColumnRearranger rearranger = createColumnRearranger(0, tableSpec[0]);
+         connectResultCache(0);
+         
+         return rearranger.createStreamableFunction(emptyInternals);
       }
       else {
          return super.createStreamableOperator(partitionInfo, inSpecs);
@@ -372,6 +414,89 @@ public abstract class AbstractRDKitCalculatorNodeModel extends AbstractRDKitNode
 	protected abstract AbstractRDKitCellFactory[] createOutputFactories(int outPort, DataTableSpec inSpec)
 			throws InvalidSettingsException;
 
+   /**
+    * Determines, if results of this node are allowed to be stored in the persistent
+    * result cache (if the user enabled it in the preferences). This is only safe, if
+    * the results of the cell factories depend exclusively on the registered settings
+    * and the input cells of a row described by the input data infos. The default
+    * implementation returns false. Nodes that fulfill these conditions should override 
+    * this method to return true only, if their calculations are considerably more expensive
+    * than reading a cache entry, which is a file access per row. For cheap calculations
+    * the cache makes the execution slower.
+    * 
+    * @return True, if the result cache may be used. False otherwise.
+    */
+   protected boolean isResultCacheSupported() {
+      return false;
+   }
+
+   /**
+    * Returns the result cache to be used by this node. Calling this method creates 
+    * the cache, if it does not exist yet, hence it must only be called when executing.
+    * 
+    * @return Result cache or null, if the node does not support caching or 
+    *    the cache was not enabled in the preferences.
+    */
+   protected ResultCache getResultCache() {
+      return (isResultCacheSupported() ? RDKitNodesPreferencePage.getResultCache() : null);
+   }
+
+   /**
+    * Creates a namespace for result cache keys of this node. It is based on the node type, 
+    * the current settings and the versions of the RDKit Nodes and the RDKit backend. Changing
+    * any of these will lead to different cache keys.
+    * 
+    * @param outPort The output port the namespace is created for.
+    * 
+    * @return Namespace for cache keys.
+    * 
+    * @throws IOException Thrown, if the settings could not be hashed.
+    */
+   protected String createResultCacheNamespace(final int outPort) throws IOException {
+      final RDKitNodePlugin plugin = RDKitNodePlugin.getDefault();
+      return ResultCache.createHash(getClass().getName(), createSettingsHash(),
+            plugin == null ? "Unknown" : plugin.getBundle().getVersion().toString(),
+            RDKFuncs.getRdkitVersion(), Integer.toString(outPort));
+   }
+
+   /**
+    * Determines, if this node can be executed incrementally (if the user enabled it in 
+    * the preferences). When executing incrementally, the results of the last execution are 
+    * remembered together with a content hash of the input cells of every row. On re-execution 
+    * only new or changed rows get calculated, all other results are taken over. This has the
+    * same preconditions as the result cache, but as all results are stored together, it is also
+    * suitable for cheap calculations. Incremental execution is switched on and off globally for
+    * all supporting nodes in the RDKit Nodes preferences. The default implementation returns the result
+    * of {@link #isResultCacheSupported()}.
+    * 
+    * @return True, if incremental execution may be used. False otherwise.
+    */
+   protected boolean isIncrementalExecutionSupported() {
+      return isResultCacheSupported();
+   }
+
+   /**
+    * Returns the incremental result store of this node instance.
+    * 
+    * @return Incremental result store or null, if the node does not support incremental execution,
+    *    it was not enabled in the preferences or the node instance cannot be identified.
+    */
+   protected IncrementalResultStore getIncrementalResultStore() {
+      IncrementalResultStore store = null;
+      
+      if (isIncrementalExecutionSupported()) {
+         final File dirStores = RDKitNodesPreferencePage.getIncrementalResultDirectory();
+         final NodeContext context = NodeContext.getContext();
+         final NodeContainer nodeContainer = (context == null ? null : context.getNodeContainer());
+         if (dirStores != null && nodeContainer != null) {
+            store = IncrementalResultStore.getStore(dirStores, getClass().getName() + "@" + 
+                  nodeContainer.getParent().getProjectWFM().getNameWithID() + "/" + nodeContainer.getID());
+         }
+      }
+      
+      return store;
+   }
+
    /**
     * Returns the context statistics object used for tracking how many rows for instance
     * were processed. This is relevant for streaming when we do not have access to the entire
@@ -449,19 +574,292 @@ public abstract class AbstractRDKitCalculatorNodeModel extends AbstractRDKitNode
 			rearranger.append(factory);
 		}
 
+		// The result cache gets connected only when executing, see connectResultCache(int)
+		m_listCachingFactories = new ArrayList<AbstractRDKitCellFactory>();
+		m_arrLastOutputFactories = arrOutputFactories;
+
 		return rearranger;
 	}
 
+	/**
+	 * Connects the factories of the last created column rearranger with the result cache, 
+	 * if the node supports it and the cache was enabled in the preferences. This must only be
+	 * called when executing. Column rearrangers are also created when the node gets configured,
+	 * which must never open or create a cache.
+	 * 
+	 * @param outPort The output port the last column rearranger was created for.
+	 * 
+	 * @see #getResultCache()
+	 */
+	protected void connectResultCache(final int outPort) {
+		final List<AbstractRDKitCellFactory> listCachingFactories = new ArrayList<AbstractRDKitCellFactory>();
+		final ResultCache cache = getResultCache();
+		if (cache != null) {
+		   try {
+		      final String strNamespace = createResultCacheNamespace(outPort);
+		      for (int i = 0; i < m_arrLastOutputFactories.length; i++) {
+		         m_arrLastOutputFactories[i].setResultCache(cache, ResultCache.createHash(strNamespace, Integer.toString(i)));
+		         listCachingFactories.add(m_arrLastOutputFactories[i]);
+		      }
+		   }
+		   catch (final IOException exc) {
+		      LOGGER.warn("Result cache cannot be used: " + exc.getMessage());
+		      for (final AbstractRDKitCellFactory factory : listCachingFactories) {
+		         factory.setResultCache(null, null);
+		      }
+		      listCachingFactories.clear();
+		   }
+		}
+		m_listCachingFactories = listCachingFactories;
+	}
+
 	/**
 	 * {@inheritDoc}
+	 * If incremental execution is enabled, only new or changed rows are calculated.
+	 * 
+	 * @see #isIncrementalExecutionSupported()
 	 */
 	@Override
 	protected BufferedDataTable[] processing(final BufferedDataTable[] inData, final InputDataInfo[][] arrInputDataInfo,
 			final ExecutionContext exec) throws Exception {
+		final IncrementalResultStore store = getIncrementalResultStore();
+		if (store != null && inData[0].size() <= Integer.MAX_VALUE) {
+		   try {
+		      return new BufferedDataTable[] { processIncrementally(inData[0], arrInputDataInfo[0], store, exec) };
+		   }
+		   catch (final IOException exc) {
+		      LOGGER.warn("Incremental execution failed, calculating all rows: " + exc.getMessage());
+		      LOGGER.debug("Incremental execution failure", exc);
+		      store.delete();
+		   }
+		}
+		
 		// Generate column rearranger, which will do the work for us
 		final ColumnRearranger rearranger = createColumnRearranger(0, inData[0].getDataTableSpec());
+		connectResultCache(0);
 
 		// Generate the output table and return it.
-		return new BufferedDataTable[] { exec.createColumnRearrangeTable(inData[0], rearranger, exec) };
+		final BufferedDataTable[] arrResult = new BufferedDataTable[] { 
+		      exec.createColumnRearrangeTable(inData[0], rearranger, exec) };
+		
+		// Report result cache usage
+		for (final AbstractRDKitCellFactory factory : m_listCachingFactories) {
+		   LOGGER.debug(getClass().getSimpleName() + " result cache usage: " + factory.getResultCacheStatistics());
+		}
+		if (!m_listCachingFactories.isEmpty()) {
+		   LOGGER.debug(m_listCachingFactories.get(0).getResultCache().getStatistics());
+		}
+		
+		return arrResult;
+	}
+
+	/**
+	 * Calculates the output table incrementally. This is done in three steps:
+	 * 1. All input rows are compared with the previous results based on row key and
+	 * content hash. Rows without valid previous results are collected in a temporary table.
+	 * 2. The temporary table is processed normally (in parallel, if supported).
+	 * 3. The output table is assembled from previous results and newly calculated results,
+	 * which are at the same time written as new previous results. If the previous result of
+	 * an unchanged row cannot be found anymore, the row is calculated again.
+	 * 
+	 * @param inData Input table. Must not be null.
+	 * @param arrInputDataInfo Input data infos of the input table. Must not be null.
+	 * @param store Incremental result store of this node. Must not be null.
+	 * @param exec Execution context. Must not be null.
+	 * 
+	 * @return Output table.
+	 * 
+	 * @throws IOException Thrown, if previous results could not be read or new results could not be written.
+	 * @throws Exception Thrown, if processing failed.
+	 */
+	protected BufferedDataTable processIncrementally(final BufferedDataTable inData, 
+	      final InputDataInfo[] arrInputDataInfo, final IncrementalResultStore store,
+	      final ExecutionContext exec) throws Exception {
+	   final DataTableSpec inSpec = inData.getDataTableSpec();
+	   final int iRowCount = (int)inData.size();
+	   final String strNamespace = createResultCacheNamespace(0);
+	   
+	   // Determine the layout of result cells
+	   final ColumnRearranger rearrangerCalculation = createColumnRearranger(0, inSpec);
+	   connectResultCache(0);
+	   final AbstractRDKitCellFactory[] arrCalculationFactories = m_arrLastOutputFactories;
+	   final int[] arrCellOffsets = new int[arrCalculationFactories.length + 1];
+	   for (int i = 0; i < arrCalculationFactories.length; i++) {
+	      arrCalculationFactories[i].setContextStatistics(null); // Rows are counted in the last step
+	      arrCellOffsets[i + 1] = arrCellOffsets[i] + arrCalculationFactories[i].getColumnSpecs().length;
+	   }
+	   final int iCellCount = arrCellOffsets[arrCalculationFactories.length];
+	   
+	   // 1. Find rows with unchanged content
+	   final ExecutionContext execCompare = exec.createSubExecutionContext(0.1d);
+	   final long[] arrContentHashes = new long[iRowCount];
+	   final BitSet bitsUnchanged = new BitSet(iRowCount);
+	   final BufferedDataContainer containerChanged = exec.createDataContainer(inSpec);
+	   try (IncrementalResultStore.Reader reader = store.openReader(strNamespace, iCellCount, 
+	         IncrementalResultStore.DEFAULT_LOOK_AHEAD_WINDOW)) {
+	      int iRow = 0;
+	      for (final DataRow row : inData) {
+	         arrContentHashes[iRow] = createContentHash(strNamespace, arrInputDataInfo, row);
+	         if (reader != null && reader.find(row.getKey(), arrContentHashes[iRow]) != null) {
+	            bitsUnchanged.set(iRow);
+	         }
+	         else {
+	            containerChanged.addRowToTable(row);
+	         }
+	         iRow++;
+	         reportProgress(execCompare, iRow, iRowCount, row, " - Comparing with previous results");
+	      }
+	   }
+	   finally {
+	      containerChanged.close();
+	   }
+	   final BufferedDataTable tableChanged = containerChanged.getTable();
+	   LOGGER.debug(getClass().getSimpleName() + " incremental execution: " + tableChanged.size() + 
+	         " of " + iRowCount + " rows need to be calculated.");
+	   
+	   // 2. Calculate new and changed rows
+	   final BufferedDataTable tableCalculated = exec.createColumnRearrangeTable(tableChanged, 
+	         rearrangerCalculation, exec.createSubExecutionContext(0.8d));
+	   final DataTableSpec specCalculated = tableCalculated.getDataTableSpec();
+	   final int[] arrCalculatedColumns = new int[iCellCount];
+	   for (int i = 0; i < arrCalculationFactories.length; i++) {
+	      final DataColumnSpec[] arrSpecs = arrCalculationFactories[i].getColumnSpecs();
+	      for (int j = 0; j < arrSpecs.length; j++) {
+	         arrCalculatedColumns[arrCellOffsets[i] + j] = specCalculated.findColumnIndex(arrSpecs[j].getName());
+	      }
+	   }
+	   
+	   // 3. Assemble output table from previous and new results
+	   final ColumnRearranger rearrangerAssembly = createColumnRearranger(0, inSpec);
+	   final AbstractRDKitCellFactory[] arrAssemblyFactories = m_arrLastOutputFactories;
+	   final Map<AbstractRDKitCellFactory, Integer> mapFactoryIndexes = 
+	         new IdentityHashMap<AbstractRDKitCellFactory, Integer>();
+	   for (int i = 0; i < arrAssemblyFactories.length; i++) {
+	      mapFactoryIndexes.put(arrAssemblyFactories[i], i);
+	   }
+	   final IncrementalResultStore.Reader reader = store.openReader(strNamespace, iCellCount, 
+	         IncrementalResultStore.DEFAULT_LOOK_AHEAD_WINDOW);
+	   final IncrementalResultStore.Writer writer = store.openWriter(strNamespace, iCellCount);
+	   final CloseableRowIterator iteratorCalculated = tableCalculated.iterator();
+	   final AtomicLong lRecalculatedRows = new AtomicLong();
+	   
+	   try {
+	      final PrecomputedResultProvider provider = new PrecomputedResultProvider() {
+
+	         /** Index of the current row in the input table. */
+	         private int m_iRow = -1;
+
+	         /** All result cells of the current row. */
+	         private DataCell[] m_arrCurrentCells = null;
+	         
+	         /** Index of the factory, which is expected to be called next. */
+	         private int m_iNextFactory = 0;
+	         
+	         /**
+	          * {@inheritDoc}
+	          * This implementation relies on the column rearranger calling the factories
+	          * one after another in their order for every row, in the order of the input table.
+	          * This is only guaranteed, because parallel processing is switched off for all 
+	          * assembly factories. Any other call sequence fails, as it would deliver the 
+	          * results of wrong rows.
+	          */
+	         @Override
+	         public DataCell[] getPrecomputedCells(final DataRow row, final AbstractRDKitCellFactory factory) {
+	            final Integer iFactory = mapFactoryIndexes.get(factory);
+	            if (iFactory == null || iFactory != m_iNextFactory) {
+	               throw new IllegalStateException("Incremental execution failed: Factories were not " +
+	                     "called in order (expected factory " + m_iNextFactory + ", but got " + iFactory + ").");
+	            }
+	            m_iNextFactory = (iFactory + 1) % arrAssemblyFactories.length;
+	            try {
+	               if (iFactory == 0) {
+	                  m_iRow++;
+	                  m_arrCurrentCells = null;
+	                  if (bitsUnchanged.get(m_iRow)) {
+	                     if (reader != null) {
+	                        m_arrCurrentCells = reader.find(row.getKey(), arrContentHashes[m_iRow]);
+	                     }
+	                     
+	                     // The previous result was lost meanwhile (e.g. the store was changed) - calculate it again
+	                     if (m_arrCurrentCells == null) {
+	                        m_arrCurrentCells = new DataCell[iCellCount];
+	                        for (int i = 0; i < arrCalculationFactories.length; i++) {
+	                           final DataCell[] arrCells = arrCalculationFactories[i].getCells(row);
+	                           System.arraycopy(arrCells, 0, m_arrCurrentCells, arrCellOffsets[i], arrCells.length);
+	                        }
+	                        lRecalculatedRows.incrementAndGet();
+	                     }
+	                  }
+	                  else {
+	                     final DataRow rowCalculated = iteratorCalculated.next();
+	                     if (!rowCalculated.getKey().equals(row.getKey())) {
+	                        throw new IOException("Calculated results are out of sync with input table.");
+	                     }
+	                     m_arrCurrentCells = new DataCell[iCellCount];
+	                     for (int i = 0; i < iCellCount; i++) {
+	                        m_arrCurrentCells[i] = rowCalculated.getCell(arrCalculatedColumns[i]);
+	                     }
+	                  }
+	                  writer.write(row.getKey(), arrContentHashes[m_iRow], m_arrCurrentCells);
+	               }
+	            }
+	            catch (final IOException exc) {
+	               throw new RuntimeException("Incremental execution failed: " + exc.getMessage(), exc);
+	            }
+	            
+	            return Arrays.copyOfRange(m_arrCurrentCells, arrCellOffsets[iFactory], arrCellOffsets[iFactory + 1]);
+	         }
+	      };
+	      
+	      for (final AbstractRDKitCellFactory factory : arrAssemblyFactories) {
+	         factory.setAllowParallelProcessing(false);
+	         factory.setResultCache(null, null);
+	         factory.setPrecomputedResultProvider(provider);
+	      }
+	      
+	      final BufferedDataTable tableResult = exec.createColumnRearrangeTable(inData, 
+	            rearrangerAssembly, exec.createSubExecutionContext(0.1d));
+	      writer.commit();
+	      
+	      if (lRecalculatedRows.get() > 0) {
+	         LOGGER.debug(getClass().getSimpleName() + " incremental execution: " + lRecalculatedRows.get() + 
+	               " unchanged rows were calculated again, because their previous results could not be found anymore.");
+	      }
+	      
+	      return tableResult;
+	   }
+	   finally {
+	      iteratorCalculated.close();
+	      writer.close();
+	      if (reader != null) {
+	         reader.close();
+	      }
+	      exec.clearTable(tableCalculated);
+	      exec.clearTable(tableChanged);
+	   }
+	}
+
+	/**
+	 * Creates a content hash of all input cells of a row, which are described by the 
+	 * passed in input data infos.
+	 * 
+	 * @param strNamespace Namespace of the calculation context. Must not be null.
+	 * @param arrInputDataInfo Input data infos. Must not be null.
+	 * @param row Input row. Must not be null.
+	 * 
+	 * @return Content hash.
+	 * 
+	 * @throws IOException Thrown, if input cells could not be hashed.
+	 */
+	protected long createContentHash(final String strNamespace, final InputDataInfo[] arrInputDataInfo, 
+	      final DataRow row) throws IOException {
+	   final DataCell[] arrInputCells = new DataCell[arrInputDataInfo.length];
+	   for (int i = 0; i < arrInputDataInfo.length; i++) {
+	      if (arrInputDataInfo[i] != null) {
+	         arrInputCells[i] = (arrInputDataInfo[i].isRowKey() ? 
+	               new StringCell(row.getKey().getString()) : arrInputDataInfo[i].getOriginalCell(row));
+	      }
+	   }
+	   return IncrementalResultStore.toContentHash(ResultCache.createKey(strNamespace, arrInputCells));
 	}
 }
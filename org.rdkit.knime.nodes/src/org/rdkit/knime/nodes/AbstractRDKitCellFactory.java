@@ -49,6 +49,7 @@
 package org.rdkit.knime.nodes;
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
@@ -56,10 +57,12 @@ import org.knime.core.data.DataRow;
 import org.knime.core.data.DataType;
 import org.knime.core.data.container.AbstractCellFactory;
 import org.knime.core.data.container.BlobSupportDataRow;
+import org.knime.core.data.def.StringCell;
 import org.knime.core.node.NodeLogger;
 import org.rdkit.knime.internals.ContextStatistics;
 import org.rdkit.knime.util.InputDataInfo;
 import org.rdkit.knime.util.RDKitObjectCleaner;
+import org.rdkit.knime.util.ResultCache;
 import org.rdkit.knime.util.WarningConsolidator;
 
 /**
@@ -93,6 +96,30 @@ public abstract class AbstractRDKitCellFactory extends AbstractCellFactory {
 		StopExecution
 	}
 
+	//
+	// Interfaces
+	//
+
+	/**
+	 * Provides result cells for rows, which do not need to be calculated (again),
+	 * e.g. because they are known from a previous execution.
+	 */
+	public interface PrecomputedResultProvider {
+
+		/**
+		 * Returns the result cells of the specified factory for the specified row.
+		 * 
+		 * @param row Input row. Must not be null.
+		 * @param factory Factory that requests the cells. Must not be null.
+		 * 
+		 * @return Result cells or null, if the row needs to be calculated.
+		 * 
+		 * @throws RuntimeException Thrown, if results cannot be provided. This is not
+		 * 		treated as row failure, but aborts the execution.
+		 */
+		DataCell[] getPrecomputedCells(DataRow row, AbstractRDKitCellFactory factory);
+	}
+
 	//
 	// Constants
 	//
@@ -126,6 +153,21 @@ public abstract class AbstractRDKitCellFactory extends AbstractCellFactory {
 	 */
 	private ContextStatistics m_contextStatistics = null;
 
+	/** Persistent result cache. Optional, null if results shall not be cached. */
+	private ResultCache m_resultCache = null;
+
+	/** Namespace for cache keys describing the calculation context of this factory. */
+	private String m_strResultCacheNamespace = null;
+
+	/** Provider of precomputed results. Optional, null if all rows shall be calculated. */
+	private PrecomputedResultProvider m_precomputedResultProvider = null;
+
+	/** Number of rows that were taken from the result cache. */
+	private final AtomicLong m_lResultCacheHits = new AtomicLong();
+
+	/** Number of rows that were calculated while the result cache was active. */
+	private final AtomicLong m_lResultCacheMisses = new AtomicLong();
+
 	//
 	// Constructor
 	//
@@ -246,6 +288,56 @@ public abstract class AbstractRDKitCellFactory extends AbstractCellFactory {
 	   m_contextStatistics = contextStatistics;
 	}
 
+	/**
+	 * Sets the persistent result cache to be used by this factory. When set, results
+	 * are looked up in the cache before calling {@link #process(InputDataInfo[], DataRow, long)}
+	 * and successfully calculated results are stored in the cache. This must only
+	 * be used, if the results depend exclusively on the input cells described by the
+	 * input data infos and on the calculation context described by the namespace.
+	 * 
+	 * @param cache Result cache. Can be null to disable caching.
+	 * @param strNamespace Namespace describing the calculation context (node type, settings,
+	 * 		versions). Must not be null, if a cache is set.
+	 */
+	public void setResultCache(final ResultCache cache, final String strNamespace) {
+		if (cache != null && strNamespace == null) {
+			throw new IllegalArgumentException("Result cache namespace must not be null.");
+		}
+		m_resultCache = cache;
+		m_strResultCacheNamespace = strNamespace;
+		m_lResultCacheHits.set(0);
+		m_lResultCacheMisses.set(0);
+	}
+
+	/**
+	 * Sets a provider for precomputed results. When set, it will be asked for results
+	 * before a row gets calculated.
+	 * 
+	 * @param provider Provider of precomputed results. Can be null.
+	 */
+	public void setPrecomputedResultProvider(final PrecomputedResultProvider provider) {
+		m_precomputedResultProvider = provider;
+	}
+
+	/**
+	 * Returns the persistent result cache used by this factory.
+	 * 
+	 * @return Result cache or null, if not set.
+	 */
+	public ResultCache getResultCache() {
+		return m_resultCache;
+	}
+
+	/**
+	 * Returns a short summary about the usage of the result cache by this factory.
+	 * 
+	 * @return Result cache usage summary.
+	 */
+	public String getResultCacheStatistics() {
+		return m_lResultCacheHits.get() + " rows taken from cache, " + 
+				m_lResultCacheMisses.get() + " rows calculated";
+	}
+
 	/**
 	 * Returns the array of input data info objects describing the input data for this factory.
 	 * Input data will usually merged with output data.
@@ -281,15 +373,36 @@ public abstract class AbstractRDKitCellFactory extends AbstractCellFactory {
 	public DataCell[] getCells(final DataRow row) {
 		DataCell[] arrOutputCells = null;
 		
+		// Count input rows for later consolidation of warnings
+		WarningConsolidator.Context contextToCount = getContextForRowCounting();
+		if (m_contextStatistics != null && contextToCount != null) {
+		   m_contextStatistics.countItem(contextToCount.getId());
+		}
+
+		// Use precomputed results, if available - failures of the provider are not
+		// row failures, hence they are not handled by the row failure policy
+		if (m_precomputedResultProvider != null) {
+		   final DataCell[] arrPrecomputedCells = m_precomputedResultProvider.getPrecomputedCells(row, this);
+		   if (arrPrecomputedCells != null) {
+		      return arrPrecomputedCells;
+		   }
+		}
+
 		final long iUniqueWaveId = m_cleaner.createUniqueCleanupWaveId();
 
 		try {
-		   // Count input rows for later consolidation of warnings
-		   WarningConsolidator.Context contextToCount = getContextForRowCounting();
-		   if (m_contextStatistics != null && contextToCount != null) {
-		      m_contextStatistics.countItem(contextToCount.getId());
+		   // Try to find results in the cache
+		   final String strCacheKey = (m_resultCache == null ? null : createResultCacheKey(row));
+		   if (strCacheKey != null) {
+		      final DataCell[] arrCachedCells = m_resultCache.get(strCacheKey, getColumnSpecs().length);
+		      if (arrCachedCells != null) {
+		         m_lResultCacheHits.incrementAndGet();
+		         return arrCachedCells;
+		      }
+		      m_lResultCacheMisses.incrementAndGet();
 		   }
-		   
+
+		   final long lStartNanos = System.nanoTime();
 			arrOutputCells = process(m_arrInputDataInfo, row, iUniqueWaveId);
 
 			// Check for null cells and replace them by missing cells
@@ -299,6 +412,13 @@ public abstract class AbstractRDKitCellFactory extends AbstractCellFactory {
 					m_warnings.saveWarning("Found 'null' in a result cell - Replaced it with a missing cell.");
 				}
 			}
+
+			// Remember successfully calculated results - missing cells usually stem from
+			// failures, which were handled by the factory with a warning. This warning 
+			// would be lost on a cache hit, so these rows get calculated again next time
+			if (strCacheKey != null && !containsMissingCells(arrOutputCells)) {
+			   m_resultCache.put(strCacheKey, arrOutputCells, System.nanoTime() - lStartNanos);
+			}
 		}
 		catch (final InputDataInfo.EmptyCellException exc) {
 			LOGGER.warn(exc.getMessage());
@@ -336,6 +456,56 @@ public abstract class AbstractRDKitCellFactory extends AbstractCellFactory {
 		return (arrOutputCells == null ? createEmptyCells(getColumnSpecs().length) : arrOutputCells);
 	}
 
+	/**
+	 * Creates the result cache key for the specified row based on all input cells
+	 * described by the input data infos.
+	 * 
+	 * @param row Input row. Must not be null.
+	 * 
+	 * @return Cache key or null, if no key could be determined. In this case the row
+	 * 		will not be cached.
+	 */
+	protected String createResultCacheKey(final DataRow row) {
+		String strKey = null;
+
+		if (m_arrInputDataInfo != null) {
+			try {
+				final DataCell[] arrInputCells = new DataCell[m_arrInputDataInfo.length];
+				for (int i = 0; i < m_arrInputDataInfo.length; i++) {
+					final InputDataInfo inputDataInfo = m_arrInputDataInfo[i];
+					if (inputDataInfo != null) {
+						arrInputCells[i] = (inputDataInfo.isRowKey() ?
+								new StringCell(row.getKey().getString()) :
+								row.getCell(inputDataInfo.getColumnIndex()));
+					}
+				}
+				strKey = ResultCache.createKey(m_strResultCacheNamespace, arrInputCells);
+			}
+			catch (final Exception exc) {
+				LOGGER.debug("Unable to create result cache key for row '" + row.getKey() + "'.", exc);
+			}
+		}
+
+		return strKey;
+	}
+
+	/**
+	 * Determines, if any of the passed in cells is missing.
+	 * 
+	 * @param arrCells Cells to check. Must not be null.
+	 * 
+	 * @return True, if at least one cell is missing. False otherwise.
+	 */
+	protected static boolean containsMissingCells(final DataCell[] arrCells) {
+		for (final DataCell cell : arrCells) {
+			if (cell == null || cell.isMissing()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * Creates an array of n empty cells using the Missing Cell instance of KNIME.
 	 * 
@@ -114,6 +114,7 @@ import org.rdkit.knime.nodes.AbstractRDKitCellFactory.RowFailurePolicy;
 import org.rdkit.knime.util.FilterCondition;
 import org.rdkit.knime.util.InputDataInfo;
 import org.rdkit.knime.util.RDKitObjectCleaner;
+import org.rdkit.knime.util.ResultCache;
 import org.rdkit.knime.util.SettingsUtils;
 import org.rdkit.knime.util.SplitCondition;
 import org.rdkit.knime.util.WarningConsolidator;
@@ -1489,6 +1490,24 @@ public abstract class AbstractRDKitGenericNodeModel extends NodeModel implements
 		}
 	}
 
+	/**
+	 * Creates a hash value of all settings, which have been registered before with
+	 * the method {@link #registerSettings(SettingsModel, String...)}. Two node instances
+	 * of the same type with identical settings deliver the same hash value. This is
+	 * used for instance to create keys for cached results.
+	 *
+	 * @return Hexadecimal hash value of the current settings.
+	 *
+	 * @throws IOException Thrown, if settings could not be serialized.
+	 */
+	protected String createSettingsHash() throws IOException {
+		final NodeSettings settings = new NodeSettings("settingsHash");
+		saveSettingsTo(settings);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		settings.saveToXML(out);
+		return ResultCache.createHash(getClass().getName(), out.toString("UTF-8"));
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * This implementation validates all setting models, which have been
@@ -204,6 +204,17 @@ public class RDKitCanonicalSmilesNodeModel extends AbstractRDKitCalculatorNodeMo
 		return (arrDataInfo == null ? new InputDataInfo[0] : arrDataInfo);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * This implementation returns true, because the calculated canonical SMILES depend only on the molecule and the settings.
+	 * The persistent result cache is not used, because reading a cache entry from disk is
+	 * more expensive than calculating the results again.
+	 */
+	@Override
+	protected boolean isIncrementalExecutionSupported() {
+		return true;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
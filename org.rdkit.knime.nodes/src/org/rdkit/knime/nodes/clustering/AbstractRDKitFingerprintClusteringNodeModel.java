@@ -0,0 +1,509 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.clustering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.def.BooleanCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.util.MultiThreadWorker;
+import org.rdkit.knime.nodes.AbstractRDKitCellFactory;
+import org.rdkit.knime.nodes.AbstractRDKitNodeModel;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintArena;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintClustering;
+import org.rdkit.knime.nodes.rdkfingerprint.NeighborLists;
+import org.rdkit.knime.nodes.rdkfingerprint.SimilarityMatrixCalculator;
+import org.rdkit.knime.nodes.rdkfingerprint.SimilarityMatrixCalculator.SimilarityBlock;
+import org.rdkit.knime.nodes.rdkfingerprint.SimilarityMetric;
+import org.rdkit.knime.util.InputDataInfo;
+import org.rdkit.knime.util.SettingsModelEnumeration;
+import org.rdkit.knime.util.SettingsUtils;
+import org.rdkit.knime.util.WarningConsolidator;
+
+/**
+ * This class implements the common parts of the fingerprint clustering node models.
+ * All fingerprints of the input column are packed into a {@link FingerprintArena}
+ * sorted by popcount. The neighbor lists of all fingerprints (all fingerprints within
+ * the distance threshold) are calculated in parallel in blocks. For every block only
+ * the popcount bins are compared, which can reach the threshold. The neighbors are kept
+ * in compact {@link NeighborLists}, which are passed to the concrete clustering algorithm.
+ * Every row gets a cluster ID and a flag that tells, if it is the cluster centroid.
+ *
+ * @author agent
+ */
+public abstract class AbstractRDKitFingerprintClusteringNodeModel extends AbstractRDKitNodeModel {
+
+	//
+	// Constants
+	//
+
+	/** The logger instance. */
+	protected static final NodeLogger LOGGER = NodeLogger
+			.getLogger(AbstractRDKitFingerprintClusteringNodeModel.class);
+
+	/** Input data info index for the fingerprint. */
+	protected static final int INPUT_COLUMN_FINGERPRINT = 0;
+
+	/** The number of fingerprints a single neighbor calculation task should cover. */
+	protected static final int ROWS_PER_TASK = 128;
+
+	//
+	// Members
+	//
+
+	/** Settings model for the column name of the fingerprint column. */
+	private final SettingsModelString m_modelInputColumnName =
+			registerSettings(RDKitFingerprintClusteringNodeDialog.createInputColumnNameModel());
+
+	/** Settings model for the similarity metric. */
+	private final SettingsModelEnumeration<SimilarityMetric> m_modelMetric =
+			registerSettings(RDKitFingerprintClusteringNodeDialog.createMetricModel());
+
+	/** Settings model for the distance threshold. */
+	private final SettingsModelDoubleBounded m_modelDistanceThreshold =
+			registerSettings(RDKitFingerprintClusteringNodeDialog.createDistanceThresholdModel());
+
+	/** Settings model for the name of the new cluster ID column. */
+	private final SettingsModelString m_modelNewClusterColumnName =
+			registerSettings(RDKitFingerprintClusteringNodeDialog.createNewClusterColumnNameModel());
+
+	/** Settings model for the name of the new centroid flag column. */
+	private final SettingsModelString m_modelNewCentroidColumnName =
+			registerSettings(RDKitFingerprintClusteringNodeDialog.createNewCentroidColumnNameModel());
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Create new node model with one data in- and one out-port.
+	 */
+	protected AbstractRDKitFingerprintClusteringNodeModel() {
+		super(1, 1);
+
+		registerInputTablesWithSizeLimits(0); // All fingerprints are kept in memory
+	}
+
+	//
+	// Protected Methods
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs)
+			throws InvalidSettingsException {
+		// Reset warnings and check RDKit library readiness
+		super.configure(inSpecs);
+
+		// Auto guess the input column if not set - fails if no compatible column found
+		SettingsUtils.autoGuessColumn(inSpecs[0], m_modelInputColumnName, BitVectorValue.class, 0,
+				"Auto guessing: Using column %COLUMN_NAME% as fingerprints.",
+				"No fingerprints (Bit Vector compatible column) in input table.", getWarningConsolidator());
+
+		// Determines, if the input column exists - fails if it does not
+		SettingsUtils.checkColumnExistence(inSpecs[0], m_modelInputColumnName, BitVectorValue.class,
+				"Fingerprint column has not been specified yet.",
+				"Fingerprint column %COLUMN_NAME% does not exist. Has the input table changed?");
+
+		// Asymmetric metrics would lead to asymmetric neighbor lists
+		if (m_modelMetric.getValue() == SimilarityMetric.Tversky) {
+			throw new InvalidSettingsException("The Tversky metric is asymmetric and cannot be used for clustering.");
+		}
+
+		// Auto guess the new column names and make them unique
+		SettingsUtils.autoGuessColumnName(inSpecs[0], null, null,
+				m_modelNewClusterColumnName, "Cluster ID");
+		SettingsUtils.autoGuessColumnName(inSpecs[0],
+				new String[] { m_modelNewClusterColumnName.getStringValue() }, null,
+				m_modelNewCentroidColumnName, "Cluster Centroid");
+
+		// Determine, if the new column names have been set and if they are really unique
+		SettingsUtils.checkColumnNameUniqueness(inSpecs[0], null, null,
+				m_modelNewClusterColumnName,
+				"Cluster ID output column has not been specified yet.",
+				"The name %COLUMN_NAME% of the new cluster ID column exists already in the input.");
+		SettingsUtils.checkColumnNameUniqueness(inSpecs[0],
+				new String[] { m_modelNewClusterColumnName.getStringValue() }, null,
+				m_modelNewCentroidColumnName,
+				"Cluster centroid output column has not been specified yet.",
+				"The name %COLUMN_NAME% of the new cluster centroid column exists already in the input.");
+
+		// Consolidate all warnings and make them available to the user
+		generateWarnings();
+
+		// Generate output specs
+		return getOutputTableSpecs(inSpecs);
+	}
+
+	/**
+	 * This implementation generates input data info objects for the fingerprint
+	 * column and connects it with the information coming from the appropriate setting model.
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected InputDataInfo[] createInputDataInfos(final int inPort, final DataTableSpec inSpec)
+			throws InvalidSettingsException {
+
+		InputDataInfo[] arrDataInfo = null;
+
+		// Specify input of table 1
+		if (inPort == 0) {
+			arrDataInfo = new InputDataInfo[1]; // We have only one input column
+			arrDataInfo[INPUT_COLUMN_FINGERPRINT] = new InputDataInfo(inSpec, m_modelInputColumnName,
+					InputDataInfo.EmptyCellPolicy.TreatAsNull, null,
+					BitVectorValue.class);
+		}
+
+		return (arrDataInfo == null ? new InputDataInfo[0] : arrDataInfo);
+	}
+
+	/**
+	 * Returns the output table specification of the specified out port, which consists
+	 * of the input columns and the new cluster ID and centroid columns.
+	 *
+	 * @param outPort Index of output port in focus. Zero-based.
+	 * @param inSpecs All input table specifications.
+	 *
+	 * @return The specification of all output tables.
+	 *
+	 * @throws InvalidSettingsException Thrown, if the settings are inconsistent with
+	 * 		given DataTableSpec elements.
+	 */
+	@Override
+	protected DataTableSpec getOutputTableSpec(final int outPort,
+			final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+		DataTableSpec spec = null;
+
+		switch (outPort) {
+
+		case 0:
+			// Define output table
+			spec = new DataTableSpec(inSpecs[0], new DataTableSpec(new DataColumnSpec[] {
+					createColumnSpec(m_modelNewClusterColumnName.getStringValue(), IntCell.TYPE),
+					createColumnSpec(m_modelNewCentroidColumnName.getStringValue(), BooleanCell.TYPE) }));
+			break;
+		}
+
+		return spec;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected BufferedDataTable[] processing(final BufferedDataTable[] inData, final InputDataInfo[][] arrInputDataInfo,
+			final ExecutionContext exec) throws Exception {
+		final DataTableSpec[] arrOutSpecs = getOutputTableSpecs(inData);
+		final WarningConsolidator warnings = getWarningConsolidator();
+		final long lTotalRowCount = inData[0].size();
+
+		if (lTotalRowCount > Integer.MAX_VALUE) {
+			throw new InvalidSettingsException("The input table is too large for clustering.");
+		}
+
+		// Contains the rows with the result column
+		final BufferedDataContainer newTableData = exec.createDataContainer(arrOutSpecs[0]);
+
+		// Create sub execution contexts for processing steps
+		final ExecutionContext subExecReading = exec.createSubExecutionContext(0.10d);
+		final ExecutionContext subExecNeighbors = exec.createSubExecutionContext(0.80d);
+		final ExecutionContext subExecWriting = exec.createSubExecutionContext(0.10d);
+
+		// 1. Pack all fingerprints into an arena sorted by popcount
+		final FingerprintArena arena = readFingerprints(inData[0], arrInputDataInfo[0][INPUT_COLUMN_FINGERPRINT],
+				warnings, subExecReading);
+		subExecReading.setProgress(1.0d);
+
+		// 2. Calculate neighbor lists and cluster
+		final int[] arrRowClusters = new int[(int)lTotalRowCount];
+		final boolean[] arrRowCentroids = new boolean[(int)lTotalRowCount];
+		Arrays.fill(arrRowClusters, -1);
+
+		if (arena == null || arena.size() == 0) {
+			warnings.saveWarning("There are no fingerprints to cluster.");
+		}
+		else {
+			final NeighborLists neighbors = calculateNeighborLists(arena, subExecNeighbors);
+			LOGGER.debug("Found " + neighbors.getPairCount() + " neighbor pairs stored in " +
+					neighbors.getMemoryFootprint() + " bytes.");
+
+			exec.setMessage("Clustering");
+			final FingerprintClustering clustering = cluster(neighbors, FingerprintClustering.getOriginalOrder(arena));
+			for (int i = 0; i < arena.size(); i++) {
+				final int iRowIndex = (int)arena.getTag(i);
+				arrRowClusters[iRowIndex] = clustering.getCluster(i);
+				arrRowCentroids[iRowIndex] = clustering.isCentroid(i);
+			}
+		}
+
+		// 3. Write the result table
+		long lRowIndex = 0;
+		try (final CloseableRowIterator i = inData[0].iterator()) {
+			for (; i.hasNext(); lRowIndex++) {
+				final DataRow row = i.next();
+				final int iCluster = arrRowClusters[(int)lRowIndex];
+				final DataCell[] arrResults = (iCluster < 0 ? AbstractRDKitCellFactory.createEmptyCells(2) :
+					new DataCell[] { new IntCell(iCluster + 1), BooleanCell.get(arrRowCentroids[(int)lRowIndex]) });
+				newTableData.addRowToTable(AbstractRDKitCellFactory.mergeDataCells(row, arrResults, -1));
+
+				// Every 1000 iterations report progress and check for cancel
+				if (lRowIndex % 1000 == 0) {
+					AbstractRDKitNodeModel.reportProgress(subExecWriting, lRowIndex, lTotalRowCount, row,
+							" - Writing clusters");
+				}
+			}
+		}
+
+		exec.checkCanceled();
+		exec.setProgress(1.0, "Finished Processing");
+
+		newTableData.close();
+
+		return new BufferedDataTable[] { newTableData.getTable() };
+	}
+
+	/**
+	 * Calculates the neighbor lists of all fingerprints in parallel. Two fingerprints are
+	 * neighbors, if their distance (1 - similarity) is not larger than the distance threshold.
+	 *
+	 * @param arena Fingerprints sorted by popcount. Must not be null.
+	 * @param exec Execution context. Must not be null.
+	 *
+	 * @return Complete neighbor lists.
+	 *
+	 * @throws Exception Thrown, if something goes wrong or if the execution was cancelled.
+	 */
+	protected NeighborLists calculateNeighborLists(final FingerprintArena arena, final ExecutionContext exec)
+			throws Exception {
+		final SimilarityMetric metric = m_modelMetric.getValue();
+		final double dAlpha = metric.getAlpha(1.0d);
+		final double dBeta = metric.getBeta(1.0d);
+		final double dThreshold = 1.0d - m_modelDistanceThreshold.getDoubleValue();
+		final SimilarityMatrixCalculator calculator = new SimilarityMatrixCalculator(metric, dAlpha, dBeta, dThreshold);
+		final NeighborLists neighbors = new NeighborLists(arena.size());
+		final int iMaxParallelWorkers = (int)Math.ceil(1.5 * Runtime.getRuntime().availableProcessors());
+		final int iQueueSize = 10 * iMaxParallelWorkers;
+		final int iSize = arena.size();
+		final int iNumBits = arena.getNumBits();
+
+		// Split the fingerprints into blocks
+		final List<Integer> listBlockStarts = new ArrayList<Integer>();
+		for (int iStart = 0; iStart < iSize; iStart += ROWS_PER_TASK) {
+			listBlockStarts.add(iStart);
+		}
+
+		final int iTotalTaskCount = listBlockStarts.size();
+
+		new MultiThreadWorker<Integer, SimilarityBlock>(iQueueSize, iMaxParallelWorkers) {
+
+			/**
+			 * Finds the neighbors with a larger index for a block of fingerprints. As the arena
+			 * is sorted, only the popcount bins that can reach the threshold are compared.
+			 *
+			 * @param iStart Index of the first fingerprint of the block.
+			 * @param index Index of the block.
+			 *
+			 * @return Neighbors of the block.
+			 */
+			@Override
+			protected SimilarityBlock compute(final Integer iStart, final long index) throws Exception {
+				final int iEnd = Math.min(iSize, iStart + ROWS_PER_TASK);
+				final int iTargetStart = arena.getBinStart(SimilarityMetric.getMinTargetCount(
+						arena.getPopCount(iStart), dThreshold, dAlpha, dBeta));
+				final int iTargetEnd = arena.getBinEnd(SimilarityMetric.getMaxTargetCount(
+						arena.getPopCount(iEnd - 1), iNumBits, dThreshold, dAlpha, dBeta));
+				return calculator.calculate(arena, iStart, iEnd, arena, iTargetStart, iTargetEnd, true);
+			}
+
+			/**
+			 * Adds the neighbors of a finished block to the neighbor lists.
+			 *
+			 * @param task Processing result for a block.
+			 */
+			@Override
+			protected void processFinished(final ComputationTask task)
+					throws ExecutionException, CancellationException, InterruptedException {
+				neighbors.addUpperNeighbors(task.get());
+
+				// Check, if user pressed cancel (however, we will finish the method
+				// nevertheless)
+				// Update the progress only every 10 blocks
+				if (task.getIndex() % 10 == 0) {
+					try {
+						AbstractRDKitNodeModel.reportProgress(exec, task.getIndex(), iTotalTaskCount, null,
+								" - Finding neighbors");
+					}
+					catch (final CanceledExecutionException e) {
+						cancel(true);
+					}
+				}
+			};
+		}.run(listBlockStarts);
+
+		exec.checkCanceled();
+		neighbors.complete();
+
+		return neighbors;
+	}
+
+	/**
+	 * Reads all fingerprints of the specified table into a fingerprint arena, which is
+	 * sorted by popcount afterwards. The tag of each fingerprint is its row index.
+	 * The length of the first valid fingerprint determines the length of all
+	 * fingerprints. Fingerprints with other lengths are ignored.
+	 *
+	 * @param inData Input table. Must not be null.
+	 * @param inputDataInfo Input data definition for the fingerprint column. Must not be null.
+	 * @param warnings Warning consolidator. Must not be null.
+	 * @param exec Execution context. Must not be null.
+	 *
+	 * @return Sorted fingerprint arena or null, if there are no fingerprints.
+	 *
+	 * @throws Exception Thrown, if something goes wrong or if the execution was cancelled.
+	 */
+	protected FingerprintArena readFingerprints(final BufferedDataTable inData, final InputDataInfo inputDataInfo,
+			final WarningConsolidator warnings, final ExecutionContext exec) throws Exception {
+		final long lTotalRowCount = inData.size();
+		FingerprintArena arena = null;
+		long lRowIndex = 0;
+
+		try (final CloseableRowIterator i = inData.iterator()) {
+			for (; i.hasNext(); lRowIndex++) {
+				final DataRow row = i.next();
+				final BitVectorValue fp = (BitVectorValue)inputDataInfo.getCell(row);
+
+				if (fp == null) {
+					warnings.saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
+							"Encountered empty fingerprint cell - ignored it.");
+				}
+				else {
+					if (arena == null) {
+						if (fp.length() <= 0 || fp.length() > Integer.MAX_VALUE - 1) {
+							throw new InvalidSettingsException("Fingerprints have an unsupported length of " +
+									fp.length() + " bits.");
+						}
+						arena = new FingerprintArena((int)fp.length(), false, lTotalRowCount);
+					}
+
+					if (fp.length() == arena.getNumBits()) {
+						arena.add(FingerprintArena.toWords(fp), lRowIndex, null);
+					}
+					else {
+						warnings.saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
+								"Encountered fingerprint with invalid length (" + fp.length() + " instead of " +
+										arena.getNumBits() + " bits) - ignored it.");
+					}
+				}
+
+				// Every 1000 iterations report progress and check for cancel
+				if (lRowIndex % 1000 == 0) {
+					AbstractRDKitNodeModel.reportProgress(exec, lRowIndex, lTotalRowCount, row,
+							" - Reading fingerprints");
+				}
+			}
+		}
+
+		if (arena != null) {
+			exec.setMessage("Sorting fingerprints");
+			arena.sortByPopCount();
+			LOGGER.debug("Packed " + arena.size() + " fingerprints into " +
+					arena.getMemoryFootprint() + " bytes.");
+		}
+
+		return arena;
+	}
+
+	/**
+	 * Clusters the fingerprints based on their neighbor lists.
+	 *
+	 * @param neighbors Complete neighbor lists. Must not be null.
+	 * @param arrOriginalOrder Fingerprint indexes in the order of the input table.
+	 *
+	 * @return Clustering result.
+	 */
+	protected abstract FingerprintClustering cluster(NeighborLists neighbors, int[] arrOriginalOrder);
+
+	//
+	// Static Private Methods
+	//
+
+	/**
+	 * Creates a column specification.
+	 *
+	 * @param strName Column name. Must not be null.
+	 * @param type Data type. Must not be null.
+	 *
+	 * @return Column specification.
+	 */
+	private static DataColumnSpec createColumnSpec(final String strName, final DataType type) {
+		return new DataColumnSpecCreator(strName, type).createSpec();
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.clustering;
+
+import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.rdkit.knime.nodes.rdkfingerprint.SimilarityMetric;
+import org.rdkit.knime.util.DialogComponentColumnNameSelection;
+import org.rdkit.knime.util.DialogComponentEnumSelection;
+import org.rdkit.knime.util.SettingsModelEnumeration;
+
+/**
+ * <code>NodeDialog</code> for the fingerprint clustering nodes "RDKitButinaClustering"
+ * and "RDKitSphereExclusionClustering".
+ *
+ * This node dialog derives from {@link DefaultNodeSettingsPane} which allows
+ * creation of a simple dialog with standard components. If you need a more
+ * complex dialog please derive directly from {@link org.knime.core.node.NodeDialogPane}.
+ *
+ * @author agent
+ */
+public class RDKitFingerprintClusteringNodeDialog extends DefaultNodeSettingsPane {
+
+	//
+	// Constants
+	//
+
+	/** The default similarity metric to be used. */
+	public static final SimilarityMetric DEFAULT_METRIC = SimilarityMetric.Tanimoto;
+
+	/** The default distance threshold to be used. */
+	public static final double DEFAULT_DISTANCE_THRESHOLD = 0.35d;
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Create a new dialog pane with default components to configure the fingerprint
+	 * column, the similarity metric, the distance threshold and the new column names.
+	 */
+	RDKitFingerprintClusteringNodeDialog() {
+		super.addDialogComponent(new DialogComponentColumnNameSelection(
+				createInputColumnNameModel(), "Fingerprint column: ", 0,
+				BitVectorValue.class));
+		super.addDialogComponent(new DialogComponentEnumSelection<SimilarityMetric>(createMetricModel(),
+				"Similarity metric: ", SimilarityMetric.Tanimoto, SimilarityMetric.Dice));
+		super.addDialogComponent(new DialogComponentNumber(createDistanceThresholdModel(),
+				"Distance threshold (1 - similarity): ", 0.05d, 6));
+		super.addDialogComponent(new DialogComponentString(
+				createNewClusterColumnNameModel(), "New cluster ID column name: "));
+		super.addDialogComponent(new DialogComponentString(
+				createNewCentroidColumnNameModel(), "New cluster centroid column name: "));
+	}
+
+	//
+	// Static Methods
+	//
+
+	/**
+	 * Creates the settings model to be used for the fingerprint column.
+	 *
+	 * @return Settings model for fingerprint column selection.
+	 */
+	static final SettingsModelString createInputColumnNameModel() {
+		return new SettingsModelString("input_column", null);
+	}
+
+	/**
+	 * Creates the settings model to be used for the similarity metric.
+	 *
+	 * @return Settings model for the similarity metric.
+	 */
+	static final SettingsModelEnumeration<SimilarityMetric> createMetricModel() {
+		return new SettingsModelEnumeration<SimilarityMetric>(SimilarityMetric.class, "metric", DEFAULT_METRIC);
+	}
+
+	/**
+	 * Creates the settings model to be used for the distance threshold. Fingerprints
+	 * with a distance not larger than this threshold are neighbors.
+	 *
+	 * @return Settings model for the distance threshold.
+	 */
+	static final SettingsModelDoubleBounded createDistanceThresholdModel() {
+		return new SettingsModelDoubleBounded("distance_threshold", DEFAULT_DISTANCE_THRESHOLD, 0.0d, 1.0d);
+	}
+
+	/**
+	 * Creates the settings model to be used for the name of the new cluster ID column.
+	 *
+	 * @return Settings model for the new cluster ID column name.
+	 */
+	static final SettingsModelString createNewClusterColumnNameModel() {
+		return new SettingsModelString("new_cluster_column_name", null);
+	}
+
+	/**
+	 * Creates the settings model to be used for the name of the new cluster centroid column.
+	 *
+	 * @return Settings model for the new cluster centroid column name.
+	 */
+	static final SettingsModelString createNewCentroidColumnNameModel() {
+		return new SettingsModelString("new_centroid_column_name", null);
+	}
+}
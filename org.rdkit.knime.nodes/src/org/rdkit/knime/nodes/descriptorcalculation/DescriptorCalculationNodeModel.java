@@ -187,6 +187,15 @@ public class DescriptorCalculationNodeModel extends AbstractRDKitCalculatorNodeM
 		return (arrDataInfo == null ? new InputDataInfo[0] : arrDataInfo);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * This implementation returns true, because the calculated descriptors depend only on the molecule and the settings.
+	 */
+	@Override
+	protected boolean isResultCacheSupported() {
+		return true;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
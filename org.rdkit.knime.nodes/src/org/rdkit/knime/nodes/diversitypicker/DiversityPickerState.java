@@ -0,0 +1,361 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.diversitypicker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintArena;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintIndex;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintSettings;
+import org.rdkit.knime.properties.FingerprintSettingsHeaderProperty;
+
+/**
+ * The state of a diversity pick, which can be saved to continue picking in a later run.
+ * It consists of the fingerprints and IDs of all picks and of the minimum distances of
+ * all candidates, which were not picked, to these picks. Candidates are identified by their
+ * row IDs and a hash of their fingerprint. A later run only needs to compare candidates that
+ * are new or have a changed fingerprint with the saved picks. Known candidates continue
+ * with their saved minimum distance. The settings of the fingerprints are saved as well,
+ * because saved distances are meaningless for fingerprints that were generated differently.
+ *
+ * @author agent
+ */
+public class DiversityPickerState {
+
+	//
+	// Constants
+	//
+
+	/** File extension of diversity picker state files. */
+	public static final String FILE_EXTENSION = ".rdpick";
+
+	/** Magic bytes at the beginning of a state file. */
+	private static final long MAGIC = 0x524b4450494b5331L; // "RKDPIKS1"
+
+	/** Format version of state files. */
+	private static final int VERSION = 2;
+
+	//
+	// Members
+	//
+
+	/** Settings of the fingerprints or null, if unknown. */
+	private final FingerprintSettingsHeaderProperty m_settings;
+
+	/** Fingerprints of all picks with the row IDs as fingerprint IDs. */
+	private final FingerprintArena m_picks;
+
+	/** Row IDs of all picks. */
+	private final Set<String> m_setPickIds;
+
+	/** Indexes of candidates by row ID. */
+	private final Map<String, Integer> m_mapCandidates;
+
+	/** Row IDs of the candidates. */
+	private final String[] m_arrCandidateIds;
+
+	/** Fingerprint hashes of the candidates. */
+	private final long[] m_arrCandidateHashes;
+
+	/** Minimum distances of the candidates to all picks. */
+	private final float[] m_arrCandidateMinDistances;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Creates a new diversity picker state.
+	 *
+	 * @param settings Settings of the fingerprints. Can be null, if unknown.
+	 * @param picks Fingerprints of all picks. IDs must be stored. Must not be null.
+	 * @param arrCandidateIds Row IDs of candidates, which were not picked. Must not be null.
+	 * @param arrCandidateHashes Fingerprint hashes of the candidates as calculated by
+	 * 		{@link #hash(long[])}. Must not be null and must have the same length as the IDs.
+	 * @param arrCandidateMinDistances Minimum distances of the candidates to all picks.
+	 * 		Must not be null and must have the same length as the IDs.
+	 */
+	public DiversityPickerState(final FingerprintSettings settings, final FingerprintArena picks,
+			final String[] arrCandidateIds, final long[] arrCandidateHashes, final float[] arrCandidateMinDistances) {
+		if (picks == null || arrCandidateIds == null || arrCandidateHashes == null || arrCandidateMinDistances == null) {
+			throw new IllegalArgumentException("Picks and candidates must not be null.");
+		}
+		if (arrCandidateHashes.length != arrCandidateIds.length ||
+				arrCandidateMinDistances.length != arrCandidateIds.length) {
+			throw new IllegalArgumentException("Candidate IDs, hashes and minimum distances must have the same length.");
+		}
+
+		m_settings = (settings == null || settings.getRdkitFingerprintType() == null ? null :
+			new FingerprintSettingsHeaderProperty(settings));
+		m_picks = picks;
+		m_arrCandidateIds = arrCandidateIds;
+		m_arrCandidateHashes = arrCandidateHashes;
+		m_arrCandidateMinDistances = arrCandidateMinDistances;
+
+		m_setPickIds = new HashSet<String>(Math.max(16, picks.size() * 2));
+		for (int i = 0; i < picks.size(); i++) {
+			m_setPickIds.add(picks.getId(i));
+		}
+
+		m_mapCandidates = new HashMap<String, Integer>(Math.max(16, arrCandidateIds.length * 2));
+		for (int i = 0; i < arrCandidateIds.length; i++) {
+			m_mapCandidates.put(arrCandidateIds[i], i);
+		}
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns the settings of the fingerprints.
+	 *
+	 * @return Fingerprint settings or null, if unknown.
+	 */
+	public FingerprintSettingsHeaderProperty getFingerprintSettings() {
+		return m_settings;
+	}
+
+	/**
+	 * Returns the number of bits of the fingerprints.
+	 *
+	 * @return Fingerprint length.
+	 */
+	public int getNumBits() {
+		return m_picks.getNumBits();
+	}
+
+	/**
+	 * Returns the fingerprints of all picks. The IDs of the fingerprints are the row IDs.
+	 *
+	 * @return Picks. Must not be modified.
+	 */
+	public FingerprintArena getPicks() {
+		return m_picks;
+	}
+
+	/**
+	 * Determines, if the row with the specified ID has been picked.
+	 *
+	 * @param strRowId Row ID.
+	 *
+	 * @return True, if picked. False otherwise.
+	 */
+	public boolean isPicked(final String strRowId) {
+		return m_setPickIds.contains(strRowId);
+	}
+
+	/**
+	 * Returns the number of candidates with saved minimum distances.
+	 *
+	 * @return Number of candidates.
+	 */
+	public int getCandidateCount() {
+		return m_arrCandidateIds.length;
+	}
+
+	/**
+	 * Returns the saved minimum distance of a candidate to all picks.
+	 *
+	 * @param strRowId Row ID of the candidate.
+	 * @param arrWords Current fingerprint words of the candidate. Must not be null.
+	 *
+	 * @return Minimum distance or {@link Float#NaN}, if the candidate is unknown
+	 * 		or if its fingerprint has changed.
+	 */
+	public float getMinDistance(final String strRowId, final long[] arrWords) {
+		final Integer index = m_mapCandidates.get(strRowId);
+		float fMin = Float.NaN;
+
+		if (index != null && m_arrCandidateHashes[index] == hash(arrWords)) {
+			fMin = m_arrCandidateMinDistances[index];
+		}
+
+		return fMin;
+	}
+
+	/**
+	 * Writes the state into a file. The file is written under a temporary name first
+	 * and replaces an existing file only after it was written completely.
+	 *
+	 * @param path File to write. Must not be null.
+	 *
+	 * @throws IOException Thrown, if the file cannot be written.
+	 */
+	public void write(final Path path) throws IOException {
+		final Path pathAbsolute = path.toAbsolutePath();
+		final Path pathTemp = pathAbsolute.resolveSibling(pathAbsolute.getFileName() + ".tmp");
+		final int iPickCount = m_picks.size();
+		final int iWords = m_picks.getWordsPerFingerprint();
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(pathTemp), 1 << 16))) {
+			out.writeLong(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(m_picks.getNumBits());
+			out.writeInt(iPickCount);
+			out.writeInt(m_arrCandidateIds.length);
+
+			final byte[] arrSettings = FingerprintIndex.writeSettings(m_settings);
+			out.writeInt(arrSettings.length);
+			out.write(arrSettings);
+
+			for (int i = 0; i < iPickCount; i++) {
+				out.writeUTF(m_picks.getId(i));
+				final long[] arrWords = m_picks.getWords(i);
+				for (int w = 0; w < iWords; w++) {
+					out.writeLong(arrWords[w]);
+				}
+			}
+
+			for (int i = 0; i < m_arrCandidateIds.length; i++) {
+				out.writeUTF(m_arrCandidateIds[i]);
+				out.writeLong(m_arrCandidateHashes[i]);
+				out.writeFloat(m_arrCandidateMinDistances[i]);
+			}
+		}
+		catch (final IOException exc) {
+			Files.deleteIfExists(pathTemp);
+			throw exc;
+		}
+
+		Files.move(pathTemp, pathAbsolute, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Reads a state from a file.
+	 *
+	 * @param path File to read. Must not be null.
+	 *
+	 * @return Diversity picker state. Never null.
+	 *
+	 * @throws IOException Thrown, if the file cannot be read or if it is not a valid state file.
+	 */
+	public static DiversityPickerState read(final Path path) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+			if (in.readLong() != MAGIC) {
+				throw new IOException("File " + path + " is not a diversity picker state file.");
+			}
+			final int iVersion = in.readInt();
+			if (iVersion != VERSION) {
+				throw new IOException("Unsupported diversity picker state version " + iVersion + ".");
+			}
+
+			final int iNumBits = in.readInt();
+			final int iPickCount = in.readInt();
+			final int iCandidateCount = in.readInt();
+			if (iNumBits <= 0 || iPickCount < 0 || iCandidateCount < 0) {
+				throw new IOException("Diversity picker state file " + path + " is corrupt.");
+			}
+
+			final int iSettingsLength = in.readInt();
+			if (iSettingsLength < 4) {
+				throw new IOException("Diversity picker state file " + path + " is corrupt.");
+			}
+			final byte[] arrSettings = new byte[iSettingsLength];
+			in.readFully(arrSettings);
+			final FingerprintSettingsHeaderProperty settings = FingerprintIndex.readSettings(arrSettings);
+
+			final FingerprintArena picks = new FingerprintArena(iNumBits, true, iPickCount);
+			final long[] arrWords = new long[(iNumBits + 63) >>> 6];
+			for (int i = 0; i < iPickCount; i++) {
+				final String strId = in.readUTF();
+				for (int w = 0; w < arrWords.length; w++) {
+					arrWords[w] = in.readLong();
+				}
+				picks.add(arrWords, i, strId);
+			}
+
+			final String[] arrCandidateIds = new String[iCandidateCount];
+			final long[] arrCandidateHashes = new long[iCandidateCount];
+			final float[] arrCandidateMinDistances = new float[iCandidateCount];
+			for (int i = 0; i < iCandidateCount; i++) {
+				arrCandidateIds[i] = in.readUTF();
+				arrCandidateHashes[i] = in.readLong();
+				arrCandidateMinDistances[i] = in.readFloat();
+			}
+
+			return new DiversityPickerState(settings, picks, arrCandidateIds, arrCandidateHashes, arrCandidateMinDistances);
+		}
+	}
+
+	/**
+	 * Calculates a 64 bit hash of fingerprint words, which is used to recognize
+	 * candidates with changed fingerprints.
+	 *
+	 * @param arrWords Fingerprint words. Must not be null.
+	 *
+	 * @return Hash value.
+	 */
+	public static long hash(final long[] arrWords) {
+		long lHash = 0xcbf29ce484222325L;
+
+		for (final long lWord : arrWords) {
+			lHash ^= lWord;
+			lHash *= 0x100000001b3L;
+			lHash ^= (lHash >>> 29);
+		}
+
+		return lHash;
+	}
+}
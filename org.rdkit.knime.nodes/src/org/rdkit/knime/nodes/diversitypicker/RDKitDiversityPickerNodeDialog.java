@@ -48,13 +48,18 @@
  */
 package org.rdkit.knime.nodes.diversitypicker;
 
+import javax.swing.JFileChooser;
+
 import org.knime.core.data.vector.bitvector.BitVectorValue;
 import org.knime.core.node.NotConfigurableException;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponent;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentFileChooser;
 import org.knime.core.node.defaultnodesettings.DialogComponentLabel;
 import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
 import org.knime.core.node.defaultnodesettings.DialogComponentNumberEdit;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
 import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
@@ -127,6 +132,18 @@ public class RDKitDiversityPickerNodeDialog extends DefaultNodeSettingsPane {
 				"Number to pick: ", 1));
 		super.addDialogComponent(new DialogComponentNumberEdit(createRandomSeedModel(),
 				"Random seed: ", 10));
+		super.addDialogComponent(new DialogComponentBoolean(createUseRDKitPickerModel(),
+				"Use RDKit picker (as older versions of this node)"));
+
+		super.createNewGroup("Continue from picker state file (optional)");
+		super.addDialogComponent(new DialogComponentFileChooser(
+				createInputStateFileModel(), "DiversityPickerStateHistory",
+				JFileChooser.OPEN_DIALOG, DiversityPickerState.FILE_EXTENSION));
+		super.createNewGroup("Save picker state file (optional)");
+		super.addDialogComponent(new DialogComponentFileChooser(
+				createOutputStateFileModel(), "DiversityPickerStateHistory",
+				JFileChooser.SAVE_DIALOG, DiversityPickerState.FILE_EXTENSION));
+		super.closeCurrentGroup();
 	}
 
 	//
@@ -183,4 +200,35 @@ public class RDKitDiversityPickerNodeDialog extends DefaultNodeSettingsPane {
 	static final SettingsModelInteger createRandomSeedModel() {
 		return new SettingsModelInteger("random_seed", -1);
 	}
+
+	/**
+	 * Creates the settings model for the option to pick with the native RDKit picker
+	 * instead of the parallel Java implementation. Older nodes, which were saved without
+	 * this option, use the RDKit picker.
+	 * 
+	 * @return Settings model for the option to use the RDKit picker.
+	 */
+	static final SettingsModelBoolean createUseRDKitPickerModel() {
+		return new SettingsModelBoolean("use_rdkit_picker", false);
+	}
+
+	/**
+	 * Creates the settings model to be used for the optional picker state file
+	 * to continue picking from.
+	 * 
+	 * @return Settings model for the input picker state file.
+	 */
+	static final SettingsModelString createInputStateFileModel() {
+		return new SettingsModelString("input_state_file", "");
+	}
+
+	/**
+	 * Creates the settings model to be used for the optional picker state file
+	 * to save the picker state to after picking.
+	 * 
+	 * @return Settings model for the output picker state file.
+	 */
+	static final SettingsModelString createOutputStateFileModel() {
+		return new SettingsModelString("output_state_file", "");
+	}
 }
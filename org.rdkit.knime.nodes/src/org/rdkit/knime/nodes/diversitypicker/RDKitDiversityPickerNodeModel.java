@@ -48,12 +48,18 @@
  */
 package org.rdkit.knime.nodes.diversitypicker;
 
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.RDKit.EBV_Vect;
 import org.RDKit.ExplicitBitVect;
@@ -65,23 +71,28 @@ import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DataValue;
-import org.knime.core.data.RowIterator;
 import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.data.vector.bitvector.DenseBitVector;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 import org.knime.core.node.port.PortTypeRegistry;
+import org.knime.core.util.FileUtil;
 import org.knime.core.util.MultiThreadWorker;
 import org.rdkit.knime.nodes.AbstractRDKitNodeModel;
 import org.rdkit.knime.nodes.AbstractRDKitSplitterNodeModel;
 import org.rdkit.knime.nodes.rdkfingerprint.DefaultFingerprintSettings;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintArena;
 import org.rdkit.knime.nodes.rdkfingerprint.FingerprintSettings;
 import org.rdkit.knime.nodes.rdkfingerprint.FingerprintType;
+import org.rdkit.knime.nodes.rdkfingerprint.MaxMinPicker;
 import org.rdkit.knime.properties.FingerprintSettingsHeaderProperty;
 import org.rdkit.knime.types.RDKitMolValue;
 import org.rdkit.knime.util.InputDataInfo;
@@ -122,6 +133,9 @@ public class RDKitDiversityPickerNodeModel extends AbstractRDKitSplitterNodeMode
 	/** Row context for generating warnings, if something is incorrect in table 2. */
 	protected static final WarningConsolidator.Context ROW_CONTEXT_TABLE_2 = new Context("rowTable2", "row", "rows", true);
 
+	/** Minimum number of candidates per slice to update minimum distances in parallel. */
+	protected static final int MIN_CANDIDATES_PER_SLICE = 50000;
+
 	static {
 		ACCEPTABLE_VALUE_CLASSES.add(BitVectorValue.class);
 		ACCEPTABLE_VALUE_CLASSES.add(RDKitMolValue.class);
@@ -148,8 +162,20 @@ public class RDKitDiversityPickerNodeModel extends AbstractRDKitSplitterNodeMode
 	private final SettingsModelInteger m_randomSeed =
 			registerSettings(RDKitDiversityPickerNodeDialog.createRandomSeedModel(), true);
 
-	/** Pre-processing result to tell what columns to keep. */
-	private transient ExplicitBitVect m_ebvRowsToKeep;
+	/** Settings model for the optional file with a picker state to continue from. */
+	private final SettingsModelString m_modelInputStateFile =
+			registerSettings(RDKitDiversityPickerNodeDialog.createInputStateFileModel(), true);
+
+	/** Settings model for the optional file to save the picker state to. */
+	private final SettingsModelString m_modelOutputStateFile =
+			registerSettings(RDKitDiversityPickerNodeDialog.createOutputStateFileModel(), true);
+
+	/** Settings model for the option to pick with the native RDKit picker like older versions of the node. */
+	private final SettingsModelBoolean m_modelUseRDKitPicker =
+			registerSettings(RDKitDiversityPickerNodeDialog.createUseRDKitPickerModel(), true);
+
+	/** Pre-processing result to tell what rows to keep. */
+	private transient BitSet m_setRowsToKeep;
 
 	//
 	// Constructor
@@ -197,6 +223,13 @@ public class RDKitDiversityPickerNodeModel extends AbstractRDKitSplitterNodeMode
 				"Input column has not been specified yet.",
 				"Input column %COLUMN_NAME% does not exist in table 1. Has the input table 1 changed?");
 
+		// Picker state files are only supported by the Java MaxMin picker
+		if (m_modelUseRDKitPicker.getBooleanValue() &&
+				(getStatePath(m_modelInputStateFile) != null || getStatePath(m_modelOutputStateFile) != null)) {
+			throw new InvalidSettingsException("Picker state files cannot be used with the RDKit picker. " +
+					"Please uncheck the option to use the RDKit picker or remove the picker state files.");
+		}
+
 		// Determines, if fingerprint information is available in table 1
 		final String strInputColumn = m_modelInputColumnName.getStringValue();
 		FingerprintSettingsHeaderProperty fpSpec1 = null;
@@ -365,60 +398,178 @@ public class RDKitDiversityPickerNodeModel extends AbstractRDKitSplitterNodeMode
 		final WarningConsolidator warnings = getWarningConsolidator();
 
 		// Reset old intermediate values
-		m_ebvRowsToKeep = null;
+		m_setRowsToKeep = null;
 
 		// Create sub execution contexts for pre-processing steps
-		final ExecutionContext subExecReadingFingerprints = exec.createSubExecutionContext(0.75d);
+		final ExecutionContext subExecReadingFingerprints = exec.createSubExecutionContext(0.40d);
+		final ExecutionContext subExecContinuing = exec.createSubExecutionContext(0.05d);
 		final ExecutionContext subExecReadingAdditionalFingerprints = exec.createSubExecutionContext(0.05d);
-		final ExecutionContext subExecCheckDiversity = exec.createSubExecutionContext(0.10d);
-		final ExecutionContext subExecProcessingDiversity = exec.createSubExecutionContext(0.10d);
+		final ExecutionContext subExecBiasing = exec.createSubExecutionContext(0.05d);
+		final ExecutionContext subExecCheckDiversity = exec.createSubExecutionContext(0.45d);
 
 		final long lInputRowCount = inData[0].size();
-		final List<Long> listIndicesUsed = new ArrayList<Long>();
-		final EBV_Vect vFingerprints = markForCleanup(new EBV_Vect());
-		Int_Vect firstPicks = null;
-		AtomicLong alFpLength = new AtomicLong(-1);
+		if (lInputRowCount > Integer.MAX_VALUE) {
+			throw new InvalidSettingsException("The input table has too many rows for diversity picking (" +
+					lInputRowCount + ").");
+		}
 
-		// 1. Get all fingerprints in a form that we can process further
+		// Load a saved picker state to continue from
+		final DiversityPickerState stateIn = readPickerState();
+		final Path pathStateOut = getStatePath(m_modelOutputStateFile);
+
+		// 1. Pack all fingerprints into an arena - the tag of a fingerprint is its row index
 		final boolean bNeedsCalculation1 = arrInputDataInfo[0][INPUT_COLUMN_MAIN].isCompatibleOrAdaptable(RDKitMolValue.class);
 		final FingerprintSettingsHeaderProperty fpSpec1 = (bNeedsCalculation1 ?
 				new FingerprintSettingsHeaderProperty(DEFAULT_FINGERPRINT_SETTINGS) :
 					new FingerprintSettingsHeaderProperty(arrInputDataInfo[0][INPUT_COLUMN_MAIN].getColumnSpec()));
-		FingerprintSettingsHeaderProperty fpSpec2 = null;
 
 		// Parallel processing to prepare fingerprints from main table (first table)
-        prepareFingerprints(1, inData[0], arrInputDataInfo[0][INPUT_COLUMN_MAIN], 
-        		bNeedsCalculation1, DEFAULT_FINGERPRINT_SETTINGS.getRdkitFingerprintType(), 
-        		listIndicesUsed, vFingerprints, alFpLength, 
-        		warnings, subExecReadingFingerprints);
+		final FingerprintArena candidates = prepareFingerprints(1, inData[0], arrInputDataInfo[0][INPUT_COLUMN_MAIN],
+				bNeedsCalculation1, DEFAULT_FINGERPRINT_SETTINGS.getRdkitFingerprintType(), DEFAULT_FINGERPRINT_SETTINGS,
+				-1, stateIn != null || pathStateOut != null, WarningConsolidator.ROW_CONTEXT, warnings,
+				subExecReadingFingerprints);
+		final int iCandidateCount = (candidates == null ? 0 : candidates.size());
+
+		subExecReadingFingerprints.setProgress(1.0d);
+
+		// Continue with the minimum distances of the saved state - rows picked before are excluded
+		float[] arrMinDistances = null;
+		int iExcludedCount = 0;
+		if (stateIn != null && candidates != null) {
+			if (stateIn.getNumBits() != candidates.getNumBits()) {
+				throw new InvalidSettingsException("The fingerprints of the picker state have a different length (" +
+						stateIn.getNumBits() + " instead of " + candidates.getNumBits() + " bits).");
+			}
+			checkPickerStateSettings(stateIn, fpSpec1);
+			arrMinDistances = continueMinDistances(stateIn, candidates, subExecContinuing);
+			for (final float fMin : arrMinDistances) {
+				if (fMin < 0) {
+					iExcludedCount++;
+				}
+			}
+		}
+
+		subExecContinuing.setProgress(1.0d);
 
 		// Check, if parameters of user make sense based on the found fingerprints in table 1 (NOT combined yet with table 2)
+		final int iAvailableCount = iCandidateCount - iExcludedCount;
 		final int iNumberToPick = m_modelNumberToPick.getIntValue();
-		final boolean bKeepAll = (listIndicesUsed.size() == iNumberToPick);
-		if (listIndicesUsed.size() < iNumberToPick) {
+		final boolean bKeepAll = (iAvailableCount == iNumberToPick);
+		if (iAvailableCount < iNumberToPick) {
 			throw new InvalidSettingsException("Number of diverse points requested ("+ iNumberToPick
-					+ ") exceeds number of valid fingerprints (" + listIndicesUsed.size() + ")");
+					+ ") exceeds number of valid fingerprints (" + iAvailableCount +
+					(iExcludedCount > 0 ? " without " + iExcludedCount + " picked before" : "") + ")");
 		}
 
-		subExecReadingFingerprints.setProgress(1.0d);
+		final BitSet setRowsToKeep = new BitSet((int)lInputRowCount);
+		final MaxMinPicker picker = new MaxMinPicker(candidates, arrMinDistances);
+
+		if (bKeepAll) {
+			warnings.saveWarning("Number of diverse points requested (" + iNumberToPick
+					+ ") is equal to the number of valid fingerprints (" + iAvailableCount + ") - " +
+					"Output table will contain all rows of table 1 with non-empty input" +
+					(iExcludedCount > 0 ? ", which were not picked before." : "."));
+			for (int i = 0; i < iCandidateCount; i++) {
+				if (!picker.isPicked(i)) {
+					picker.pick(i);
+					setRowsToKeep.set((int)candidates.getTag(i));
+				}
+			}
+		}
+		else if (m_modelUseRDKitPicker.getBooleanValue()) {
+			// 2. and 3. Doing diversity pick with the native RDKit picker like older versions of this node
+			final FingerprintArena bias = prepareBiasFingerprints(inData, arrInputDataInfo, fpSpec1,
+					candidates.getNumBits(), warnings, subExecReadingAdditionalFingerprints);
+			subExecReadingAdditionalFingerprints.setProgress(1.0d);
+			subExecCheckDiversity.setProgress(0.25d, "Doing diversity pick");
+			pickWithRDKit(candidates, bias, iNumberToPick, setRowsToKeep);
+		}
+		else {
+			final int iMaxParallelWorkers = (int)Math.ceil(1.5 * Runtime.getRuntime().availableProcessors());
+			final int iSliceCount = Math.max(1, Math.min(iMaxParallelWorkers, iCandidateCount / MIN_CANDIDATES_PER_SLICE));
+			int iNextPick = -1;
+
+			// 2. Update minimum distances with fingerprints from optional second input table to bias away from
+			final FingerprintArena bias = prepareBiasFingerprints(inData, arrInputDataInfo, fpSpec1,
+					candidates.getNumBits(), warnings, subExecReadingAdditionalFingerprints);
+			final int iBiasCount = (bias == null ? 0 : bias.size());
+
+			for (int i = 0; i < iBiasCount; i++) {
+				iNextPick = updateMinDistances(picker, bias.getWords(i), iSliceCount);
+				AbstractRDKitNodeModel.reportProgress(subExecBiasing, i, iBiasCount, null,
+						" - Biasing away from additional fingerprints");
+			}
+
+			subExecReadingAdditionalFingerprints.setProgress(1.0d);
+			subExecBiasing.setProgress(1.0d);
 
-		// Add fingerprints from optional second input table to bias away from
-		if (!bKeepAll && hasAdditionalInputTable(getInputTableSpecs(inData)) && arrInputDataInfo[1].length > 0) {
+			// 3. Doing diversity pick from fingerprints - without bias or saved picks the first pick
+			// is determined by the random seed or, if no seed is set, it is the first row of table 1
+			if (iNextPick < 0 && stateIn != null && stateIn.getPicks().size() > 0) {
+				iNextPick = updateMinDistances(picker, null, iSliceCount);
+			}
+			if (iNextPick < 0) {
+				final int iSeed = m_randomSeed.getIntValue();
+				iNextPick = (iSeed < 0 ? getFirstCandidate(candidates, picker) :
+					new Random(iSeed).nextInt(iCandidateCount));
+			}
+
+			for (int iPick = 0; iPick < iNumberToPick && iNextPick >= 0; iPick++) {
+				picker.pick(iNextPick);
+				setRowsToKeep.set((int)candidates.getTag(iNextPick));
+
+				// The state to be saved needs minimum distances that include the last pick
+				if (iPick + 1 < iNumberToPick || pathStateOut != null) {
+					iNextPick = updateMinDistances(picker, candidates.getWords(iNextPick), iSliceCount);
+				}
+
+				AbstractRDKitNodeModel.reportProgress(subExecCheckDiversity, iPick, iNumberToPick, null,
+						" - Picking diverse fingerprints");
+			}
+		}
+
+		subExecCheckDiversity.setProgress(1.0d);
+
+		// 4. Save the picker state to continue from in a later run
+		if (pathStateOut != null) {
+			exec.setMessage("Saving picker state");
+			writePickerState(pathStateOut, fpSpec1, stateIn, candidates, picker);
+		}
+
+		// 5. Store, what rows to keep
+		m_setRowsToKeep = setRowsToKeep;
+	}
+
+	/**
+	 * Prepares the fingerprints of the optional second input table to bias away from.
+	 * 
+	 * @param inData All input tables. Must not be null.
+	 * @param arrInputDataInfo Input data information of all input tables. Must not be null.
+	 * @param fpSpec1 Fingerprint settings of table 1. Must not be null.
+	 * @param iNumBits Expected length of fingerprints.
+	 * @param warnings Warning consolidator. Must not be null.
+	 * @param exec Execution context. Must not be null.
+	 * 
+	 * @return Fingerprint arena in row order or null, if there is no second table or
+	 * 		there are no valid fingerprints.
+	 * 
+	 * @throws Exception Thrown, if something goes wrong.
+	 */
+	protected FingerprintArena prepareBiasFingerprints(final BufferedDataTable[] inData,
+			final InputDataInfo[][] arrInputDataInfo, final FingerprintSettingsHeaderProperty fpSpec1,
+			final int iNumBits, final WarningConsolidator warnings, final ExecutionContext exec) throws Exception {
+		FingerprintArena bias = null;
+
+		if (hasAdditionalInputTable(getInputTableSpecs(inData)) && arrInputDataInfo[1].length > 0) {
 			final InputDataInfo inputDataInfo2 = arrInputDataInfo[1][INPUT_COLUMN_ADDITIONAL];
 
 			if (inputDataInfo2.isCompatible(BitVectorValue.class) || inputDataInfo2.isCompatibleOrAdaptable(RDKitMolValue.class)) {
 				final boolean bNeedsCalculation2 = inputDataInfo2.isCompatibleOrAdaptable(RDKitMolValue.class);
 				final FingerprintType fpType = fpSpec1.getRdkitFingerprintType(); // The configure() method ensures that this is not null
-				firstPicks = new Int_Vect();
-				final RowIterator it2 = inData[1].iterator();
-				int iAdditionalRowIndex = 0;
-				int iBiasAwayIndex = (int)vFingerprints.size();
-				final long lAdditionalRowCount = inData[1].size();
-				final String strInfoForProgress = (bNeedsCalculation2 ? " - Calculating additional fingerprints" : " - Reading additional fingerprints");
 
 				if (!bNeedsCalculation2) {
-					fpSpec2 = new FingerprintSettingsHeaderProperty(
-							arrInputDataInfo[1][INPUT_COLUMN_ADDITIONAL].getColumnSpec());
+					final FingerprintSettingsHeaderProperty fpSpec2 =
+							new FingerprintSettingsHeaderProperty(inputDataInfo2.getColumnSpec());
 
 					if (fpSpec1 == null || fpSpec2 == null) {
 						getWarningConsolidator().saveWarning("The fingerprints in table 1 and 2 might not be compatible, which may lead to wrong results.");
@@ -428,118 +579,78 @@ public class RDKitDiversityPickerNodeModel extends AbstractRDKitSplitterNodeMode
 					}
 				}
 
-				while (it2.hasNext()) {
-					final DataRow row = it2.next();
-					ExplicitBitVect expBitVector = null;
-
-					if (bNeedsCalculation2) {
-						// Calculate the fingerprint for the molecule on the fly
-						ROMol mol = null;
-
-						try {
-							mol = arrInputDataInfo[1][INPUT_COLUMN_ADDITIONAL].getROMol(row);
-							if (mol != null) {
-								expBitVector = markForCleanup(fpType.calculate(mol, fpSpec1));
-							}
-							else {
-								warnings.saveWarning(ROW_CONTEXT_TABLE_2.getId(), "Encountered empty molecule cell in table 2 - ignored it.");
-							}
-						}
-						finally {
-							// Delete the molecule manually to free memory quickly
-							if (mol != null) {
-								mol.delete();
-							}
-						}
-					}
-					else {
-						// Use the existing fingerprint
-						expBitVector = markForCleanup(arrInputDataInfo[1][INPUT_COLUMN_ADDITIONAL].getExplicitBitVector(row));
-						if (expBitVector == null) {
-							warnings.saveWarning(ROW_CONTEXT_TABLE_2.getId(), "Encountered empty fingerprint cell in table 2 - ignored it.");
-						}
-					}
-
-					// Just add the fingerprint to bias away from and mark it as part of first picks
-					if (expBitVector != null) {
-						final long lNumBits = expBitVector.getNumBits();
-						if (alFpLength.get() == -1) {
-							alFpLength.set(lNumBits);
-						}
-
-						if (alFpLength.get() == lNumBits){
-							vFingerprints.add(expBitVector);
-							firstPicks.add(iBiasAwayIndex);
-							iBiasAwayIndex++;
-						}
-						else {
-							warnings.saveWarning(ROW_CONTEXT_TABLE_2.getId(),
-									"Encountered fingerprint with invalid length (" +
-											lNumBits + " instead of " + alFpLength.get() + " bits) in table 2 - ignoring it.");
-						}
-					}
-
-					// Every 1000 iterations report progress and check for cancel
-					if (iAdditionalRowIndex % 1000 == 0) {
-						AbstractRDKitNodeModel.reportProgress(subExecReadingAdditionalFingerprints, iAdditionalRowIndex, lAdditionalRowCount, row, strInfoForProgress);
-					}
-
-					iAdditionalRowIndex++;
-				}
+				bias = prepareFingerprints(2, inData[1], inputDataInfo2, bNeedsCalculation2, fpType, fpSpec1,
+						iNumBits, false, ROW_CONTEXT_TABLE_2, warnings, exec);
 			}
 		}
 
-		subExecReadingAdditionalFingerprints.setProgress(1.0d);
+		return bias;
+	}
 
-		// 2. Doing diversity pick from fingerprints
-		subExecCheckDiversity.setProgress(0.25d, "Doing diversity pick");
-		Int_Vect intVector = null;
+	/**
+	 * Picks diverse fingerprints with the native RDKit MaxMin picker, which was used by older
+	 * versions of this node. It is kept for existing workflows, because its picks differ
+	 * from the picks of the Java implementation for the same random seed.
+	 * 
+	 * @param candidates Candidate fingerprints of table 1. Must not be null.
+	 * @param bias Fingerprints to bias away from. Can be null.
+	 * @param iNumberToPick Number of fingerprints to pick.
+	 * @param setRowsToKeep IN/OUT: Receives the row indexes of all picks. Must not be null.
+	 */
+	protected void pickWithRDKit(final FingerprintArena candidates, final FingerprintArena bias,
+			final int iNumberToPick, final BitSet setRowsToKeep) {
+		final int iCandidateCount = candidates.size();
+		final int iBiasCount = (bias == null ? 0 : bias.size());
+		final EBV_Vect vFingerprints = markForCleanup(new EBV_Vect());
+		final Int_Vect firstPicks = markForCleanup(new Int_Vect());
 
-		if (bKeepAll) {
-			warnings.saveWarning("Number of diverse points requested (" + iNumberToPick
-					+ ") is equal to the number of valid fingerprints (" + listIndicesUsed.size() + ") - " +
-					"Output table will contain all rows of table 1 with non-empty input.");
-			intVector = new Int_Vect();
-			for (int i = 0; i < iNumberToPick; i++) {
-				intVector.set(i,  i);
-			}
+		// The fingerprints to bias away from follow the candidates and are the first picks
+		for (int i = 0; i < iCandidateCount; i++) {
+			vFingerprints.add(toExplicitBitVect(candidates.getWords(i), candidates.getNumBits()));
 		}
-		else if (firstPicks == null || firstPicks.isEmpty()) {
-			firstPicks = new Int_Vect();
+		for (int i = 0; i < iBiasCount; i++) {
+			vFingerprints.add(toExplicitBitVect(bias.getWords(i), bias.getNumBits()));
+			firstPicks.add(iCandidateCount + i);
 		}
-		// the distance cache just slows things down with the new diversity picker implementation
-		Boolean useDistanceCache = false;
-		intVector = markForCleanup(RDKFuncs.pickUsingFingerprints(vFingerprints,
-				iNumberToPick + firstPicks.size(), m_randomSeed.getIntValue(), firstPicks, useDistanceCache));
 
-		subExecCheckDiversity.setProgress(1.0d);
-		subExecCheckDiversity.checkCanceled();
+		// the distance cache just slows things down with the new diversity picker implementation
+		final Boolean useDistanceCache = false;
+		final Int_Vect intVector = markForCleanup(RDKFuncs.pickUsingFingerprints(vFingerprints,
+				iNumberToPick + iBiasCount, m_randomSeed.getIntValue(), firstPicks, useDistanceCache));
 
-		// 3. Store, what rows to keep
-		m_ebvRowsToKeep = markForCleanup(new ExplicitBitVect(lInputRowCount));
 		final int iDiversityCount = (int)intVector.size();
-		for(int i = 0; i < iDiversityCount; i++) {
-			final int pickedFingerprintIndex = intVector.get(i);
-			if (pickedFingerprintIndex < listIndicesUsed.size()) {
-				final long pickedRowIndex = listIndicesUsed.get(pickedFingerprintIndex);
-				if (pickedRowIndex < lInputRowCount) {
-					m_ebvRowsToKeep.setBit(pickedRowIndex);
-				}
+		for (int i = 0; i < iDiversityCount; i++) {
+			final int iPickedFingerprintIndex = intVector.get(i);
+			if (iPickedFingerprintIndex < iCandidateCount) {
+				setRowsToKeep.set((int)candidates.getTag(iPickedFingerprintIndex));
 			}
+		}
+	}
+
+	/**
+	 * Creates an RDKit bit vector from fingerprint words. It gets marked for cleanup.
+	 * 
+	 * @param arrWords Fingerprint words. Must not be null.
+	 * @param iNumBits Number of bits.
+	 * 
+	 * @return RDKit bit vector.
+	 */
+	protected ExplicitBitVect toExplicitBitVect(final long[] arrWords, final int iNumBits) {
+		final ExplicitBitVect expBitVector = markForCleanup(new ExplicitBitVect(iNumBits));
 
-			// Every 1000 iterations report progress and check for cancel
-			if (i % 1000 == 0) {
-				AbstractRDKitNodeModel.reportProgress(subExecProcessingDiversity, i, iDiversityCount,
-						null, " - Processing diversity results");
+		for (int iWord = 0; iWord < arrWords.length; iWord++) {
+			for (long lWord = arrWords[iWord]; lWord != 0; lWord &= lWord - 1) {
+				expBitVector.setBit((iWord << 6) + Long.numberOfTrailingZeros(lWord));
 			}
 		}
 
-		subExecProcessingDiversity.setProgress(1.0d);
+		return expBitVector;
 	}
 
 	/**
 	 * Prepares fingerprints for diversity picking from an input table, either with a molecule column
-	 * or with a fingerprint column.
+	 * or with a fingerprint column, and packs them into a fingerprint arena. The tag of
+	 * each fingerprint is its row index.
 	 * 
 	 * @param iTableNumber Table index. Only used for warning generations.
 	 * @param inData Table data. Must not be null.
@@ -547,29 +658,34 @@ public class RDKitDiversityPickerNodeModel extends AbstractRDKitSplitterNodeMode
 	 * @param bNeedsCalculation True to calculate fingerprints from molecules. False otherwise.
 	 * @param fpTypeDefault Fingerprint type used when we need to calculate fingerprints from molecules.
 	 * 		Must not be null.
-	 * @param listIndicesUsed IN/OUT: List of indices that will be filled with row indexes.
-	 * @param vFingerprints IN/OUT: List of fingerprints that will be filled with fingerprints.
-	 * @param alFpLength IN/OUT: Length of processed fingerprints. Must not be null.
+	 * @param fpSettings Fingerprint settings used when we need to calculate fingerprints from molecules.
+	 * 		Must not be null.
+	 * @param iNumBits Expected length of fingerprints, or -1 to use the length of the first valid fingerprint.
+	 * @param bStoreIds True to store the row IDs as fingerprint IDs. False otherwise.
+	 * @param context Warning context for rows of the table. Must not be null.
 	 * @param warnings Warning consolidator. Must not be null.
 	 * @param subExecReadingFingerprints Execution context. Must not be null.
 	 * 
+	 * @return Fingerprint arena in row order or null, if there are no valid fingerprints.
+	 * 
 	 * @throws Exception Thrown, if something goes wrong.
 	 */
-	protected void prepareFingerprints(final int iTableNumber, final BufferedDataTable inData, final InputDataInfo inputDataInfo, 
-			final boolean bNeedsCalculation, final FingerprintType fpTypeDefault, 
-			final List<Long> listIndicesUsed, final EBV_Vect vFingerprints, final AtomicLong alFpLength,
+	protected FingerprintArena prepareFingerprints(final int iTableNumber, final BufferedDataTable inData,
+			final InputDataInfo inputDataInfo, final boolean bNeedsCalculation, final FingerprintType fpTypeDefault,
+			final FingerprintSettings fpSettings, final int iNumBits, final boolean bStoreIds, final Context context,
 			final WarningConsolidator warnings, final ExecutionContext subExecReadingFingerprints) throws Exception {
         
         // Get settings and define data specific behavior
         final int iMaxParallelWorkers = (int)Math.ceil(1.5 * Runtime.getRuntime().availableProcessors());
         final int iQueueSize = 1000 * iMaxParallelWorkers;
         final long lTotalRowCount = inData.size();
+        final FingerprintArena[] arrArena = new FingerprintArena[1];
         
 		// Calculate RDKit Fingerprints from molecule, or convert them from KNIME Fingerprints
-		new MultiThreadWorker<DataRow, ExplicitBitVect>(iQueueSize, iMaxParallelWorkers) {
+		new MultiThreadWorker<DataRow, DenseBitVector>(iQueueSize, iMaxParallelWorkers) {
 
 			/**
-			 * Prepares a fingerprint from first table.
+			 * Prepares a fingerprint from a table.
 			 * 
 			 * @param row   Input row.
 			 * @param index Index of row.
@@ -579,8 +695,8 @@ public class RDKitDiversityPickerNodeModel extends AbstractRDKitSplitterNodeMode
 			 *         to be used for diversity picking.
 			 */
 			@Override
-			protected ExplicitBitVect compute(final DataRow row, final long index) throws Exception {
-				ExplicitBitVect expBitVector = null;
+			protected DenseBitVector compute(final DataRow row, final long index) throws Exception {
+				DenseBitVector fp = null;
 
 				if (bNeedsCalculation) {
 					// Calculate the fingerprint for the molecule on the fly
@@ -589,10 +705,10 @@ public class RDKitDiversityPickerNodeModel extends AbstractRDKitSplitterNodeMode
 					try {
 						mol = inputDataInfo.getROMol(row);
 						if (mol != null) {
-							expBitVector = markForCleanup(fpTypeDefault.calculate(mol, DEFAULT_FINGERPRINT_SETTINGS));
+							fp = fpTypeDefault.convertAndDispose(fpTypeDefault.calculate(mol, fpSettings));
 						} 
 						else {
-							warnings.saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
+							warnings.saveWarning(context.getId(),
 									"Encountered empty molecule cell in table " + iTableNumber + " - ignored it.");
 						}
 					} 
@@ -604,39 +720,45 @@ public class RDKitDiversityPickerNodeModel extends AbstractRDKitSplitterNodeMode
 					}
 				} 
 				else {
-					expBitVector = markForCleanup(inputDataInfo.getExplicitBitVector(row));
-					if (expBitVector == null) {
-						warnings.saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
+					final BitVectorValue value = (BitVectorValue)inputDataInfo.getCell(row);
+					if (value != null) {
+						fp = new DenseBitVector(FingerprintArena.toWords(value), value.length());
+					}
+					else {
+						warnings.saveWarning(context.getId(),
 								"Encountered empty fingerprint cell in table " + iTableNumber + " - ignored it.");
 					}
 				}
 				
-				return expBitVector;
+				return fp;
 			}
 
 			/**
-			 * Adds the fingerprint results to the fingerprint list for further processing.
+			 * Adds the fingerprint results to the fingerprint arena for further processing.
 			 * 
 			 * @param task Processing result for a row.
 			 */
 			@Override
 			protected void processFinished(final ComputationTask task)
 					throws ExecutionException, CancellationException, InterruptedException {
-				final ExplicitBitVect expBitVector = task.get();
+				final DenseBitVector fp = task.get();
 				final long lRowIndex = task.getIndex();
 
-				if (expBitVector != null) {
-					final long lNumBits = expBitVector.getNumBits();
-					if (alFpLength.get() == -1) {
-						alFpLength.set(lNumBits);
+				if (fp != null) {
+					final long lNumBits = fp.length();
+					if (arrArena[0] == null) {
+						final long lExpectedNumBits = (iNumBits == -1 ? lNumBits : iNumBits);
+						if (lExpectedNumBits > 0 && lExpectedNumBits < Integer.MAX_VALUE) {
+							arrArena[0] = new FingerprintArena((int)lExpectedNumBits, bStoreIds, lTotalRowCount);
+						}
 					}
 
-					if (alFpLength.get() == lNumBits) {
-						listIndicesUsed.add(lRowIndex);
-						vFingerprints.add(expBitVector);
+					if (arrArena[0] != null && arrArena[0].getNumBits() == lNumBits) {
+						arrArena[0].add(fp.getAllBits(), lRowIndex, task.getInput().getKey().getString());
 					} else {
-						warnings.saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
-								"Encountered fingerprint with invalid length (" + lNumBits + " instead of " + alFpLength.get()
+						warnings.saveWarning(context.getId(),
+								"Encountered fingerprint with invalid length (" + lNumBits + " instead of " + 
+										(arrArena[0] == null ? iNumBits : arrArena[0].getNumBits())
 										+ " bits) in table " + iTableNumber + " - ignoring it.");
 					}
 				}
@@ -653,7 +775,320 @@ public class RDKitDiversityPickerNodeModel extends AbstractRDKitSplitterNodeMode
 					}
 				}
 			};
-		}.run(inData);		
+		}.run(inData);
+
+		subExecReadingFingerprints.checkCanceled();
+
+		if (arrArena[0] != null) {
+			LOGGER.debug("Packed " + arrArena[0].size() + " fingerprints of table " + iTableNumber + " into " +
+					arrArena[0].getMemoryFootprint() + " bytes.");
+		}
+
+		return arrArena[0];
+	}
+
+	/**
+	 * Updates the minimum distances of all candidates of the picker with the distances to the
+	 * specified fingerprint. If there are multiple slices, they are processed in parallel.
+	 * 
+	 * @param picker MaxMin picker. Must not be null.
+	 * @param arrWords Words of the fingerprint of a new pick or of a bias fingerprint.
+	 * 		Can be null to only determine the best candidate.
+	 * @param iSliceCount Number of slices to split the candidates into.
+	 * 
+	 * @return Index of the best candidate for the next pick, or -1 if all candidates are picked.
+	 * 
+	 * @throws Exception Thrown, if something goes wrong.
+	 */
+	protected int updateMinDistances(final MaxMinPicker picker, final long[] arrWords, final int iSliceCount) 
+			throws Exception {
+		final int[] arrSliceBests = new int[iSliceCount];
+
+		if (iSliceCount == 1) {
+			arrSliceBests[0] = picker.update(0, 1, arrWords);
+		}
+		else {
+			final List<Integer> listSlices = new ArrayList<Integer>(iSliceCount);
+			for (int i = 0; i < iSliceCount; i++) {
+				listSlices.add(i);
+			}
+
+			new MultiThreadWorker<Integer, Integer>(iSliceCount, iSliceCount) {
+
+				@Override
+				protected Integer compute(final Integer iSlice, final long index) throws Exception {
+					return picker.update(iSlice, iSliceCount, arrWords);
+				}
+
+				@Override
+				protected void processFinished(final ComputationTask task)
+						throws ExecutionException, CancellationException, InterruptedException {
+					arrSliceBests[(int)task.getIndex()] = task.get();
+				}
+			}.run(listSlices);
+		}
+
+		return picker.selectBest(arrSliceBests);
+	}
+
+	/**
+	 * Determines the initial minimum distances of all candidates when continuing from a saved
+	 * picker state. Candidates that were picked before are excluded with a negative distance.
+	 * Known candidates with an unchanged fingerprint continue with their saved minimum distance.
+	 * Only new or changed candidates are compared with the saved picks, which happens in parallel.
+	 * 
+	 * @param stateIn Saved picker state. Must not be null.
+	 * @param candidates Candidate fingerprints with row IDs. Must not be null.
+	 * @param exec Execution context. Must not be null.
+	 * 
+	 * @return Minimum distances of all candidates.
+	 * 
+	 * @throws Exception Thrown, if something goes wrong.
+	 */
+	protected float[] continueMinDistances(final DiversityPickerState stateIn, final FingerprintArena candidates,
+			final ExecutionContext exec) throws Exception {
+		final int iCandidateCount = candidates.size();
+		final float[] arrMinDistances = new float[iCandidateCount];
+		final List<Integer> listNewCandidates = new ArrayList<Integer>();
+
+		for (int i = 0; i < iCandidateCount; i++) {
+			final String strRowId = candidates.getId(i);
+			if (stateIn.isPicked(strRowId)) {
+				arrMinDistances[i] = -1.0f;
+			}
+			else {
+				final float fMin = stateIn.getMinDistance(strRowId, candidates.getWords(i));
+				if (Float.isNaN(fMin)) {
+					arrMinDistances[i] = Float.MAX_VALUE;
+					listNewCandidates.add(i);
+				}
+				else {
+					arrMinDistances[i] = fMin;
+				}
+			}
+		}
+
+		LOGGER.debug("Continuing from " + stateIn.getPicks().size() + " saved picks with " +
+				(iCandidateCount - listNewCandidates.size()) + " known and " + listNewCandidates.size() +
+				" new candidates.");
+
+		if (!listNewCandidates.isEmpty() && stateIn.getPicks().size() > 0) {
+			final int iMaxParallelWorkers = (int)Math.ceil(1.5 * Runtime.getRuntime().availableProcessors());
+			final int iQueueSize = 100 * iMaxParallelWorkers;
+			final long lTotalCount = listNewCandidates.size();
+
+			new MultiThreadWorker<Integer, Float>(iQueueSize, iMaxParallelWorkers) {
+
+				@Override
+				protected Float compute(final Integer iCandidate, final long index) throws Exception {
+					return MaxMinPicker.getMinDistance(stateIn.getPicks(), candidates.getWords(iCandidate));
+				}
+
+				@Override
+				protected void processFinished(final ComputationTask task)
+						throws ExecutionException, CancellationException, InterruptedException {
+					arrMinDistances[task.getInput()] = task.get();
+
+					// Update the progress only every 1000 candidates
+					if (task.getIndex() % 1000 == 0) {
+						try {
+							AbstractRDKitNodeModel.reportProgress(exec, task.getIndex(), lTotalCount, null,
+									" - Comparing new candidates with saved picks");
+						} catch (final CanceledExecutionException e) {
+							cancel(true);
+						}
+					}
+				}
+			}.run(listNewCandidates);
+
+			exec.checkCanceled();
+		}
+
+		return arrMinDistances;
+	}
+
+	/**
+	 * Checks, if the fingerprints of a saved picker state were generated with the same settings
+	 * as the candidate fingerprints. Otherwise the saved minimum distances would be meaningless.
+	 * 
+	 * @param stateIn Saved picker state. Must not be null.
+	 * @param settings Settings of the candidate fingerprints. Can be null, if unknown.
+	 * 
+	 * @throws InvalidSettingsException Thrown, if the settings are different, or if they are
+	 * 		only known for one of both.
+	 */
+	protected void checkPickerStateSettings(final DiversityPickerState stateIn, final FingerprintSettings settings)
+			throws InvalidSettingsException {
+		final FingerprintSettingsHeaderProperty settingsState = stateIn.getFingerprintSettings();
+		final boolean bKnown = (settings != null && settings.getRdkitFingerprintType() != null);
+
+		if (settingsState == null && !bKnown) {
+			getWarningConsolidator().saveWarning("The fingerprint settings of table 1 and the picker state are unknown. " +
+					"The fingerprints must have been generated the same way, otherwise the results will be wrong.");
+		}
+		else if (settingsState == null || !bKnown || !FingerprintType.isCompatible(settingsState, settings)) {
+			throw new InvalidSettingsException("The fingerprints of the picker state were generated differently (" +
+					(settingsState == null ? "unknown settings" : settingsState.getStringValue().replaceAll("\n", ", ")) +
+					") than the fingerprints of table 1 (" +
+					(bKnown ? new FingerprintSettingsHeaderProperty(settings).getStringValue().replaceAll("\n", ", ") :
+						"unknown settings") + ").");
+		}
+	}
+
+	/**
+	 * Reads the picker state to continue from, if configured.
+	 * 
+	 * @return Picker state or null, if not configured.
+	 * 
+	 * @throws InvalidSettingsException Thrown, if the configured file does not exist or cannot be read.
+	 */
+	protected DiversityPickerState readPickerState() throws InvalidSettingsException {
+		final Path path = getStatePath(m_modelInputStateFile);
+		DiversityPickerState state = null;
+
+		if (path != null) {
+			if (!Files.isRegularFile(path)) {
+				throw new InvalidSettingsException("Picker state file " + path + " does not exist.");
+			}
+
+			try {
+				state = DiversityPickerState.read(path);
+			}
+			catch (final IOException exc) {
+				throw new InvalidSettingsException("Picker state file cannot be read: " + exc.getMessage(), exc);
+			}
+		}
+
+		return state;
+	}
+
+	/**
+	 * Writes the picker state after picking. It contains all picks of the state this run
+	 * continued from and of this run, as well as the minimum distances of all candidates
+	 * that were not picked.
+	 * 
+	 * @param path File to write. Must not be null.
+	 * @param settings Settings of the candidate fingerprints. Can be null, if unknown.
+	 * @param stateIn Picker state this run continued from. Can be null.
+	 * @param candidates Candidate fingerprints with row IDs. Must not be null.
+	 * @param picker Picker with the picks of this run. Must not be null.
+	 * 
+	 * @throws IOException Thrown, if the file cannot be written.
+	 */
+	protected void writePickerState(final Path path, final FingerprintSettings settings,
+			final DiversityPickerState stateIn, final FingerprintArena candidates, final MaxMinPicker picker)
+					throws IOException {
+		final FingerprintArena picksIn = (stateIn == null ? null : stateIn.getPicks());
+		final int iPickCountIn = (picksIn == null ? 0 : picksIn.size());
+		final FingerprintArena picks = new FingerprintArena(candidates.getNumBits(), true,
+				iPickCountIn + picker.getPickCount());
+
+		for (int i = 0; i < iPickCountIn; i++) {
+			picks.add(picksIn.getWords(i), picks.size(), picksIn.getId(i));
+		}
+		for (int i = 0; i < picker.getPickCount(); i++) {
+			final int iPick = picker.getPick(i);
+			picks.add(candidates.getWords(iPick), picks.size(), candidates.getId(iPick));
+		}
+
+		final int iCandidateCount = candidates.size();
+		int iRemainingCount = 0;
+		for (int i = 0; i < iCandidateCount; i++) {
+			if (!picker.isPicked(i)) {
+				iRemainingCount++;
+			}
+		}
+
+		final String[] arrCandidateIds = new String[iRemainingCount];
+		final long[] arrCandidateHashes = new long[iRemainingCount];
+		final float[] arrCandidateMinDistances = new float[iRemainingCount];
+		for (int i = 0, iRemaining = 0; i < iCandidateCount; i++) {
+			if (!picker.isPicked(i)) {
+				arrCandidateIds[iRemaining] = candidates.getId(i);
+				arrCandidateHashes[iRemaining] = DiversityPickerState.hash(candidates.getWords(i));
+				arrCandidateMinDistances[iRemaining] = picker.getMinDistance(i);
+				iRemaining++;
+			}
+		}
+
+		new DiversityPickerState(settings, picks, arrCandidateIds, arrCandidateHashes, arrCandidateMinDistances)
+			.write(path);
+		LOGGER.debug("Saved picker state with " + picks.size() + " picks and " + iRemainingCount +
+				" candidates to " + path);
+	}
+
+	/**
+	 * Determines the first candidate in the order of table 1, which has not been picked yet.
+	 * It is used as first pick, if no random seed is set, which makes the picks reproducible.
+	 * 
+	 * @param candidates Candidate fingerprints with row indexes as tags. Must not be null.
+	 * @param picker Picker. Must not be null.
+	 * 
+	 * @return Index of the candidate or -1, if all candidates were picked.
+	 */
+	protected int getFirstCandidate(final FingerprintArena candidates, final MaxMinPicker picker) {
+		final int iCandidateCount = candidates.size();
+		int iFirst = -1;
+
+		for (int i = 0; i < iCandidateCount; i++) {
+			if (!picker.isPicked(i) && (iFirst < 0 || candidates.getTag(i) < candidates.getTag(iFirst))) {
+				iFirst = i;
+			}
+		}
+
+		return iFirst;
+	}
+
+	/**
+	 * Determines the picker state file of the specified settings model. Besides local
+	 * file paths the file can be specified as URL, e.g. relative to the workflow
+	 * (knime://knime.workflow/...), as long as it resolves to a local file.
+	 * 
+	 * @param model Settings model with a file path or URL. Must not be null.
+	 * 
+	 * @return Local path or null, if not configured.
+	 * 
+	 * @throws InvalidSettingsException Thrown, if the file cannot be resolved to a local path.
+	 */
+	protected Path getStatePath(final SettingsModelString model) throws InvalidSettingsException {
+		final String strFile = model.getStringValue();
+		Path path = null;
+
+		if (strFile != null && !strFile.trim().isEmpty()) {
+			try {
+				path = FileUtil.resolveToPath(FileUtil.toURL(strFile.trim()));
+			}
+			catch (final IOException | URISyntaxException | InvalidPathException exc) {
+				throw new InvalidSettingsException("Picker state file " + strFile.trim() + 
+						" cannot be resolved: " + exc.getMessage(), exc);
+			}
+
+			if (path == null) {
+				throw new InvalidSettingsException("Picker state file " + strFile.trim() + 
+						" is not located in the local file system.");
+			}
+		}
+
+		return path;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * Older nodes, which were saved without the option to use the RDKit picker, will
+	 * continue to pick with the RDKit picker, because the Java implementation picks
+	 * differently. Without it we would change the behavior of existing workflows,
+	 * which might not be desired.
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		try {
+			super.loadValidatedSettingsFrom(settings);
+		}
+		finally {
+			if (!settings.containsKey(m_modelUseRDKitPicker.getKey())) {
+				m_modelUseRDKitPicker.setBooleanValue(true); // The picker of older versions
+			}
+		}
 	}
 
 	/**
@@ -661,7 +1096,7 @@ public class RDKitDiversityPickerNodeModel extends AbstractRDKitSplitterNodeMode
 	 */
 	@Override
 	protected void cleanupIntermediateResults() {
-		m_ebvRowsToKeep = null;
+		m_setRowsToKeep = null;
 	}
 
 	@Override
@@ -695,7 +1130,7 @@ public class RDKitDiversityPickerNodeModel extends AbstractRDKitSplitterNodeMode
 	 */
 	@Override
 	public int determineTargetTable(final int iInPort, final long lRowIndex, final DataRow row, final InputDataInfo[] arrInputDataInfo, final long lUniqueWaveId) {
-		return (m_ebvRowsToKeep.getBit(lRowIndex) ? 0 : -1);
+		return (m_setRowsToKeep.get((int)lRowIndex) ? 0 : -1);
 	}
 
 	//
@@ -0,0 +1,713 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.fingerprintreader;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads an FPS file in chunks of complete lines. Reading and decompressing the file
+ * happens in a separate thread, which fills a bounded queue of chunks. The chunks are
+ * consumed by iterating over this reader, normally from a multi-threaded worker that
+ * parses chunks in parallel with {@link #parse(Chunk)}. Every chunk carries the number of
+ * bytes that were consumed from the (compressed) file so far, which can be used
+ * for progress reporting. The reader can be iterated only once.
+ *
+ * @author agent
+ */
+public class FpsChunkReader implements Iterable<FpsChunkReader.Chunk>, AutoCloseable {
+
+	//
+	// Constants
+	//
+
+	/** Default size of a chunk in bytes. */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	/** Number of chunks that can be read ahead. */
+	private static final int QUEUE_CAPACITY = 8;
+
+	/** Line type of a header line starting with #. */
+	public static final byte LINE_HEADER = 1;
+
+	/** Line type of a valid fingerprint line. */
+	public static final byte LINE_FINGERPRINT = 2;
+
+	/** Line type of a fingerprint line without identifier. */
+	public static final byte LINE_MISSING_ID = 3;
+
+	/** Line type of a fingerprint line with invalid hex data. */
+	public static final byte LINE_INVALID = 4;
+
+	/** Values of hex digits. All other characters are -1. */
+	private static final int[] HEX_VALUES = new int[256];
+
+	static {
+		Arrays.fill(HEX_VALUES, -1);
+		for (int i = 0; i < 10; i++) {
+			HEX_VALUES['0' + i] = i;
+		}
+		for (int i = 0; i < 6; i++) {
+			HEX_VALUES['A' + i] = 10 + i;
+			HEX_VALUES['a' + i] = 10 + i;
+		}
+	}
+
+	/** Marker that signals the end of the file. */
+	private static final Chunk END_OF_FILE = new Chunk(new byte[0], 0, 0);
+
+	//
+	// Members
+	//
+
+	/** Stream counting the bytes read from the file. */
+	private final CountingInputStream m_inFile;
+
+	/** Stream delivering the (decompressed) file content. */
+	private final InputStream m_in;
+
+	/** The chunk size in bytes. */
+	private final int m_iChunkSize;
+
+	/** Chunks read ahead. */
+	private final BlockingQueue<Chunk> m_queue = new ArrayBlockingQueue<Chunk>(QUEUE_CAPACITY);
+
+	/** The reading thread. */
+	private final Thread m_thread;
+
+	/** Exception that occurred while reading the file. */
+	private volatile IOException m_excReading;
+
+	/** Flag to tell that the iterator was created already. */
+	private boolean m_bIterated;
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Creates a new chunk reader and starts reading the file in a separate thread.
+	 *
+	 * @param pathFps Path of the FPS file. Must not be null.
+	 * @param bGzipped Set to true, if the file is gzip compressed.
+	 * @param iChunkSize Size of chunks in bytes. Chunks grow, if a single line is longer.
+	 *
+	 * @throws IOException Thrown, if the file cannot be opened.
+	 */
+	public FpsChunkReader(final Path pathFps, final boolean bGzipped, final int iChunkSize) throws IOException {
+		m_iChunkSize = Math.max(1024, iChunkSize);
+		m_inFile = new CountingInputStream(Files.newInputStream(pathFps));
+
+		try {
+			m_in = (bGzipped ? new GZIPInputStream(m_inFile, 1 << 16) : m_inFile);
+		}
+		catch (final IOException exc) {
+			m_inFile.close();
+			throw exc;
+		}
+
+		m_thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				readChunks();
+			}
+
+		}, "FPS Reader");
+		m_thread.setDaemon(true);
+		m_thread.start();
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns an iterator over all chunks of the file. Calls to hasNext() block
+	 * until the next chunk has been read.
+	 *
+	 * @return Chunk iterator.
+	 *
+	 * @throws IllegalStateException Thrown, if called more than once.
+	 */
+	@Override
+	public synchronized Iterator<Chunk> iterator() {
+		if (m_bIterated) {
+			throw new IllegalStateException("A chunk reader can be iterated only once.");
+		}
+		m_bIterated = true;
+
+		return new Iterator<Chunk>() {
+
+			/** The next chunk or null, if not taken yet from the queue. */
+			private Chunk m_chunkNext = null;
+
+			@Override
+			public boolean hasNext() {
+				if (m_chunkNext == null) {
+					try {
+						m_chunkNext = m_queue.take();
+					}
+					catch (final InterruptedException exc) {
+						Thread.currentThread().interrupt();
+						m_chunkNext = END_OF_FILE;
+					}
+				}
+				return m_chunkNext != END_OF_FILE;
+			}
+
+			@Override
+			public Chunk next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				final Chunk chunk = m_chunkNext;
+				m_chunkNext = null;
+				return chunk;
+			}
+		};
+	}
+
+	/**
+	 * Returns the exception that stopped reading the file, if any. Should be checked after
+	 * iterating, because an exception ends the iteration like the end of the file.
+	 *
+	 * @return Reading exception or null.
+	 */
+	public IOException getException() {
+		return m_excReading;
+	}
+
+	/**
+	 * Stops the reading thread and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		m_thread.interrupt();
+		m_queue.clear();
+		try {
+			m_thread.join(5000);
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			m_in.close();
+		}
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Reads the file into chunks that end with a line break (except the last chunk)
+	 * and adds them to the queue. Adds the end marker when finished, also if
+	 * an exception occurred.
+	 */
+	private void readChunks() {
+		byte[] arrBuffer = new byte[m_iChunkSize];
+		int iFilled = 0;
+
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				// Grow the buffer, if a single line does not fit
+				if (iFilled == arrBuffer.length) {
+					arrBuffer = Arrays.copyOf(arrBuffer, arrBuffer.length * 2);
+				}
+
+				final int iRead = m_in.read(arrBuffer, iFilled, arrBuffer.length - iFilled);
+				if (iRead < 0) {
+					if (iFilled > 0) {
+						m_queue.put(new Chunk(arrBuffer, iFilled, m_inFile.getCount()));
+					}
+					break;
+				}
+				iFilled += iRead;
+
+				// Hand over all complete lines, keep the rest for the next chunk
+				if (iFilled >= m_iChunkSize) {
+					int iLineEnd = iFilled - 1;
+					while (iLineEnd >= 0 && arrBuffer[iLineEnd] != '\n') {
+						iLineEnd--;
+					}
+					if (iLineEnd >= 0) {
+						final byte[] arrNext = new byte[Math.max(m_iChunkSize, iFilled - iLineEnd - 1)];
+						System.arraycopy(arrBuffer, iLineEnd + 1, arrNext, 0, iFilled - iLineEnd - 1);
+						m_queue.put(new Chunk(arrBuffer, iLineEnd + 1, m_inFile.getCount()));
+						iFilled = iFilled - iLineEnd - 1;
+						arrBuffer = arrNext;
+					}
+				}
+			}
+		}
+		catch (final InterruptedException exc) {
+			// Reading was stopped by closing the reader
+			Thread.currentThread().interrupt();
+		}
+		catch (final IOException exc) {
+			m_excReading = exc;
+		}
+		finally {
+			try {
+				m_queue.put(END_OF_FILE);
+			}
+			catch (final InterruptedException exc) {
+				// The consumer is gone already - never block here
+				m_queue.clear();
+				m_queue.offer(END_OF_FILE);
+			}
+		}
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Parses all lines of a chunk. Lines are trimmed and empty lines are skipped.
+	 * Fingerprint lines consist of a hex encoded fingerprint and an identifier
+	 * separated by tabulators. Further columns are ignored. This method is thread-safe.
+	 *
+	 * @param chunk Chunk to be parsed. Must not be null.
+	 *
+	 * @return Parsed lines. Never null.
+	 */
+	public static ParsedLines parse(final Chunk chunk) {
+		final byte[] arrData = chunk.m_arrData;
+		final int iLength = chunk.m_iLength;
+		final ParsedLines lines = new ParsedLines(Math.max(16, iLength / 256));
+		int iLineNumber = 0;
+		int iPos = 0;
+
+		while (iPos < iLength) {
+			int iLineEnd = iPos;
+			while (iLineEnd < iLength && arrData[iLineEnd] != '\n') {
+				iLineEnd++;
+			}
+			iLineNumber++;
+
+			// Trim line
+			int iStart = iPos;
+			int iEnd = iLineEnd;
+			while (iStart < iEnd && isWhitespace(arrData[iStart])) {
+				iStart++;
+			}
+			while (iEnd > iStart && isWhitespace(arrData[iEnd - 1])) {
+				iEnd--;
+			}
+
+			if (iStart < iEnd) {
+				if (arrData[iStart] == '#') {
+					lines.add(iLineNumber, LINE_HEADER,
+							new String(arrData, iStart + 1, iEnd - iStart - 1, StandardCharsets.UTF_8), null, 0);
+				}
+				else {
+					// First token: fingerprint
+					int iFpEnd = iStart;
+					while (iFpEnd < iEnd && arrData[iFpEnd] != '\t') {
+						iFpEnd++;
+					}
+
+					// Second token: identifier (consecutive tabs are treated as one separator)
+					int iIdStart = iFpEnd;
+					while (iIdStart < iEnd && arrData[iIdStart] == '\t') {
+						iIdStart++;
+					}
+					int iIdEnd = iIdStart;
+					while (iIdEnd < iEnd && arrData[iIdEnd] != '\t') {
+						iIdEnd++;
+					}
+
+					if (iIdStart >= iEnd) {
+						lines.add(iLineNumber, LINE_MISSING_ID, null, null, 0);
+					}
+					else {
+						// Trim tokens
+						while (iFpEnd > iStart && isWhitespace(arrData[iFpEnd - 1])) {
+							iFpEnd--;
+						}
+						while (iIdStart < iIdEnd && isWhitespace(arrData[iIdStart])) {
+							iIdStart++;
+						}
+						while (iIdEnd > iIdStart && isWhitespace(arrData[iIdEnd - 1])) {
+							iIdEnd--;
+						}
+
+						final String strId = new String(arrData, iIdStart, iIdEnd - iIdStart, StandardCharsets.UTF_8);
+						final long[] arrWords = decodeHex(arrData, iStart, iFpEnd);
+						if (arrWords == null) {
+							lines.add(iLineNumber, LINE_INVALID, strId, null, 0);
+						}
+						else {
+							lines.add(iLineNumber, LINE_FINGERPRINT, strId, arrWords, (iFpEnd - iStart) * 4);
+						}
+					}
+				}
+			}
+
+			iPos = iLineEnd + 1;
+		}
+
+		lines.m_iLineCount = iLineNumber;
+		return lines;
+	}
+
+	/**
+	 * Decodes an FPS hex fingerprint into the words of a KNIME dense bit vector.
+	 * In FPS files the first byte contains bits 0 to 7 (least significant bit first).
+	 * KNIME fingerprints read from FPS files have always been stored in reversed order,
+	 * hence FPS bit i becomes bit (numBits - 1 - i). The number of bits of the fingerprint
+	 * is four times the number of hex digits.
+	 *
+	 * @param arrData Data with hex digits. Must not be null.
+	 * @param iStart Start index of the hex digits (inclusive).
+	 * @param iEnd End index of the hex digits (exclusive).
+	 *
+	 * @return Words of the dense bit vector or null, if the hex digits are empty,
+	 * 		of odd length or contain invalid characters.
+	 */
+	public static long[] decodeHex(final byte[] arrData, final int iStart, final int iEnd) {
+		final int iHexLength = iEnd - iStart;
+		if (iHexLength <= 0 || (iHexLength & 1) != 0) {
+			return null;
+		}
+
+		final int iNumBits = iHexLength * 4;
+		final int iWordCount = (iNumBits + 63) >>> 6;
+		final long[] arrWords = new long[iWordCount];
+
+		// Decode bytes in FPS bit order
+		for (int k = 0, i = iStart; i < iEnd; k++, i += 2) {
+			final int iHigh = HEX_VALUES[arrData[i] & 0xff];
+			final int iLow = HEX_VALUES[arrData[i + 1] & 0xff];
+			if ((iHigh | iLow) < 0) {
+				return null;
+			}
+			arrWords[k >>> 3] |= (long)((iHigh << 4) | iLow) << ((k & 7) << 3);
+		}
+
+		// Reverse all bits: Reverse word order and bits within words ...
+		for (int i = 0, j = iWordCount - 1; i <= j; i++, j--) {
+			final long lWord = Long.reverse(arrWords[i]);
+			arrWords[i] = Long.reverse(arrWords[j]);
+			arrWords[j] = lWord;
+		}
+
+		// ... and shift out the unused bits of the last word
+		final int iShift = (iWordCount << 6) - iNumBits;
+		if (iShift > 0) {
+			for (int i = 0; i < iWordCount; i++) {
+				arrWords[i] = (arrWords[i] >>> iShift) |
+						(i + 1 < iWordCount ? arrWords[i + 1] << (64 - iShift) : 0L);
+			}
+		}
+
+		return arrWords;
+	}
+
+	//
+	// Static Private Methods
+	//
+
+	/**
+	 * Determines, if the passed in byte is a whitespace in the sense of {@link String#trim()}.
+	 *
+	 * @param b Byte to check.
+	 *
+	 * @return True, if whitespace.
+	 */
+	private static boolean isWhitespace(final byte b) {
+		return (b & 0xff) <= ' ';
+	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * A chunk of the file containing only complete lines.
+	 */
+	public static class Chunk {
+
+		/** The data. */
+		private final byte[] m_arrData;
+
+		/** The number of valid bytes in the data array. */
+		private final int m_iLength;
+
+		/** The number of bytes consumed from the file when the chunk was complete. */
+		private final long m_lBytesConsumed;
+
+		/**
+		 * Creates a new chunk.
+		 *
+		 * @param arrData Data.
+		 * @param iLength Number of valid bytes.
+		 * @param lBytesConsumed Number of bytes consumed from the file.
+		 */
+		private Chunk(final byte[] arrData, final int iLength, final long lBytesConsumed) {
+			m_arrData = arrData;
+			m_iLength = iLength;
+			m_lBytesConsumed = lBytesConsumed;
+		}
+
+		/**
+		 * Returns the number of bytes consumed from the (compressed) file when this
+		 * chunk was complete.
+		 *
+		 * @return Number of bytes.
+		 */
+		public long getBytesConsumed() {
+			return m_lBytesConsumed;
+		}
+	}
+
+	/**
+	 * Result of parsing a chunk. Contains one entry per non-empty line.
+	 */
+	public static class ParsedLines {
+
+		/** Number of entries. */
+		private int m_iSize;
+
+		/** Number of all lines in the chunk including empty lines. */
+		private int m_iLineCount;
+
+		/** Line numbers of the entries, relative to the chunk start (1-based). */
+		private int[] m_arrLineNumbers;
+
+		/** Line types of the entries. */
+		private byte[] m_arrTypes;
+
+		/** Identifiers or header texts of the entries. */
+		private String[] m_arrTexts;
+
+		/** Fingerprint words of the entries. */
+		private long[][] m_arrWords;
+
+		/** Number of fingerprint bits of the entries. */
+		private int[] m_arrNumBits;
+
+		/**
+		 * Creates a new result object.
+		 *
+		 * @param iCapacity Initial capacity.
+		 */
+		private ParsedLines(final int iCapacity) {
+			m_arrLineNumbers = new int[iCapacity];
+			m_arrTypes = new byte[iCapacity];
+			m_arrTexts = new String[iCapacity];
+			m_arrWords = new long[iCapacity][];
+			m_arrNumBits = new int[iCapacity];
+		}
+
+		/**
+		 * Adds an entry.
+		 *
+		 * @param iLineNumber Line number relative to the chunk start.
+		 * @param type Line type.
+		 * @param strText Identifier or header text.
+		 * @param arrWords Fingerprint words.
+		 * @param iNumBits Number of fingerprint bits.
+		 */
+		private void add(final int iLineNumber, final byte type, final String strText,
+				final long[] arrWords, final int iNumBits) {
+			if (m_iSize == m_arrTypes.length) {
+				final int iCapacity = m_iSize * 2;
+				m_arrLineNumbers = Arrays.copyOf(m_arrLineNumbers, iCapacity);
+				m_arrTypes = Arrays.copyOf(m_arrTypes, iCapacity);
+				m_arrTexts = Arrays.copyOf(m_arrTexts, iCapacity);
+				m_arrWords = Arrays.copyOf(m_arrWords, iCapacity);
+				m_arrNumBits = Arrays.copyOf(m_arrNumBits, iCapacity);
+			}
+			m_arrLineNumbers[m_iSize] = iLineNumber;
+			m_arrTypes[m_iSize] = type;
+			m_arrTexts[m_iSize] = strText;
+			m_arrWords[m_iSize] = arrWords;
+			m_arrNumBits[m_iSize] = iNumBits;
+			m_iSize++;
+		}
+
+		/**
+		 * Returns the number of entries (non-empty lines).
+		 *
+		 * @return Number of entries.
+		 */
+		public int size() {
+			return m_iSize;
+		}
+
+		/**
+		 * Returns the number of all lines of the chunk including empty lines.
+		 *
+		 * @return Number of lines.
+		 */
+		public int getLineCount() {
+			return m_iLineCount;
+		}
+
+		/**
+		 * Returns the line number of an entry relative to the chunk start (1-based).
+		 *
+		 * @param i Entry index.
+		 *
+		 * @return Line number.
+		 */
+		public int getLineNumber(final int i) {
+			return m_arrLineNumbers[i];
+		}
+
+		/**
+		 * Returns the line type of an entry.
+		 *
+		 * @param i Entry index.
+		 *
+		 * @return One of the LINE_XXX constants.
+		 */
+		public byte getType(final int i) {
+			return m_arrTypes[i];
+		}
+
+		/**
+		 * Returns the identifier of a fingerprint line or the text after # of a header line.
+		 *
+		 * @param i Entry index.
+		 *
+		 * @return Text or null for lines without identifier.
+		 */
+		public String getText(final int i) {
+			return m_arrTexts[i];
+		}
+
+		/**
+		 * Returns the fingerprint words of a valid fingerprint line.
+		 *
+		 * @param i Entry index.
+		 *
+		 * @return Words in the layout of a KNIME dense bit vector or null.
+		 */
+		public long[] getWords(final int i) {
+			return m_arrWords[i];
+		}
+
+		/**
+		 * Returns the number of bits of a valid fingerprint line.
+		 *
+		 * @param i Entry index.
+		 *
+		 * @return Number of bits.
+		 */
+		public int getNumBits(final int i) {
+			return m_arrNumBits[i];
+		}
+	}
+
+	/**
+	 * Input stream that counts the bytes read.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		/** Number of bytes read. */
+		private volatile long m_lCount;
+
+		/**
+		 * Creates a new counting stream.
+		 *
+		 * @param in Stream to read from.
+		 */
+		private CountingInputStream(final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int iByte = super.read();
+			if (iByte >= 0) {
+				m_lCount++;
+			}
+			return iByte;
+		}
+
+		@Override
+		public int read(final byte[] arrBuffer, final int iOffset, final int iLength) throws IOException {
+			final int iRead = super.read(arrBuffer, iOffset, iLength);
+			if (iRead > 0) {
+				m_lCount += iRead;
+			}
+			return iRead;
+		}
+
+		@Override
+		public long skip(final long lCount) throws IOException {
+			final long lSkipped = super.skip(lCount);
+			m_lCount += lSkipped;
+			return lSkipped;
+		}
+
+		/**
+		 * Returns the number of bytes read so far.
+		 *
+		 * @return Number of bytes.
+		 */
+		private long getCount() {
+			return m_lCount;
+		}
+	}
+}
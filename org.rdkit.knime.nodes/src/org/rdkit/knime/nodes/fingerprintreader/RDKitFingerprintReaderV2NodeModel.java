@@ -49,18 +49,18 @@
 
 package org.rdkit.knime.nodes.fingerprintreader;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.StringTokenizer;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpecCreator;
-import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.RowKey;
 import org.knime.core.data.def.DefaultRow;
@@ -70,12 +70,14 @@ import org.knime.core.data.vector.bitvector.DenseBitVectorCell;
 import org.knime.core.data.vector.bitvector.DenseBitVectorCellFactory;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeLogger;
 import org.knime.core.node.context.NodeCreationConfiguration;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.util.MultiThreadWorker;
 import org.knime.filehandling.core.connections.FSPath;
 import org.knime.filehandling.core.defaultnodesettings.filechooser.reader.SettingsModelReaderFileChooser;
 import org.knime.filehandling.core.defaultnodesettings.status.StatusMessage;
@@ -244,118 +246,23 @@ public class RDKitFingerprintReaderV2NodeModel extends AbstractRDKitNodeModel {
 		// Contains the rows with the result column
 		final BufferedDataContainer newTableData = exec.createDataContainer(arrOutSpecs[m_iOutputTablePortIdx]);
 
-		// Input file can either be a text file or a zipped text file
 		try (final GenericItemAccessor<FSPath> pathFpsAccessor = m_modelFilePath.createItemAccessor()) {
 			// Prepare all settings and pre-requisites
 			final Path pathFps = pathFpsAccessor.getRootItem(this::onStatusMessage);
 			final boolean bUseFileIds = m_modelUseIdsFromFileAsRowIds.getBooleanValue();
 
 			// Read from input file
-			final long iFileLength = Files.size(pathFps);
+			final long lFileLength = Files.size(pathFps);
 			m_lReadFingerprintLines = 0;
 
-			// Input file can either be a text file or a zipped text file
-			try (final BufferedReader reader = pathFps.endsWith(".gz")
-					? new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(pathFps))))
-					: Files.newBufferedReader(pathFps)
-			) {
-				int iNumberOfBits = -1; // Undefined
-				int iLineNumber = 0;
-				int iAddedFingerprints = 0;
-				String strLine;
-
-				// Process the file line by line
-				while ((strLine = reader.readLine()) != null) {
-					iLineNumber++;
-					strLine = strLine.trim();
-
-					// Skip empty lines
-					if (strLine.isEmpty()) {
-						continue;
-					}
-
-					// Process a header line
-					if (strLine.startsWith("#")) {
-						strLine = strLine.substring(1);
-						final String[] keyValue = strLine.split("=");
-
-						// Read number of fingerprint bit, skip all other information
-						if (keyValue.length == 2 && "num_bits".equals(keyValue[0])) {
-							if (iNumberOfBits != -1) {
-								throw new RuntimeException(
-										"The header num_bits of the fingerprint file exists multiple times.");
-							}
-							try {
-								iNumberOfBits = Integer.parseInt(keyValue[1]);
-							} catch (final NumberFormatException excParse) {
-								throw new NumberFormatException(
-										"The header num_bits of the fingerprint file contains " +
-												"an invalid number.");
-							}
-						}
-					}
+			// Input file can either be a text file or a zipped text file - reading and decompressing
+			// happens in a separate thread, while chunks of lines are parsed in parallel
+			try (final FpsChunkReader reader = new FpsChunkReader(pathFps, isGzipped(pathFps),
+					FpsChunkReader.DEFAULT_CHUNK_SIZE)) {
+				readFingerprints(reader, lFileLength, bUseFileIds, newTableData, exec);
 
-					// Read normal line and add it to the table
-					else {
-						m_lReadFingerprintLines++;
-						final StringTokenizer st = new StringTokenizer(strLine, "\t", false);
-
-						if (st.countTokens() > 1) {
-							final String strFingerprint = st.nextToken().trim();
-							final String strId = st.nextToken().trim();
-
-							try {
-								final DenseBitVector dbvFingerprint = convertFromFpsFormat(strFingerprint, iNumberOfBits);
-
-								// If there was no num_bits header defined, we take
-								// that information from the first fingerprint
-								if (iNumberOfBits == -1) {
-									iNumberOfBits = (int) dbvFingerprint.length();
-								}
-
-								// Create row id
-								final RowKey rowKey = (bUseFileIds ?
-										new RowKey(strId) :
-										new RowKey("Row" + iAddedFingerprints));
-
-								final DataRow row = new DefaultRow(rowKey,
-										new DenseBitVectorCellFactory(dbvFingerprint).createDataCell(),
-										new StringCell(strId));
-
-								try {
-									newTableData.addRowToTable(row);
-									iAddedFingerprints++;
-								} catch (final Exception exc) {
-									// If the unique row id exists already it will fail here
-									LOGGER.warn("Fingerprint in line " + iLineNumber + " has a duplicated identifier - skipping it.");
-									getWarningConsolidator().saveWarning(FP_CONTEXT.getId(),
-											"Skipped fingerprint with duplicated identifier. Consider turning off the option to use it as row ID.");
-								}
-							} catch (final NumberFormatException excFormat) {
-								LOGGER.warn(excFormat.getMessage() + " (Line " + iLineNumber + ")");
-								getWarningConsolidator().saveWarning(FP_CONTEXT.getId(),
-										"Encountered an invalid fingerprint size. Skipping this fingerprint.");
-							} catch (final Exception exc) {
-								LOGGER.warn("Invalid fingerprint encountered in line " + iLineNumber);
-								getWarningConsolidator().saveWarning(FP_CONTEXT.getId(),
-										"Encountered an invalid fingerprint. Skipping this fingerprint.");
-							}
-
-							// Check, if user cancelled and report progress every 20 lines
-							if (iLineNumber % 20 == 0) {
-								exec.checkCanceled();
-
-								final String sbMsg = "Processed " + m_lReadFingerprintLines + " fingerprints " +
-										"('" + (iAddedFingerprints - m_lReadFingerprintLines) + " of them are invalid)";
-
-								exec.setProgress(iLineNumber / (double) iFileLength / strLine.length(),
-										sbMsg);
-							}
-						} else {
-							getWarningConsolidator().saveWarning(FP_CONTEXT.getId(),
-									"Encountered an fingerprint without identifier - skipping it.");
-						}
-					}
+				if (reader.getException() != null) {
+					throw reader.getException();
 				}
 			}
 		}
@@ -373,6 +280,186 @@ public class RDKitFingerprintReaderV2NodeModel extends AbstractRDKitNodeModel {
 		return arrResult;
 	}
 
+	/**
+	 * Parses the chunks delivered by the passed in reader in parallel and adds the
+	 * fingerprints in the order of the file to the result table. Header lines
+	 * are evaluated in order as well.
+	 * 
+	 * @param reader The chunk reader. Must not be null.
+	 * @param lFileLength The length of the file in bytes, used for progress reporting.
+	 * @param bUseFileIds Set to true to use identifiers from the file as row IDs.
+	 * @param newTableData Result table. Must not be null.
+	 * @param exec Execution context. Must not be null.
+	 * 
+	 * @throws Exception Thrown, if the file is invalid or if the execution was cancelled.
+	 */
+	protected void readFingerprints(final FpsChunkReader reader, final long lFileLength, final boolean bUseFileIds,
+			final BufferedDataContainer newTableData, final ExecutionContext exec) throws Exception {
+		final int iMaxParallelWorkers = (int)Math.ceil(1.5 * Runtime.getRuntime().availableProcessors());
+		final int iQueueSize = 2 * iMaxParallelWorkers; // Chunks are large, limit memory usage
+		final AtomicReference<RuntimeException> refFailure = new AtomicReference<RuntimeException>();
+
+		new MultiThreadWorker<FpsChunkReader.Chunk, ParsedChunk>(iQueueSize, iMaxParallelWorkers) {
+
+			/** The number of bits defined in the header or by the first fingerprint. */
+			private int m_iNumberOfBits = -1; // Undefined
+
+			/** The number of lines of all chunks processed before the current one. */
+			private long m_lLineOffset = 0;
+
+			/** The number of fingerprints added to the table. */
+			private long m_lAddedFingerprints = 0;
+
+			/**
+			 * Parses a chunk and creates fingerprint cells.
+			 * 
+			 * @param chunk Chunk of lines.
+			 * @param index Index of the chunk.
+			 * 
+			 * @return Parsing result.
+			 */
+			@Override
+			protected ParsedChunk compute(final FpsChunkReader.Chunk chunk, final long index) throws Exception {
+				final FpsChunkReader.ParsedLines lines = FpsChunkReader.parse(chunk);
+				final DataCell[] arrFingerprintCells = new DataCell[lines.size()];
+
+				for (int i = 0; i < lines.size(); i++) {
+					if (lines.getType(i) == FpsChunkReader.LINE_FINGERPRINT) {
+						arrFingerprintCells[i] = new DenseBitVectorCellFactory(
+								new DenseBitVector(lines.getWords(i), lines.getNumBits(i))).createDataCell();
+					}
+				}
+
+				return new ParsedChunk(lines, arrFingerprintCells, chunk.getBytesConsumed());
+			}
+
+			/**
+			 * Evaluates header lines and adds fingerprints to the table in the order of the file.
+			 * 
+			 * @param task Processing result for a chunk.
+			 */
+			@Override
+			protected void processFinished(final ComputationTask task)
+					throws ExecutionException, CancellationException, InterruptedException {
+				final ParsedChunk parsedChunk = task.get();
+				final FpsChunkReader.ParsedLines lines = parsedChunk.m_lines;
+
+				try {
+					for (int i = 0; i < lines.size(); i++) {
+						processLine(lines, i, parsedChunk.m_arrFingerprintCells[i]);
+					}
+				}
+				catch (final RuntimeException exc) {
+					refFailure.compareAndSet(null, exc);
+					cancel(true);
+					return;
+				}
+
+				m_lLineOffset += lines.getLineCount();
+
+				// Check, if user cancelled and report progress based on consumed bytes
+				try {
+					exec.checkCanceled();
+					exec.setProgress(lFileLength <= 0 ? 0.0d :
+						Math.min(1.0d, parsedChunk.m_lBytesConsumed / (double)lFileLength),
+						"Processed " + m_lReadFingerprintLines + " fingerprints " +
+								"(" + (m_lReadFingerprintLines - m_lAddedFingerprints) + " of them are invalid)");
+				}
+				catch (final CanceledExecutionException e) {
+					cancel(true);
+				}
+			}
+
+			/**
+			 * Processes a single parsed line.
+			 * 
+			 * @param lines Parsed lines. Must not be null.
+			 * @param i Index of the line to be processed.
+			 * @param cellFingerprint Fingerprint cell, if the line is a valid fingerprint line.
+			 */
+			private void processLine(final FpsChunkReader.ParsedLines lines, final int i, final DataCell cellFingerprint) {
+				final long lLineNumber = m_lLineOffset + lines.getLineNumber(i);
+
+				switch (lines.getType(i)) {
+				case FpsChunkReader.LINE_HEADER:
+					final String[] keyValue = lines.getText(i).split("=");
+
+					// Read number of fingerprint bit, skip all other information
+					if (keyValue.length == 2 && "num_bits".equals(keyValue[0])) {
+						if (m_iNumberOfBits != -1) {
+							throw new RuntimeException(
+									"The header num_bits of the fingerprint file exists multiple times.");
+						}
+						try {
+							m_iNumberOfBits = Integer.parseInt(keyValue[1]);
+						} catch (final NumberFormatException excParse) {
+							throw new NumberFormatException(
+									"The header num_bits of the fingerprint file contains " +
+											"an invalid number.");
+						}
+					}
+					break;
+
+				case FpsChunkReader.LINE_FINGERPRINT:
+					m_lReadFingerprintLines++;
+					final int iNumBits = lines.getNumBits(i);
+
+					if (m_iNumberOfBits > 0 && iNumBits != m_iNumberOfBits) {
+						LOGGER.warn("Invalid fingerprint size encountered and ignored: " +
+								iNumBits + " instead of " + m_iNumberOfBits + ". (Line " + lLineNumber + ")");
+						getWarningConsolidator().saveWarning(FP_CONTEXT.getId(),
+								"Encountered an invalid fingerprint size. Skipping this fingerprint.");
+						break;
+					}
+
+					// If there was no num_bits header defined, we take
+					// that information from the first fingerprint
+					if (m_iNumberOfBits == -1) {
+						m_iNumberOfBits = iNumBits;
+					}
+
+					// Create row id
+					final String strId = lines.getText(i);
+					final RowKey rowKey = (bUseFileIds ?
+							new RowKey(strId) :
+							new RowKey("Row" + m_lAddedFingerprints));
+
+					try {
+						newTableData.addRowToTable(new DefaultRow(rowKey, cellFingerprint, new StringCell(strId)));
+						m_lAddedFingerprints++;
+					} catch (final Exception exc) {
+						// If the unique row id exists already it will fail here
+						LOGGER.warn("Fingerprint in line " + lLineNumber + " has a duplicated identifier - skipping it.");
+						getWarningConsolidator().saveWarning(FP_CONTEXT.getId(),
+								"Skipped fingerprint with duplicated identifier. Consider turning off the option to use it as row ID.");
+					}
+					break;
+
+				case FpsChunkReader.LINE_INVALID:
+					m_lReadFingerprintLines++;
+					LOGGER.warn("Invalid fingerprint encountered in line " + lLineNumber);
+					getWarningConsolidator().saveWarning(FP_CONTEXT.getId(),
+							"Encountered an invalid fingerprint. Skipping this fingerprint.");
+					break;
+
+				case FpsChunkReader.LINE_MISSING_ID:
+					m_lReadFingerprintLines++;
+					getWarningConsolidator().saveWarning(FP_CONTEXT.getId(),
+							"Encountered an fingerprint without identifier - skipping it.");
+					break;
+
+				default:
+					break;
+				}
+			}
+		}.run(reader);
+
+		// Rethrow a failure caused by an invalid file
+		if (refFailure.get() != null) {
+			throw refFailure.get();
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * This implementation considers the number of processed fingerprints.
@@ -393,6 +480,18 @@ public class RDKitFingerprintReaderV2NodeModel extends AbstractRDKitNodeModel {
 	// Static Public Methods
 	//
 
+	/**
+	 * Determines, if the specified file is gzip compressed based on its file extension.
+	 * 
+	 * @param pathFps Path of an FPS file. Must not be null.
+	 * 
+	 * @return True, if the file name ends with .gz (case-insensitive).
+	 */
+	public static boolean isGzipped(final Path pathFps) {
+		final Path pathName = pathFps.getFileName();
+		return pathName != null && pathName.toString().toLowerCase().endsWith(".gz");
+	}
+
 	/**
 	 * Converts the passed in hex string into a bit vector. The hex string
 	 * which must be compatible to the FPS file format
@@ -406,18 +505,13 @@ public class RDKitFingerprintReaderV2NodeModel extends AbstractRDKitNodeModel {
 	 * @return Dense bit vector.
 	 * 
 	 * @throws NumberFormatException Thrown, if the bit length is not
-	 * 		equal to the passed in parameter (only if set to > 0).
+	 * 		equal to the passed in parameter (only if set to > 0) or if the
+	 * 		string contains invalid characters.
 	 */
 	public static DenseBitVector convertFromFpsFormat(final String strHexFpsFormat,
 			final int iForceBitLength) throws NumberFormatException {
-		String strHexFingerprint = strHexFpsFormat.trim().toUpperCase();
-		final int iLen = strHexFingerprint.length();
-		final int iNumBits = iLen * 4;
-		int iCount = 0;
-
-		// Add a "4 bits" to ensure that we can read enough bits
-		// (since we read byte as pairs of 2 x 4 bits)
-		strHexFingerprint += "0";
+		final String strHexFingerprint = strHexFpsFormat.trim();
+		final int iNumBits = strHexFingerprint.length() * 4;
 
 		// Check fingerprint size
 		if (iForceBitLength > 0 && iNumBits != iForceBitLength) {
@@ -425,34 +519,51 @@ public class RDKitFingerprintReaderV2NodeModel extends AbstractRDKitNodeModel {
 					iNumBits + " instead of " + iForceBitLength + ".");
 		}
 
-		final DenseBitVector bitVector = new DenseBitVector(iNumBits);
+		if (iNumBits == 0) {
+			return new DenseBitVector(0);
+		}
 
-		// Traverse through each character of Fingerprint, processing 2 char at
-		// a time, convert to byte value for each character and generate 4 binary
-		// bits per character
-		for (int i = 0; i < iLen; i = i + 2) {
-			for (int n = 1; n >= 0; n--) {
-				char ch = strHexFingerprint.charAt(i + n);
+		final byte[] arrHex = strHexFingerprint.getBytes(StandardCharsets.ISO_8859_1);
+		final long[] arrWords = FpsChunkReader.decodeHex(arrHex, 0, arrHex.length);
+		if (arrWords == null) {
+			throw new NumberFormatException(
+					"Invalid fingerprint encountered and ignored: Characters must be 0..F " +
+							"and the number of characters must be even.");
+		}
 
-				if (ch >= '0' && ch <= '9') {
-					ch -= '0';
-				}
-				else if (ch >= 'A' && ch <= 'F') {
-					ch -= 'A' - 10;
-				}
-				else {
-					throw new NumberFormatException(
-							"Invalid fingerprint character encountered and ignored: '" +
-									ch + "' instead of 0..F.");
-				}
+		return new DenseBitVector(arrWords, iNumBits);
+	}
 
-				for (int bit = 1; bit < 16; bit = bit << 1) {
-					bitVector.set(iNumBits - iCount - 1, (ch & bit) == bit);
-					iCount++;
-				}
-			}
-		}
+	//
+	// Inner Classes
+	//
 
-		return bitVector;
+	/**
+	 * Result of parsing a chunk of an FPS file in a worker thread.
+	 */
+	private static class ParsedChunk {
+
+		/** The parsed lines. */
+		private final FpsChunkReader.ParsedLines m_lines;
+
+		/** Fingerprint cells for valid fingerprint lines, null for other lines. */
+		private final DataCell[] m_arrFingerprintCells;
+
+		/** The number of bytes consumed from the file when the chunk was complete. */
+		private final long m_lBytesConsumed;
+
+		/**
+		 * Creates a new parsing result.
+		 * 
+		 * @param lines The parsed lines.
+		 * @param arrFingerprintCells Fingerprint cells.
+		 * @param lBytesConsumed Consumed bytes.
+		 */
+		private ParsedChunk(final FpsChunkReader.ParsedLines lines, final DataCell[] arrFingerprintCells,
+				final long lBytesConsumed) {
+			m_lines = lines;
+			m_arrFingerprintCells = arrFingerprintCells;
+			m_lBytesConsumed = lBytesConsumed;
+		}
 	}
 }
@@ -0,0 +1,351 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.fingerprintwriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes chunks of an FPS file in a separate thread. Compressing (optional) and writing
+ * the data happens in that thread, while the caller can prepare the next chunks.
+ * Chunks are passed over a bounded queue, so the caller blocks, if writing is slower
+ * than preparing data. Chunks must not be changed after passing them in.
+ * An exception that occurs while writing is rethrown on the next call of
+ * {@link #write(byte[], int)} or {@link #close()}.
+ * The class offers also a table-driven encoding of fingerprints into the hex format of FPS files.
+ *
+ * @author agent
+ */
+public class FpsChunkWriter implements AutoCloseable {
+
+	//
+	// Constants
+	//
+
+	/** Number of chunks that can be queued for writing. */
+	private static final int QUEUE_CAPACITY = 8;
+
+	/** Size of the output buffer in bytes. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** Two uppercase hex digits for every byte value. */
+	private static final byte[] HEX_DIGITS = new byte[512];
+
+	static {
+		final byte[] arrHex = "0123456789ABCDEF".getBytes();
+		for (int i = 0; i < 256; i++) {
+			HEX_DIGITS[2 * i] = arrHex[i >>> 4];
+			HEX_DIGITS[2 * i + 1] = arrHex[i & 0x0f];
+		}
+	}
+
+	/** Marker that signals the end of the data. */
+	private static final Chunk END_OF_DATA = new Chunk(new byte[0], 0);
+
+	//
+	// Members
+	//
+
+	/** Stream to write the data to. */
+	private final OutputStream m_out;
+
+	/** Chunks to be written. */
+	private final BlockingQueue<Chunk> m_queue = new ArrayBlockingQueue<Chunk>(QUEUE_CAPACITY);
+
+	/** The writing thread. */
+	private final Thread m_thread;
+
+	/** Exception that occurred while writing the file. */
+	private volatile IOException m_excWriting;
+
+	/** Flag to tell that the writer was closed already. */
+	private boolean m_bClosed;
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Creates a new chunk writer and starts the writing thread. Existing files are overwritten.
+	 *
+	 * @param pathFps Path of the FPS file. Must not be null.
+	 * @param bGzipped Set to true to compress the file with gzip.
+	 *
+	 * @throws IOException Thrown, if the file cannot be created.
+	 */
+	public FpsChunkWriter(final Path pathFps, final boolean bGzipped) throws IOException {
+		final OutputStream outFile = Files.newOutputStream(pathFps);
+
+		try {
+			m_out = (bGzipped ? new GZIPOutputStream(outFile, BUFFER_SIZE) :
+				new BufferedOutputStream(outFile, BUFFER_SIZE));
+		}
+		catch (final IOException exc) {
+			outFile.close();
+			throw exc;
+		}
+
+		m_thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				writeChunks();
+			}
+
+		}, "FPS Writer");
+		m_thread.setDaemon(true);
+		m_thread.start();
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Queues data for writing. Blocks, if the queue is full.
+	 *
+	 * @param arrData Data to be written. Must not be changed afterwards.
+	 * @param iLength Number of bytes to be written from the beginning of the data array.
+	 *
+	 * @throws IOException Thrown, if writing failed before.
+	 * @throws InterruptedException Thrown, if the calling thread was interrupted while waiting.
+	 */
+	public void write(final byte[] arrData, final int iLength) throws IOException, InterruptedException {
+		checkException();
+		if (m_bClosed) {
+			throw new IOException("The FPS writer has been closed already.");
+		}
+		if (iLength > 0) {
+			m_queue.put(new Chunk(arrData, iLength));
+		}
+	}
+
+	/**
+	 * Writes all queued data, finishes the compression and closes the file.
+	 *
+	 * @throws IOException Thrown, if writing failed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!m_bClosed) {
+			m_bClosed = true;
+
+			try {
+				m_queue.put(END_OF_DATA);
+				m_thread.join();
+			}
+			catch (final InterruptedException exc) {
+				m_thread.interrupt();
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				try {
+					m_out.close();
+				}
+				catch (final IOException exc) {
+					if (m_excWriting == null) {
+						m_excWriting = exc;
+					}
+				}
+			}
+		}
+
+		checkException();
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Rethrows an exception that occurred in the writing thread.
+	 *
+	 * @throws IOException Thrown, if writing failed.
+	 */
+	private void checkException() throws IOException {
+		final IOException exc = m_excWriting;
+		if (exc != null) {
+			throw new IOException(exc.getMessage(), exc);
+		}
+	}
+
+	/**
+	 * Writes all chunks from the queue until the end marker is found. After an
+	 * exception the queue is still drained to never block the caller.
+	 */
+	private void writeChunks() {
+		try {
+			Chunk chunk;
+			while ((chunk = m_queue.take()) != END_OF_DATA) {
+				if (m_excWriting == null) {
+					try {
+						m_out.write(chunk.m_arrData, 0, chunk.m_iLength);
+					}
+					catch (final IOException exc) {
+						m_excWriting = exc;
+					}
+				}
+			}
+			if (m_excWriting == null) {
+				m_out.flush();
+			}
+		}
+		catch (final InterruptedException exc) {
+			// Writing was stopped
+		}
+		catch (final IOException exc) {
+			m_excWriting = exc;
+		}
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Returns the number of hex digits that {@link #encodeHex(long[], int, byte[], int)}
+	 * writes for a fingerprint of the specified length. Only complete bytes are encoded.
+	 *
+	 * @param iNumBits Number of fingerprint bits.
+	 *
+	 * @return Number of hex digits.
+	 */
+	public static int getHexLength(final int iNumBits) {
+		return (iNumBits >>> 3) << 1;
+	}
+
+	/**
+	 * Encodes the words of a KNIME dense bit vector as FPS hex digits. In FPS files the first
+	 * byte contains bits 0 to 7 (least significant bit first). KNIME fingerprints have always
+	 * been written in reversed order, hence bit (numBits - 1 - i) of the KNIME fingerprint
+	 * becomes FPS bit i. Only complete bytes are encoded.
+	 *
+	 * @param arrWords Words of the dense bit vector. Must not be null.
+	 * @param iNumBits Number of fingerprint bits.
+	 * @param arrOut Output array. Must have room for {@link #getHexLength(int)} bytes.
+	 * @param iOffset Offset in the output array.
+	 *
+	 * @return Offset in the output array after the last written hex digit.
+	 */
+	public static int encodeHex(final long[] arrWords, final int iNumBits, final byte[] arrOut, final int iOffset) {
+		final int iWordCount = (iNumBits + 63) >>> 6;
+		final int iShift = (iWordCount << 6) - iNumBits;
+		final int iByteCount = iNumBits >>> 3;
+		int iPos = iOffset;
+
+		// Process 8 bytes of the FPS fingerprint per iteration
+		for (int m = 0; m < iWordCount && (m << 3) < iByteCount; m++) {
+			// Word of the reversed fingerprint: Take the bits from the opposite end
+			final int iSource = iWordCount - 1 - m;
+			long lWord = getWord(arrWords, iSource) << iShift;
+			if (iShift > 0 && iSource > 0) {
+				lWord |= getWord(arrWords, iSource - 1) >>> (64 - iShift);
+			}
+			lWord = Long.reverse(lWord);
+
+			final int iBytes = Math.min(8, iByteCount - (m << 3));
+			for (int k = 0; k < iBytes; k++, lWord >>>= 8) {
+				final int iIndex = ((int)lWord & 0xff) << 1;
+				arrOut[iPos++] = HEX_DIGITS[iIndex];
+				arrOut[iPos++] = HEX_DIGITS[iIndex + 1];
+			}
+		}
+
+		return iPos;
+	}
+
+	//
+	// Static Private Methods
+	//
+
+	/**
+	 * Returns a word of a dense bit vector or 0, if the word does not exist.
+	 *
+	 * @param arrWords Words. Must not be null.
+	 * @param iIndex Word index.
+	 *
+	 * @return Word.
+	 */
+	private static long getWord(final long[] arrWords, final int iIndex) {
+		return (iIndex < arrWords.length ? arrWords[iIndex] : 0L);
+	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * A chunk of data to be written.
+	 */
+	private static class Chunk {
+
+		/** The data. */
+		private final byte[] m_arrData;
+
+		/** The number of bytes to be written. */
+		private final int m_iLength;
+
+		/**
+		 * Creates a new chunk.
+		 *
+		 * @param arrData Data.
+		 * @param iLength Number of bytes to be written.
+		 */
+		private Chunk(final byte[] arrData, final int iLength) {
+			m_arrData = arrData;
+			m_iLength = iLength;
+		}
+	}
+}
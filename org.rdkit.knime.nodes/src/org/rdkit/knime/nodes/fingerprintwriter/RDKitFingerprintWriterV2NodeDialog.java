@@ -56,6 +56,8 @@ import org.knime.core.data.StringValue;
 import org.knime.core.data.vector.bitvector.BitVectorValue;
 import org.knime.core.node.context.NodeCreationConfiguration;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelColumnName;
 import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
@@ -119,9 +121,13 @@ public class RDKitFingerprintWriterV2NodeDialog extends DefaultNodeSettingsPane
 				StringValue.class));
 		super.addDialogComponent(new HiddenSettingComponent(createSuppressTimeOptionModel()));
 
+		super.createNewGroup("Fingerprint index");
+		super.addDialogComponent(new DialogComponentBoolean(
+				createWriteIndexOptionModel(), "Also write binary fingerprint index (.fpi)"));
+
 		final JPanel panelOptions = (JPanel) super.getTab("Options");
 		panelOptions.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
-		panelOptions.setPreferredSize(new Dimension(790, 290));
+		panelOptions.setPreferredSize(new Dimension(790, 340));
 	}
 
 	//
@@ -193,4 +199,15 @@ public class RDKitFingerprintWriterV2NodeDialog extends DefaultNodeSettingsPane
 	static SettingsModelInteger createSuppressTimeOptionModel() {
 		return new SettingsModelInteger("suppress_time", 0);
 	}
+
+	/**
+	 * Creates the settings model for the option to write a binary fingerprint
+	 * index file next to the FPS file, which can be searched without
+	 * loading all fingerprints into memory.
+	 * 
+	 * @return Settings model for the write index option.
+	 */
+	static SettingsModelBoolean createWriteIndexOptionModel() {
+		return new SettingsModelBoolean("write_index", false);
+	}
 }
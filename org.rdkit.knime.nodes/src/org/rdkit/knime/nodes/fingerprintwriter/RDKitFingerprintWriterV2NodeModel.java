@@ -49,18 +49,23 @@
 
 package org.rdkit.knime.nodes.fingerprintwriter;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.DateFormat;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.zip.GZIPOutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
+import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.StringValue;
@@ -68,20 +73,27 @@ import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.data.vector.bitvector.BitVectorValue;
 import org.knime.core.data.vector.bitvector.DenseBitVector;
 import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.KNIMEConstants;
 import org.knime.core.node.NodeLogger;
 import org.knime.core.node.context.NodeCreationConfiguration;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelColumnName;
 import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.util.MultiThreadWorker;
 import org.knime.filehandling.core.defaultnodesettings.filechooser.writer.FileOverwritePolicy;
 import org.knime.filehandling.core.defaultnodesettings.filechooser.writer.SettingsModelWriterFileChooser;
 import org.knime.filehandling.core.defaultnodesettings.filechooser.writer.WritePathAccessor;
 import org.knime.filehandling.core.defaultnodesettings.status.StatusMessage;
 import org.rdkit.knime.nodes.AbstractRDKitNodeModel;
+import org.rdkit.knime.nodes.fingerprintreader.RDKitFingerprintReaderV2NodeModel;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintIndex;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintIndexWriter;
+import org.rdkit.knime.properties.FingerprintSettingsHeaderProperty;
 import org.rdkit.knime.util.InputDataInfo;
 import org.rdkit.knime.util.SettingsUtils;
 import org.rdkit.knime.util.WarningConsolidator;
@@ -110,8 +122,17 @@ public class RDKitFingerprintWriterV2NodeModel extends AbstractRDKitNodeModel {
 	/** Input data info index for ID value. */
 	protected static final int INPUT_COLUMN_ID = 1;
 
-	/** Define hex values. */
-	protected static final char[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+	/** Number of rows that are encoded together by a worker thread. */
+	private static final int ROWS_PER_BATCH = 1000;
+
+	/** Marker for rows with empty fingerprint cells. */
+	private static final int EMPTY_FINGERPRINT = -1;
+
+	/** Marker for rows with fingerprints that could not be read. */
+	private static final int INVALID_FINGERPRINT = -2;
+
+	/** Line separator used in FPS files. */
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
 
 	/** Formatting the date/time using a custom FPS format: yyyy-MM-dd'T'HH:mm:ss */
 	private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneId.of("GMT"));
@@ -141,6 +162,10 @@ public class RDKitFingerprintWriterV2NodeModel extends AbstractRDKitNodeModel {
 	private final SettingsModelInteger m_modelSuppressTimeOption=
 			registerSettings(RDKitFingerprintWriterV2NodeDialog.createSuppressTimeOptionModel(), true);
 
+	/** Settings model for the option to write a fingerprint index file in addition. */
+	private final SettingsModelBoolean m_modelWriteIndexOption =
+			registerSettings(RDKitFingerprintWriterV2NodeDialog.createWriteIndexOptionModel(), true);
+
 	//
 	// Constructor
 	//
@@ -246,6 +271,19 @@ public class RDKitFingerprintWriterV2NodeModel extends AbstractRDKitNodeModel {
 									"and will be created.");
 				}
 			}
+
+			// The fingerprint index file is written next to the output file and underlies the same policy
+			if (m_modelWriteIndexOption.getBooleanValue()) {
+				final Path pathIndex = FingerprintIndex.getIndexPath(pathFps);
+				if (Files.exists(pathIndex)) {
+					if (FileOverwritePolicy.OVERWRITE.equals(m_modelFilePath.getFileOverwritePolicy())) {
+						getWarningConsolidator().saveWarning("The fingerprint index file exists and will be overwritten.");
+					} else {
+						throw new InvalidSettingsException("The fingerprint index file " + pathIndex.getFileName() + 
+								" exists already. You may remove the file or switch on the Overwrite option to grant execution.");
+					}
+				}
+			}
 		}
 		catch (IOException e) {
 			getWarningConsolidator().saveWarning("Failed to access output file: " + e.getMessage());
@@ -313,8 +351,10 @@ public class RDKitFingerprintWriterV2NodeModel extends AbstractRDKitNodeModel {
 
 			final boolean bUseRowIds = m_modelIdColumnName.useRowID();
 			final boolean bSuppressTime = m_modelSuppressTimeOption.getIntValue() != 0;
+			final boolean bWriteIndex = m_modelWriteIndexOption.getBooleanValue();
+			final ExecutionContext subExecWritingFps = exec.createSubExecutionContext(bWriteIndex ? 0.5d : 1.0d);
+			final ExecutionContext subExecWritingIndex = exec.createSubExecutionContext(bWriteIndex ? 0.5d : 0.0d);
 			final long lTotalRowCount = inData[m_iInputTablePortIdx].size();
-			int iDefinedNumBits = -1; // Undefined
 
 			// Last override check (has been checked already in configure() method)
 			if (Files.exists(pathFps)) {
@@ -336,93 +376,46 @@ public class RDKitFingerprintWriterV2NodeModel extends AbstractRDKitNodeModel {
                 }
 			}
 
-			// Create the output file (override existing file)
-			// Output file can either be a text file or a zipped text file
-			try (final BufferedWriter writer = pathFps.endsWith(".gz")
-					? new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(pathFps))))
-					: Files.newBufferedWriter(pathFps);
-				 final CloseableRowIterator i = inData[m_iInputTablePortIdx].iterator()
-			) {
-				// Iterate through all input rows and write out fingerprints
-				long lWrittenFingerprints = 0;
-
-				for (long rowIndex = 0; i.hasNext(); rowIndex++) {
-					final DataRow row = i.next();
-
-					// Get fingerprint
-					final DenseBitVector dbvFingerprint = arrInputDataInfo[m_iInputTablePortIdx][INPUT_COLUMN_FPS].getDenseBitVector(row);
-
-					if (dbvFingerprint == null) {
-						getWarningConsolidator().saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
-								"Encountered empty fingerprint, which will be ignored.");
-					}
-					else {
-						// Process id
-						String strId = (bUseRowIds ?
-								row.getKey().getString() :
-								arrInputDataInfo[m_iInputTablePortIdx][INPUT_COLUMN_ID].getString(row));
-
-						// Assign an artificial ID, if missing cell was encountered
-						if (strId == null) {
-							getWarningConsolidator().saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
-									"Encountered empty ID. Generated unique ID (MissingIdXXX) on the fly.");
-							strId = "MissingId" + rowIndex;
-						}
-
-						// Write out header in the very beginning
-						final int iNumBits = (int) dbvFingerprint.length();
-						if (lWrittenFingerprints == 0) {
-							// Determine fingerprint length
-							iDefinedNumBits = (int) dbvFingerprint.length();
-
-							writer.write("#FPS1");
-							writer.newLine();
-							writer.write("#num_bits=" + iNumBits);
-							writer.newLine();
-							writer.write("#software=Knime/" + KNIMEConstants.VERSION);
-							writer.newLine();
-							writer.write("#date=" + LocalDateTime.now().format(bSuppressTime ?
-									DATE_FORMATTER_WITH_SUPPRESSED_TIME : DATE_FORMATTER));
-							writer.newLine();
-						}
-
-						String strFpsFingerprint;
+			// Last override check of the fingerprint index file - before anything gets written
+			final Path pathIndex = (bWriteIndex ? FingerprintIndex.getIndexPath(pathFps) : null);
+			if (pathIndex != null && Files.exists(pathIndex) && 
+					!FileOverwritePolicy.OVERWRITE.equals(m_modelFilePath.getFileOverwritePolicy())) {
+				throw new InvalidSettingsException("The fingerprint index file " + pathIndex.getFileName() + 
+						" exists already. You may remove the file or switch on the Overwrite option to grant execution.");
+			}
 
-						try {
-							// Convert fingerprint and check length consistency
-							strFpsFingerprint = convertToFpsFormat(dbvFingerprint, iDefinedNumBits);
+			// Create the output file (override existing file)
+			// Output file can either be a text file or a zipped text file - compressing and writing
+			// happens in a separate thread, while fingerprints are encoded in parallel
+			final BufferedDataTable table = inData[m_iInputTablePortIdx];
+			final InputDataInfo[] arrTableInputDataInfo = arrInputDataInfo[m_iInputTablePortIdx];
+			final FpsWritingWorker worker = new FpsWritingWorker(arrTableInputDataInfo, bUseRowIds, bSuppressTime,
+					pathIndex,
+					bWriteIndex ? arrTableInputDataInfo[INPUT_COLUMN_FPS].getColumnSpec() : null,
+					lTotalRowCount, subExecWritingFps);
+
+			try {
+				try (final FpsChunkWriter writer = new FpsChunkWriter(pathFps,
+						RDKitFingerprintReaderV2NodeModel.isGzipped(pathFps))) {
+					worker.write(writer, table);
+				}
 
-							// Write out fingerprint line
-							writer.write(strFpsFingerprint);
-							writer.write("\t");
-							writer.write(strId);
-							writer.newLine();
-							lWrittenFingerprints++;
-						}
-						catch (final IOException excIo) {
-							throw excIo;
-						}
-						catch (final NumberFormatException excFormat) {
-							LOGGER.warn("Invalid fingerprint size encountered in row '" + row.getKey() + "'.");
-							getWarningConsolidator().saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
-									"Encountered an invalid fingerprint size. Skipping this fingerprint.");
-						}
-						catch (final Exception exc) {
-							LOGGER.warn("Invalid fingerprint encountered in row '" + row.getKey() + "'.");
-							getWarningConsolidator().saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
-									"Encountered an invalid fingerprint. Skipping this fingerprint.");
-						}
-					}
+				exec.checkCanceled();
 
-					// Every 20 iterations check cancellation status and report progress
-					if (rowIndex % 20 == 0) {
-						AbstractRDKitNodeModel.reportProgress(exec, rowIndex, lTotalRowCount, row, " - Writing fingerprints");
-					}
+				// Write the binary fingerprint index next to the FPS file
+				if (worker.getIndexWriter() != null) {
+					writeIndex(worker.getIndexWriter(), table, arrTableInputDataInfo,
+							worker.getNumBits(), subExecWritingIndex);
+				}
+			}
+			finally {
+				if (worker.getIndexWriter() != null) {
+					worker.getIndexWriter().close();
 				}
 			}
 		}
 		catch (final IOException excIo) {
-			throw new IOException("The fingerprint file could not be read successfully: " + excIo, excIo);
+			throw new IOException("The fingerprint file could not be written successfully: " + excIo, excIo);
 		}
 		exec.checkCanceled();
 		exec.setProgress(1.0, "Finished Processing");
@@ -430,6 +423,52 @@ public class RDKitFingerprintWriterV2NodeModel extends AbstractRDKitNodeModel {
 		return new BufferedDataTable[0];
 	}
 
+	/**
+	 * Finishes a binary fingerprint index file (see {@link FingerprintIndex}) containing the
+	 * same fingerprints and IDs as the FPS file. The first pass of the index writer has been
+	 * performed while writing the FPS file already. This second pass iterates the table again
+	 * and places every fingerprint at its final position. Fingerprints are never held in memory.
+	 * 
+	 * @param indexWriter Index writer after the first pass. Must not be null.
+	 * @param table Input table. Must not be null.
+	 * @param arrInputDataInfo Input data info of the fingerprint and ID columns. Must not be null.
+	 * @param iNumBits The length of all fingerprints in the FPS file. Other fingerprints are skipped.
+	 * @param exec Execution context for progress reporting and cancellation. Must not be null.
+	 * 
+	 * @throws Exception Thrown, if the index could not be written or execution was cancelled.
+	 */
+	protected void writeIndex(final FingerprintIndexWriter indexWriter, final BufferedDataTable table,
+			final InputDataInfo[] arrInputDataInfo, final int iNumBits, final ExecutionContext exec) throws Exception {
+		final long lTotalRowCount = table.size();
+
+		// Second pass: Write fingerprints in popcount order
+		indexWriter.startSecondPass();
+		try (final CloseableRowIterator i = table.iterator()) {
+			for (long rowIndex = 0; i.hasNext(); rowIndex++) {
+				final DataRow row = i.next();
+				DenseBitVector dbvFingerprint = null;
+
+				try {
+					dbvFingerprint = arrInputDataInfo[INPUT_COLUMN_FPS].getDenseBitVector(row);
+				}
+				catch (final Exception exc) {
+					// Invalid fingerprints have been skipped when writing the FPS file
+				}
+
+				if (dbvFingerprint != null && dbvFingerprint.length() == iNumBits) {
+					indexWriter.addWords(dbvFingerprint.getAllBits());
+				}
+
+				if (rowIndex % 20 == 0) {
+					AbstractRDKitNodeModel.reportProgress(exec, rowIndex, lTotalRowCount, row,
+							" - Writing fingerprint index");
+				}
+			}
+		}
+
+		indexWriter.finish();
+	}
+
 	/**
 	 * Converts the passed in bit vector into an FPS file format compatible
 	 * string (see <a href="http://code.google.com/p/chem-fingerprints/wiki/FPS">FPS.wiki</a>).
@@ -448,43 +487,44 @@ public class RDKitFingerprintWriterV2NodeModel extends AbstractRDKitNodeModel {
 
 		final int iNumBits = (int)dbvFingerprint.length();
 
-		// resultHex to store hex encoded Fingerprints
-		final StringBuilder sbResult = new StringBuilder(iNumBits / 4);
-		final StringBuilder strTemp = new StringBuilder(2);
-		int iByte = 0;
-		int j = 0;
-
-		// Traverse through each character of binary bits, processing 8 bits at
-		// a time starting at the highest bit of the fingerprint
-		for (int i = 0; i < iNumBits; i++) {
-			iByte = iByte + (dbvFingerprint.get(iNumBits - i - 1) ? 1 << j : 0);
-			j++;
-
-			// Every 8 bits we calculate a hex string piece
-			if (i % 8 == 7) {
-				if (iByte == 0) {
-					sbResult.append("00");
-				}
-				else {
-					strTemp.setLength(0);
+		// Check fingerprint size
+		if (iForceBitLength > 0 && iNumBits != iForceBitLength) {
+			throw new NumberFormatException("Invalid fingerprint size encountered: " +
+					iNumBits + " instead of " + iForceBitLength + ".");
+		}
 
-					while (iByte != 0) {
-						strTemp.append(HEX[(iByte % 16)]);
-						iByte = iByte >> 4;
-					}
+		final byte[] arrHex = new byte[FpsChunkWriter.getHexLength(iNumBits)];
+		FpsChunkWriter.encodeHex(dbvFingerprint.getAllBits(), iNumBits, arrHex, 0);
 
-					if (strTemp.length() == 1) {
-						strTemp.append("0");
-					}
+		return new String(arrHex, StandardCharsets.US_ASCII);
+	}
 
-					sbResult.append(strTemp.reverse());
-				}
+	/**
+	 * Creates the header of an FPS file.
+	 * 
+	 * @param iNumBits Number of fingerprint bits.
+	 * @param bSuppressTime Set to true to write 00:00:00 as time.
+	 * 
+	 * @return Header lines.
+	 */
+	protected static byte[] createHeader(final int iNumBits, final boolean bSuppressTime) {
+		final String strLineSeparator = System.lineSeparator();
+
+		return ("#FPS1" + strLineSeparator +
+				"#num_bits=" + iNumBits + strLineSeparator +
+				"#software=Knime/" + KNIMEConstants.VERSION + strLineSeparator +
+				"#date=" + LocalDateTime.now().format(bSuppressTime ?
+						DATE_FORMATTER_WITH_SUPPRESSED_TIME : DATE_FORMATTER) + strLineSeparator)
+				.getBytes(StandardCharsets.UTF_8);
+	}
 
-				iByte = 0;
-				j = 0;
-			}
-		}
-		return sbResult.toString();
+	/**
+	 * Returns the number of worker threads used to encode fingerprints.
+	 * 
+	 * @return Number of worker threads.
+	 */
+	private static int getMaxParallelWorkers() {
+		return (int)Math.ceil(1.5 * Runtime.getRuntime().availableProcessors());
 	}
 
 	/**
@@ -508,4 +548,379 @@ public class RDKitFingerprintWriterV2NodeModel extends AbstractRDKitNodeModel {
 
 		return strRet;
 	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * Worker that encodes batches of rows into FPS lines in parallel and passes them in the
+	 * order of the input table to a {@link FpsChunkWriter}, which compresses and writes them
+	 * in its own thread. It defines the fingerprint length based on the first valid fingerprint,
+	 * writes the header and skips fingerprints of other lengths. If an index path is set,
+	 * the first pass of a {@link FingerprintIndexWriter} is fed with all written fingerprints.
+	 */
+	private class FpsWritingWorker extends MultiThreadWorker<RowBatch, EncodedBatch> {
+
+		/** Input data info of the fingerprint and ID columns. */
+		private final InputDataInfo[] m_arrInputDataInfo;
+
+		/** Flag to tell to use row IDs as identifiers. */
+		private final boolean m_bUseRowIds;
+
+		/** Flag to tell to suppress the time in the header. */
+		private final boolean m_bSuppressTime;
+
+		/** Path of the index file or null, if no index shall be written. */
+		private final Path m_pathIndex;
+
+		/** Fingerprint column specification used for the index or null. */
+		private final DataColumnSpec m_colSpecFps;
+
+		/** The number of input rows. */
+		private final long m_lTotalRowCount;
+
+		/** Execution context for progress reporting. */
+		private final ExecutionContext m_exec;
+
+		/** The writer that receives the encoded data. */
+		private FpsChunkWriter m_writer;
+
+		/** The fingerprint length defined by the first fingerprint. */
+		private int m_iDefinedNumBits = -1; // Undefined
+
+		/** The number of written fingerprints. */
+		private long m_lWrittenFingerprints = 0;
+
+		/** The index writer or null, if not needed or not created yet. */
+		private FingerprintIndexWriter m_indexWriter = null;
+
+		/** Exception that stopped writing. */
+		private Exception m_excFailure = null;
+
+		/**
+		 * Creates a new worker.
+		 * 
+		 * @param arrInputDataInfo Input data info of the fingerprint and ID columns. Must not be null.
+		 * @param bUseRowIds Set to true to use row IDs as identifiers.
+		 * @param bSuppressTime Set to true to suppress the time in the header.
+		 * @param pathIndex Path of the index file or null, if no index shall be written.
+		 * @param colSpecFps Fingerprint column specification used for the index. Can be null.
+		 * @param lTotalRowCount The number of input rows.
+		 * @param exec Execution context for progress reporting. Must not be null.
+		 */
+		private FpsWritingWorker(final InputDataInfo[] arrInputDataInfo, final boolean bUseRowIds,
+				final boolean bSuppressTime, final Path pathIndex, final DataColumnSpec colSpecFps,
+				final long lTotalRowCount, final ExecutionContext exec) {
+			super(4 * getMaxParallelWorkers(), getMaxParallelWorkers());
+			m_arrInputDataInfo = arrInputDataInfo;
+			m_bUseRowIds = bUseRowIds;
+			m_bSuppressTime = bSuppressTime;
+			m_pathIndex = pathIndex;
+			m_colSpecFps = colSpecFps;
+			m_lTotalRowCount = lTotalRowCount;
+			m_exec = exec;
+		}
+
+		/**
+		 * Encodes all rows of the table and passes them to the specified writer.
+		 * 
+		 * @param writer FPS chunk writer. Must not be null.
+		 * @param table Input table. Must not be null.
+		 * 
+		 * @throws Exception Thrown, if writing failed or execution was cancelled.
+		 */
+		private void write(final FpsChunkWriter writer, final BufferedDataTable table) throws Exception {
+			m_writer = writer;
+
+			try (final CloseableRowIterator i = table.iterator()) {
+				run(new Iterable<RowBatch>() {
+
+					@Override
+					public Iterator<RowBatch> iterator() {
+						return new Iterator<RowBatch>() {
+
+							/** The index of the next row. */
+							private long m_lNextRowIndex = 0;
+
+							@Override
+							public boolean hasNext() {
+								return i.hasNext();
+							}
+
+							@Override
+							public RowBatch next() {
+								final List<DataRow> listRows = new ArrayList<DataRow>(ROWS_PER_BATCH);
+								while (listRows.size() < ROWS_PER_BATCH && i.hasNext()) {
+									listRows.add(i.next());
+								}
+								final RowBatch batch = new RowBatch(m_lNextRowIndex,
+										listRows.toArray(new DataRow[listRows.size()]));
+								m_lNextRowIndex += listRows.size();
+								return batch;
+							}
+						};
+					}
+				});
+			}
+
+			if (m_excFailure != null) {
+				throw m_excFailure;
+			}
+		}
+
+		/**
+		 * Returns the index writer after the first pass.
+		 * 
+		 * @return Index writer or null, if no index is written or there were no fingerprints.
+		 */
+		private FingerprintIndexWriter getIndexWriter() {
+			return m_indexWriter;
+		}
+
+		/**
+		 * Returns the number of bits of all written fingerprints.
+		 * 
+		 * @return Number of bits or -1, if no fingerprint was written.
+		 */
+		private int getNumBits() {
+			return m_iDefinedNumBits;
+		}
+
+		/**
+		 * Encodes all fingerprints of a batch into FPS lines.
+		 * 
+		 * @param batch Batch of rows.
+		 * @param index Index of the batch.
+		 * 
+		 * @return Encoded batch.
+		 */
+		@Override
+		protected EncodedBatch compute(final RowBatch batch, final long index) throws Exception {
+			final DataRow[] arrRows = batch.m_arrRows;
+			final EncodedBatch encoded = new EncodedBatch(batch, m_pathIndex != null);
+			byte[] arrData = new byte[arrRows.length * 64];
+			int iPos = 0;
+
+			for (int r = 0; r < arrRows.length; r++) {
+				final DataRow row = arrRows[r];
+				DenseBitVector dbvFingerprint = null;
+
+				try {
+					dbvFingerprint = m_arrInputDataInfo[INPUT_COLUMN_FPS].getDenseBitVector(row);
+				}
+				catch (final Exception exc) {
+					encoded.m_arrNumBits[r] = INVALID_FINGERPRINT;
+				}
+
+				if (dbvFingerprint == null) {
+					if (encoded.m_arrNumBits[r] != INVALID_FINGERPRINT) {
+						encoded.m_arrNumBits[r] = EMPTY_FINGERPRINT;
+					}
+				}
+				else {
+					// Process id
+					String strId = (m_bUseRowIds ?
+							row.getKey().getString() :
+							m_arrInputDataInfo[INPUT_COLUMN_ID].getString(row));
+
+					// Assign an artificial ID, if missing cell was encountered
+					if (strId == null) {
+						encoded.m_arrMissingIds[r] = true;
+						strId = "MissingId" + (batch.m_lFirstRowIndex + r);
+					}
+
+					final int iNumBits = (int)dbvFingerprint.length();
+					final long[] arrWords = dbvFingerprint.getAllBits();
+					final byte[] arrId = strId.getBytes(StandardCharsets.UTF_8);
+					final int iLineLength = FpsChunkWriter.getHexLength(iNumBits) + 1 + arrId.length + LINE_SEPARATOR.length;
+
+					if (iPos + iLineLength > arrData.length) {
+						arrData = Arrays.copyOf(arrData, Math.max(arrData.length * 2, iPos + iLineLength));
+					}
+
+					// Write out fingerprint line
+					iPos = FpsChunkWriter.encodeHex(arrWords, iNumBits, arrData, iPos);
+					arrData[iPos++] = '\t';
+					System.arraycopy(arrId, 0, arrData, iPos, arrId.length);
+					iPos += arrId.length;
+					System.arraycopy(LINE_SEPARATOR, 0, arrData, iPos, LINE_SEPARATOR.length);
+					iPos += LINE_SEPARATOR.length;
+
+					encoded.m_arrNumBits[r] = iNumBits;
+					if (encoded.m_arrWords != null) {
+						encoded.m_arrWords[r] = arrWords;
+						encoded.m_arrIds[r] = strId;
+					}
+				}
+
+				encoded.m_arrLineEnds[r] = iPos;
+			}
+
+			encoded.m_arrData = arrData;
+
+			return encoded;
+		}
+
+		/**
+		 * Passes the lines of valid fingerprints of a batch to the writer in the order of the table.
+		 * 
+		 * @param task Processing result for a batch.
+		 */
+		@Override
+		protected void processFinished(final ComputationTask task)
+				throws ExecutionException, CancellationException, InterruptedException {
+			final EncodedBatch encoded = task.get();
+			final DataRow[] arrRows = encoded.m_batch.m_arrRows;
+			final byte[] arrData = encoded.m_arrData;
+			int iLineStart = 0;
+			int iLength = 0;
+
+			try {
+				for (int r = 0; r < arrRows.length; r++) {
+					final int iLineEnd = encoded.m_arrLineEnds[r];
+					final int iNumBits = encoded.m_arrNumBits[r];
+					boolean bWrite = false;
+
+					if (iNumBits == EMPTY_FINGERPRINT) {
+						getWarningConsolidator().saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
+								"Encountered empty fingerprint, which will be ignored.");
+					}
+					else if (iNumBits == INVALID_FINGERPRINT) {
+						LOGGER.warn("Invalid fingerprint encountered in row '" + arrRows[r].getKey() + "'.");
+						getWarningConsolidator().saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
+								"Encountered an invalid fingerprint. Skipping this fingerprint.");
+					}
+					else {
+						if (encoded.m_arrMissingIds[r]) {
+							getWarningConsolidator().saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
+									"Encountered empty ID. Generated unique ID (MissingIdXXX) on the fly.");
+						}
+
+						// Write out header in the very beginning
+						if (m_lWrittenFingerprints == 0) {
+							m_iDefinedNumBits = iNumBits;
+							final byte[] arrHeader = createHeader(iNumBits, m_bSuppressTime);
+							m_writer.write(arrHeader, arrHeader.length);
+						}
+
+						// Check length consistency
+						if (iNumBits != m_iDefinedNumBits) {
+							LOGGER.warn("Invalid fingerprint size encountered in row '" + arrRows[r].getKey() + "'.");
+							getWarningConsolidator().saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
+									"Encountered an invalid fingerprint size. Skipping this fingerprint.");
+						}
+						else {
+							bWrite = true;
+						}
+					}
+
+					if (bWrite) {
+						// Remove skipped lines by moving the line to the front
+						if (iLength != iLineStart) {
+							System.arraycopy(arrData, iLineStart, arrData, iLength, iLineEnd - iLineStart);
+						}
+						iLength += iLineEnd - iLineStart;
+						m_lWrittenFingerprints++;
+
+						// Feed the first pass of the index writer
+						if (m_pathIndex != null) {
+							if (m_indexWriter == null) {
+								final FingerprintSettingsHeaderProperty fpSpec =
+										new FingerprintSettingsHeaderProperty(m_colSpecFps);
+								m_indexWriter = new FingerprintIndexWriter(m_pathIndex, m_iDefinedNumBits,
+										fpSpec.getRdkitFingerprintType() != null ? fpSpec : null);
+							}
+							m_indexWriter.add(encoded.m_arrWords[r], encoded.m_arrIds[r]);
+						}
+					}
+
+					iLineStart = iLineEnd;
+				}
+
+				m_writer.write(arrData, iLength);
+			}
+			catch (final IOException exc) {
+				m_excFailure = exc;
+				cancel(true);
+				return;
+			}
+
+			// Check cancellation status and report progress
+			try {
+				AbstractRDKitNodeModel.reportProgress(m_exec, encoded.m_batch.m_lFirstRowIndex + arrRows.length,
+						m_lTotalRowCount, null, " - Writing fingerprints");
+			}
+			catch (final CanceledExecutionException exc) {
+				cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * A batch of consecutive input rows.
+	 */
+	private static class RowBatch {
+
+		/** The index of the first row in the table. */
+		private final long m_lFirstRowIndex;
+
+		/** The rows. */
+		private final DataRow[] m_arrRows;
+
+		/**
+		 * Creates a new batch.
+		 * 
+		 * @param lFirstRowIndex Index of the first row.
+		 * @param arrRows Rows.
+		 */
+		private RowBatch(final long lFirstRowIndex, final DataRow[] arrRows) {
+			m_lFirstRowIndex = lFirstRowIndex;
+			m_arrRows = arrRows;
+		}
+	}
+
+	/**
+	 * FPS lines of a batch of rows. Contains the lines of all rows with a fingerprint,
+	 * also of those, which will be skipped later due to a different length.
+	 */
+	private static class EncodedBatch {
+
+		/** The batch of rows. */
+		private final RowBatch m_batch;
+
+		/** The encoded lines. */
+		private byte[] m_arrData;
+
+		/** End offset (exclusive) of the line of every row. Rows without line end where the last line ended. */
+		private final int[] m_arrLineEnds;
+
+		/** Number of bits of every fingerprint or EMPTY_FINGERPRINT or INVALID_FINGERPRINT. */
+		private final int[] m_arrNumBits;
+
+		/** Flags to tell, if an ID was generated. */
+		private final boolean[] m_arrMissingIds;
+
+		/** Fingerprint words of every row, if needed for the index, otherwise null. */
+		private final long[][] m_arrWords;
+
+		/** IDs of every row, if needed for the index, otherwise null. */
+		private final String[] m_arrIds;
+
+		/**
+		 * Creates a new encoded batch.
+		 * 
+		 * @param batch Batch of rows.
+		 * @param bKeepFingerprints Set to true to keep fingerprint words and IDs for the index.
+		 */
+		private EncodedBatch(final RowBatch batch, final boolean bKeepFingerprints) {
+			final int iRowCount = batch.m_arrRows.length;
+			m_batch = batch;
+			m_arrLineEnds = new int[iRowCount];
+			m_arrNumBits = new int[iRowCount];
+			m_arrMissingIds = new boolean[iRowCount];
+			m_arrWords = (bKeepFingerprints ? new long[iRowCount][] : null);
+			m_arrIds = (bKeepFingerprints ? new String[iRowCount] : null);
+		}
+	}
 }
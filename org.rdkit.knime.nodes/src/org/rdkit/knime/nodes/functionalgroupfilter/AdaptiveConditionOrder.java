@@ -0,0 +1,213 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.functionalgroupfilter;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Evaluation order of filter conditions, which adapts to the observed failure rates
+ * and costs of the conditions. The evaluation of a molecule stops at the first failing
+ * condition, so the expected cost is minimal, if conditions are ordered by decreasing
+ * ratio of failure probability and average cost. Statistics are recorded concurrently
+ * by all processing threads and the order gets recalculated regularly. As long as
+ * no statistics are available, the configured order is used.
+ *
+ * @author agent
+ */
+public class AdaptiveConditionOrder {
+
+	//
+	// Constants
+	//
+
+	/** Number of evaluated molecules after which the order gets recalculated. */
+	public static final int REORDER_INTERVAL = 500;
+
+	//
+	// Members
+	//
+
+	/** Number of conditions. */
+	private final int m_iCount;
+
+	/** Number of evaluations per condition. */
+	private final AtomicLongArray m_arrEvaluations;
+
+	/** Number of failed evaluations per condition. */
+	private final AtomicLongArray m_arrFailures;
+
+	/** Total evaluation time per condition in nanoseconds. */
+	private final AtomicLongArray m_arrNanos;
+
+	/** Number of evaluated molecules. */
+	private final AtomicLong m_lMoleculeCount;
+
+	/** The current order of condition indexes. The array is never changed, only replaced. */
+	private volatile int[] m_arrOrder;
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Creates a new condition order, which starts with the configured order.
+	 *
+	 * @param iCount Number of conditions.
+	 */
+	public AdaptiveConditionOrder(final int iCount) {
+		m_iCount = iCount;
+		m_arrEvaluations = new AtomicLongArray(iCount);
+		m_arrFailures = new AtomicLongArray(iCount);
+		m_arrNanos = new AtomicLongArray(iCount);
+		m_lMoleculeCount = new AtomicLong();
+		m_arrOrder = new int[iCount];
+		for (int i = 0; i < iCount; i++) {
+			m_arrOrder[i] = i;
+		}
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns the current order of condition indexes. The returned array must not be changed.
+	 *
+	 * @return Condition indexes in evaluation order.
+	 */
+	public int[] getOrder() {
+		return m_arrOrder;
+	}
+
+	/**
+	 * Records the result of a single condition evaluation.
+	 *
+	 * @param iCondition Condition index.
+	 * @param bFailed True, if the condition was not fulfilled or failed with an error.
+	 * @param lNanos Evaluation time in nanoseconds.
+	 */
+	public void recordEvaluation(final int iCondition, final boolean bFailed, final long lNanos) {
+		m_arrEvaluations.incrementAndGet(iCondition);
+		m_arrNanos.addAndGet(iCondition, lNanos);
+		if (bFailed) {
+			m_arrFailures.incrementAndGet(iCondition);
+		}
+	}
+
+	/**
+	 * Records that the evaluation of a molecule is finished and recalculates the order
+	 * after every {@link #REORDER_INTERVAL} molecules.
+	 */
+	public void recordMolecule() {
+		if (m_lMoleculeCount.incrementAndGet() % REORDER_INTERVAL == 0) {
+			reorder();
+		}
+	}
+
+	/**
+	 * Returns the average evaluation time of a condition.
+	 *
+	 * @param iCondition Condition index.
+	 *
+	 * @return Average time in nanoseconds, or -1, if the condition was not evaluated yet.
+	 */
+	public double getAverageNanos(final int iCondition) {
+		final long lEvaluations = m_arrEvaluations.get(iCondition);
+		return (lEvaluations == 0 ? -1 : (double)m_arrNanos.get(iCondition) / lEvaluations);
+	}
+
+	/**
+	 * Returns the observed failure rate of a condition.
+	 *
+	 * @param iCondition Condition index.
+	 *
+	 * @return Failure rate between 0 and 1, or -1, if the condition was not evaluated yet.
+	 */
+	public double getFailureRate(final int iCondition) {
+		final long lEvaluations = m_arrEvaluations.get(iCondition);
+		return (lEvaluations == 0 ? -1 : (double)m_arrFailures.get(iCondition) / lEvaluations);
+	}
+
+	/**
+	 * Recalculates the order based on the statistics recorded so far. Conditions that
+	 * were not evaluated yet are assumed to have the average cost of all evaluated
+	 * conditions. Failure rates are smoothed, so that rarely evaluated conditions
+	 * still get a chance to move forward. Ties are resolved by the configured order.
+	 */
+	public synchronized void reorder() {
+		double dTotalNanos = 0;
+		long lTotalEvaluations = 0;
+		for (int i = 0; i < m_iCount; i++) {
+			dTotalNanos += m_arrNanos.get(i);
+			lTotalEvaluations += m_arrEvaluations.get(i);
+		}
+		final double dDefaultNanos = (lTotalEvaluations == 0 ? 1.0d : dTotalNanos / lTotalEvaluations);
+
+		final double[] arrScores = new double[m_iCount];
+		final Integer[] arrOrder = new Integer[m_iCount];
+		for (int i = 0; i < m_iCount; i++) {
+			final long lEvaluations = m_arrEvaluations.get(i);
+			final double dFailureRate = (m_arrFailures.get(i) + 1.0d) / (lEvaluations + 2.0d);
+			final double dNanos = (lEvaluations == 0 ? dDefaultNanos : (double)m_arrNanos.get(i) / lEvaluations);
+			arrScores[i] = dFailureRate / Math.max(1.0d, dNanos);
+			arrOrder[i] = i;
+		}
+
+		// Stable sort by decreasing score
+		Arrays.sort(arrOrder, (i1, i2) -> Double.compare(arrScores[i2], arrScores[i1]));
+
+		final int[] arrNewOrder = new int[m_iCount];
+		for (int i = 0; i < m_iCount; i++) {
+			arrNewOrder[i] = arrOrder[i];
+		}
+		m_arrOrder = arrNewOrder;
+	}
+}
@@ -52,6 +52,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.RDKit.Match_Vect_Vect;
 import org.RDKit.ROMol;
@@ -64,6 +65,7 @@ import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DataType;
 import org.knime.core.data.RowKey;
 import org.knime.core.data.def.StringCell;
+import org.knime.core.data.vector.bitvector.DenseBitVector;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.ExecutionContext;
@@ -79,6 +81,10 @@ import org.rdkit.knime.nodes.AbstractRDKitCellFactory;
 import org.rdkit.knime.nodes.AbstractRDKitNodeModel;
 import org.rdkit.knime.nodes.functionalgroupfilter.SettingsModelFunctionalGroupConditions.FunctionalGroupCondition;
 import org.rdkit.knime.nodes.functionalgroupfilter.SettingsModelFunctionalGroupConditions.Qualifier;
+import org.rdkit.knime.nodes.rdkfingerprint.DefaultFingerprintSettings;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintArena;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintSettings;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintType;
 import org.rdkit.knime.types.RDKitMolValue;
 import org.rdkit.knime.util.FileSystemsUtils;
 import org.rdkit.knime.util.InputDataInfo;
@@ -120,6 +126,10 @@ public class FunctionalGroupFilterV2NodeModel extends AbstractRDKitNodeModel {
 	/** An often used special string used to indicate a processing error for a row. */
 	private static final String ERROR = "e";
 
+	/** Settings used to calculate pattern fingerprints for pre-screening. */
+	private static final FingerprintSettings FINGERPRINT_SETTING =
+			new DefaultFingerprintSettings(FingerprintType.pattern.name(), -1, -1, -1, -1, -1, 2048, -1, -1, -1, false);
+
 	//
 	// Members
 	//
@@ -183,6 +193,37 @@ public class FunctionalGroupFilterV2NodeModel extends AbstractRDKitNodeModel {
 	 */
 	private SafeGuardedResource<ROMol>[] m_arrMolSmarts;
 
+	/**
+	 * Intermediate pre-processing result, which will be used in processing phase.
+	 * It contains the number of atoms of all patterns. The indices of this array
+	 * match with {@link #m_arrActivatedConditions}.
+	 */
+	private int[] m_arrPatternAtomCounts;
+
+	/**
+	 * Intermediate pre-processing result, which will be used in processing phase.
+	 * It contains pattern fingerprints of the patterns of conditions that depend only
+	 * on the existence of a match, or null for other conditions and patterns without
+	 * fingerprint bits. The indices of this array match with {@link #m_arrActivatedConditions}.
+	 */
+	private long[][] m_arrPatternFingerprints;
+
+	/**
+	 * Intermediate pre-processing result, which will be used in processing phase.
+	 * It contains flags to tell, if a condition depends only on the existence of a match.
+	 * The indices of this array match with {@link #m_arrActivatedConditions}.
+	 */
+	private boolean[] m_arrExistenceOnly;
+
+	/** The evaluation order of conditions, which adapts to failure rates and costs during execution. */
+	private AdaptiveConditionOrder m_conditionOrder;
+
+	/** Total time spent to calculate pattern fingerprints of molecules in nanoseconds. */
+	private final AtomicLong m_lFingerprintNanos = new AtomicLong();
+
+	/** Number of calculated pattern fingerprints of molecules. */
+	private final AtomicLong m_lFingerprintCount = new AtomicLong();
+
 	/**
 	 * This map is used for communication between parallel execution threads that determine, if
 	 * a molecule fulfills the matching criteria, and the code that performs the splitting.
@@ -405,38 +446,47 @@ public class FunctionalGroupFilterV2NodeModel extends AbstractRDKitNodeModel {
 				final ROMol mol = markForCleanup(arrInputDataInfo[INPUT_COLUMN_MOL].getROMol(row), lUniqueWaveId);
 
 				if (mol != null) {
-					for (int i = 0; i < iCount; i++) {
-						try {
-							// Find substructure matches
-							final Match_Vect_Vect mvvMatches =
-									markForCleanup(mol.getSubstructMatches(m_arrMolSmarts[i].get()), lUniqueWaveId);
-							int iFoundMatches = 0;
-							if (mvvMatches != null) {
-								iFoundMatches = (int)mvvMatches.size();
-							}
+					final ConditionCheck check = new ConditionCheck(mol);
+					final boolean[] arrFulfilled = (bAdd ? new boolean[iCount] : null);
+					int iFailedCondition = -1;
+
+					// Check conditions in adaptive order - do not check the rest, if one fails
+					for (final int i : m_conditionOrder.getOrder()) {
+						if (!check.evaluate(i)) {
+							iFailedCondition = i;
+							break;
+						}
+						if (bAdd) {
+							arrFulfilled[i] = true;
+						}
+					}
 
-							// Check, if condition is NOT met
-							final Qualifier qualifier = m_arrActivatedConditions[i].getQualifier();
-							final int iCondCount = m_arrActivatedConditions[i].getCount();
-							if (!qualifier.test(iFoundMatches, iCondCount)) {
-								// Record first non-matching pattern
-								if (bAdd) {
-									strNonMatchPattern = m_definitions.get(m_arrActivatedConditions[i].getName()).getDisplayLabel() +
-											' ' + qualifier +
-											' ' + iCondCount;
-								}
-								// Record just a dummy to save time
-								else {
-									strNonMatchPattern = IGNORE_FAILED_PATTERN;
-								}
-								// Do not check the rest as we have failed anyway
+					// To record the same pattern as in configured order, check also all conditions before
+					if (bAdd && iFailedCondition > 0) {
+						for (int i = 0; i < iFailedCondition; i++) {
+							if (!arrFulfilled[i] && !check.evaluate(i)) {
+								iFailedCondition = i;
 								break;
 							}
 						}
-						catch (final Exception exc) {
-							LOGGER.debug("Failed to check condition " + m_arrActivatedConditions[i].toString(), exc);
+					}
+
+					m_conditionOrder.recordMolecule();
+
+					if (iFailedCondition >= 0) {
+						if (check.isError(iFailedCondition)) {
 							strNonMatchPattern = ERROR;
-							break;
+						}
+						// Record first non-matching pattern
+						else if (bAdd) {
+							final FunctionalGroupCondition condition = m_arrActivatedConditions[iFailedCondition];
+							strNonMatchPattern = m_definitions.get(condition.getName()).getDisplayLabel() +
+									' ' + condition.getQualifier() +
+									' ' + condition.getCount();
+						}
+						// Record just a dummy to save time
+						else {
+							strNonMatchPattern = IGNORE_FAILED_PATTERN;
 						}
 					}
 				}
@@ -496,10 +546,36 @@ public class FunctionalGroupFilterV2NodeModel extends AbstractRDKitNodeModel {
 		m_arrActivatedConditions = m_modelFunctionGroupConditions.getActivatedConditions();
 		final int iCount = m_arrActivatedConditions.length;
 		m_arrMolSmarts = new SafeGuardedResource[iCount];
+		m_arrPatternAtomCounts = new int[iCount];
+		m_arrPatternFingerprints = new long[iCount][];
+		m_arrExistenceOnly = new boolean[iCount];
+		m_conditionOrder = new AdaptiveConditionOrder(iCount);
+		m_lFingerprintNanos.set(0);
+		m_lFingerprintCount.set(0);
 
 		for (int i = 0; i < iCount; i++) {
 			final String strSmartsPattern =
 					m_definitions.get(m_arrActivatedConditions[i].getName()).getSmarts();
+
+			// Prepare cheap checks that can avoid substructure matching
+			m_arrExistenceOnly[i] = isExistenceOnly(m_arrActivatedConditions[i].getQualifier(),
+					m_arrActivatedConditions[i].getCount());
+			final ROMol pattern = markForCleanup(RWMol.MolFromSmarts(strSmartsPattern, 0, true));
+			if (pattern != null) {
+				m_arrPatternAtomCounts[i] = (int)pattern.getNumAtoms();
+				if (m_arrExistenceOnly[i]) {
+					try {
+						final DenseBitVector fp = FingerprintType.pattern.calculateBitBased(pattern, FINGERPRINT_SETTING);
+						if (fp != null && fp.cardinality() > 0) {
+							m_arrPatternFingerprints[i] = fp.getAllBits();
+						}
+					}
+					catch (final Exception exc) {
+						LOGGER.debug("Pattern fingerprint could not be calculated for " + strSmartsPattern, exc);
+					}
+				}
+			}
+
 			m_arrMolSmarts[i] = markForCleanup(
 					new SafeGuardedResource<ROMol>(!strSmartsPattern.contains("$")) {
 						@Override
@@ -614,6 +690,15 @@ public class FunctionalGroupFilterV2NodeModel extends AbstractRDKitNodeModel {
 			tableMatch.close();
 			tableNoMatch.close();
 
+			if (LOGGER.isDebugEnabled()) {
+				final StringBuilder sb = new StringBuilder("Final evaluation order of conditions (failure rate, average time):");
+				for (final int i : m_conditionOrder.getOrder()) {
+					sb.append("\n").append(m_arrActivatedConditions[i]).append(String.format(" (%.3f, %.1f us)",
+							m_conditionOrder.getFailureRate(i), m_conditionOrder.getAverageNanos(i) / 1000.0d));
+				}
+				LOGGER.debug(sb.toString());
+			}
+
 			arrResultTables = new BufferedDataTable[] { tableMatch.getTable(), tableNoMatch.getTable() };
 		}
 		return arrResultTables;
@@ -626,6 +711,10 @@ public class FunctionalGroupFilterV2NodeModel extends AbstractRDKitNodeModel {
 		}
 		m_arrActivatedConditions = null;
 		m_arrMolSmarts = null;
+		m_arrPatternAtomCounts = null;
+		m_arrPatternFingerprints = null;
+		m_arrExistenceOnly = null;
+		m_conditionOrder = null;
 		m_definitions = null;
 	}
 
@@ -633,6 +722,28 @@ public class FunctionalGroupFilterV2NodeModel extends AbstractRDKitNodeModel {
 	// Static Public Methods
 	//
 
+	/**
+	 * Determines, if the result of a condition depends only on the existence of a match,
+	 * i.e. if it is the same for all match counts larger than 0.
+	 *
+	 * @param qualifier Qualifier of the condition. Must not be null.
+	 * @param iCondCount Count of the condition.
+	 *
+	 * @return True, if a substructure existence check is sufficient.
+	 */
+	public static boolean isExistenceOnly(final Qualifier qualifier, final int iCondCount) {
+		final boolean bResult = qualifier.test(1, iCondCount);
+
+		// The result of a qualifier can only change at the count of the condition
+		for (final int iMatches : new int[] { iCondCount - 1, iCondCount, iCondCount + 1, Integer.MAX_VALUE }) {
+			if (iMatches > 1 && qualifier.test(iMatches, iCondCount) != bResult) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	/**
 	 * Determines where to read the functional group definition file from, reads it using a reader function provided
 	 * and returns its output as the result.
@@ -695,4 +806,158 @@ public class FunctionalGroupFilterV2NodeModel extends AbstractRDKitNodeModel {
 		}
 	}
 
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * Checks conditions for a single molecule. Information about the molecule
+	 * is determined at most once. Before doing substructure matching it tries
+	 * cheap checks: A pattern with more atoms than the molecule cannot match, and
+	 * for conditions that depend only on the existence of a match a pattern
+	 * fingerprint screen can exclude a match. The molecule fingerprint is only
+	 * calculated, if this is on average cheaper than matching the pattern.
+	 * Evaluations are recorded in the adaptive condition order.
+	 */
+	private class ConditionCheck {
+
+		/** The molecule to check. */
+		private final ROMol m_mol;
+
+		/** Number of atoms of the molecule. */
+		private final long m_lAtomCount;
+
+		/** Pattern fingerprint of the molecule, or null, if not calculated or not available. */
+		private long[] m_arrFingerprint;
+
+		/** Flag to tell, if the calculation of the fingerprint was tried already. */
+		private boolean m_bFingerprintCalculated;
+
+		/** Flags of conditions that caused an error, or null, if there was no error. */
+		private boolean[] m_arrErrors;
+
+		/**
+		 * Creates a new check for the specified molecule.
+		 *
+		 * @param mol Molecule. Must not be null.
+		 */
+		private ConditionCheck(final ROMol mol) {
+			m_mol = mol;
+			m_lAtomCount = mol.getNumAtoms();
+		}
+
+		/**
+		 * Evaluates a condition and records the result.
+		 *
+		 * @param iCondition Condition index.
+		 *
+		 * @return True, if the condition is fulfilled. False, if not or if an error occurred.
+		 */
+		private boolean evaluate(final int iCondition) {
+			final long lStart = System.nanoTime();
+			boolean bFulfilled;
+
+			try {
+				bFulfilled = isFulfilled(iCondition);
+			}
+			catch (final Exception exc) {
+				LOGGER.debug("Failed to check condition " + m_arrActivatedConditions[iCondition].toString(), exc);
+				if (m_arrErrors == null) {
+					m_arrErrors = new boolean[m_arrActivatedConditions.length];
+				}
+				m_arrErrors[iCondition] = true;
+				bFulfilled = false;
+			}
+
+			m_conditionOrder.recordEvaluation(iCondition, !bFulfilled, System.nanoTime() - lStart);
+
+			return bFulfilled;
+		}
+
+		/**
+		 * Determines, if the evaluation of a condition caused an error.
+		 *
+		 * @param iCondition Condition index.
+		 *
+		 * @return True, if an error occurred.
+		 */
+		private boolean isError(final int iCondition) {
+			return m_arrErrors != null && m_arrErrors[iCondition];
+		}
+
+		/**
+		 * Determines, if a condition is fulfilled.
+		 *
+		 * @param iCondition Condition index.
+		 *
+		 * @return True, if fulfilled.
+		 */
+		private boolean isFulfilled(final int iCondition) {
+			final FunctionalGroupCondition condition = m_arrActivatedConditions[iCondition];
+			final Qualifier qualifier = condition.getQualifier();
+			final int iCondCount = condition.getCount();
+			final ROMol pattern = m_arrMolSmarts[iCondition].get();
+			int iFoundMatches;
+
+			// Not enough atoms for a single match
+			if (m_lAtomCount < m_arrPatternAtomCounts[iCondition]) {
+				iFoundMatches = 0;
+			}
+
+			// Only existence matters - fingerprint screening and stop at the first match
+			else if (m_arrExistenceOnly[iCondition]) {
+				final long[] arrPatternFingerprint = m_arrPatternFingerprints[iCondition];
+				final long[] arrFingerprint = (arrPatternFingerprint == null ? null : getFingerprint(iCondition));
+				if (arrFingerprint != null && !FingerprintArena.containsAllBits(arrFingerprint, arrPatternFingerprint)) {
+					iFoundMatches = 0;
+				}
+				else {
+					iFoundMatches = (m_mol.hasSubstructMatch(pattern) ? 1 : 0);
+				}
+			}
+
+			// Count matches without keeping them
+			else {
+				final Match_Vect_Vect mvvMatches = m_mol.getSubstructMatches(pattern);
+				iFoundMatches = 0;
+				if (mvvMatches != null) {
+					iFoundMatches = (int)mvvMatches.size();
+					mvvMatches.delete();
+				}
+			}
+
+			return qualifier.test(iFoundMatches, iCondCount);
+		}
+
+		/**
+		 * Returns the pattern fingerprint of the molecule, if it is worth to calculate it.
+		 *
+		 * @param iCondition Condition index, for which the fingerprint is needed.
+		 *
+		 * @return Fingerprint words or null, if not calculated.
+		 */
+		private long[] getFingerprint(final int iCondition) {
+			if (!m_bFingerprintCalculated) {
+				final long lCount = m_lFingerprintCount.get();
+				final double dMatchNanos = m_conditionOrder.getAverageNanos(iCondition);
+				if (lCount > 0 && dMatchNanos >= 0 && dMatchNanos < (double)m_lFingerprintNanos.get() / lCount) {
+					return null;
+				}
+
+				m_bFingerprintCalculated = true;
+				final long lStart = System.nanoTime();
+				try {
+					final DenseBitVector fp = FingerprintType.pattern.calculateBitBased(m_mol, FINGERPRINT_SETTING);
+					m_arrFingerprint = (fp == null ? null : fp.getAllBits());
+				}
+				catch (final Exception exc) {
+					m_arrFingerprint = null;
+				}
+				m_lFingerprintNanos.addAndGet(System.nanoTime() - lStart);
+				m_lFingerprintCount.incrementAndGet();
+			}
+
+			return m_arrFingerprint;
+		}
+	}
 }
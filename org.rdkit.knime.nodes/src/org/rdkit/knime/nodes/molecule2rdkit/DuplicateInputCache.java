@@ -0,0 +1,301 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.molecule2rdkit;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.knime.core.data.DataCell;
+
+/**
+ * Bounded cache of conversion results, keyed by the input string of a molecule. Large compound
+ * catalogues often contain the same structure many times, and as result cells are immutable,
+ * the cells calculated for the first occurrence can be delivered again for all duplicates
+ * without parsing and sanitizing the input again. The cache is split into segments by the
+ * hash code of the input, each with its own lock, so that concurrent threads rarely wait for
+ * each other. The cache is bounded by the number of results and by the memory of the cached inputs,
+ * which can be large for mol blocks. When a segment exceeds one of these limits, its least recently
+ * used results get evicted.
+ * All methods can be called concurrently.
+ *
+ * @author agent
+ */
+public class DuplicateInputCache {
+
+	//
+	// Constants
+	//
+
+	/** Maximum number of segments. Must be a power of two. */
+	private static final int MAX_SEGMENT_COUNT = 16;
+
+	/** Estimated memory in bytes of a cache entry and an input string without its characters. */
+	private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+	//
+	// Members
+	//
+
+	/** The segments with cached results. Each is guarded by itself. */
+	private final Segment[] m_arrSegments;
+
+	/** Number of inputs, which were found in the cache. */
+	private final LongAdder m_lHitCount = new LongAdder();
+
+	/** Number of inputs, which were not found in the cache. */
+	private final LongAdder m_lMissCount = new LongAdder();
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Creates a new cache. The maximum size and memory are distributed evenly across the segments.
+	 *
+	 * @param iMaxSize Maximum number of results to be cached. Must be greater than 0.
+	 * @param lMaxInputBytes Maximum estimated memory in bytes of all cached inputs. Must be greater than 0.
+	 * 		The memory of the result cells is not included, as it cannot be determined cheaply.
+	 */
+	public DuplicateInputCache(final int iMaxSize, final long lMaxInputBytes) {
+		if (iMaxSize <= 0) {
+			throw new IllegalArgumentException("Maximum cache size must be greater than 0.");
+		}
+		if (lMaxInputBytes <= 0) {
+			throw new IllegalArgumentException("Maximum cache memory must be greater than 0.");
+		}
+
+		// Use a power of two segments, which does not exceed the maximum size
+		final int iSegmentCount = Integer.highestOneBit(Math.min(iMaxSize, MAX_SEGMENT_COUNT));
+
+		m_arrSegments = new Segment[iSegmentCount];
+		for (int i = 0; i < iSegmentCount; i++) {
+			m_arrSegments[i] = new Segment(iMaxSize / iSegmentCount, lMaxInputBytes / iSegmentCount);
+		}
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns the cached result cells of an input.
+	 *
+	 * @param strInput Input string of a molecule. Can be null.
+	 *
+	 * @return A copy of the cached result cells or null, if not cached.
+	 */
+	public DataCell[] get(final String strInput) {
+		DataCell[] arrCells = null;
+
+		if (strInput != null) {
+			final Segment segment = getSegment(strInput);
+			synchronized (segment) {
+				arrCells = segment.m_mapResults.get(strInput);
+			}
+		}
+
+		if (arrCells == null) {
+			m_lMissCount.increment();
+			return null;
+		}
+
+		m_lHitCount.increment();
+		return arrCells.clone();
+	}
+
+	/**
+	 * Caches the result cells of an input. Inputs, which alone exceed the memory of a segment, are not cached.
+	 *
+	 * @param strInput Input string of a molecule. Can be null, in which case nothing is cached.
+	 * @param arrCells Result cells. Must not be null. A copy of the array is cached.
+	 */
+	public void put(final String strInput, final DataCell[] arrCells) {
+		if (strInput != null) {
+			final DataCell[] arrCopy = arrCells.clone();
+			final Segment segment = getSegment(strInput);
+			synchronized (segment) {
+				segment.put(strInput, arrCopy);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of inputs, which were found in the cache.
+	 *
+	 * @return Number of hits.
+	 */
+	public long getHitCount() {
+		return m_lHitCount.sum();
+	}
+
+	/**
+	 * Returns the number of inputs, which were not found in the cache.
+	 *
+	 * @return Number of misses.
+	 */
+	public long getMissCount() {
+		return m_lMissCount.sum();
+	}
+
+	/**
+	 * Removes all cached results.
+	 */
+	public void clear() {
+		for (final Segment segment : m_arrSegments) {
+			synchronized (segment) {
+				segment.m_mapResults.clear();
+				segment.m_lInputBytes = 0;
+			}
+		}
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Returns the segment responsible for the specified input.
+	 *
+	 * @param strInput Input string of a molecule. Must not be null.
+	 *
+	 * @return The segment. Never null.
+	 */
+	private Segment getSegment(final String strInput) {
+		final int iHash = strInput.hashCode();
+		return m_arrSegments[(iHash ^ (iHash >>> 16)) & (m_arrSegments.length - 1)];
+	}
+
+	//
+	// Static Private Methods
+	//
+
+	/**
+	 * Estimates the memory used by an input string as key of the cache.
+	 *
+	 * @param strInput Input string. Must not be null.
+	 *
+	 * @return Estimated memory in bytes.
+	 */
+	private static long estimateInputBytes(final String strInput) {
+		return ENTRY_OVERHEAD_BYTES + 2L * strInput.length();
+	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * A segment of the cache, which keeps its results in the order of their last access.
+	 * Not thread-safe. Callers synchronize on the segment.
+	 */
+	private static class Segment {
+
+		//
+		// Members
+		//
+
+		/** Maximum number of results in this segment. */
+		private final int m_iMaxSize;
+
+		/** Maximum estimated memory in bytes of the inputs in this segment. */
+		private final long m_lMaxInputBytes;
+
+		/** The cached results in the order of their last access. */
+		private final Map<String, DataCell[]> m_mapResults;
+
+		/** Estimated memory in bytes of the inputs in this segment. */
+		private long m_lInputBytes = 0;
+
+		//
+		// Constructor
+		//
+
+		/**
+		 * Creates a new empty segment.
+		 *
+		 * @param iMaxSize Maximum number of results in this segment.
+		 * @param lMaxInputBytes Maximum estimated memory in bytes of the inputs in this segment.
+		 */
+		private Segment(final int iMaxSize, final long lMaxInputBytes) {
+			m_iMaxSize = iMaxSize;
+			m_lMaxInputBytes = lMaxInputBytes;
+			m_mapResults = new LinkedHashMap<String, DataCell[]>(Math.min(iMaxSize, 1024), 0.75f, true);
+		}
+
+		//
+		// Private Methods
+		//
+
+		/**
+		 * Caches the result cells of an input and evicts the least recently used results,
+		 * while one of the limits of this segment is exceeded.
+		 *
+		 * @param strInput Input string. Must not be null.
+		 * @param arrCells Result cells. Must not be null.
+		 */
+		private void put(final String strInput, final DataCell[] arrCells) {
+			final long lBytes = estimateInputBytes(strInput);
+			if (lBytes > m_lMaxInputBytes) {
+				return;
+			}
+
+			if (m_mapResults.put(strInput, arrCells) == null) {
+				m_lInputBytes += lBytes;
+			}
+
+			final Iterator<String> iterInputs = m_mapResults.keySet().iterator();
+			while (m_mapResults.size() > m_iMaxSize || m_lInputBytes > m_lMaxInputBytes) {
+				m_lInputBytes -= estimateInputBytes(iterInputs.next());
+				iterInputs.remove();
+			}
+		}
+	}
+}
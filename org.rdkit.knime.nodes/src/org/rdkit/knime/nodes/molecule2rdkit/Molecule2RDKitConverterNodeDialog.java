@@ -62,8 +62,10 @@ import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
 import org.knime.core.node.defaultnodesettings.DialogComponentButtonGroup;
 import org.knime.core.node.defaultnodesettings.DialogComponentLabel;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
 import org.knime.core.node.defaultnodesettings.DialogComponentString;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.rdkit.knime.nodes.molecule2rdkit.Molecule2RDKitConverterNodeModel.ParseErrorPolicy;
 import org.rdkit.knime.types.preferences.RDKitTypesPreferencePage;
@@ -99,6 +101,9 @@ public class Molecule2RDKitConverterNodeDialog extends DefaultNodeSettingsPane {
 	/** The model for the option to control stereo chemistry sanitization. */
 	private final SettingsModelBoolean m_modelStereoChemistry;
 
+	/** The model for the option to take input SMILES as canonical RDKit SMILES (only valid for SMILES input). */
+	private final SettingsModelBoolean m_modelCanonicalInputSmiles;
+
 	/** The dialog component for picking input columns. */
 	private DialogComponentColumnNameSelection m_compInputColumn;
 
@@ -161,6 +166,7 @@ public class Molecule2RDKitConverterNodeDialog extends DefaultNodeSettingsPane {
 
 		super.createNewTab("Advanced");
 		m_modelPartialSanitization = createQuickAndDirtyModel();
+		m_modelPartialSanitization.addChangeListener(changeListener);
 		super.addDialogComponent(new DialogComponentBoolean(
 				m_modelKeepHs = createKeepHsOptionModel(), "Keep Hydrogens"));
 		super.addDialogComponent(new DialogComponentBoolean(
@@ -174,6 +180,20 @@ public class Molecule2RDKitConverterNodeDialog extends DefaultNodeSettingsPane {
 				m_modelStereoChemistry = createStereochemistryModel(m_modelPartialSanitization), "Correct Stereochemistry"));
 		super.addDialogComponent(new DialogComponentLabel(""));
 		super.closeCurrentGroup();
+		super.createNewGroup("Performance");
+		super.addDialogComponent(new DialogComponentBoolean(
+				createFastIngestOptionModel(), "Fast Ingest"));
+		super.addDialogComponent(new DialogComponentBoolean(
+				m_modelCanonicalInputSmiles = createCanonicalInputSmilesOptionModel(),
+				"Input SMILES are Canonical RDKit SMILES"));
+		super.setHorizontalPlacement(true);
+		final SettingsModelBoolean modelCacheDuplicates = createCacheDuplicatesOptionModel();
+		super.addDialogComponent(new DialogComponentBoolean(
+				modelCacheDuplicates, "Cache Results of Duplicate Inputs"));
+		super.addDialogComponent(new DialogComponentNumber(
+				createCacheSizeModel(modelCacheDuplicates), "Maximum Cache Size: ", 10000, 10));
+		super.setHorizontalPlacement(false);
+		super.closeCurrentGroup();
 	}
 
 	@Override
@@ -209,6 +229,11 @@ public class Molecule2RDKitConverterNodeDialog extends DefaultNodeSettingsPane {
 				(!bEnableTreatAsQuery || !m_modelTreatAsQuery.getBooleanValue());
 		final boolean bEnableStrictParsingOption = (specInput != null &&
 		      (dataType.isCompatible(SdfValue.class) || dataType.isAdaptable(SdfValue.class)));
+		final boolean bSmilesInput = specInput != null && !dataType.isCompatible(SdfValue.class) &&
+				(dataType.isCompatible(SmilesValue.class) || (!dataType.isCompatible(SmartsValue.class) &&
+						!dataType.isAdaptable(SdfValue.class) && dataType.isAdaptable(SmilesValue.class)));
+		final boolean bEnableCanonicalInputSmilesOption = bSmilesInput &&
+				!m_modelTreatAsQuery.getBooleanValue() && !m_modelPartialSanitization.getBooleanValue();
 
 		// Enable Treat as Query option only for SMILES and SDF input
 		m_modelTreatAsQuery.setEnabled(bEnableTreatAsQuery);
@@ -223,6 +248,9 @@ public class Molecule2RDKitConverterNodeDialog extends DefaultNodeSettingsPane {
 		
 		// Enable Strict Parsing option only for SDF input
 		m_modelStrictParsing.setEnabled(bEnableStrictParsingOption);
+
+		// Enable Canonical Input SMILES option only for SMILES input, which gets sanitized completely
+		m_modelCanonicalInputSmiles.setEnabled(bEnableCanonicalInputSmilesOption);
 	}
 
 	//
@@ -413,4 +441,61 @@ public class Molecule2RDKitConverterNodeDialog extends DefaultNodeSettingsPane {
 		return new SettingsModelBoolean("strict_parsing", 
 				RDKitTypesPreferencePage.isStrictParsingForNodeSettingsDefault());
 	}
+
+	/**
+	 * Creates the model to select the option Fast Ingest.
+	 * The default is false.
+	 * Added in October 2026.
+	 * 
+	 * @return The Fast Ingest option model.
+	 */
+	static final SettingsModelBoolean createFastIngestOptionModel() {
+		return new SettingsModelBoolean("fast_ingest", false);
+	}
+
+	/**
+	 * Creates the model to select the option to take input SMILES as canonical RDKit SMILES.
+	 * The default is false.
+	 * Added in October 2026.
+	 * 
+	 * @return The Canonical Input SMILES option model.
+	 */
+	static final SettingsModelBoolean createCanonicalInputSmilesOptionModel() {
+		return new SettingsModelBoolean("canonical_input_smiles", false);
+	}
+
+	/**
+	 * Creates the model to select the option to cache results of duplicate inputs.
+	 * The default is false.
+	 * Added in October 2026.
+	 * 
+	 * @return The Cache Duplicates option model.
+	 */
+	static final SettingsModelBoolean createCacheDuplicatesOptionModel() {
+		return new SettingsModelBoolean("cache_duplicates", false);
+	}
+
+	/**
+	 * Creates the model to specify the maximum number of cached results of duplicate inputs.
+	 * This option is dependent on the passed in model state.
+	 * Added in October 2026.
+	 * 
+	 * @param modelCacheDuplicates Model that determines, if the
+	 * 		cache size model is enabled or disabled.
+	 * 
+	 * @return The Cache Size model.
+	 */
+	static final SettingsModelIntegerBounded createCacheSizeModel(
+			final SettingsModelBoolean modelCacheDuplicates) {
+		final SettingsModelIntegerBounded result =
+				new SettingsModelIntegerBounded("cache_size", 100000, 1, Integer.MAX_VALUE);
+		modelCacheDuplicates.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(final ChangeEvent e) {
+				result.setEnabled(modelCacheDuplicates.getBooleanValue());
+			}
+		});
+		result.setEnabled(modelCacheDuplicates.getBooleanValue());
+		return result;
+	}
 }
@@ -49,10 +49,12 @@ package org.rdkit.knime.nodes.molecule2rdkit;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.RDKit.RDKFuncs;
 import org.RDKit.ROMol;
 import org.RDKit.RWMol;
+import org.RDKit.SanitizeFlags;
 import org.knime.chem.types.SdfValue;
 import org.knime.chem.types.SmartsValue;
 import org.knime.chem.types.SmilesValue;
@@ -71,6 +73,7 @@ import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.util.ButtonGroupEnumInterface;
 import org.rdkit.knime.nodes.AbstractRDKitCellFactory;
@@ -192,6 +195,18 @@ public class Molecule2RDKitConverterNodeModel extends AbstractRDKitNodeModel {
 	/** Input data info index for Mol value. */
 	protected static final int INPUT_COLUMN_MOL = 0;
 
+	/** Number of input SMILES claimed to be canonical, which are all verified at the beginning. */
+	protected static final int CANONICAL_SMILES_SAMPLE_SIZE = 1000;
+
+	/** After the initial sample every n-th input SMILES claimed to be canonical is verified. */
+	protected static final int CANONICAL_SMILES_CHECK_INTERVAL = 100;
+
+	/** Maximum memory in bytes of inputs in the cache of duplicates, unless limited further by the heap size. */
+	protected static final long CACHE_MAX_INPUT_BYTES = 256L * 1024 * 1024;
+
+	/** The inputs in the cache of duplicates use at most this fraction of the maximum heap size. */
+	protected static final int CACHE_HEAP_DIVISOR = 10;
+
 	//
 	// Members
 	//
@@ -259,6 +274,22 @@ public class Molecule2RDKitConverterNodeModel extends AbstractRDKitNodeModel {
 	private final SettingsModelBoolean m_modelStrictParsing =
 			registerSettings(Molecule2RDKitConverterNodeDialog.createStrictParsingOptionModel(), true);
 
+	/** Settings model for the option to use the fast ingest mode. Added in October 2026. */
+	private final SettingsModelBoolean m_modelFastIngest =
+			registerSettings(Molecule2RDKitConverterNodeDialog.createFastIngestOptionModel(), true);
+
+	/** Settings model for the option to take input SMILES as canonical RDKit SMILES. Added in October 2026. */
+	private final SettingsModelBoolean m_modelCanonicalInputSmiles =
+			registerSettings(Molecule2RDKitConverterNodeDialog.createCanonicalInputSmilesOptionModel(), true);
+
+	/** Settings model for the option to cache results of duplicate inputs. Added in October 2026. */
+	private final SettingsModelBoolean m_modelCacheDuplicates =
+			registerSettings(Molecule2RDKitConverterNodeDialog.createCacheDuplicatesOptionModel(), true);
+
+	/** Settings model for the maximum number of cached results. Added in October 2026. */
+	private final SettingsModelIntegerBounded m_modelCacheSize =
+			registerSettings(Molecule2RDKitConverterNodeDialog.createCacheSizeModel(m_modelCacheDuplicates), true);
+
 	//
 	// Internals
 	//
@@ -278,6 +309,24 @@ public class Molecule2RDKitConverterNodeModel extends AbstractRDKitNodeModel {
 	/** This variable is used during execution for performance reasons. */
 	private boolean m_bStrictParsing = false;
 
+	/** This variable is used during execution for performance reasons. */
+	private boolean m_bFastIngest = false;
+
+	/**
+	 * This variable is used during execution for performance reasons. It gets switched off,
+	 * when an input SMILES turns out not to be canonical.
+	 */
+	private volatile boolean m_bCanonicalInputSmiles = false;
+
+	/** Number of input SMILES, which were claimed to be canonical during execution. */
+	private final AtomicLong m_lCanonicalInputSmilesCount = new AtomicLong();
+
+	/** Sanitization operations performed in a single call for partial sanitization in fast ingest mode. */
+	private int m_iPartialSanitizationOps = 0;
+
+	/** Cache of results of duplicate inputs, or null, if duplicates are not cached. */
+	private DuplicateInputCache m_cacheDuplicates = null;
+
 	//
 	// Constructor
 	//
@@ -531,28 +580,44 @@ public class Molecule2RDKitConverterNodeModel extends AbstractRDKitNodeModel {
 				RWMol mol = null;
 				ROMol molFinal = null;
 				String smiles = null;
+				String strInput = null;
 				Exception excCaught = null;
 
 				// As first step try to parse the input molecule format
 				try {
 				   if (m_inputType == InputType.SDF) {
-                  final String value = arrInputDataInfo[INPUT_COLUMN_MOL].getSdfValue(row);
-                  mol = markForCleanup(RWMol.MolFromMolBlock(value, m_bSanitize, m_bRemoveHs, m_bStrictParsing), lUniqueWaveId);
+                  strInput = arrInputDataInfo[INPUT_COLUMN_MOL].getSdfValue(row);
                }
 				   else if (m_inputType == InputType.SMILES) {
-						final String value = arrInputDataInfo[INPUT_COLUMN_MOL].getSmiles(row);
-						mol = markForCleanup(RWMol.MolFromSmiles(value, 0, m_bSanitize && !m_bTreatAsQuery), lUniqueWaveId);
-						smiles = value;
+						strInput = arrInputDataInfo[INPUT_COLUMN_MOL].getSmiles(row);
 					}
 					else if (m_inputType == InputType.SMARTS) {
-						final String value = arrInputDataInfo[INPUT_COLUMN_MOL].getSmarts(row);
-						mol = markForCleanup(RWMol.MolFromSmarts(value, 0, true), lUniqueWaveId);
-						smiles = value;
+						strInput = arrInputDataInfo[INPUT_COLUMN_MOL].getSmarts(row);
 					}
 					else {
 						throw new InvalidSettingsException("The molecule input type " + m_inputType +
 								" is invalid or cannot be handled by this node.");
 					}
+
+					// Deliver the results of a duplicate input without parsing it again
+					if (m_cacheDuplicates != null) {
+						final DataCell[] arrCachedCells = m_cacheDuplicates.get(strInput);
+						if (arrCachedCells != null) {
+							return arrCachedCells;
+						}
+					}
+
+					if (m_inputType == InputType.SDF) {
+						mol = markForCleanup(RWMol.MolFromMolBlock(strInput, m_bSanitize, m_bRemoveHs, m_bStrictParsing), lUniqueWaveId);
+					}
+					else if (m_inputType == InputType.SMILES) {
+						mol = markForCleanup(RWMol.MolFromSmiles(strInput, 0, m_bSanitize && !m_bTreatAsQuery), lUniqueWaveId);
+						smiles = strInput;
+					}
+					else {
+						mol = markForCleanup(RWMol.MolFromSmarts(strInput, 0, true), lUniqueWaveId);
+						smiles = strInput;
+					}
 				}
 				catch (final EmptyCellException excEmpty) {
 					// If the cell is empty an exception is thrown by .getXXX(row), which is rethrown here
@@ -579,15 +644,22 @@ public class Molecule2RDKitConverterNodeModel extends AbstractRDKitNodeModel {
 							if (!m_bSanitize) {
 								RDKFuncs.cleanUp(mol);
 								mol.updatePropertyCache(false);
-								RDKFuncs.symmetrizeSSSR(mol);
 
-								if (m_modelAromatization.getBooleanValue()) {
-									RDKFuncs.Kekulize(mol);
-									RDKFuncs.setAromaticity(mol);
+								// Fast ingest: Perform all following steps in a single sanitization call
+								if (m_bFastIngest) {
+									sanitizePartially(mol);
 								}
+								else {
+									RDKFuncs.symmetrizeSSSR(mol);
 
-								RDKFuncs.setConjugation(mol);
-								RDKFuncs.setHybridization(mol);
+									if (m_modelAromatization.getBooleanValue()) {
+										RDKFuncs.Kekulize(mol);
+										RDKFuncs.setAromaticity(mol);
+									}
+
+									RDKFuncs.setConjugation(mol);
+									RDKFuncs.setHybridization(mol);
+								}
 
 								if (m_modelStereoChem.getBooleanValue()) {
 									RDKFuncs.assignStereochemistry(mol, true);
@@ -624,7 +696,8 @@ public class Molecule2RDKitConverterNodeModel extends AbstractRDKitNodeModel {
 							}
 						}
 
-						arrOutputCells[0] = RDKitMolCellFactory.createRDKitAdapterCell(molFinal, smiles);
+						arrOutputCells[0] = RDKitMolCellFactory.createRDKitAdapterCell(molFinal, smiles,
+								m_bCanonicalInputSmiles && verifyCanonicalInputSmiles(molFinal, smiles));
 					}
 					catch (final Exception exc) {
 						excCaught = exc;
@@ -673,6 +746,11 @@ public class Molecule2RDKitConverterNodeModel extends AbstractRDKitNodeModel {
 					getWarningConsolidator().saveWarning(WarningConsolidator.ROW_CONTEXT.getId(), strMsg);
 				}
 
+				// Remember only successful results, so that failures get reported for every row
+				else if (m_cacheDuplicates != null) {
+					m_cacheDuplicates.put(strInput, arrOutputCells);
+				}
+
 				return arrOutputCells;
 			}
 		};
@@ -742,6 +820,26 @@ public class Molecule2RDKitConverterNodeModel extends AbstractRDKitNodeModel {
 			m_bRemoveHs = false;
 		}
 
+		// Prepare performance options
+		m_bFastIngest = m_modelFastIngest.getBooleanValue();
+		m_iPartialSanitizationOps = SanitizeFlags.SANITIZE_SYMMRINGS.swigValue() |
+				SanitizeFlags.SANITIZE_SETCONJUGATION.swigValue() |
+				SanitizeFlags.SANITIZE_SETHYBRIDIZATION.swigValue();
+		if (m_modelAromatization.getBooleanValue()) {
+			m_iPartialSanitizationOps |= SanitizeFlags.SANITIZE_KEKULIZE.swigValue() |
+					SanitizeFlags.SANITIZE_SETAROMATICITY.swigValue();
+		}
+
+		// The input SMILES is only the SMILES of the resulting molecule, if it gets sanitized completely
+		m_bCanonicalInputSmiles = (m_modelCanonicalInputSmiles.getBooleanValue() &&
+				m_inputType == InputType.SMILES && m_bSanitize && !m_bTreatAsQuery);
+		m_lCanonicalInputSmilesCount.set(0);
+
+		if (m_modelCacheDuplicates.getBooleanValue()) {
+			m_cacheDuplicates = new DuplicateInputCache(m_modelCacheSize.getIntValue(),
+					Math.min(CACHE_MAX_INPUT_BYTES, Runtime.getRuntime().maxMemory() / CACHE_HEAP_DIVISOR));
+		}
+
 		final boolean bSplitBadRowsToPort1 = ParseErrorPolicy.SPLIT_ROWS.getActionCommand()
 				.equals(m_modelSeparateFails.getStringValue());
 		final long lTotalRowCount = inData[0].size();
@@ -820,9 +918,65 @@ public class Molecule2RDKitConverterNodeModel extends AbstractRDKitNodeModel {
 		port0.close();
 		port1.close();
 
+		if (m_cacheDuplicates != null) {
+			LOGGER.debug("Results of duplicate inputs were taken from the cache " + m_cacheDuplicates.getHitCount() +
+					" times, " + m_cacheDuplicates.getMissCount() + " inputs were converted.");
+		}
+
 		return new BufferedDataTable[] { port0.getTable(), port1.getTable() };
 	}
+
+	/**
+	 * {@inheritDoc}
+	 * This implementation frees the cache of duplicate inputs.
+	 */
+	@Override
+	protected void cleanupIntermediateResults() {
+		if (m_cacheDuplicates != null) {
+			m_cacheDuplicates.clear();
+			m_cacheDuplicates = null;
+		}
+	}
 	
+	/**
+	 * Verifies the claim that an input SMILES is the canonical RDKit SMILES of the molecule
+	 * parsed from it. To keep the benefit of the claim, only a sample gets verified: all of the first
+	 * {@link #CANONICAL_SMILES_SAMPLE_SIZE} input SMILES and afterwards every
+	 * {@link #CANONICAL_SMILES_CHECK_INTERVAL}-th. If a verified SMILES is not canonical,
+	 * the claim is not trusted anymore for the rest of the execution, cached results are dropped as
+	 * they might carry the wrong claim, and a warning is shown.
+	 *
+	 * @param mol Molecule parsed from the input SMILES. Must not be null.
+	 * @param strSmiles Input SMILES. Can be null.
+	 *
+	 * @return True, if the input SMILES can be taken as canonical. False otherwise.
+	 */
+	protected boolean verifyCanonicalInputSmiles(final ROMol mol, final String strSmiles) {
+		final long lCount = m_lCanonicalInputSmilesCount.incrementAndGet();
+		if (lCount > CANONICAL_SMILES_SAMPLE_SIZE && lCount % CANONICAL_SMILES_CHECK_INTERVAL != 0) {
+			return true;
+		}
+
+		if (RDKFuncs.MolToSmiles(mol, true).equals(strSmiles)) {
+			return true;
+		}
+
+		synchronized (m_lCanonicalInputSmilesCount) {
+			if (m_bCanonicalInputSmiles) {
+				m_bCanonicalInputSmiles = false;
+				if (m_cacheDuplicates != null) {
+					m_cacheDuplicates.clear();
+				}
+				LOGGER.debug("Input SMILES '" + strSmiles + "' is not a canonical RDKit SMILES.");
+				getWarningConsolidator().saveWarning("Input SMILES are not all canonical RDKit SMILES. " +
+						"Canonical SMILES get generated for the remaining molecules. Please disable the option " +
+						"'Input SMILES are Canonical RDKit SMILES', as molecules converted before may carry wrong SMILES.");
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * Corrects the strict parsing setting to "true" for all old nodes that did not have that setting.
 	 * Without it we would change the behavior of existing workflows, which might not be desired.
@@ -838,5 +992,35 @@ public class Molecule2RDKitConverterNodeModel extends AbstractRDKitNodeModel {
 			}
 		}		
 	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Performs the steps of a partial sanitization, which follow the cleanup and the
+	 * calculation of the property cache, in a single call of the RDKit sanitization
+	 * instead of calling every step separately. The steps are determined when the
+	 * execution starts based on the settings of the node.
+	 * 
+	 * @param mol Molecule to be sanitized partially. Must not be null.
+	 * 
+	 * @throws Exception Thrown, if a sanitization step failed.
+	 */
+	private void sanitizePartially(final RWMol mol) throws Exception {
+		final int iFailedOp = RDKFuncs.sanitizeMol(mol, m_iPartialSanitizationOps);
+
+		if (iFailedOp != SanitizeFlags.SANITIZE_NONE.swigValue()) {
+			String strStep = String.valueOf(iFailedOp);
+			for (final SanitizeFlags flag : SanitizeFlags.values()) {
+				if (flag.swigValue() == iFailedOp) {
+					strStep = flag.name();
+					break;
+				}
+			}
+
+			throw new Exception("Partial sanitization failed in step " + strStep);
+		}
+	}
 	
 }
@@ -82,6 +82,7 @@ import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.rdkit.knime.nodes.AbstractRDKitCellFactory;
 import org.rdkit.knime.nodes.AbstractRDKitNodeModel;
 import org.rdkit.knime.types.RDKitMolValue;
+import org.rdkit.knime.util.FilterCatalogCache;
 import org.rdkit.knime.util.InputDataInfo;
 import org.rdkit.knime.util.SettingsModelEnumeration;
 import org.rdkit.knime.util.SettingsModelEnumerationArray;
@@ -151,6 +152,9 @@ public class RDKitMoleculeCatalogFilterNodeModel extends AbstractRDKitNodeModel
 	/** Settings model to be used for the option to generate an atom list. */
     private final SettingsModelEnumeration<AtomListHandling> m_modelAtomListHandlingOption =
             registerSettings(RDKitMoleculeCatalogFilterNodeDialog.createGenerateAtomListOptionModel());
+
+    /** Filter catalogs acquired from the shared filter catalog cache for the current execution. */
+    private final List<FilterCatalog> m_listAcquiredCatalogs = new ArrayList<>();
     
     //
     // Constructor
@@ -307,10 +311,14 @@ public class RDKitMoleculeCatalogFilterNodeModel extends AbstractRDKitNodeModel
 			break;
 		}
 		
-		// Generate filter catalogs of choice
+		// Acquire filter catalogs of choice from the shared cache (only needed for execution)
 		final FilterCatalog[] arrFilters = new FilterCatalog[arrFilterCatalogs.length];
-		for (int i = 0; i < arrFilterCatalogs.length; i++) {
-			arrFilters[i] = markForCleanup(new FilterCatalog(arrFilterCatalogs[i]));
+		if (arrInputDataInfos != null) {
+			final FilterCatalogCache cache = FilterCatalogCache.getInstance();
+			for (int i = 0; i < arrFilterCatalogs.length; i++) {
+				arrFilters[i] = cache.acquire(arrFilterCatalogs[i]);
+				m_listAcquiredCatalogs.add(arrFilters[i]);
+			}
 		}
 		
 		// Generate factory 
@@ -514,6 +522,20 @@ public class RDKitMoleculeCatalogFilterNodeModel extends AbstractRDKitNodeModel
         
         return new BufferedDataTable[] { port0.getTable(), port1.getTable() };
     }	
+
+    /**
+     * {@inheritDoc}
+     * This implementation releases the filter catalogs, which were acquired from
+     * the shared filter catalog cache. They stay cached for the next execution.
+     */
+    @Override
+    protected void cleanupIntermediateResults() {
+    	final FilterCatalogCache cache = FilterCatalogCache.getInstance();
+    	for (final FilterCatalog catalog : m_listAcquiredCatalogs) {
+    		cache.release(catalog);
+    	}
+    	m_listAcquiredCatalogs.clear();
+    }
     
     /**
      * Generate a new data cell for the passed in set of atoms.
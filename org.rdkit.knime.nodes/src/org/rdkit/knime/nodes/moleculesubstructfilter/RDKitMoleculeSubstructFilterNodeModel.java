@@ -89,13 +89,16 @@ import org.rdkit.knime.nodes.AbstractRDKitCellFactory;
 import org.rdkit.knime.nodes.AbstractRDKitCellFactory.RowFailurePolicy;
 import org.rdkit.knime.nodes.AbstractRDKitNodeModel;
 import org.rdkit.knime.nodes.rdkfingerprint.DefaultFingerprintSettings;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintArena;
 import org.rdkit.knime.nodes.rdkfingerprint.FingerprintSettings;
 import org.rdkit.knime.nodes.rdkfingerprint.FingerprintType;
+import org.rdkit.knime.nodes.rdkfingerprint.PatternFingerprintIndex;
 import org.rdkit.knime.nodes.substructfilter.RDKitSubstructFilterNodeModel;
 import org.rdkit.knime.types.RDKitAdapterCell;
 import org.rdkit.knime.types.RDKitMolValue;
 import org.rdkit.knime.util.InputDataInfo;
 import org.rdkit.knime.util.RDKitObjectCleaner;
+import org.rdkit.knime.util.SafeGuardedResource;
 import org.rdkit.knime.util.SettingsModelEnumeration;
 import org.rdkit.knime.util.SettingsUtils;
 
@@ -235,15 +238,9 @@ public class RDKitMoleculeSubstructFilterNodeModel extends AbstractRDKitNodeMode
 
 	/**
 	 * Intermediate pre-processing result, which will be used in processing phase.
-	 * It contains all fingerprints for the query table.
+	 * It contains the inverted index of all fingerprints of the query table.
 	 */
-	private DenseBitVector[] m_arrQueryFingerprints = null;
-
-	/**
-	 * Intermediate pre-processing result, which will be used in processing phase.
-	 * It contains all on bit counts of the calculated fingerprints for the query table.
-	 */
-	private long[] m_arrQueryFpOnBitCounts = null;
+	private PatternFingerprintIndex m_patternIndex = null;
 
 	/**
 	 * Intermediate pre-processing result, which will be used in processing phase.
@@ -436,6 +433,16 @@ public class RDKitMoleculeSubstructFilterNodeModel extends AbstractRDKitNodeMode
 		final int iMinimumMatches = m_modelMinimumMatches.getIntValue();
 		final MatchingCriteria matchingCriteria = m_modelMatchingCriteria.getValue();
 		final boolean bRowKeyMatchInfo = m_modelRowKeyMatchInfoOption.getBooleanValue();
+		final PatternFingerprintIndex patternIndex = m_patternIndex;
+
+		// Screening counters that can be reused from row to row, one workspace per worker thread
+		final SafeGuardedResource<PatternFingerprintIndex.Workspace> workspaces = (patternIndex == null ? null :
+			markForCleanup(new SafeGuardedResource<PatternFingerprintIndex.Workspace>() {
+				@Override
+				protected PatternFingerprintIndex.Workspace createResource() {
+					return patternIndex.createWorkspace();
+				}
+			}));
 
 		// Generate factory
 		final AbstractRDKitCellFactory factory = new AbstractRDKitCellFactory(this,
@@ -454,47 +461,41 @@ public class RDKitMoleculeSubstructFilterNodeModel extends AbstractRDKitNodeMode
 
 				// Calculate the new cells
 				ROMol mol = null;
-				DenseBitVector fingerprintMol = null;
-				boolean bFingerprintMolAvailable = true;
 				int iNumberOfMatchingPatterns = 0;
 				
 				final SubstructMatchParameters ps = new SubstructMatchParameters();
 				ps.setUseChirality(m_modelUseChirality.getBooleanValue());
 				ps.setUseEnhancedStereo(m_modelUseEnhancedStereo.getBooleanValue());
-				
-				for (int i = 0; i < m_arrQueryMols.length; i++) {
+
+				// Pre-screening, if fingerprint usage is enabled: A potential SSS(A,B) match is only found,
+				// if all bits of FP(A) are also set in FP(B), where A is the query molecule and B is the
+				// molecule of the processed row. The inverted index delivers these candidates directly
+				// from the on-bits of FP(B)
+				int iCandidateCount = m_arrQueryMols.length;
+				int[] arrCandidates = null;
+				if (patternIndex != null) {
+					final BitVectorValue fingerprintMol = (BitVectorValue)arrInputDataInfo[INPUT_COLUMN_FP].getCell(row);
+					final PatternFingerprintIndex.Workspace workspace = workspaces.get();
+					iCandidateCount = patternIndex.screen(fingerprintMol == null ? null :
+						FingerprintArena.toWords(fingerprintMol), workspace);
+					arrCandidates = workspace.getCandidates();
+				}
+
+				for (int c = 0; c < iCandidateCount; c++) {
+					final int i = (arrCandidates == null ? c : arrCandidates[c]);
 					final ROMol molPattern = m_arrQueryMols[i];
 					final String keyPattern = m_arrQueryRowKeys[i];
 
 					if (molPattern != null ) {
-						boolean bDeepCheck = true;
-
-						// Pre-screening, if fingerprint usage is enabled
-						if (m_arrQueryFingerprints != null && m_arrQueryFingerprints[i] != null && bFingerprintMolAvailable) {
-
-							// Get the fingerprint only when executing this row the first time
-							if (fingerprintMol == null) {
-								fingerprintMol = arrInputDataInfo[INPUT_COLUMN_FP].getDenseBitVector(row);
-								bFingerprintMolAvailable = (fingerprintMol != null);
-							}
-
-							// A potential SSS(A,B) match is found if OBC(FP(A)) <= OBC(FP(B)) AND OBC(FP(A) & FB(B)) == OBC(FP(A)),
-							// where A is the query molecule and B is the molecule of the processed row
-							bDeepCheck = (bFingerprintMolAvailable && m_arrQueryFpOnBitCounts[i] <= fingerprintMol.cardinality() &&
-									(m_arrQueryFingerprints[i].and(fingerprintMol).cardinality() == m_arrQueryFpOnBitCounts[i]));
+						// Get the molecule only if we really need it (this saves execution time)
+						// Note, that this will throw an exception for empty cells, which will be handled by the factory
+						if (mol == null) {
+							mol = markForCleanup(arrInputDataInfo[INPUT_COLUMN_MOL].getROMol(row), lUniqueWaveId);
 						}
 
-						if (bDeepCheck) {
-							// Get the molecule only if we really need it (this saves execution time)
-							// Note, that this will throw an exception for empty cells, which will be handled by the factory
-							if (mol == null) {
-								mol = markForCleanup(arrInputDataInfo[INPUT_COLUMN_MOL].getROMol(row), lUniqueWaveId);
-							}
-
-							if (mol.hasSubstructMatch(molPattern, ps)) {
-								listQueryRefs.add(bRowKeyMatchInfo ? new StringCell(keyPattern) : new IntCell(i + 1));
-								iNumberOfMatchingPatterns++;
-							}
+						if (mol.hasSubstructMatch(molPattern, ps)) {
+							listQueryRefs.add(bRowKeyMatchInfo ? new StringCell(keyPattern) : new IntCell(i + 1));
+							iNumberOfMatchingPatterns++;
 						}
 					}
 				}
@@ -544,18 +545,19 @@ public class RDKitMoleculeSubstructFilterNodeModel extends AbstractRDKitNodeMode
 	 * 
 	 * @param arrPatterns RDKit molecules acting as substructure patterns. Some values
 	 * 		could be null, if the origin was a missing cell.
+	 * @param patternIndex Inverted index of the pattern fingerprints for pre-screening,
+	 * 		or null, if pre-screening is not used.
 	 * @param iTotalEmptyPatternCells Number of empty cells encountered when evaluating
 	 * 		the query input column and preparing the patterns. This is the number of
 	 * 		null values in the arrPatterns array.
 	 * @param iTotalPatternAtomsCount Total number of atoms in all patterns.
 	 */
-	protected void setPreprocessingResults(final String[] arrRowKeys, final ROMol[] arrPatterns, final DenseBitVector[] arrFingerprints,
-			final long[] arrOnBitCounts, final BufferedDataTable tableWithFingerprints,
+	protected void setPreprocessingResults(final String[] arrRowKeys, final ROMol[] arrPatterns,
+			final PatternFingerprintIndex patternIndex, final BufferedDataTable tableWithFingerprints,
 			final int iTotalEmptyPatternCells, final int iTotalPatternAtomsCount) {
 		m_arrQueryRowKeys = arrRowKeys;
 		m_arrQueryMols = arrPatterns;
-		m_arrQueryFingerprints = arrFingerprints;
-		m_arrQueryFpOnBitCounts = arrOnBitCounts;
+		m_patternIndex = patternIndex;
 		m_tableWithFingerprints = tableWithFingerprints;
 		if (tableWithFingerprints != null) {
 			m_modelFingerprintColumnName = new SettingsModelString("fingerprint_column", tableWithFingerprints.
@@ -597,8 +599,7 @@ public class RDKitMoleculeSubstructFilterNodeModel extends AbstractRDKitNodeMode
 				FINGERPRINT_SETTING.getRdkitFingerprintType() : null);
 		final String[] arrRowKeys = new String[iQueryRowCount];
 		final ROMol[] arrPatterns = new ROMol[iQueryRowCount];
-		final DenseBitVector[] arrFingerprints = (fpType != null ? new DenseBitVector[iQueryRowCount] : null);
-		final long[] arrOnBitCounts = (fpType != null ? new long[iQueryRowCount] : null);
+		final long[][] arrFingerprints = (fpType != null ? new long[iQueryRowCount][] : null);
 		int iTotalPatternAtomsCount = 0;
 		int iTotalEmptyPatternCells = 0;
 		ExecutionContext execQueryTable = exec;
@@ -642,10 +643,10 @@ public class RDKitMoleculeSubstructFilterNodeModel extends AbstractRDKitNodeMode
 				arrRowKeys[i] = row.getKey().getString();
 				iTotalPatternAtomsCount += arrPatterns[i].getNumAtoms();
 
-				// Calculate fingerprint and on bit count for optimization
+				// Calculate fingerprint for optimization
 				if (fpType != null) {
-					arrFingerprints[i] = createFingerprint(arrPatterns[i]);
-					arrOnBitCounts[i] = (arrFingerprints[i] != null ? arrFingerprints[i].cardinality() : -1);
+					final DenseBitVector fingerprint = createFingerprint(arrPatterns[i]);
+					arrFingerprints[i] = (fingerprint != null ? fingerprint.getAllBits() : null);
 				}
 			}
 
@@ -656,6 +657,15 @@ public class RDKitMoleculeSubstructFilterNodeModel extends AbstractRDKitNodeMode
 			i++;
 		}
 
+		// Build an inverted index of the pattern fingerprints for pre-screening
+		PatternFingerprintIndex patternIndex = null;
+		if (fpType != null) {
+			patternIndex = new PatternFingerprintIndex(FINGERPRINT_SETTING.getNumBits(), arrFingerprints);
+			LOGGER.debug("Built pattern fingerprint index for " + patternIndex.getPatternCount() + " patterns (" +
+					patternIndex.getUnscreenedPatternCount() + " without screening) using " +
+					patternIndex.getMemoryFootprint() + " bytes.");
+		}
+
 		// Does not do anything by default
 		execQueryTable.setProgress(1.0d);
 
@@ -698,7 +708,7 @@ public class RDKitMoleculeSubstructFilterNodeModel extends AbstractRDKitNodeMode
 			tableWithFingerprints = exec.createColumnRearrangeTable(inData[0], rearranger, execMolTable);
 		}
 
-		setPreprocessingResults(arrRowKeys, arrPatterns, arrFingerprints, arrOnBitCounts, tableWithFingerprints,
+		setPreprocessingResults(arrRowKeys, arrPatterns, patternIndex, tableWithFingerprints,
 				iTotalEmptyPatternCells, iTotalPatternAtomsCount);
 	}
 
@@ -714,7 +724,7 @@ public class RDKitMoleculeSubstructFilterNodeModel extends AbstractRDKitNodeMode
 		final BufferedDataTable[] inData = inDataOrig;
 		final InputDataInfo[][] arrInputDataInfo = arrInputDataInfoOrig;
 		int iFingerprintColumn = -1;
-		if (m_arrQueryFingerprints != null) {
+		if (m_patternIndex != null) {
 			inData[0] = m_tableWithFingerprints;
 			arrInputDataInfo[0] = createInputDataInfos(0, m_tableWithFingerprints.getDataTableSpec());
 			iFingerprintColumn = arrInputDataInfo[0][INPUT_COLUMN_FP].getColumnIndex();
@@ -780,8 +790,7 @@ public class RDKitMoleculeSubstructFilterNodeModel extends AbstractRDKitNodeMode
 	protected void cleanupIntermediateResults() {
 		m_arrQueryRowKeys = null;
 		m_arrQueryMols = null;
-		m_arrQueryFingerprints = null;
-		m_arrQueryFpOnBitCounts = null;
+		m_patternIndex = null;
 		m_tableWithFingerprints = null;
 		m_modelFingerprintColumnName = null;
 		m_iTotalPatternAtomsCount = 0;
@@ -48,15 +48,24 @@
  */
 package org.rdkit.knime.nodes.molextractor;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.RDKit.RDKFuncs;
 import org.RDKit.ROMol;
 import org.RDKit.ROMol_Vect;
+import org.RDKit.RWMol;
+import org.knime.chem.types.SdfValue;
 import org.knime.chem.types.SmilesValue;
+import org.knime.core.data.AdapterValue;
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
@@ -70,6 +79,7 @@ import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeLogger;
@@ -79,11 +89,13 @@ import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 import org.knime.core.node.port.PortTypeRegistry;
+import org.knime.core.util.MultiThreadWorker;
 import org.rdkit.knime.nodes.AbstractRDKitNodeModel;
 import org.rdkit.knime.types.RDKitAdapterCell;
 import org.rdkit.knime.types.RDKitMolCellFactory;
 import org.rdkit.knime.types.RDKitMolValue;
 import org.rdkit.knime.types.RDKitTypeConverter;
+import org.rdkit.knime.types.preferences.RDKitTypesPreferencePage;
 import org.rdkit.knime.util.InputDataInfo;
 import org.rdkit.knime.util.SettingsModelEnumeration;
 import org.rdkit.knime.util.SettingsUtils;
@@ -93,7 +105,9 @@ import org.rdkit.knime.util.WarningConsolidator;
  * This class implements the node model of the RDKitMoleculeExtractor node
  * providing calculations based on the open source RDKit library.
  * Splits up fragment molecules contained in a single RDKit molecule cell
- * and extracts these molecules into separate cells.
+ * and extracts these molecules into separate cells. SDF input with multiple
+ * records is split into records while reading it, the records are parsed
+ * and fragmented in parallel and their rows are added in the order of the records.
  * 
  * @author Manuel Schwarze
  */
@@ -116,6 +130,9 @@ public class RDKitMoleculeExtractorNodeModel extends AbstractRDKitNodeModel {
 	/** The SDF postfix. */
 	private static final String SDF_POSTFIX = "\n$$$$\n";
 
+	/** Number of SDF records after which cancellation is checked and progress is reported. */
+	private static final int SDF_PROGRESS_INTERVAL = 20;
+
 	//
 	// Members
 	//
@@ -373,29 +390,38 @@ public class RDKitMoleculeExtractorNodeModel extends AbstractRDKitNodeModel {
 						cellRef = arrInputDataInfo[0][INPUT_COLUMN_REFERENCE].getCell(row);
 					}
 
-					// Check for error and empty cell
-					boolean bSkip = handleErrorAndEmptyCell(
-							arrInputDataInfo[0][INPUT_COLUMN_MOL].getOriginalCell(row),
-							errorHandling, emptyCellHandling);
-
-					// Only proceed if we do not skip results
-					if (!bSkip) {
-						// Check, if the molecule is not empty (mol can be null, if input cell is a missing cell
-						final ROMol mol = markForCleanup(arrInputDataInfo[0][INPUT_COLUMN_MOL].getROMol(row), lUniqueWaveId);
-
-						// Do not check for empty molecules if we have a missing input cell or auto-conversion failed so that
-						// the converted input cell would also be a missing cell (in that case with an error)
-						if (mol != null) {
-							bSkip = handleEmptyMolecule(arrInputDataInfo[0][INPUT_COLUMN_MOL].getSmiles(row),
-									mol, emptyMoleculeHandling);
-						}
+					// Split SDF cells with multiple records while parsing and fragmenting them in parallel
+					final String strMultiRecordSdf = getMultiRecordSdf(
+							arrInputDataInfo[0][INPUT_COLUMN_MOL].getOriginalCell(row));
+					if (strMultiRecordSdf != null) {
+						rowOutputIndex = processSdfRecords(newTableData, rowOutputIndex, strMultiRecordSdf,
+								bSanitize, cellRef, errorHandling, emptyMoleculeHandling, exec);
+					}
+					else {
+						// Check for error and empty cell
+						boolean bSkip = handleErrorAndEmptyCell(
+								arrInputDataInfo[0][INPUT_COLUMN_MOL].getOriginalCell(row),
+								errorHandling, emptyCellHandling);
 
 						// Only proceed if we do not skip results
 						if (!bSkip) {
-							// Calculate mol cells
-							rowOutputIndex = processMolecule(newTableData, rowOutputIndex, mol, bSanitize,
-									lUniqueWaveId, arrInputDataInfo[0][INPUT_COLUMN_MOL].getCell(row), cellRef,
-									errorHandling);
+							// Check, if the molecule is not empty (mol can be null, if input cell is a missing cell
+							final ROMol mol = markForCleanup(arrInputDataInfo[0][INPUT_COLUMN_MOL].getROMol(row), lUniqueWaveId);
+
+							// Do not check for empty molecules if we have a missing input cell or auto-conversion failed so that
+							// the converted input cell would also be a missing cell (in that case with an error)
+							if (mol != null) {
+								bSkip = handleEmptyMolecule(arrInputDataInfo[0][INPUT_COLUMN_MOL].getSmiles(row),
+										mol, emptyMoleculeHandling);
+							}
+
+							// Only proceed if we do not skip results
+							if (!bSkip) {
+								// Calculate mol cells
+								rowOutputIndex = processMolecule(newTableData, rowOutputIndex, mol, bSanitize,
+										lUniqueWaveId, arrInputDataInfo[0][INPUT_COLUMN_MOL].getCell(row), cellRef,
+										errorHandling);
+							}
 						}
 					}
 
@@ -417,23 +443,32 @@ public class RDKitMoleculeExtractorNodeModel extends AbstractRDKitNodeModel {
 			final long lUniqueWaveId = createUniqueCleanupWaveId();
 
 			try {
-				// Calculate mol cells
-				// Use the auto conversion mechanism to get an RDKit Mol Cell or a Missing Cell
-				final DataCell molCell = createRDKitCell(m_modelInputMolecules.getStringValue(),
-						m_modelInputMoleculesFormat.getStringValue());
+				final String strMolecules = m_modelInputMolecules.getStringValue();
+				final String strFormat = detectFormat(strMolecules, m_modelInputMoleculesFormat.getStringValue());
 
-				// Check for empty cell
-				boolean bSkip = handleErrorAndEmptyCell(molCell, errorHandling, emptyCellHandling);
+				// Split SDF data with multiple records while parsing and fragmenting them in parallel
+				if ("SDF".equals(strFormat) && SdfRecordSplitter.hasMultipleRecords(strMolecules)) {
+					processSdfRecords(newTableData, 0, strMolecules, bSanitize, null,
+							errorHandling, emptyMoleculeHandling, exec);
+				}
+				else {
+					// Calculate mol cells
+					// Use the auto conversion mechanism to get an RDKit Mol Cell or a Missing Cell
+					final DataCell molCell = createRDKitCell(strMolecules, strFormat);
 
-				// Only proceed if we do not skip results
-				if (!bSkip) {
-					// Check, if the molecule is not empty
-					final ROMol mol = markForCleanup(molCell.isMissing() ? null : ((RDKitMolValue)molCell).readMoleculeValue(), lUniqueWaveId);
-					bSkip = handleEmptyMolecule(molCell.isMissing() ? "" : ((SmilesValue)molCell).getSmilesValue(), mol, emptyMoleculeHandling);
+					// Check for empty cell
+					boolean bSkip = handleErrorAndEmptyCell(molCell, errorHandling, emptyCellHandling);
 
 					// Only proceed if we do not skip results
 					if (!bSkip) {
-						processMolecule(newTableData, 0, mol, bSanitize, lUniqueWaveId, molCell, null, errorHandling);
+						// Check, if the molecule is not empty
+						final ROMol mol = markForCleanup(molCell.isMissing() ? null : ((RDKitMolValue)molCell).readMoleculeValue(), lUniqueWaveId);
+						bSkip = handleEmptyMolecule(molCell.isMissing() ? "" : ((SmilesValue)molCell).getSmilesValue(), mol, emptyMoleculeHandling);
+
+						// Only proceed if we do not skip results
+						if (!bSkip) {
+							processMolecule(newTableData, 0, mol, bSanitize, lUniqueWaveId, molCell, null, errorHandling);
+						}
 					}
 				}
 			}
@@ -603,6 +638,44 @@ public class RDKitMoleculeExtractorNodeModel extends AbstractRDKitNodeModel {
 		return bSkip;
 	}
 
+	/**
+	 * Handles an error that occurred while processing an input molecule or SDF record
+	 * based on the error handling settings defined in this node.
+	 * 
+	 * @param strError Error message to be used for a warning or failure.
+	 * @param errorHandling Error handling option.
+	 * 
+	 * @return True, if the input shall be skipped. False, if an empty cell shall be generated.
+	 * 
+	 * @throws Exception Thrown, if the node shall fail.
+	 */
+	private boolean handleProcessingError(final String strError, final ErrorHandling errorHandling) throws Exception {
+		boolean bSkip = false;
+
+		switch (errorHandling) {
+		case Fail:
+			throw new Exception(strError);
+
+		case SkipWithWarning:
+			bSkip = true;
+			// Fall through
+
+		case MissingCellWithWarning:
+			getWarningConsolidator().saveWarning(WarningConsolidator.ROW_CONTEXT.getId(), strError);
+			break;
+
+		case SkipWithoutWarning:
+			bSkip = true;
+			break;
+
+		case MissingCellWithoutWarning:
+		default:
+			break;
+		}
+
+		return bSkip;
+	}
+
 	/**
 	 * Determines the molecule format from the passed in format string, or
 	 * if it is null it tries to determine it from the passed in molecule.
@@ -718,30 +791,8 @@ public class RDKitMoleculeExtractorNodeModel extends AbstractRDKitNodeModel {
 				}
 			}
 			catch (final Exception exc) {
-				boolean bSkip = false;
-				switch (errorHandling) {
-				case Fail:
-					throw new Exception("Input molecule could not be processed due to a fragmentation error.");
-
-				case SkipWithWarning:
-					bSkip = true;
-					// Fall through
-
-				case MissingCellWithWarning:
-					getWarningConsolidator().saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
-							"Input molecule could not be processed due to a fragmentation error.");
-					break;
-
-				case SkipWithoutWarning:
-					bSkip = true;
-					break;
-				
-				case MissingCellWithoutWarning:
-				default:
-					break;
-				}
-
-				if (!bSkip) {
+				if (!handleProcessingError("Input molecule could not be processed due to a fragmentation error.",
+						errorHandling)) {
 					// Create a empty data row
 					final DataRow rowNew = new DefaultRow("row_" + rowOutputIndex,
 							createResultCells(cellOrig, cellRef));
@@ -761,6 +812,224 @@ public class RDKitMoleculeExtractorNodeModel extends AbstractRDKitNodeModel {
 		return rowOutputIndex;
 	}
 
+	/**
+	 * Returns the SDF content of the passed in input cell, if it contains multiple SDF records.
+	 * The auto conversion of such a cell would only consider its first record.
+	 * 
+	 * @param cell Original input cell. Can be null.
+	 * 
+	 * @return SDF content with multiple records or null, if the cell is no SDF cell or
+	 * 		contains only a single record.
+	 */
+	private String getMultiRecordSdf(final DataCell cell) {
+		String strSdf = null;
+
+		if (cell != null && !cell.isMissing()) {
+			if (cell.getType().isCompatible(SdfValue.class)) {
+				strSdf = ((SdfValue)cell).getSdfValue();
+			}
+			else if (cell.getType().isCompatible(AdapterValue.class)
+					&& ((AdapterValue)cell).isAdaptable(SdfValue.class)) {
+				strSdf = ((AdapterValue)cell).getAdapter(SdfValue.class).getSdfValue();
+			}
+		}
+
+		return (SdfRecordSplitter.hasMultipleRecords(strSdf) ? strSdf : null);
+	}
+
+	/**
+	 * Splits the passed in SDF content into records while reading it, parses and fragments
+	 * the records in parallel and adds the fragments to the output table in the order of the records.
+	 * Only a limited number of records is held in memory at any time, independent of the size
+	 * of the SDF content. Records that cannot be parsed or fragmented and records without
+	 * atoms are treated like the corresponding input molecules based on the passed in options.
+	 * 
+	 * @param newTableData Table for adding new rows. Must not be null.
+	 * @param rowOutputIndex Next output row index to apply.
+	 * @param strSdf SDF content with one or more records. Must not be null.
+	 * @param bSanitize Set to true to sanitize fragments.
+	 * @param cellRef Reference cell to be added or null, if none should be added.
+	 * @param errorHandling Error handling option.
+	 * @param emptyMoleculeHandling Empty molecule handling option.
+	 * @param exec Execution context to check for cancellation. Must not be null.
+	 * 
+	 * @return Next output row index to apply for subsequent calls.
+	 * 
+	 * @throws Exception Thrown, if the node shall fail or if it was cancelled.
+	 */
+	private long processSdfRecords(final BufferedDataContainer newTableData, final long rowOutputIndex,
+			final String strSdf, final boolean bSanitize, final DataCell cellRef,
+			final ErrorHandling errorHandling, final EmptyMoleculeHandling emptyMoleculeHandling,
+			final ExecutionContext exec) throws Exception {
+		final boolean bStrictParsing = RDKitTypesPreferencePage.isStrictParsingForAutoConversion();
+		final int iMaxParallelWorkers = (int)Math.ceil(1.5 * Runtime.getRuntime().availableProcessors());
+		final int iQueueSize = 4 * iMaxParallelWorkers; // Limits the number of records in memory
+		final AtomicLong refRowOutputIndex = new AtomicLong(rowOutputIndex);
+		final AtomicReference<Exception> refFailure = new AtomicReference<Exception>();
+
+		try (final SdfRecordSplitter splitter = new SdfRecordSplitter(new StringReader(strSdf))) {
+			new MultiThreadWorker<String, ExtractedSdfRecord>(iQueueSize, iMaxParallelWorkers) {
+
+				/** The number of records added to the table. */
+				private long m_lProcessedRecords = 0;
+
+				/**
+				 * Parses and fragments a single record.
+				 * 
+				 * @param strRecord SDF record.
+				 * @param index Index of the record.
+				 * 
+				 * @return Fragments of the record.
+				 */
+				@Override
+				protected ExtractedSdfRecord compute(final String strRecord, final long index) throws Exception {
+					return extractSdfRecord(strRecord, bSanitize, bStrictParsing);
+				}
+
+				/**
+				 * Adds the fragments of a record to the table in the order of the records.
+				 * 
+				 * @param task Processing result for a record.
+				 */
+				@Override
+				protected void processFinished(final ComputationTask task)
+						throws ExecutionException, CancellationException, InterruptedException {
+					final ExtractedSdfRecord record = task.get();
+
+					try {
+						refRowOutputIndex.set(addSdfRecordRows(newTableData, refRowOutputIndex.get(),
+								record, cellRef, errorHandling, emptyMoleculeHandling));
+						m_lProcessedRecords++;
+
+						// Check, if user cancelled and report progress
+						if (m_lProcessedRecords % SDF_PROGRESS_INTERVAL == 0) {
+							exec.checkCanceled();
+							exec.setMessage("Extracting SDF record " + m_lProcessedRecords);
+						}
+					}
+					catch (final CanceledExecutionException exc) {
+						cancel(true);
+					}
+					catch (final Exception exc) {
+						refFailure.compareAndSet(null, exc);
+						cancel(true);
+					}
+				}
+			}.run(splitter);
+
+			// Rethrow a failure caused by an invalid record
+			if (refFailure.get() != null) {
+				throw refFailure.get();
+			}
+
+			exec.checkCanceled();
+
+			if (splitter.getException() != null) {
+				throw new IOException("The SDF data could not be read successfully: " +
+						splitter.getException(), splitter.getException());
+			}
+		}
+
+		return refRowOutputIndex.get();
+	}
+
+	/**
+	 * Parses a single SDF record the same way as the auto conversion does
+	 * and determines its fragments. This method is called concurrently.
+	 * 
+	 * @param strRecord SDF record. Must not be null.
+	 * @param bSanitize Set to true to sanitize fragments.
+	 * @param bStrictParsing Set to true to parse the record strictly.
+	 * 
+	 * @return Fragment cells or the reason, why there are none. Never null.
+	 */
+	private ExtractedSdfRecord extractSdfRecord(final String strRecord, final boolean bSanitize,
+			final boolean bStrictParsing) {
+		// Get a unique wave id to mark RDKit Objects for cleanup
+		final long lUniqueWaveId = createUniqueCleanupWaveId();
+
+		try {
+			ROMol mol = null;
+			try {
+				mol = markForCleanup(RWMol.MolFromMolBlock(strRecord, true /* sanitize */, true /* removeHs */,
+						bStrictParsing), lUniqueWaveId);
+			}
+			catch (final Exception exc) {
+				// Parsing failed and RDKit molecule is null
+			}
+
+			if (mol == null) {
+				return new ExtractedSdfRecord(null, "SDF record could not be parsed.");
+			}
+
+			if (mol.getNumAtoms() == 0) {
+				return new ExtractedSdfRecord(null, null);
+			}
+
+			try {
+				// Determine all fragments (sanitize them, if desired)
+				final ROMol_Vect listFragments = markForCleanup(RDKFuncs.getMolFrags(mol, bSanitize), lUniqueWaveId);
+				final int iNumber = (listFragments == null ? 0 : (int)listFragments.size());
+				final DataCell[] arrCells = new DataCell[iNumber];
+
+				for (int iFrag = 0; iFrag < iNumber; iFrag++) {
+					arrCells[iFrag] = RDKitMolCellFactory.createRDKitAdapterCell(listFragments.get(iFrag));
+				}
+
+				return new ExtractedSdfRecord(arrCells, null);
+			}
+			catch (final Exception exc) {
+				return new ExtractedSdfRecord(null,
+						"SDF record could not be processed due to a fragmentation error.");
+			}
+		}
+		finally {
+			// Cleanup RDKit Objects
+			cleanupMarkedObjects(lUniqueWaveId);
+		}
+	}
+
+	/**
+	 * Adds the rows for an extracted SDF record to the output table, applying the
+	 * error and empty molecule handling options.
+	 * 
+	 * @param newTableData Table for adding new rows. Must not be null.
+	 * @param rowOutputIndex Next output row index to apply.
+	 * @param record Extracted record. Must not be null.
+	 * @param cellRef Reference cell to be added or null, if none should be added.
+	 * @param errorHandling Error handling option.
+	 * @param emptyMoleculeHandling Empty molecule handling option.
+	 * 
+	 * @return Next output row index to apply for subsequent calls.
+	 * 
+	 * @throws Exception Thrown, if the node shall fail.
+	 */
+	private long addSdfRecordRows(final BufferedDataContainer newTableData, long rowOutputIndex,
+			final ExtractedSdfRecord record, final DataCell cellRef, final ErrorHandling errorHandling,
+			final EmptyMoleculeHandling emptyMoleculeHandling) throws Exception {
+		boolean bSkip = false;
+		DataCell[] arrCells = record.m_arrFragmentCells;
+
+		if (record.m_strError != null) {
+			bSkip = handleProcessingError(record.m_strError, errorHandling);
+			arrCells = new DataCell[] { new MissingCell(record.m_strError) };
+		}
+		else if (arrCells == null) {
+			bSkip = handleEmptyMolecule(null, null, emptyMoleculeHandling);
+			arrCells = new DataCell[] { DataType.getMissingCell() };
+		}
+
+		if (!bSkip) {
+			for (final DataCell cell : arrCells) {
+				newTableData.addRowToTable(new DefaultRow("row_" + rowOutputIndex,
+						createResultCells(cell, cellRef)));
+				rowOutputIndex++;
+			}
+		}
+
+		return rowOutputIndex;
+	}
+
 	/**
 	 * Returns true, if the node is setup to produce a reference column in the output table.
 	 * Unless the model for the reference input role is set to "None" (null and does not use row ID)
@@ -807,4 +1076,32 @@ public class RDKitMoleculeExtractorNodeModel extends AbstractRDKitNodeModel {
 		return (inSpecs != null && inSpecs.length >= 1 &&
 				inSpecs[0] instanceof DataTableSpec &&
 				((DataTableSpec)inSpecs[0]).getNumColumns() > 0);
-	}}
+	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * The result of parsing and fragmenting a single SDF record.
+	 */
+	private static final class ExtractedSdfRecord {
+
+		/** Cells of all fragments or null, if there was an error or if the record has no atoms. */
+		private final DataCell[] m_arrFragmentCells;
+
+		/** Error message or null. */
+		private final String m_strError;
+
+		/**
+		 * Creates a new result.
+		 * 
+		 * @param arrFragmentCells Cells of all fragments or null.
+		 * @param strError Error message or null.
+		 */
+		private ExtractedSdfRecord(final DataCell[] arrFragmentCells, final String strError) {
+			m_arrFragmentCells = arrFragmentCells;
+			m_strError = strError;
+		}
+	}
+}
@@ -0,0 +1,285 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.molextractor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Splits SDF content into single records without reading the complete content first.
+ * Records are read line by line from the underlying reader only when the next record is requested,
+ * so that only the record being read is held in memory by the splitter. A record ends
+ * with a line starting with $$$$. Content after the last record separator is delivered as
+ * last record, unless it is blank. Blank records are skipped. Line breaks of delivered records
+ * are normalized to line feeds. The splitter can be iterated only once.
+ *
+ * @author agent
+ */
+public class SdfRecordSplitter implements Iterable<String>, AutoCloseable {
+
+	//
+	// Constants
+	//
+
+	/** The separator that starts the last line of every SDF record. */
+	public static final String RECORD_SEPARATOR = "$$$$";
+
+	/** Initial capacity of the record buffer. */
+	private static final int INITIAL_RECORD_CAPACITY = 4096;
+
+	//
+	// Members
+	//
+
+	/** The reader delivering the SDF content. */
+	private final BufferedReader m_reader;
+
+	/** Buffer of the record being read. */
+	private final StringBuilder m_sbRecord = new StringBuilder(INITIAL_RECORD_CAPACITY);
+
+	/** Number of records delivered so far. */
+	private long m_lRecordCount = 0;
+
+	/** Exception that occurred while reading. */
+	private IOException m_excReading;
+
+	/** Flag to tell that the iterator was created already. */
+	private boolean m_bIterated;
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Creates a new record splitter.
+	 *
+	 * @param reader Reader delivering SDF content. Must not be null.
+	 * 		It gets closed when the splitter is closed.
+	 */
+	public SdfRecordSplitter(final Reader reader) {
+		if (reader == null) {
+			throw new IllegalArgumentException("Reader must not be null.");
+		}
+
+		m_reader = (reader instanceof BufferedReader ? (BufferedReader)reader : new BufferedReader(reader));
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns an iterator over all records. Every call to hasNext() reads
+	 * the next record, if it was not read yet.
+	 *
+	 * @return Record iterator.
+	 *
+	 * @throws IllegalStateException Thrown, if called more than once.
+	 */
+	@Override
+	public synchronized Iterator<String> iterator() {
+		if (m_bIterated) {
+			throw new IllegalStateException("A record splitter can be iterated only once.");
+		}
+		m_bIterated = true;
+
+		return new Iterator<String>() {
+
+			/** The next record or null, if not read yet or if there are no more records. */
+			private String m_strNext = null;
+
+			/** Flag to tell that the end of the content was reached. */
+			private boolean m_bEnd = false;
+
+			@Override
+			public boolean hasNext() {
+				if (m_strNext == null && !m_bEnd) {
+					m_strNext = readRecord();
+					m_bEnd = (m_strNext == null);
+				}
+				return m_strNext != null;
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				final String strRecord = m_strNext;
+				m_strNext = null;
+				return strRecord;
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of records delivered so far.
+	 *
+	 * @return Number of records.
+	 */
+	public long getRecordCount() {
+		return m_lRecordCount;
+	}
+
+	/**
+	 * Returns the exception that stopped reading, if any. Should be checked after
+	 * iterating, because an exception ends the iteration like the end of the content.
+	 *
+	 * @return Reading exception or null.
+	 */
+	public IOException getException() {
+		return m_excReading;
+	}
+
+	/**
+	 * Closes the underlying reader.
+	 */
+	@Override
+	public void close() throws IOException {
+		m_reader.close();
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Determines, if the passed in SDF content contains more than one record, which is the case
+	 * if there is non-blank content after the first record separator. This does not copy the content.
+	 *
+	 * @param strSdf SDF content. Can be null.
+	 *
+	 * @return True, if there are multiple records. False otherwise.
+	 */
+	public static boolean hasMultipleRecords(final String strSdf) {
+		if (strSdf == null) {
+			return false;
+		}
+
+		// Find the first separator at the beginning of a line
+		int iPos = strSdf.indexOf(RECORD_SEPARATOR);
+		while (iPos > 0 && strSdf.charAt(iPos - 1) != '\n') {
+			iPos = strSdf.indexOf(RECORD_SEPARATOR, iPos + 1);
+		}
+		if (iPos < 0) {
+			return false;
+		}
+
+		// Skip the rest of the separator line
+		final int iLineEnd = strSdf.indexOf('\n', iPos);
+		if (iLineEnd < 0) {
+			return false;
+		}
+
+		for (int i = iLineEnd + 1; i < strSdf.length(); i++) {
+			if (!Character.isWhitespace(strSdf.charAt(i))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Reads the next non-blank record including its separator line.
+	 *
+	 * @return Next record or null, if there are no more records or if reading failed.
+	 */
+	private String readRecord() {
+		if (m_excReading != null) {
+			return null;
+		}
+
+		try {
+			boolean bBlank = true;
+			String strLine;
+
+			m_sbRecord.setLength(0);
+			while ((strLine = m_reader.readLine()) != null) {
+				m_sbRecord.append(strLine).append('\n');
+
+				if (strLine.startsWith(RECORD_SEPARATOR)) {
+					if (!bBlank) {
+						break;
+					}
+					m_sbRecord.setLength(0); // Skip blank records
+				}
+				else if (bBlank && !strLine.trim().isEmpty()) {
+					bBlank = false;
+				}
+			}
+
+			if (bBlank) {
+				return null;
+			}
+
+			m_lRecordCount++;
+
+			return m_sbRecord.toString();
+		}
+		catch (final IOException exc) {
+			m_excReading = exc;
+			return null;
+		}
+		finally {
+			// Avoid keeping the buffer of a huge record after it was delivered
+			if (m_sbRecord.capacity() > 16 * INITIAL_RECORD_CAPACITY) {
+				m_sbRecord.setLength(0);
+				m_sbRecord.trimToSize();
+			}
+		}
+	}
+}
@@ -0,0 +1,377 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.molfragmenter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.RDKit.Int_Vect;
+import org.RDKit.ROMol;
+
+/**
+ * Registry of all fragments found by the Molecule Fragmenter. Fragments are identified by their
+ * path discriminators, which are copied into Java keys, so that they can be looked up in a hash map
+ * instead of comparing them one by one through JNI. Fragment IDs are assigned in the order fragments
+ * are registered. While molecules are fragmented in parallel, fragments get registered strictly in
+ * the order of the input rows, which makes IDs independent of thread scheduling. Looking up,
+ * if a fragment is known already, is allowed concurrently to registering.
+ *
+ * @author agent
+ */
+public class FragmentRegistry {
+
+	//
+	// Members
+	//
+
+	/** All registered fragments, hashed by their key. */
+	private final Map<FragmentKey, Fragment> m_mapFragments = new ConcurrentHashMap<FragmentKey, Fragment>();
+
+	/** All registered fragments in the order of their IDs. Only accessed by the registering thread. */
+	private final List<Fragment> m_listFragments = new ArrayList<Fragment>();
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Determines, if a fragment is registered already. This method can be called concurrently.
+	 *
+	 * @param key Fragment key. Must not be null.
+	 *
+	 * @return True, if registered. False otherwise.
+	 */
+	public boolean contains(final FragmentKey key) {
+		return m_mapFragments.containsKey(key);
+	}
+
+	/**
+	 * Registers the occurrence of a fragment in a molecule. If the fragment is not registered yet,
+	 * it gets the next ID and the passed in fragment molecule. Otherwise its count gets increased.
+	 * This method must always be called from the same thread or synchronized externally.
+	 *
+	 * @param key Fragment key. Must not be null.
+	 * @param molFragment Fragment molecule. Must not be null, if the fragment is not registered yet.
+	 * @param strSmiles SMILES of the fragment molecule.
+	 *
+	 * @return The registered fragment. Never null.
+	 */
+	public Fragment register(final FragmentKey key, final ROMol molFragment, final String strSmiles) {
+		Fragment fragment = m_mapFragments.get(key);
+
+		if (fragment == null) {
+			if (molFragment == null) {
+				throw new IllegalStateException("Fragment molecule is missing for a new fragment.");
+			}
+			fragment = new Fragment(m_listFragments.size() + 1, molFragment, strSmiles);
+			m_listFragments.add(fragment);
+			m_mapFragments.put(key, fragment);
+		}
+		else {
+			fragment.m_iCount++;
+		}
+
+		return fragment;
+	}
+
+	/**
+	 * Returns the number of registered fragments.
+	 *
+	 * @return Number of fragments.
+	 */
+	public int size() {
+		return m_listFragments.size();
+	}
+
+	/**
+	 * Returns a registered fragment.
+	 *
+	 * @param iIndex Index of the fragment, which is its ID - 1.
+	 *
+	 * @return Fragment.
+	 */
+	public Fragment get(final int iIndex) {
+		return m_listFragments.get(iIndex);
+	}
+
+	/**
+	 * Removes all fragments from the registry. Fragment molecules are not deleted.
+	 */
+	public void clear() {
+		m_mapFragments.clear();
+		m_listFragments.clear();
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Creates the key of a fragment from its path discriminators.
+	 *
+	 * @param discrims Path discriminators as calculated by RDKFuncs.calcPathDiscriminators().
+	 * 		Must not be null.
+	 *
+	 * @return Fragment key.
+	 */
+	public static FragmentKey createKey(final Int_Vect discrims) {
+		final int iSize = (int)discrims.size();
+		final int[] arrValues = new int[iSize];
+
+		for (int i = 0; i < iSize; i++) {
+			arrValues[i] = discrims.get(i);
+		}
+
+		return new FragmentKey(arrValues);
+	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * Immutable key of a fragment based on its path discriminators.
+	 */
+	public static final class FragmentKey {
+
+		/** The path discriminators. */
+		private final int[] m_arrValues;
+
+		/** The precalculated hash code. */
+		private final int m_iHashCode;
+
+		/**
+		 * Creates a new fragment key.
+		 *
+		 * @param arrValues Path discriminators. Used directly and not copied.
+		 */
+		FragmentKey(final int[] arrValues) {
+			m_arrValues = arrValues;
+			m_iHashCode = Arrays.hashCode(arrValues);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int hashCode() {
+			return m_iHashCode;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean equals(final Object obj) {
+			return (obj == this || (obj instanceof FragmentKey && ((FragmentKey)obj).m_iHashCode == m_iHashCode &&
+					Arrays.equals(((FragmentKey)obj).m_arrValues, m_arrValues)));
+		}
+	}
+
+	/**
+	 * A registered fragment with its ID and the number of molecules it was found in.
+	 */
+	public static final class Fragment {
+
+		/** The ID of the fragment starting at 1. */
+		private final int m_iId;
+
+		/** The fragment molecule. */
+		private final ROMol m_molFragment;
+
+		/** The SMILES of the fragment. */
+		private final String m_strSmiles;
+
+		/** Number of molecules containing the fragment. */
+		private int m_iCount;
+
+		/**
+		 * Creates a new fragment, which was found once.
+		 *
+		 * @param iId ID of the fragment.
+		 * @param molFragment Fragment molecule.
+		 * @param strSmiles SMILES of the fragment.
+		 */
+		private Fragment(final int iId, final ROMol molFragment, final String strSmiles) {
+			m_iId = iId;
+			m_molFragment = molFragment;
+			m_strSmiles = strSmiles;
+			m_iCount = 1;
+		}
+
+		/**
+		 * Returns the ID of the fragment.
+		 *
+		 * @return ID starting at 1.
+		 */
+		public int getId() {
+			return m_iId;
+		}
+
+		/**
+		 * Returns the fragment molecule.
+		 *
+		 * @return Fragment molecule.
+		 */
+		public ROMol getMolecule() {
+			return m_molFragment;
+		}
+
+		/**
+		 * Returns the SMILES of the fragment.
+		 *
+		 * @return SMILES.
+		 */
+		public String getSmiles() {
+			return m_strSmiles;
+		}
+
+		/**
+		 * Returns the number of molecules containing the fragment.
+		 *
+		 * @return Count.
+		 */
+		public int getCount() {
+			return m_iCount;
+		}
+	}
+
+	/**
+	 * The fragments found in one molecule in the order they were found, prepared in parallel
+	 * for registering them later in the order of input rows. Fragment molecules are
+	 * only prepared for fragments, which were not registered yet at that time.
+	 */
+	public static final class MoleculeFragments {
+
+		/** Fragment keys. */
+		private final List<FragmentKey> m_listKeys = new ArrayList<FragmentKey>();
+
+		/** Prepared fragment molecules or null. */
+		private final List<ROMol> m_listMolecules = new ArrayList<ROMol>();
+
+		/** SMILES of prepared fragment molecules or null. */
+		private final List<String> m_listSmiles = new ArrayList<String>();
+
+		/**
+		 * Adds a fragment found in the molecule.
+		 *
+		 * @param key Fragment key. Must not be null.
+		 * @param molFragment Prepared fragment molecule or null, if the fragment was registered already.
+		 * @param strSmiles SMILES of the prepared fragment molecule or null.
+		 */
+		public void add(final FragmentKey key, final ROMol molFragment, final String strSmiles) {
+			m_listKeys.add(key);
+			m_listMolecules.add(molFragment);
+			m_listSmiles.add(strSmiles);
+		}
+
+		/**
+		 * Returns the number of fragments found in the molecule.
+		 *
+		 * @return Number of fragments.
+		 */
+		public int size() {
+			return m_listKeys.size();
+		}
+
+		/**
+		 * Returns the key of a fragment.
+		 *
+		 * @param iIndex Fragment index.
+		 *
+		 * @return Fragment key.
+		 */
+		public FragmentKey getKey(final int iIndex) {
+			return m_listKeys.get(iIndex);
+		}
+
+		/**
+		 * Returns the prepared molecule of a fragment.
+		 *
+		 * @param iIndex Fragment index.
+		 *
+		 * @return Fragment molecule or null.
+		 */
+		public ROMol getMolecule(final int iIndex) {
+			return m_listMolecules.get(iIndex);
+		}
+
+		/**
+		 * Returns the SMILES of the prepared molecule of a fragment.
+		 *
+		 * @param iIndex Fragment index.
+		 *
+		 * @return SMILES or null.
+		 */
+		public String getSmiles(final int iIndex) {
+			return m_listSmiles.get(iIndex);
+		}
+
+		/**
+		 * Deletes all prepared fragment molecules, which are not used by the passed in registry.
+		 *
+		 * @param registry Registry with all used fragment molecules. Can be null to delete all.
+		 */
+		public void deleteUnused(final FragmentRegistry registry) {
+			for (int i = 0; i < m_listMolecules.size(); i++) {
+				final ROMol mol = m_listMolecules.get(i);
+				if (mol != null) {
+					final Fragment fragment = (registry == null ? null : registry.m_mapFragments.get(m_listKeys.get(i)));
+					if (fragment == null || fragment.getMolecule() != mol) {
+						mol.delete();
+					}
+					m_listMolecules.set(i, null);
+				}
+			}
+		}
+	}
+}
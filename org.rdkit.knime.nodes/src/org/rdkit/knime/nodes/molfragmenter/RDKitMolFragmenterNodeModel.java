@@ -49,7 +49,11 @@
 package org.rdkit.knime.nodes.molfragmenter;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.RDKit.Int_Int_Vect_List_Map;
 import org.RDKit.Int_Vect;
@@ -61,6 +65,8 @@ import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.RowKey;
 import org.knime.core.data.collection.CollectionCellFactory;
 import org.knime.core.data.collection.ListCell;
 import org.knime.core.data.container.ColumnRearranger;
@@ -76,6 +82,10 @@ import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.rdkit.knime.nodes.AbstractRDKitCalculatorNodeModel;
 import org.rdkit.knime.nodes.AbstractRDKitCellFactory;
+import org.rdkit.knime.nodes.AbstractRDKitNodeModel;
+import org.rdkit.knime.nodes.molfragmenter.FragmentRegistry.Fragment;
+import org.rdkit.knime.nodes.molfragmenter.FragmentRegistry.FragmentKey;
+import org.rdkit.knime.nodes.molfragmenter.FragmentRegistry.MoleculeFragments;
 import org.rdkit.knime.types.RDKitAdapterCell;
 import org.rdkit.knime.types.RDKitMolCellFactory;
 import org.rdkit.knime.types.RDKitMolValue;
@@ -124,17 +134,15 @@ public class RDKitMolFragmenterNodeModel extends AbstractRDKitCalculatorNodeMode
 	// Internals
 	//
 
-	/** Stores the indices of the fragments that have been found so far. */
-	private final List<Int_Vect> m_listFragsSeen = new ArrayList<Int_Vect>();
+	/** Stores the fragments that have been found so far with their IDs and occurrence counts. */
+	private final FragmentRegistry m_registry = new FragmentRegistry();
 
-	/** Stores the molecules of the fragments that have been found so far. */
-	private final List<ROMol> m_listFragsMol = new ArrayList<ROMol>();
-
-	/** Stores the smiles of the fragments that have been found so far. */
-	private final List<String> m_listSmiles = new ArrayList<String>();
-
-	/** Stores the occurrence count of a fragment that has been found. */
-	private final List<Integer> m_listFragCounts = new ArrayList<Integer>();
+	/**
+	 * Stores the fragments of molecules, which were found in parallel, until they
+	 * get registered in the order of the input rows.
+	 */
+	private final Map<RowKey, MoleculeFragments> m_mapPendingFragments =
+			new ConcurrentHashMap<RowKey, MoleculeFragments>();
 
 	//
 	// Constructors
@@ -283,82 +291,54 @@ public class RDKitMolFragmenterNodeModel extends AbstractRDKitCalculatorNodeMode
 				@Override
 				public DataCell[] process(final InputDataInfo[] arrInputDataInfo, final DataRow row, final long lUniqueWaveId) throws Exception {
 					final ROMol mol = markForCleanup(arrInputDataInfo[INPUT_COLUMN_MOL].getROMol(row), lUniqueWaveId);
-					final List<IntCell> fragsHere = new ArrayList<IntCell>();
+					final MoleculeFragments fragments = new MoleculeFragments();
 
 					// Only for non-missing cells we do the calculations
 					if (mol != null) {
 
 						// Decompose the molecule
-						final Int_Int_Vect_List_Map pathMap = RDKFuncs.findAllSubgraphsOfLengthsMtoN(
-								mol, iMinPathLength, iMaxPathLength);
+						final Int_Int_Vect_List_Map pathMap = markForCleanup(RDKFuncs.findAllSubgraphsOfLengthsMtoN(
+								mol, iMinPathLength, iMaxPathLength), lUniqueWaveId);
+						final Set<FragmentKey> setCache = new HashSet<FragmentKey>();
 
 						for (int length = iMinPathLength; length <= iMaxPathLength; length++) {
 
 							final Int_Vect_List paths = pathMap.get(length);
-							final List<Int_Vect> lCache = new ArrayList<Int_Vect>();
+							setCache.clear();
 
 							for (int i = 0; i < paths.size(); ++i) {
 								final Int_Vect ats = paths.get(i);
-								int idx;
 
 								// If we've seen this fragment in this molecule already,
 								// go ahead and punt on it
-								final Int_Vect discrims = RDKFuncs.calcPathDiscriminators(mol, ats);
-								idx = -1;
-								// .indexOf() doesn't use the correct .equals() method
-								// with my SWIG classes, so we have to hack this:
-								for (int iidx = 0; iidx < lCache.size(); iidx++) {
-									if (lCache.get(iidx).equals(discrims)) {
-										idx = iidx;
-										break;
-									}
-								}
-
-								if (idx >= 0) {
+								final FragmentKey key = FragmentRegistry.createKey(markForCleanup(
+										RDKFuncs.calcPathDiscriminators(mol, ats), lUniqueWaveId));
+								if (!setCache.add(key)) {
 									continue;
 								}
-								else {
-									lCache.add(discrims);
-								}
-
-								idx = -1;
 
-								// Check, if we have seen this fragment already
-								for (int iidx = 0; iidx < m_listFragsSeen.size(); iidx++) {
-									if (m_listFragsSeen.get(iidx).equals(discrims)) {
-										idx = iidx;
-										break;
-									}
+								// Prepare fragment details only, if no other molecule was registered with it yet -
+								// they are deleted later, if another molecule registers it first
+								if (m_registry.contains(key)) {
+									fragments.add(key, null, null);
 								}
-
-								// Fragment found - just increase the counter
-								if (idx >= 0) {
-									m_listFragCounts.set(idx,
-											(m_listFragCounts.get(idx)) + 1);
-								}
-								// Fragment encountered the first time - analyze more details
 								else {
-									idx = m_listFragsSeen.size();
-									m_listFragsSeen.add(discrims);
-									// Don't use the uniqueWaveId for cleanup as we need this mol until the very end of processing
-									final ROMol frag = markForCleanup(RDKFuncs.pathToSubmol(mol, ats));
-									m_listFragsMol.add(frag);
-									final String smiles = RDKFuncs.MolToSmiles(frag);
-									m_listSmiles.add(smiles);
-									m_listFragCounts.add(1);
+									final ROMol frag = RDKFuncs.pathToSubmol(mol, ats);
+									fragments.add(key, frag, RDKFuncs.MolToSmiles(frag));
 								}
-
-								fragsHere.add(new IntCell(idx + 1));
 							}
 						}
 					}
 
-					return new DataCell[] { CollectionCellFactory.createListCell(fragsHere) };
+					// Fragments get registered in the order of the input rows after processing
+					m_mapPendingFragments.put(row.getKey(), fragments);
+
+					return new DataCell[] { DataType.getMissingCell() };
 				}
 			};
 
 			// Enable or disable this factory to allow parallel processing
-			factory.setAllowParallelProcessing(false); // Strictly forbidden for this algorithm
+			factory.setAllowParallelProcessing(true);
 
 			break;
 		}
@@ -378,16 +358,71 @@ public class RDKitMolFragmenterNodeModel extends AbstractRDKitCalculatorNodeMode
 			final InputDataInfo[][] arrInputDataInfo, final ExecutionContext exec)
 					throws Exception {
 		// Clean all old intermediate results in case there are still any
-		m_listFragsSeen.clear();
-		m_listFragsMol.clear();
-		m_listSmiles.clear();
-		m_listFragCounts.clear();
+		cleanupIntermediateResults();
+
+		// Contains the input rows with the fragment indices
+		final BufferedDataContainer molTable = exec.createDataContainer(
+				getOutputTableSpec(1, getInputTableSpecs(inData)));
+
+		// Setup the factory to find fragments in parallel
+		final AbstractRDKitCellFactory factory = createOutputFactories(1, inData[0].getDataTableSpec())[0];
+		factory.setInputDataInfos(arrInputDataInfo[0]);
+
+		final AbstractRDKitNodeModel.ResultProcessor resultProcessor =
+				new AbstractRDKitNodeModel.ResultProcessor() {
+
+			/**
+			 * {@inheritDoc}
+			 * This implementation registers the fragments found in the molecule. As results are processed
+			 * in the order of the input rows, fragment indices are always the same, independent
+			 * of the order, in which molecules were fragmented.
+			 */
+			@Override
+			public void processResults(final long rowIndex, final DataRow row, final DataCell[] arrResults) {
+				DataCell cellFragments = arrResults[0];
+				final MoleculeFragments fragments = m_mapPendingFragments.remove(row.getKey());
+
+				// Fragmenting succeeded
+				if (fragments != null) {
+					final int iCount = fragments.size();
+					final List<IntCell> fragsHere = new ArrayList<IntCell>(iCount);
+
+					for (int i = 0; i < iCount; i++) {
+						final ROMol frag = fragments.getMolecule(i);
+						final Fragment fragment = m_registry.register(fragments.getKey(i), frag,
+								fragments.getSmiles(i));
+
+						// Don't use a wave for cleanup as we need this mol until the very end of processing
+						if (frag != null && fragment.getMolecule() == frag) {
+							markForCleanup(frag);
+						}
+
+						fragsHere.add(new IntCell(fragment.getId()));
+					}
+
+					fragments.deleteUnused(m_registry);
+					cellFragments = CollectionCellFactory.createListCell(fragsHere);
+				}
 
-		// Setup the factory and the rearranger to do the work
-		final ColumnRearranger rearranger = createColumnRearranger(1, inData[0].getDataTableSpec());
+				molTable.addRowToTable(AbstractRDKitCellFactory.mergeDataCells(row,
+						new DataCell[] { cellFragments }, -1));
+			}
+		};
+
+		// Runs the multiple threads to do the work
+		try {
+			new AbstractRDKitNodeModel.ParallelProcessor(factory, resultProcessor, inData[0].size(),
+					getWarningConsolidator(), exec).run(inData[0]);
+		}
+		catch (final Exception e) {
+			exec.checkCanceled();
+			throw e;
+		}
+
+		molTable.close();
 
 		// Creates the mol table and generates intermediate results
-		return new BufferedDataTable[] { null, exec.createColumnRearrangeTable(inData[0], rearranger, exec) };
+		return new BufferedDataTable[] { null, molTable.getTable() };
 	}
 
 	/**
@@ -406,20 +441,21 @@ public class RDKitMolFragmenterNodeModel extends AbstractRDKitCalculatorNodeMode
 				.createDataContainer(getOutputTableSpec(0,
 						getInputTableSpecs(inData)));
 
-		final int iTotalCount = m_listFragsSeen.size();
+		final int iTotalCount = m_registry.size();
 		final int iColumnNumber = newTableData.getTableSpec().getNumColumns();
 
 		// For each found fragment add a row
 		for (int i = 0; i < iTotalCount; i++) {
-			final ROMol molFragment = m_listFragsMol.get(i);
+			final Fragment fragment = m_registry.get(i);
+			final ROMol molFragment = fragment.getMolecule();
 
 			// Create the row
 			final DataCell[] cells = new DataCell[iColumnNumber];
-			cells[0] = new IntCell(i + 1);
-			cells[1] = RDKitMolCellFactory.createRDKitAdapterCell(molFragment, m_listSmiles.get(i));
-			cells[2] = new StringCell(m_listSmiles.get(i));
+			cells[0] = new IntCell(fragment.getId());
+			cells[1] = RDKitMolCellFactory.createRDKitAdapterCell(molFragment, fragment.getSmiles());
+			cells[2] = new StringCell(fragment.getSmiles());
 			cells[3] = new IntCell((int)molFragment.getNumBonds());
-			cells[4] = new IntCell(m_listFragCounts.get(i));
+			cells[4] = new IntCell(fragment.getCount());
 			final DataRow row = new DefaultRow("frag_" + (i + 1), cells);
 			newTableData.addRowToTable(row);
 
@@ -440,11 +476,12 @@ public class RDKitMolFragmenterNodeModel extends AbstractRDKitCalculatorNodeMode
 	 */
 	@Override
 	protected void cleanupIntermediateResults() {
-		// Clean all old intermediate results to free memory - they are never null
-		m_listFragsSeen.clear();
-		m_listFragsMol.clear();
-		m_listSmiles.clear();
-		m_listFragCounts.clear();
+		// Clean all old intermediate results to free memory - registered fragment molecules are marked for cleanup
+		for (final MoleculeFragments fragments : m_mapPendingFragments.values()) {
+			fragments.deleteUnused(null);
+		}
+		m_mapPendingFragments.clear();
+		m_registry.clear();
 	}
 
 	/**
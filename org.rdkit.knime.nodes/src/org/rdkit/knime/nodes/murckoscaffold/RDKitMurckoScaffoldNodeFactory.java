@@ -47,9 +47,13 @@
  */
 package org.rdkit.knime.nodes.murckoscaffold;
 
+import java.util.Optional;
+
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ConfigurableNodeFactory;
 import org.knime.core.node.NodeDialogPane;
-import org.knime.core.node.NodeFactory;
 import org.knime.core.node.NodeView;
+import org.knime.core.node.context.NodeCreationConfiguration;
 
 /**
  * <code>NodeFactory</code> for the RDKit based "RDKitMurckoScaffold" Node.
@@ -58,13 +62,45 @@ import org.knime.core.node.NodeView;
  * @author Manuel Schwarze
  */
 public class RDKitMurckoScaffoldNodeFactory extends
-NodeFactory<RDKitMurckoScaffoldNodeModel> {
+ConfigurableNodeFactory<RDKitMurckoScaffoldNodeModel> {
+
+	//
+	// Constants
+	//
+
+	/** The input table ports group id. */
+	protected static final String INPUT_PORT_GRP_ID_INPUT_TABLE = "Data";
+
+	/** The output table ports group id. */
+	protected static final String OUTPUT_PORT_GRP_ID_OUTPUT_TABLE = "Data with scaffold column";
+
+	/** The optional unique scaffolds output ports group id. */
+	protected static final String OUTPUT_PORT_GRP_ID_UNIQUE_SCAFFOLDS = "Unique scaffolds";
+
+	//
+	// Protected Methods
+	//
+
+	/**
+	 * The unique scaffolds output port is optional, so that the node supports streaming
+	 * as long as it is not added.
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Optional<PortsConfigurationBuilder> createPortsConfigBuilder() {
+		final PortsConfigurationBuilder result = new PortsConfigurationBuilder();
+		result.addFixedInputPortGroup(INPUT_PORT_GRP_ID_INPUT_TABLE, BufferedDataTable.TYPE);
+		result.addFixedOutputPortGroup(OUTPUT_PORT_GRP_ID_OUTPUT_TABLE, BufferedDataTable.TYPE);
+		result.addOptionalOutputPortGroup(OUTPUT_PORT_GRP_ID_UNIQUE_SCAFFOLDS, BufferedDataTable.TYPE);
+
+		return Optional.of(result);
+	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected NodeDialogPane createNodeDialogPane() {
+	protected NodeDialogPane createNodeDialogPane(final NodeCreationConfiguration creationConfig) {
 		return new RDKitMurckoScaffoldNodeDialog();
 	}
 
@@ -78,8 +114,8 @@ NodeFactory<RDKitMurckoScaffoldNodeModel> {
 	 * @see org.rdkit.knime.nodes.AbstractRDKitNodeModel
 	 */
 	@Override
-	public RDKitMurckoScaffoldNodeModel createNodeModel() {
-		return new RDKitMurckoScaffoldNodeModel();
+	protected RDKitMurckoScaffoldNodeModel createNodeModel(final NodeCreationConfiguration creationConfig) {
+		return new RDKitMurckoScaffoldNodeModel(creationConfig);
 	}
 
 	/**
@@ -56,9 +56,18 @@ import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.collection.ListCell;
 import org.knime.core.data.container.ColumnRearranger;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeLogger;
+import org.knime.core.node.context.NodeCreationConfiguration;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObjectSpec;
@@ -66,6 +75,7 @@ import org.knime.core.node.streamable.PartitionInfo;
 import org.knime.core.node.streamable.StreamableOperator;
 import org.rdkit.knime.nodes.AbstractRDKitCalculatorNodeModel;
 import org.rdkit.knime.nodes.AbstractRDKitCellFactory;
+import org.rdkit.knime.nodes.AbstractRDKitNodeModel;
 import org.rdkit.knime.types.RDKitAdapterCell;
 import org.rdkit.knime.types.RDKitMolCellFactory;
 import org.rdkit.knime.types.RDKitMolValue;
@@ -92,10 +102,19 @@ public class RDKitMurckoScaffoldNodeModel extends AbstractRDKitCalculatorNodeMod
 	/** Input data info index for Mol value. */
 	protected static final int INPUT_COLUMN_MOL = 0;
 
+	/** Result cell index of the scaffold column when aggregating scaffolds. */
+	private static final int RESULT_CELL_SCAFFOLD = 1;
+
+	/** Result cell index of the generic framework when aggregating scaffolds. */
+	private static final int RESULT_CELL_FRAMEWORK = 2;
+
 	//
 	// Members
 	//
 
+	/** The port index of the optional unique scaffolds table or -1, if the port was not added. */
+	private final int m_iUniqueScaffoldsPortIdx;
+
 	/** Settings model for the column name of the input column. */
 	private final SettingsModelString m_modelInputColumnName =
 			registerSettings(RDKitMurckoScaffoldNodeDialog.createInputColumnNameModel(), "input_column", "first_column");
@@ -117,10 +136,17 @@ public class RDKitMurckoScaffoldNodeModel extends AbstractRDKitCalculatorNodeMod
 	//
 
 	/**
-	 * Create new node model with one data in- and one out-port.
+	 * Create new node model with one data in- and one out-port and an optional
+	 * out-port for unique scaffolds.
+	 * 
+	 * @param nodeCreationConfig Node creation configuration. Must not be null.
 	 */
-	RDKitMurckoScaffoldNodeModel() {
-		super(1, 1);
+	RDKitMurckoScaffoldNodeModel(final NodeCreationConfiguration nodeCreationConfig) {
+		super(nodeCreationConfig);
+
+		final int[] arrUniqueScaffoldsPorts = getOutputTablePortIndexes(nodeCreationConfig,
+				RDKitMurckoScaffoldNodeFactory.OUTPUT_PORT_GRP_ID_UNIQUE_SCAFFOLDS);
+		m_iUniqueScaffoldsPortIdx = (arrUniqueScaffoldsPorts.length > 0 ? arrUniqueScaffoldsPorts[0] : -1);
 	}
 
 	//
@@ -224,52 +250,117 @@ public class RDKitMurckoScaffoldNodeModel extends AbstractRDKitCalculatorNodeMod
 			.createSpec();
 
 			// Generate factory
-			arrOutputFactories[0] = new AbstractRDKitCellFactory(this, AbstractRDKitCellFactory.RowFailurePolicy.DeliverEmptyValues,
-					getWarningConsolidator(), null, arrOutputSpec) {
-
-				@Override
-				/**
-				 * This method implements the calculation logic to generate the new cells based on
-				 * the input made available in the first (and second) parameter.
-				 * {@inheritDoc}
-				 */
-				public DataCell[] process(final InputDataInfo[] arrInputDataInfo, final DataRow row, final long lUniqueWaveId) throws Exception {
-					DataCell outputCell = null;
-
-					// Calculate the new cells
-					final ROMol mol = markForCleanup(arrInputDataInfo[INPUT_COLUMN_MOL].getROMol(row), lUniqueWaveId);
-					final ROMol temp1 = markForCleanup(RDKFuncs.MurckoDecompose(mol), lUniqueWaveId);
-					final RWMol temp2 = markForCleanup(new RWMol(temp1), lUniqueWaveId);
-
-					if (temp2.getNumAtoms() > 0) {
-						RDKFuncs.sanitizeMol(temp2);
-
-						if(m_modelDoFrameworks.getBooleanValue()){
-
-							for (int aidx=0; aidx<temp2.getNumAtoms(); aidx++){
-								temp2.getAtomWithIdx(aidx).setAtomicNum(6);
-								temp2.getAtomWithIdx(aidx).setIsAromatic(false);
-								temp2.getAtomWithIdx(aidx).setIsotope(0);
-								temp2.getAtomWithIdx(aidx).setNoImplicit(false);
-							}
-
-							for (int bidx=0; bidx<temp2.getNumBonds(); bidx++){
-								temp2.getBondWithIdx(bidx).setBondType(BondType.SINGLE);
-								temp2.getBondWithIdx(bidx).setIsAromatic(false);
-							}
-						}
+			arrOutputFactories[0] = createScaffoldFactory(arrOutputSpec, false);
+			arrOutputFactories[0].setAllowParallelProcessing(true);
+		}
 
-						outputCell = RDKitMolCellFactory.createRDKitAdapterCell(temp2);
-					}
+		return (arrOutputFactories == null ? new AbstractRDKitCellFactory[0] : arrOutputFactories);
+	}
 
-					return new DataCell[] { outputCell };
-				}
-			};
+	/**
+	 * {@inheritDoc}
+	 * This implementation delivers additionally the specification of the unique scaffolds table.
+	 */
+	@Override
+	protected DataTableSpec getOutputTableSpec(final int outPort,
+			final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+		DataTableSpec spec = null;
+
+		if (outPort == m_iUniqueScaffoldsPortIdx) {
+			spec = new DataTableSpec("Unique scaffolds", new DataColumnSpec[] {
+					new DataColumnSpecCreator("Scaffold", RDKitAdapterCell.RAW_TYPE).createSpec(),
+					new DataColumnSpecCreator("Level", StringCell.TYPE).createSpec(),
+					new DataColumnSpecCreator("Count", IntCell.TYPE).createSpec(),
+					new DataColumnSpecCreator("Row IDs", ListCell.getCollectionType(StringCell.TYPE)).createSpec()
+			});
+		}
+		else {
+			spec = super.getOutputTableSpec(outPort, inSpecs);
+		}
 
-			arrOutputFactories[0].setAllowParallelProcessing(true);
+		return spec;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * If the unique scaffolds port was added, scaffolds and generic frameworks are calculated
+	 * in parallel and aggregated in the order of the input rows while the scaffold table
+	 * gets written. This avoids an additional pass over the input table.
+	 */
+	@Override
+	protected BufferedDataTable[] processing(final BufferedDataTable[] inData, final InputDataInfo[][] arrInputDataInfo,
+			final ExecutionContext exec) throws Exception {
+		if (m_iUniqueScaffoldsPortIdx < 0) {
+			return super.processing(inData, arrInputDataInfo, exec);
 		}
 
-		return (arrOutputFactories == null ? new AbstractRDKitCellFactory[0] : arrOutputFactories);
+		final DataTableSpec[] arrOutSpecs = getOutputTableSpecs(inData);
+		final ScaffoldAggregator aggregator = new ScaffoldAggregator();
+		final int iColumnToRemove = (m_modelRemoveSourceColumns.getBooleanValue() ?
+				arrInputDataInfo[0][INPUT_COLUMN_MOL].getColumnIndex() : -1);
+
+		// Contains the rows with the result column
+		final BufferedDataContainer newTableData = exec.createDataContainer(arrOutSpecs[0]);
+
+		// Creates a factory, which delivers the scaffold and the generic framework in addition to the result cell
+		final String strNewColumnName = m_modelNewColumnName.getStringValue();
+		final AbstractRDKitCellFactory factory = createScaffoldFactory(new DataColumnSpec[] {
+				new DataColumnSpecCreator(strNewColumnName, RDKitAdapterCell.RAW_TYPE).createSpec(),
+				new DataColumnSpecCreator(strNewColumnName + " (Scaffold)", RDKitAdapterCell.RAW_TYPE).createSpec(),
+				new DataColumnSpecCreator(strNewColumnName + " (Framework)", RDKitAdapterCell.RAW_TYPE).createSpec()
+		}, true);
+		factory.setInputDataInfos(arrInputDataInfo[0]);
+
+		// Adds results to the table and aggregates scaffolds in the order of the input rows
+		final AbstractRDKitNodeModel.ResultProcessor resultProcessor = new AbstractRDKitNodeModel.ResultProcessor() {
+
+			/**
+			 * {@inheritDoc}
+			 * This implementation adds the result cell to the table and aggregates the scaffolds.
+			 */
+			@Override
+			public void processResults(final long rowIndex, final DataRow row, final DataCell[] arrResults) {
+				newTableData.addRowToTable(AbstractRDKitCellFactory.mergeDataCells(row,
+						new DataCell[] { arrResults[0] }, iColumnToRemove));
+				aggregator.add(row.getKey(), arrResults[RESULT_CELL_SCAFFOLD], arrResults[RESULT_CELL_FRAMEWORK]);
+			}
+		};
+
+		// Runs the multiple threads to do the work
+		try {
+			new AbstractRDKitNodeModel.ParallelProcessor(factory, resultProcessor, inData[0].size(),
+					getWarningConsolidator(), exec).run(inData[0]);
+		}
+		catch (final Exception e) {
+			exec.checkCanceled();
+			throw e;
+		}
+
+		newTableData.close();
+
+		// Create the unique scaffolds table, first all scaffolds, then all frameworks
+		final BufferedDataContainer tableUniqueScaffolds =
+				exec.createDataContainer(arrOutSpecs[m_iUniqueScaffoldsPortIdx]);
+		int iScaffold = 0;
+		for (final ScaffoldAggregator.ScaffoldGroup group : aggregator.getScaffolds()) {
+			tableUniqueScaffolds.addRowToTable(createUniqueScaffoldRow(
+					ScaffoldAggregator.LEVEL_SCAFFOLD + "_" + (++iScaffold), group, ScaffoldAggregator.LEVEL_SCAFFOLD));
+		}
+		int iFramework = 0;
+		for (final ScaffoldAggregator.ScaffoldGroup group : aggregator.getFrameworks()) {
+			tableUniqueScaffolds.addRowToTable(createUniqueScaffoldRow(
+					ScaffoldAggregator.LEVEL_FRAMEWORK + "_" + (++iFramework), group, ScaffoldAggregator.LEVEL_FRAMEWORK));
+		}
+		tableUniqueScaffolds.close();
+
+		LOGGER.debug("Found " + iScaffold + " unique scaffolds and " + iFramework + " unique frameworks.");
+		aggregator.clear();
+
+		final BufferedDataTable[] arrResult = new BufferedDataTable[arrOutSpecs.length];
+		arrResult[0] = newTableData.getTable();
+		arrResult[m_iUniqueScaffoldsPortIdx] = tableUniqueScaffolds.getTable();
+
+		return arrResult;
 	}
 
 	/**
@@ -289,4 +380,95 @@ public class RDKitMurckoScaffoldNodeModel extends AbstractRDKitCalculatorNodeMod
 
 		return result;
 	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Creates the factory, which calculates the Murcko scaffold or the generic framework of a molecule.
+	 * 
+	 * @param arrOutputSpec Specifications of the result cells. Must not be null.
+	 * @param bAggregate Set to true to deliver additionally the scaffold and the generic framework
+	 * 		at the cell indexes {@link #RESULT_CELL_SCAFFOLD} and {@link #RESULT_CELL_FRAMEWORK}.
+	 * 
+	 * @return Factory.
+	 */
+	private AbstractRDKitCellFactory createScaffoldFactory(final DataColumnSpec[] arrOutputSpec,
+			final boolean bAggregate) {
+		final boolean bDoFrameworks = m_modelDoFrameworks.getBooleanValue();
+
+		return new AbstractRDKitCellFactory(this, AbstractRDKitCellFactory.RowFailurePolicy.DeliverEmptyValues,
+				getWarningConsolidator(), null, arrOutputSpec) {
+
+			@Override
+			/**
+			 * This method implements the calculation logic to generate the new cells based on
+			 * the input made available in the first (and second) parameter.
+			 * {@inheritDoc}
+			 */
+			public DataCell[] process(final InputDataInfo[] arrInputDataInfo, final DataRow row, final long lUniqueWaveId) throws Exception {
+				DataCell outputCell = null;
+				DataCell scaffoldCell = null;
+				DataCell frameworkCell = null;
+
+				// Calculate the new cells
+				final ROMol mol = markForCleanup(arrInputDataInfo[INPUT_COLUMN_MOL].getROMol(row), lUniqueWaveId);
+				final ROMol temp1 = markForCleanup(RDKFuncs.MurckoDecompose(mol), lUniqueWaveId);
+				final RWMol temp2 = markForCleanup(new RWMol(temp1), lUniqueWaveId);
+
+				if (temp2.getNumAtoms() > 0) {
+					RDKFuncs.sanitizeMol(temp2);
+
+					if (bAggregate) {
+						scaffoldCell = RDKitMolCellFactory.createRDKitAdapterCell(temp2);
+					}
+
+					if (bDoFrameworks || bAggregate) {
+
+						for (int aidx=0; aidx<temp2.getNumAtoms(); aidx++){
+							temp2.getAtomWithIdx(aidx).setAtomicNum(6);
+							temp2.getAtomWithIdx(aidx).setIsAromatic(false);
+							temp2.getAtomWithIdx(aidx).setIsotope(0);
+							temp2.getAtomWithIdx(aidx).setNoImplicit(false);
+						}
+
+						for (int bidx=0; bidx<temp2.getNumBonds(); bidx++){
+							temp2.getBondWithIdx(bidx).setBondType(BondType.SINGLE);
+							temp2.getBondWithIdx(bidx).setIsAromatic(false);
+						}
+
+						if (bAggregate) {
+							frameworkCell = RDKitMolCellFactory.createRDKitAdapterCell(temp2);
+						}
+					}
+
+					if (bAggregate) {
+						outputCell = (bDoFrameworks ? frameworkCell : scaffoldCell);
+					}
+					else {
+						outputCell = RDKitMolCellFactory.createRDKitAdapterCell(temp2);
+					}
+				}
+
+				return (bAggregate ? new DataCell[] { outputCell, scaffoldCell, frameworkCell } :
+					new DataCell[] { outputCell });
+			}
+		};
+	}
+
+	/**
+	 * Creates a row of the unique scaffolds table.
+	 * 
+	 * @param strRowKey Row key. Must not be null.
+	 * @param group Unique scaffold. Must not be null.
+	 * @param strLevel Level of the scaffold.
+	 * 
+	 * @return Data row.
+	 */
+	private DataRow createUniqueScaffoldRow(final String strRowKey, final ScaffoldAggregator.ScaffoldGroup group,
+			final String strLevel) {
+		return new DefaultRow(new RowKey(strRowKey), group.getScaffold(), new StringCell(strLevel),
+				new IntCell(group.getCount()), group.createRowKeysCell());
+	}
 }
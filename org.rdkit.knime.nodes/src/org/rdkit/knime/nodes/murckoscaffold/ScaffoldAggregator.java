@@ -0,0 +1,218 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.murckoscaffold;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.collection.CollectionCellFactory;
+import org.knime.core.data.def.StringCell;
+import org.rdkit.knime.types.RDKitMolValue;
+
+/**
+ * Aggregates Murcko scaffolds and their generic frameworks of all input rows into unique
+ * scaffolds with counts and member row keys. Scaffolds are identified by their canonical SMILES,
+ * which is calculated in parallel together with the scaffold cells, so that adding a row
+ * is just a hash map lookup. Rows must be added in the order of the input table, which makes
+ * the order of unique scaffolds (by first occurrence) and of their member rows deterministic.
+ *
+ * @author agent
+ */
+public class ScaffoldAggregator {
+
+	//
+	// Constants
+	//
+
+	/** Level name of Murcko scaffolds. */
+	public static final String LEVEL_SCAFFOLD = "Scaffold";
+
+	/** Level name of generic frameworks. */
+	public static final String LEVEL_FRAMEWORK = "Framework";
+
+	//
+	// Members
+	//
+
+	/** Unique scaffolds by canonical SMILES in the order of their first occurrence. */
+	private final Map<String, ScaffoldGroup> m_mapScaffolds = new LinkedHashMap<String, ScaffoldGroup>();
+
+	/** Unique frameworks by canonical SMILES in the order of their first occurrence. */
+	private final Map<String, ScaffoldGroup> m_mapFrameworks = new LinkedHashMap<String, ScaffoldGroup>();
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Adds the scaffold and framework of an input row. Missing cells, e.g. for molecules
+	 * without ring systems, are not counted. This method must be called in the order
+	 * of the input rows and always from the same thread or synchronized externally.
+	 *
+	 * @param rowKey Key of the input row. Must not be null.
+	 * @param cellScaffold RDKit cell of the Murcko scaffold. Can be null or missing.
+	 * @param cellFramework RDKit cell of the generic framework. Can be null or missing.
+	 */
+	public void add(final RowKey rowKey, final DataCell cellScaffold, final DataCell cellFramework) {
+		add(m_mapScaffolds, rowKey, cellScaffold);
+		add(m_mapFrameworks, rowKey, cellFramework);
+	}
+
+	/**
+	 * Returns all unique scaffolds in the order of their first occurrence.
+	 *
+	 * @return Unique scaffolds. Never null.
+	 */
+	public Collection<ScaffoldGroup> getScaffolds() {
+		return Collections.unmodifiableCollection(m_mapScaffolds.values());
+	}
+
+	/**
+	 * Returns all unique generic frameworks in the order of their first occurrence.
+	 *
+	 * @return Unique frameworks. Never null.
+	 */
+	public Collection<ScaffoldGroup> getFrameworks() {
+		return Collections.unmodifiableCollection(m_mapFrameworks.values());
+	}
+
+	/**
+	 * Removes all aggregated scaffolds.
+	 */
+	public void clear() {
+		m_mapScaffolds.clear();
+		m_mapFrameworks.clear();
+	}
+
+	//
+	// Static Private Methods
+	//
+
+	/**
+	 * Adds a row to the group of the passed in scaffold cell.
+	 *
+	 * @param map Map of groups. Must not be null.
+	 * @param rowKey Key of the input row.
+	 * @param cell RDKit cell of the scaffold. Can be null or missing.
+	 */
+	private static void add(final Map<String, ScaffoldGroup> map, final RowKey rowKey, final DataCell cell) {
+		if (cell != null && !cell.isMissing() && cell instanceof RDKitMolValue) {
+			final String strSmiles = ((RDKitMolValue)cell).getSmilesValue();
+			ScaffoldGroup group = map.get(strSmiles);
+			if (group == null) {
+				group = new ScaffoldGroup(cell);
+				map.put(strSmiles, group);
+			}
+			group.m_listRowKeys.add(rowKey);
+		}
+	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * A unique scaffold with all rows it was found for.
+	 */
+	public static final class ScaffoldGroup {
+
+		/** RDKit cell of the first occurrence of the scaffold. */
+		private final DataCell m_cellScaffold;
+
+		/** Keys of all member rows in the order of the input table. */
+		private final List<RowKey> m_listRowKeys = new ArrayList<RowKey>(2);
+
+		/**
+		 * Creates a new group.
+		 *
+		 * @param cellScaffold RDKit cell of the scaffold.
+		 */
+		private ScaffoldGroup(final DataCell cellScaffold) {
+			m_cellScaffold = cellScaffold;
+		}
+
+		/**
+		 * Returns the RDKit cell of the scaffold.
+		 *
+		 * @return Scaffold cell.
+		 */
+		public DataCell getScaffold() {
+			return m_cellScaffold;
+		}
+
+		/**
+		 * Returns the number of rows having this scaffold.
+		 *
+		 * @return Count.
+		 */
+		public int getCount() {
+			return m_listRowKeys.size();
+		}
+
+		/**
+		 * Creates a list cell with the keys of all rows having this scaffold.
+		 *
+		 * @return List cell of string cells.
+		 */
+		public DataCell createRowKeysCell() {
+			final List<DataCell> listCells = new ArrayList<DataCell>(m_listRowKeys.size());
+			for (final RowKey rowKey : m_listRowKeys) {
+				listCells.add(new StringCell(rowKey.getString()));
+			}
+
+			return CollectionCellFactory.createListCell(listCells);
+		}
+	}
+}
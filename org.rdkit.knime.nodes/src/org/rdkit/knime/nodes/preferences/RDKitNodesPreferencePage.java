@@ -60,8 +60,12 @@ import org.eclipse.core.runtime.IExtension;
 import org.eclipse.core.runtime.IExtensionPoint;
 import org.eclipse.core.runtime.IExtensionRegistry;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.preference.BooleanFieldEditor;
+import org.eclipse.jface.preference.DirectoryFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.ui.IWorkbench;
@@ -80,7 +84,10 @@ import org.rdkit.knime.nodes.RDKitNodePlugin;
 import org.rdkit.knime.nodes.TableViewSupport;
 import org.rdkit.knime.properties.FingerprintSettingsHeaderPropertyHandler;
 import org.rdkit.knime.util.EclipseUtils;
+import org.rdkit.knime.util.FilterCatalogCache;
+import org.rdkit.knime.util.IncrementalResultStore;
 import org.rdkit.knime.util.PreferenceButton;
+import org.rdkit.knime.util.ResultCache;
 
 /**
  * This is the preference page for the RDKit chemistry type definition. It
@@ -104,6 +111,39 @@ implements IWorkbenchPreferencePage {
 	/** The id of this preference page. */
 	public static final String ID = "org.rdkit.knime.nodes.preferences";
 
+	/** The preference key prefix for the result cache. */
+	public static final String PREFIX_RESULT_CACHE = "resultCache.";
+
+	/** The preference key for enabling the persistent result cache. */
+	public static final String PREF_KEY_RESULT_CACHE_ENABLED = PREFIX_RESULT_CACHE + "enabled";
+
+	/** The preference key for the directory of the persistent result cache. */
+	public static final String PREF_KEY_RESULT_CACHE_DIRECTORY = PREFIX_RESULT_CACHE + "directory";
+
+	/** The preference key for the maximum size of the persistent result cache in MB. */
+	public static final String PREF_KEY_RESULT_CACHE_MAX_SIZE = PREFIX_RESULT_CACHE + "maxSize";
+
+	/** The preference key for enabling incremental execution of calculator nodes. */
+	public static final String PREF_KEY_INCREMENTAL_EXECUTION_ENABLED = PREFIX_RESULT_CACHE + "incrementalExecution";
+
+	/** The default setting for enabling the persistent result cache. */
+	public static final boolean DEFAULT_RESULT_CACHE_ENABLED = false;
+
+	/** The default directory of the persistent result cache. Empty means the state location of the plugin. */
+	public static final String DEFAULT_RESULT_CACHE_DIRECTORY = "";
+
+	/** The default maximum size of the persistent result cache in MB. */
+	public static final int DEFAULT_RESULT_CACHE_MAX_SIZE = 1024;
+
+	/** The default setting for enabling incremental execution of calculator nodes. */
+	public static final boolean DEFAULT_INCREMENTAL_EXECUTION_ENABLED = false;
+
+	/** The name of the cache sub directory in the state location of the plugin. */
+	private static final String RESULT_CACHE_DEFAULT_DIRECTORY_NAME = "resultCache";
+
+	/** The name of the sub directory of the result cache directory for incremental results. */
+	private static final String INCREMENTAL_RESULTS_DIRECTORY_NAME = "incremental";
+
 	//
 	// Globals
 	//
@@ -326,6 +366,74 @@ implements IWorkbenchPreferencePage {
          }
       };
       addField(btnSyncNow);
+
+      final BooleanFieldEditor editorResultCacheEnabled = new BooleanFieldEditor(PREF_KEY_RESULT_CACHE_ENABLED,
+            "Enable persistent result cache for all supporting calculator nodes", getFieldEditorParent());
+      addField(editorResultCacheEnabled);
+
+      final BooleanFieldEditor editorIncrementalExecutionEnabled = new BooleanFieldEditor(PREF_KEY_INCREMENTAL_EXECUTION_ENABLED,
+            "Enable incremental execution (calculate only new or changed rows) for all supporting calculator nodes", getFieldEditorParent());
+      addField(editorIncrementalExecutionEnabled);
+
+      final DirectoryFieldEditor editorResultCacheDirectory = new DirectoryFieldEditor(PREF_KEY_RESULT_CACHE_DIRECTORY,
+            "Result cache directory (empty for default): ", getFieldEditorParent());
+      editorResultCacheDirectory.setEmptyStringAllowed(true);
+      addField(editorResultCacheDirectory);
+
+      final IntegerFieldEditor editorResultCacheMaxSize = new IntegerFieldEditor(PREF_KEY_RESULT_CACHE_MAX_SIZE,
+            "Maximum result cache size (in MB): ", getFieldEditorParent());
+      editorResultCacheMaxSize.setValidRange(1, Integer.MAX_VALUE);
+      addField(editorResultCacheMaxSize);
+
+      final PreferenceButton btnShowCacheStatistics = new PreferenceButton("Show Result Cache Statistics", getFieldEditorParent()) {
+         @Override
+         protected void onButtonClicked() {
+            if (performOk()) {
+               final ResultCache cache = createResultCacheFromPreferences();
+               MessageDialog.openInformation(getShell(), "Result Cache Statistics", 
+                     "Directory: " + cache.getDirectory().getAbsolutePath() + "\n\n" + cache.getStatistics());
+            }
+         }
+      };
+      addField(btnShowCacheStatistics);
+
+      final PreferenceButton btnClearCache = new PreferenceButton("Clear Result Cache", getFieldEditorParent()) {
+         @Override
+         protected void onButtonClicked() {
+            if (performOk()) {
+               final ResultCache cache = createResultCacheFromPreferences();
+               if (MessageDialog.openConfirm(getShell(), "Clear Result Cache", 
+                     "Do you really want to delete all cached and incremental results in " + 
+                     cache.getDirectory().getAbsolutePath() + "?")) {
+                  cache.clear();
+                  IncrementalResultStore.clear(new File(cache.getDirectory(), INCREMENTAL_RESULTS_DIRECTORY_NAME));
+                  LOGGER.info("Result cache " + cache.getDirectory().getAbsolutePath() + " was cleared.");
+               }
+            }
+         }
+      };
+      addField(btnClearCache);
+
+      final PreferenceButton btnShowFilterCatalogCache = new PreferenceButton("Show Filter Catalog Cache Statistics", getFieldEditorParent()) {
+         @Override
+         protected void onButtonClicked() {
+            MessageDialog.openInformation(getShell(), "Filter Catalog Cache Statistics", 
+                  FilterCatalogCache.getInstance().getStatistics());
+         }
+      };
+      addField(btnShowFilterCatalogCache);
+
+      final PreferenceButton btnClearFilterCatalogCache = new PreferenceButton("Clear Unused Filter Catalogs", getFieldEditorParent()) {
+         @Override
+         protected void onButtonClicked() {
+            final int iRemoved = FilterCatalogCache.getInstance().clearUnused();
+            LOGGER.info("Removed " + iRemoved + " unused filter catalogs from the filter catalog cache.");
+            MessageDialog.openInformation(getShell(), "Clear Unused Filter Catalogs", 
+                  "Removed " + iRemoved + " unused filter catalogs from the cache.\n\n" + 
+                  FilterCatalogCache.getInstance().getStatistics());
+         }
+      };
+      addField(btnClearFilterCatalogCache);
 	}
 
 	/**
@@ -336,6 +444,60 @@ implements IWorkbenchPreferencePage {
 		// nothing to do
 	}
 
+	/**
+	 * Returns the persistent result cache as configured in the preferences.
+	 * 
+	 * @return Result cache or null, if the result cache was not enabled
+	 * 		or the preferences are not accessible.
+	 */
+	public static ResultCache getResultCache() {
+		ResultCache cache = null;
+		final RDKitNodePlugin plugin = RDKitNodePlugin.getDefault();
+
+		if (plugin != null && plugin.getPreferenceStore().getBoolean(PREF_KEY_RESULT_CACHE_ENABLED)) {
+			cache = createResultCacheFromPreferences();
+		}
+
+		return cache;
+	}
+
+	/**
+	 * Returns the directory for incremental results of calculator nodes, if
+	 * incremental execution is enabled. It is a sub directory of the result cache
+	 * directory.
+	 * 
+	 * @return Directory for incremental results or null, if incremental execution is not
+	 * 		enabled or the preferences are not accessible.
+	 */
+	public static File getIncrementalResultDirectory() {
+		File dirIncremental = null;
+		final RDKitNodePlugin plugin = RDKitNodePlugin.getDefault();
+
+		if (plugin != null && plugin.getPreferenceStore().getBoolean(PREF_KEY_INCREMENTAL_EXECUTION_ENABLED)) {
+			dirIncremental = new File(createResultCacheFromPreferences().getDirectory(), INCREMENTAL_RESULTS_DIRECTORY_NAME);
+		}
+
+		return dirIncremental;
+	}
+
+	/**
+	 * Returns the persistent result cache based on the directory and size defined
+	 * in the preferences, regardless if it is enabled or not.
+	 * 
+	 * @return Result cache. Never null.
+	 */
+	private static ResultCache createResultCacheFromPreferences() {
+		final RDKitNodePlugin plugin = RDKitNodePlugin.getDefault();
+		final IPreferenceStore prefStore = plugin.getPreferenceStore();
+		final String strDirectory = prefStore.getString(PREF_KEY_RESULT_CACHE_DIRECTORY).trim();
+		final File dirCache = (strDirectory.isEmpty() ? 
+				plugin.getStateLocation().append(RESULT_CACHE_DEFAULT_DIRECTORY_NAME).toFile() : 
+				new File(strDirectory));
+		final long lMaxSize = Math.max(1, prefStore.getInt(PREF_KEY_RESULT_CACHE_MAX_SIZE)) * 1024L * 1024L;
+
+		return ResultCache.getInstance(dirCache, lMaxSize);
+	}
+
 	/**
 	 * Gets the appropriate preference store and initializes its default values.
 	 * This method must be called from the subclass of AbstractPreferenceInitializer,
@@ -359,6 +521,12 @@ implements IWorkbenchPreferencePage {
 					prefStore.setDefault(
 							FingerprintSettingsHeaderPropertyHandler.PREF_KEY_RENDERER,
 							MultiLineStringValueRenderer.Factory.class.getName());
+					
+					// Define result cache defaults
+					prefStore.setDefault(PREF_KEY_RESULT_CACHE_ENABLED, DEFAULT_RESULT_CACHE_ENABLED);
+					prefStore.setDefault(PREF_KEY_RESULT_CACHE_DIRECTORY, DEFAULT_RESULT_CACHE_DIRECTORY);
+					prefStore.setDefault(PREF_KEY_RESULT_CACHE_MAX_SIZE, DEFAULT_RESULT_CACHE_MAX_SIZE);
+					prefStore.setDefault(PREF_KEY_INCREMENTAL_EXECUTION_ENABLED, DEFAULT_INCREMENTAL_EXECUTION_ENABLED);
 				}
 			}
 			catch (final Exception exc) {
@@ -262,6 +262,17 @@ public abstract class AbstractRDKitFingerprintNodeModel extends AbstractRDKitCal
 		return (arrDataInfo == null ? new InputDataInfo[0] : arrDataInfo);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * This implementation returns true, because the calculated fingerprints depend only on the molecule, the optional atom list and the settings.
+	 * The persistent result cache is not used, because reading a cache entry from disk is
+	 * more expensive than calculating the results again.
+	 */
+	@Override
+	protected boolean isIncrementalExecutionSupported() {
+		return true;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -0,0 +1,487 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import java.util.Arrays;
+
+import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.data.vector.bitvector.DenseBitVectorCell;
+
+/**
+ * A fingerprint arena stores many bit-based fingerprints of the same length
+ * packed into one primitive long array (64 bits per word, bit i of a fingerprint
+ * in word i / 64 at bit position i % 64, like {@link org.knime.core.data.vector.bitvector.DenseBitVector}).
+ * Besides the words it keeps the popcount (number of set bits) of every
+ * fingerprint, a numeric tag (normally the row index in the originating table)
+ * and an optional ID (normally the row key). After calling {@link #sortByPopCount()}
+ * all fingerprints are ordered by ascending popcount and the arena provides
+ * popcount bins, which allow similarity searches to skip all fingerprints that
+ * cannot reach a similarity threshold (BitBound pruning).
+ * An arena is filled by a single thread. After filling and sorting it can be
+ * read concurrently by any number of threads as {@link FingerprintStore}.
+ * 
+ * @author agent
+ */
+public class FingerprintArena implements FingerprintStore {
+
+	//
+	// Constants
+	//
+
+	/** Default initial capacity, if not specified. */
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	/** The maximal number of fingerprints (limited by the maximal array size of the JVM). */
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	//
+	// Members
+	//
+
+	/** The number of bits of each fingerprint. */
+	private final int m_iNumBits;
+
+	/** The number of long words used for each fingerprint. */
+	private final int m_iWordsPerFingerprint;
+
+	/** Flag to tell if IDs are stored. */
+	private final boolean m_bStoreIds;
+
+	/** Packed fingerprint words. */
+	private long[] m_arrWords;
+
+	/** Popcount of every fingerprint. */
+	private int[] m_arrPopCounts;
+
+	/** Tag of every fingerprint. */
+	private long[] m_arrTags;
+
+	/** ID of every fingerprint, or null if no IDs are stored. */
+	private String[] m_arrIds;
+
+	/** Number of fingerprints in this arena. */
+	private int m_iSize;
+
+	/**
+	 * Start indexes of popcount bins. Fingerprints with popcount p are stored in the
+	 * range [m_arrBinStarts[p], m_arrBinStarts[p + 1]). Null, if not sorted.
+	 */
+	private int[] m_arrBinStarts;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Creates a new empty fingerprint arena.
+	 * 
+	 * @param iNumBits Number of bits of each fingerprint. Must be > 0.
+	 * @param bStoreIds Set to true to store IDs of fingerprints.
+	 * @param lExpectedSize Expected number of fingerprints. Used as initial capacity.
+	 */
+	public FingerprintArena(final int iNumBits, final boolean bStoreIds, final long lExpectedSize) {
+		if (iNumBits <= 0) {
+			throw new IllegalArgumentException("Number of bits must be a positive number.");
+		}
+
+		m_iNumBits = iNumBits;
+		m_iWordsPerFingerprint = (iNumBits + 63) >>> 6;
+		m_bStoreIds = bStoreIds;
+		m_iSize = 0;
+		m_arrBinStarts = null;
+
+		final int iCapacity = (int)Math.max(1, Math.min(lExpectedSize <= 0 ? DEFAULT_CAPACITY : lExpectedSize,
+				MAX_ARRAY_SIZE / m_iWordsPerFingerprint));
+		m_arrWords = new long[iCapacity * m_iWordsPerFingerprint];
+		m_arrPopCounts = new int[iCapacity];
+		m_arrTags = new long[iCapacity];
+		m_arrIds = (bStoreIds ? new String[iCapacity] : null);
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Adds a fingerprint to the arena. Words beyond the fingerprint length are ignored,
+	 * missing words are treated as 0. Adding invalidates a former sorting.
+	 * 
+	 * @param arrWords Fingerprint words. Must not be null.
+	 * @param lTag Numeric tag, e.g. a row index.
+	 * @param strId Optional ID, e.g. a row key. Ignored, if IDs are not stored.
+	 * 
+	 * @return The index of the added fingerprint.
+	 */
+	public int add(final long[] arrWords, final long lTag, final String strId) {
+		ensureCapacity(m_iSize + 1);
+
+		final int iOffset = m_iSize * m_iWordsPerFingerprint;
+		final int iCopy = Math.min(arrWords.length, m_iWordsPerFingerprint);
+		System.arraycopy(arrWords, 0, m_arrWords, iOffset, iCopy);
+
+		// Clear unused bits of the last word to keep popcounts and similarities correct
+		final int iRest = m_iNumBits & 63;
+		if (iRest != 0 && iCopy == m_iWordsPerFingerprint) {
+			m_arrWords[iOffset + m_iWordsPerFingerprint - 1] &= (1L << iRest) - 1;
+		}
+
+		int iPopCount = 0;
+		for (int i = 0; i < iCopy; i++) {
+			iPopCount += Long.bitCount(m_arrWords[iOffset + i]);
+		}
+
+		m_arrPopCounts[m_iSize] = iPopCount;
+		m_arrTags[m_iSize] = lTag;
+		if (m_bStoreIds) {
+			m_arrIds[m_iSize] = strId;
+		}
+		m_arrBinStarts = null;
+
+		return m_iSize++;
+	}
+
+	/**
+	 * Sorts all fingerprints by ascending popcount (stable, counting sort) and
+	 * creates the popcount bins. Unused capacity is released.
+	 */
+	public void sortByPopCount() {
+		final int[] arrBinStarts = new int[m_iNumBits + 2];
+
+		for (int i = 0; i < m_iSize; i++) {
+			arrBinStarts[m_arrPopCounts[i] + 1]++;
+		}
+		for (int p = 1; p < arrBinStarts.length; p++) {
+			arrBinStarts[p] += arrBinStarts[p - 1];
+		}
+
+		final int w = m_iWordsPerFingerprint;
+		final int[] arrNext = Arrays.copyOf(arrBinStarts, arrBinStarts.length);
+		final long[] arrWords = new long[m_iSize * w];
+		final int[] arrPopCounts = new int[m_iSize];
+		final long[] arrTags = new long[m_iSize];
+		final String[] arrIds = (m_bStoreIds ? new String[m_iSize] : null);
+
+		for (int i = 0; i < m_iSize; i++) {
+			final int iPopCount = m_arrPopCounts[i];
+			final int iTarget = arrNext[iPopCount]++;
+			System.arraycopy(m_arrWords, i * w, arrWords, iTarget * w, w);
+			arrPopCounts[iTarget] = iPopCount;
+			arrTags[iTarget] = m_arrTags[i];
+			if (arrIds != null) {
+				arrIds[iTarget] = m_arrIds[i];
+			}
+		}
+
+		m_arrWords = arrWords;
+		m_arrPopCounts = arrPopCounts;
+		m_arrTags = arrTags;
+		m_arrIds = arrIds;
+		m_arrBinStarts = arrBinStarts;
+	}
+
+	/**
+	 * Determines, if the arena is sorted by popcount and has popcount bins.
+	 * 
+	 * @return True, if sorted. False otherwise.
+	 */
+	public boolean isSorted() {
+		return m_arrBinStarts != null;
+	}
+
+	/**
+	 * Returns the number of fingerprints in this arena.
+	 * 
+	 * @return Number of fingerprints.
+	 */
+	@Override
+	public int size() {
+		return m_iSize;
+	}
+
+	/**
+	 * Returns the number of bits of each fingerprint.
+	 * 
+	 * @return Number of bits.
+	 */
+	@Override
+	public int getNumBits() {
+		return m_iNumBits;
+	}
+
+	/**
+	 * Returns the number of long words used for each fingerprint.
+	 * 
+	 * @return Words per fingerprint.
+	 */
+	@Override
+	public int getWordsPerFingerprint() {
+		return m_iWordsPerFingerprint;
+	}
+
+	/**
+	 * Returns the packed words of all fingerprints. The fingerprint with index i
+	 * starts at offset i * {@link #getWordsPerFingerprint()}. The array may be
+	 * larger than needed and must not be modified.
+	 * 
+	 * @return Packed words.
+	 */
+	public long[] getWords() {
+		return m_arrWords;
+	}
+
+	/**
+	 * Returns a copy of the words of the fingerprint with the specified index.
+	 * 
+	 * @param iIndex Fingerprint index.
+	 * 
+	 * @return Copy of the fingerprint words.
+	 */
+	@Override
+	public long[] getWords(final int iIndex) {
+		final int iOffset = iIndex * m_iWordsPerFingerprint;
+		return Arrays.copyOfRange(m_arrWords, iOffset, iOffset + m_iWordsPerFingerprint);
+	}
+
+	/**
+	 * Returns the popcount of the fingerprint with the specified index.
+	 * 
+	 * @param iIndex Fingerprint index.
+	 * 
+	 * @return Popcount.
+	 */
+	@Override
+	public int getPopCount(final int iIndex) {
+		return m_arrPopCounts[iIndex];
+	}
+
+	/**
+	 * Returns the tag of the fingerprint with the specified index.
+	 * 
+	 * @param iIndex Fingerprint index.
+	 * 
+	 * @return Tag.
+	 */
+	@Override
+	public long getTag(final int iIndex) {
+		return m_arrTags[iIndex];
+	}
+
+	/**
+	 * Returns the ID of the fingerprint with the specified index.
+	 * 
+	 * @param iIndex Fingerprint index.
+	 * 
+	 * @return ID or null, if IDs are not stored.
+	 */
+	@Override
+	public String getId(final int iIndex) {
+		return (m_bStoreIds ? m_arrIds[iIndex] : null);
+	}
+
+	/**
+	 * Returns the first index of all fingerprints with a popcount of at least the specified value.
+	 * The arena must be sorted.
+	 * 
+	 * @param iPopCount Popcount. Values out of range are clamped.
+	 * 
+	 * @return Start index of the popcount bin.
+	 */
+	@Override
+	public int getBinStart(final int iPopCount) {
+		checkSorted();
+		return m_arrBinStarts[Math.max(0, Math.min(iPopCount, m_iNumBits + 1))];
+	}
+
+	/**
+	 * Returns the index after the last fingerprint with a popcount of at most the specified value.
+	 * The arena must be sorted.
+	 * 
+	 * @param iPopCount Popcount. Values out of range are clamped.
+	 * 
+	 * @return End index (exclusive) of the popcount bin.
+	 */
+	@Override
+	public int getBinEnd(final int iPopCount) {
+		checkSorted();
+		return m_arrBinStarts[Math.max(0, Math.min(iPopCount + 1, m_iNumBits + 1))];
+	}
+
+	/**
+	 * Counts the bits that are set in the specified fingerprint and in the passed in query.
+	 * 
+	 * @param iIndex Fingerprint index.
+	 * @param arrQuery Query words. Must have at least {@link #getWordsPerFingerprint()} words.
+	 * 
+	 * @return Number of common bits.
+	 */
+	@Override
+	public int getCommonBitCount(final int iIndex, final long[] arrQuery) {
+		final long[] arrWords = m_arrWords;
+		final int w = m_iWordsPerFingerprint;
+		final int iOffset = iIndex * w;
+		int iCommon = 0;
+
+		for (int i = 0; i < w; i++) {
+			iCommon += Long.bitCount(arrWords[iOffset + i] & arrQuery[i]);
+		}
+
+		return iCommon;
+	}
+
+	/**
+	 * Returns the approximate number of bytes occupied by the primitive data of this arena.
+	 * 
+	 * @return Heap memory footprint without IDs.
+	 */
+	public long getMemoryFootprint() {
+		return 8L * m_arrWords.length + 4L * m_arrPopCounts.length + 8L * m_arrTags.length;
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Converts a KNIME bit vector into fingerprint words. Dense bit vector cells are
+	 * copied word-wise, all other bit vectors are converted based on their set bits.
+	 * 
+	 * @param value Bit vector. Must not be null.
+	 * 
+	 * @return Words. Never null.
+	 */
+	public static long[] toWords(final BitVectorValue value) {
+		long[] arrWords;
+
+		if (value instanceof DenseBitVectorCell) {
+			arrWords = ((DenseBitVectorCell)value).getBitVectorCopy().getAllBits();
+		}
+		else {
+			arrWords = new long[(int)((value.length() + 63) >>> 6)];
+			for (long i = value.nextSetBit(0); i >= 0; i = value.nextSetBit(i + 1)) {
+				arrWords[(int)(i >>> 6)] |= 1L << (i & 63);
+			}
+		}
+
+		return arrWords;
+	}
+
+	/**
+	 * Calculates the popcount of the specified words.
+	 * 
+	 * @param arrWords Words. Must not be null.
+	 * 
+	 * @return Number of set bits.
+	 */
+	public static int getPopCount(final long[] arrWords) {
+		int iPopCount = 0;
+		for (final long lWord : arrWords) {
+			iPopCount += Long.bitCount(lWord);
+		}
+		return iPopCount;
+	}
+
+	/**
+	 * Determines, if fingerprint words contain all bits of query words, which is a
+	 * necessary condition for a substructure match when using pattern fingerprints.
+	 * 
+	 * @param arrWords Words of the fingerprint. Must not be null.
+	 * @param arrQueryWords Words of the query fingerprint. Must not be null.
+	 * 
+	 * @return True, if all query bits are set. False otherwise.
+	 */
+	public static boolean containsAllBits(final long[] arrWords, final long[] arrQueryWords) {
+		for (int w = 0; w < arrQueryWords.length; w++) {
+			final long lQueryWord = arrQueryWords[w];
+			if (lQueryWord != 0 && (w >= arrWords.length || (arrWords[w] & lQueryWord) != lQueryWord)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Grows the internal arrays, if necessary.
+	 * 
+	 * @param iMinCapacity Minimal capacity.
+	 */
+	private void ensureCapacity(final int iMinCapacity) {
+		final int iCapacity = m_arrPopCounts.length;
+
+		if (iMinCapacity > iCapacity) {
+			final int iMaxCapacity = MAX_ARRAY_SIZE / m_iWordsPerFingerprint;
+			if (iMinCapacity > iMaxCapacity) {
+				throw new IllegalStateException("Fingerprint arena cannot hold more than " + iMaxCapacity + " fingerprints.");
+			}
+
+			final int iNewCapacity = (int)Math.min(iMaxCapacity, Math.max(iMinCapacity, iCapacity + (iCapacity >> 1)));
+			m_arrWords = Arrays.copyOf(m_arrWords, iNewCapacity * m_iWordsPerFingerprint);
+			m_arrPopCounts = Arrays.copyOf(m_arrPopCounts, iNewCapacity);
+			m_arrTags = Arrays.copyOf(m_arrTags, iNewCapacity);
+			if (m_bStoreIds) {
+				m_arrIds = Arrays.copyOf(m_arrIds, iNewCapacity);
+			}
+		}
+	}
+
+	/**
+	 * Checks, if the arena has been sorted.
+	 * 
+	 * @throws IllegalStateException Thrown, if the arena is not sorted.
+	 */
+	private void checkSorted() {
+		if (m_arrBinStarts == null) {
+			throw new IllegalStateException("Fingerprint arena has not been sorted by popcount.");
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import java.util.Arrays;
+
+/**
+ * Result of a clustering of fingerprints based on {@link NeighborLists}, together
+ * with the clustering algorithms. Both algorithms visit the fingerprints in a
+ * specific order: Every fingerprint that is not assigned yet becomes the centroid
+ * of a new cluster, and all its neighbors that are not assigned yet become
+ * members of that cluster.
+ * <ul>
+ * <li>Taylor-Butina clustering visits fingerprints in order of decreasing number of
+ * 		neighbors (Butina, D., J. Chem. Inf. Comput. Sci., 39 (1999), 747-750).</li>
+ * <li>Sphere exclusion (leader) clustering visits fingerprints in their original order.</li>
+ * </ul>
+ * Ties are always resolved by the original order, which makes results reproducible.
+ *
+ * @author agent
+ */
+public class FingerprintClustering {
+
+	//
+	// Members
+	//
+
+	/** Cluster number (starting at 0) of every fingerprint. */
+	private final int[] m_arrClusters;
+
+	/** Flags to tell, which fingerprints are cluster centroids. */
+	private final boolean[] m_arrCentroids;
+
+	/** Number of clusters. */
+	private final int m_iClusterCount;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Clusters the fingerprints by visiting them in the specified order.
+	 *
+	 * @param neighbors Complete neighbor lists. Must not be null.
+	 * @param arrOrder Order of fingerprint indexes to visit. Must contain every index exactly once.
+	 */
+	private FingerprintClustering(final NeighborLists neighbors, final int[] arrOrder) {
+		final int iSize = neighbors.size();
+		m_arrClusters = new int[iSize];
+		m_arrCentroids = new boolean[iSize];
+		Arrays.fill(m_arrClusters, -1);
+
+		int iCluster = 0;
+		for (final int iCentroid : arrOrder) {
+			if (m_arrClusters[iCentroid] < 0) {
+				m_arrClusters[iCentroid] = iCluster;
+				m_arrCentroids[iCentroid] = true;
+
+				final int iNeighborCount = neighbors.getNeighborCount(iCentroid);
+				for (int k = 0; k < iNeighborCount; k++) {
+					final int iNeighbor = neighbors.getNeighbor(iCentroid, k);
+					if (m_arrClusters[iNeighbor] < 0) {
+						m_arrClusters[iNeighbor] = iCluster;
+					}
+				}
+
+				iCluster++;
+			}
+		}
+
+		m_iClusterCount = iCluster;
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns the number of clusters.
+	 *
+	 * @return Number of clusters.
+	 */
+	public int getClusterCount() {
+		return m_iClusterCount;
+	}
+
+	/**
+	 * Returns the cluster of a fingerprint. Clusters are numbered in the order they were created.
+	 *
+	 * @param iIndex Fingerprint index.
+	 *
+	 * @return Cluster number starting at 0.
+	 */
+	public int getCluster(final int iIndex) {
+		return m_arrClusters[iIndex];
+	}
+
+	/**
+	 * Determines, if a fingerprint is the centroid of its cluster.
+	 *
+	 * @param iIndex Fingerprint index.
+	 *
+	 * @return True, if centroid. False otherwise.
+	 */
+	public boolean isCentroid(final int iIndex) {
+		return m_arrCentroids[iIndex];
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Performs a Taylor-Butina clustering. Fingerprints with more neighbors become centroids first.
+	 *
+	 * @param neighbors Complete neighbor lists. Must not be null.
+	 * @param arrOriginalOrder Fingerprint indexes in their original order, used to resolve ties.
+	 * 		Must contain every index exactly once.
+	 *
+	 * @return Clustering result.
+	 */
+	public static FingerprintClustering clusterButina(final NeighborLists neighbors, final int[] arrOriginalOrder) {
+		final int iSize = neighbors.size();
+
+		// Stable counting sort by decreasing number of neighbors
+		int iMaxCount = 0;
+		for (int i = 0; i < iSize; i++) {
+			iMaxCount = Math.max(iMaxCount, neighbors.getNeighborCount(i));
+		}
+
+		final int[] arrStarts = new int[iMaxCount + 2];
+		for (int i = 0; i < iSize; i++) {
+			arrStarts[iMaxCount - neighbors.getNeighborCount(i) + 1]++;
+		}
+		for (int c = 1; c < arrStarts.length; c++) {
+			arrStarts[c] += arrStarts[c - 1];
+		}
+
+		final int[] arrOrder = new int[iSize];
+		for (final int iIndex : arrOriginalOrder) {
+			arrOrder[arrStarts[iMaxCount - neighbors.getNeighborCount(iIndex)]++] = iIndex;
+		}
+
+		return new FingerprintClustering(neighbors, arrOrder);
+	}
+
+	/**
+	 * Performs a sphere exclusion (leader) clustering. Fingerprints become centroids
+	 * in their original order.
+	 *
+	 * @param neighbors Complete neighbor lists. Must not be null.
+	 * @param arrOriginalOrder Fingerprint indexes in their original order.
+	 * 		Must contain every index exactly once.
+	 *
+	 * @return Clustering result.
+	 */
+	public static FingerprintClustering clusterSphereExclusion(final NeighborLists neighbors,
+			final int[] arrOriginalOrder) {
+		return new FingerprintClustering(neighbors, arrOriginalOrder);
+	}
+
+	/**
+	 * Determines the original order of the fingerprints of an arena that was sorted by
+	 * popcount, based on the tags of the fingerprints (e.g. row indexes).
+	 *
+	 * @param arena Fingerprint arena. Must not be null. Tags must be between 0 and {@link Integer#MAX_VALUE}.
+	 *
+	 * @return Fingerprint indexes in the order of increasing tags.
+	 */
+	public static int[] getOriginalOrder(final FingerprintArena arena) {
+		final int iSize = arena.size();
+		final long[] arrKeys = new long[iSize];
+
+		for (int i = 0; i < iSize; i++) {
+			final long lTag = arena.getTag(i);
+			if (lTag < 0 || lTag > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Tags must be between 0 and " + Integer.MAX_VALUE + ".");
+			}
+			arrKeys[i] = (lTag << 32) | i;
+		}
+
+		Arrays.sort(arrKeys);
+
+		final int[] arrOrder = new int[iSize];
+		for (int i = 0; i < iSize; i++) {
+			arrOrder[i] = (int)arrKeys[i];
+		}
+
+		return arrOrder;
+	}
+}
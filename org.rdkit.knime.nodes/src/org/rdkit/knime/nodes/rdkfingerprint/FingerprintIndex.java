@@ -0,0 +1,568 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.knime.core.data.DataColumnProperties;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.vector.bitvector.DenseBitVectorCell;
+import org.rdkit.knime.properties.FingerprintSettingsHeaderProperty;
+
+/**
+ * A fingerprint index is a binary file with fingerprints that are sorted by
+ * popcount and packed into 64 bit words. It is written by the
+ * {@link FingerprintIndexWriter} and opened with {@link #open(Path)}, which
+ * maps the file into memory instead of loading it into the Java heap. Only
+ * the popcount bins are read into the heap. The operating system shares the
+ * mapped pages between all nodes and workflows that open the same index, so
+ * large reference libraries are available without load time.
+ * The file is structured as follows (all numbers little endian):
+ * <ul>
+ * 	<li>Header ({@link #HEADER_SIZE} bytes): magic, version, number of bits, words per
+ * 		fingerprint, number of fingerprints and the offsets of all following sections.</li>
+ * 	<li>Words: fingerprint words in popcount order.</li>
+ * 	<li>Bins: int array with number of bits + 2 popcount bin start indexes.</li>
+ * 	<li>Ordinals: int array with the original position of every fingerprint.</li>
+ * 	<li>ID offsets: long array with number of fingerprints + 1 offsets into the ID data,
+ * 		in original order.</li>
+ * 	<li>ID data: UTF-8 encoded IDs.</li>
+ * 	<li>Settings: the fingerprint settings header properties as key / value pairs.</li>
+ * </ul>
+ * Instances are immutable and can be read concurrently by any number of threads.
+ * The file channel is only open while the index gets opened. The mapped memory
+ * is released by the garbage collector as soon as the index is not referenced
+ * anymore. It is never unmapped explicitly, because threads of a cancelled
+ * execution may still read from it and accessing unmapped memory crashes the Java VM.
+ * 
+ * @author agent
+ */
+public class FingerprintIndex implements FingerprintStore {
+
+	//
+	// Constants
+	//
+
+	/** File extension of fingerprint index files. */
+	public static final String FILE_EXTENSION = ".fpi";
+
+	/** Magic bytes at the beginning of every fingerprint index file. */
+	static final byte[] MAGIC = "RDKITFPI".getBytes(StandardCharsets.US_ASCII);
+
+	/** Version of the file format. */
+	static final int VERSION = 1;
+
+	/** Size of the file header in bytes. */
+	static final int HEADER_SIZE = 128;
+
+	/** Byte order of all numbers in the file. */
+	static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	/** Maximal size of a single mapped segment in bytes. */
+	private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+	//
+	// Members
+	//
+
+	/** The path of the index file. */
+	private final Path m_path;
+
+	/** The number of bits of each fingerprint. */
+	private final int m_iNumBits;
+
+	/** The number of long words used for each fingerprint. */
+	private final int m_iWordsPerFingerprint;
+
+	/** Number of fingerprints. */
+	private final int m_iSize;
+
+	/** Popcount bin start indexes (in heap). */
+	private final int[] m_arrBinStarts;
+
+	/** Number of fingerprints per words segment. */
+	private final int m_iFingerprintsPerSegment;
+
+	/** Mapped segments with fingerprint words. */
+	private final ByteBuffer[] m_arrWordSegments;
+
+	/** Mapped segments with ordinals. */
+	private final ByteBuffer[] m_arrOrdinalSegments;
+
+	/** Mapped segments with ID offsets. */
+	private final ByteBuffer[] m_arrIdOffsetSegments;
+
+	/** Mapped segments with ID data. */
+	private final ByteBuffer[] m_arrIdDataSegments;
+
+	/** The fingerprint settings stored in the index, or null if unknown. */
+	private final FingerprintSettingsHeaderProperty m_settings;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Opens and maps the specified fingerprint index file.
+	 * 
+	 * @param path Path of a local index file. Must not be null.
+	 * 
+	 * @throws IOException Thrown, if the file cannot be read or is not a valid fingerprint index.
+	 */
+	private FingerprintIndex(final Path path) throws IOException {
+		m_path = path;
+
+		try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final long lFileSize = channel.size();
+			if (lFileSize < HEADER_SIZE) {
+				throw new IOException("File is too small to be a fingerprint index: " + path);
+			}
+
+			final ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+			final byte[] arrMagic = new byte[MAGIC.length];
+			header.get(arrMagic);
+			if (!Arrays.equals(arrMagic, MAGIC)) {
+				throw new IOException("File is not a fingerprint index: " + path);
+			}
+			final int iVersion = header.getInt();
+			if (iVersion != VERSION) {
+				throw new IOException("Unsupported fingerprint index version " + iVersion + ": " + path);
+			}
+
+			m_iNumBits = header.getInt();
+			m_iWordsPerFingerprint = header.getInt();
+			m_iSize = header.getInt();
+			final long lOffsetWords = header.getLong();
+			final long lOffsetBins = header.getLong();
+			final long lOffsetOrdinals = header.getLong();
+			final long lOffsetIdOffsets = header.getLong();
+			final long lOffsetIdData = header.getLong();
+			final long lOffsetSettings = header.getLong();
+
+			final long lFingerprintBytes = 8L * m_iWordsPerFingerprint;
+			if (m_iNumBits <= 0 || m_iWordsPerFingerprint != (m_iNumBits + 63) >>> 6 || m_iSize < 0 ||
+					lOffsetWords + m_iSize * lFingerprintBytes > lOffsetBins ||
+					lOffsetBins + 4L * (m_iNumBits + 2) > lOffsetOrdinals ||
+					lOffsetOrdinals + 4L * m_iSize > lOffsetIdOffsets ||
+					lOffsetIdOffsets + 8L * (m_iSize + 1) > lOffsetIdData ||
+					lOffsetIdData > lOffsetSettings || lOffsetSettings > lFileSize) {
+				throw new IOException("Fingerprint index is corrupt: " + path);
+			}
+
+			// Read the popcount bins into the heap
+			final ByteBuffer bins = readFully(channel, lOffsetBins, 4 * (m_iNumBits + 2));
+			m_arrBinStarts = new int[m_iNumBits + 2];
+			bins.asIntBuffer().get(m_arrBinStarts);
+			if (m_arrBinStarts[m_iNumBits + 1] != m_iSize) {
+				throw new IOException("Fingerprint index is corrupt: " + path);
+			}
+
+			// Map all other sections
+			m_iFingerprintsPerSegment = (int)Math.max(1, MAX_SEGMENT_SIZE / lFingerprintBytes);
+			m_arrWordSegments = map(channel, lOffsetWords, m_iSize * lFingerprintBytes,
+					m_iFingerprintsPerSegment * lFingerprintBytes);
+			m_arrOrdinalSegments = map(channel, lOffsetOrdinals, 4L * m_iSize, MAX_SEGMENT_SIZE);
+			m_arrIdOffsetSegments = map(channel, lOffsetIdOffsets, 8L * (m_iSize + 1), MAX_SEGMENT_SIZE);
+			m_arrIdDataSegments = map(channel, lOffsetIdData, lOffsetSettings - lOffsetIdData, MAX_SEGMENT_SIZE);
+
+			// Read the fingerprint settings
+			final ByteBuffer settings = readFully(channel, lOffsetSettings, (int)(lFileSize - lOffsetSettings));
+			m_settings = readSettings(settings);
+		}
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns the path of the index file.
+	 * 
+	 * @return Path.
+	 */
+	public Path getPath() {
+		return m_path;
+	}
+
+	/**
+	 * Returns the fingerprint settings that were stored with the index.
+	 * 
+	 * @return Fingerprint settings or null, if unknown.
+	 */
+	public FingerprintSettingsHeaderProperty getFingerprintSettings() {
+		return m_settings;
+	}
+
+	@Override
+	public int size() {
+		return m_iSize;
+	}
+
+	@Override
+	public int getNumBits() {
+		return m_iNumBits;
+	}
+
+	@Override
+	public int getWordsPerFingerprint() {
+		return m_iWordsPerFingerprint;
+	}
+
+	@Override
+	public long[] getWords(final int iIndex) {
+		final ByteBuffer segment = m_arrWordSegments[iIndex / m_iFingerprintsPerSegment];
+		final int iOffset = (iIndex % m_iFingerprintsPerSegment) * m_iWordsPerFingerprint * 8;
+		final long[] arrWords = new long[m_iWordsPerFingerprint];
+
+		for (int i = 0; i < m_iWordsPerFingerprint; i++) {
+			arrWords[i] = segment.getLong(iOffset + 8 * i);
+		}
+
+		return arrWords;
+	}
+
+	@Override
+	public int getPopCount(final int iIndex) {
+		// Find the last bin that starts at or before the index
+		int iLow = 0;
+		int iHigh = m_iNumBits;
+		while (iLow < iHigh) {
+			final int iMid = (iLow + iHigh + 1) >>> 1;
+			if (m_arrBinStarts[iMid] <= iIndex) {
+				iLow = iMid;
+			}
+			else {
+				iHigh = iMid - 1;
+			}
+		}
+		return iLow;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * This implementation returns the original position of the fingerprint
+	 * when the index was written.
+	 */
+	@Override
+	public long getTag(final int iIndex) {
+		return getOrdinal(iIndex);
+	}
+
+	@Override
+	public String getId(final int iIndex) {
+		final int iOrdinal = getOrdinal(iIndex);
+		final long lStart = getLong(m_arrIdOffsetSegments, 8L * iOrdinal);
+		final long lEnd = getLong(m_arrIdOffsetSegments, 8L * (iOrdinal + 1));
+		final byte[] arrBytes = new byte[(int)(lEnd - lStart)];
+
+		for (int i = 0; i < arrBytes.length; ) {
+			final long lPos = lStart + i;
+			final ByteBuffer segment = m_arrIdDataSegments[(int)(lPos / MAX_SEGMENT_SIZE)];
+			final int iSegmentOffset = (int)(lPos % MAX_SEGMENT_SIZE);
+			final int iLength = Math.min(arrBytes.length - i, segment.capacity() - iSegmentOffset);
+			segment.get(iSegmentOffset, arrBytes, i, iLength);
+			i += iLength;
+		}
+
+		return new String(arrBytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public int getBinStart(final int iPopCount) {
+		return m_arrBinStarts[Math.max(0, Math.min(iPopCount, m_iNumBits + 1))];
+	}
+
+	@Override
+	public int getBinEnd(final int iPopCount) {
+		return m_arrBinStarts[Math.max(0, Math.min(iPopCount + 1, m_iNumBits + 1))];
+	}
+
+	@Override
+	public int getCommonBitCount(final int iIndex, final long[] arrQuery) {
+		final ByteBuffer segment = m_arrWordSegments[iIndex / m_iFingerprintsPerSegment];
+		final int w = m_iWordsPerFingerprint;
+		final int iOffset = (iIndex % m_iFingerprintsPerSegment) * w * 8;
+		int iCommon = 0;
+
+		for (int i = 0; i < w; i++) {
+			iCommon += Long.bitCount(segment.getLong(iOffset + 8 * i) & arrQuery[i]);
+		}
+
+		return iCommon;
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Opens the specified fingerprint index file by mapping it into memory.
+	 * 
+	 * @param path Path of the index file. Must be a file of the local file system.
+	 * 
+	 * @return Opened fingerprint index. Never null.
+	 * 
+	 * @throws IOException Thrown, if the file cannot be mapped or is not a valid fingerprint index.
+	 */
+	public static FingerprintIndex open(final Path path) throws IOException {
+		try {
+			return new FingerprintIndex(path);
+		}
+		catch (final UnsupportedOperationException exc) {
+			throw new IOException("Fingerprint index files must be located in the local file system: " + path, exc);
+		}
+	}
+
+	/**
+	 * Derives the path of the fingerprint index file that belongs to an FPS file by
+	 * replacing the extensions .fps.gz, .fps or .gz with {@link #FILE_EXTENSION}.
+	 * 
+	 * @param pathFps Path of an FPS file. Must not be null.
+	 * 
+	 * @return Path of the index file.
+	 */
+	public static Path getIndexPath(final Path pathFps) {
+		String strName = pathFps.getFileName().toString();
+		final String strLowerName = strName.toLowerCase();
+
+		for (final String strExtension : new String[] { ".fps.gz", ".fps", ".gz" }) {
+			if (strLowerName.endsWith(strExtension)) {
+				strName = strName.substring(0, strName.length() - strExtension.length());
+				break;
+			}
+		}
+
+		return pathFps.resolveSibling(strName + FILE_EXTENSION);
+	}
+
+	/**
+	 * Serializes the header properties of the passed in fingerprint settings. They can be
+	 * deserialized with {@link #readSettings(byte[])}.
+	 * 
+	 * @param settings Fingerprint settings. Can be null.
+	 * 
+	 * @return Serialized settings. Never null.
+	 */
+	public static byte[] writeSettings(final FingerprintSettings settings) {
+		final Map<String, String> mapProps = new LinkedHashMap<String, String>();
+
+		if (settings != null) {
+			final DataColumnSpecCreator creator = new DataColumnSpecCreator("Fingerprint", DenseBitVectorCell.TYPE);
+			new FingerprintSettingsHeaderProperty(settings).writeToColumnSpec(creator);
+			final DataColumnProperties props = creator.createSpec().getProperties();
+			for (final Enumeration<String> e = props.properties(); e.hasMoreElements(); ) {
+				final String strKey = e.nextElement();
+				mapProps.put(strKey, props.getProperty(strKey));
+			}
+		}
+
+		final byte[][] arrEncoded = new byte[mapProps.size() * 2][];
+		int iLength = 4;
+		int i = 0;
+		for (final Map.Entry<String, String> entry : mapProps.entrySet()) {
+			arrEncoded[i] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			arrEncoded[i + 1] = entry.getValue().getBytes(StandardCharsets.UTF_8);
+			iLength += 8 + arrEncoded[i].length + arrEncoded[i + 1].length;
+			i += 2;
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocate(iLength).order(BYTE_ORDER);
+		buffer.putInt(mapProps.size());
+		for (final byte[] arrBytes : arrEncoded) {
+			buffer.putInt(arrBytes.length);
+			buffer.put(arrBytes);
+		}
+
+		return buffer.array();
+	}
+
+	/**
+	 * Deserializes fingerprint settings written by {@link #writeSettings(FingerprintSettings)}.
+	 * 
+	 * @param arrSettings Serialized settings. Must not be null.
+	 * 
+	 * @return Fingerprint settings or null, if no settings were stored.
+	 */
+	public static FingerprintSettingsHeaderProperty readSettings(final byte[] arrSettings) {
+		return readSettings(ByteBuffer.wrap(arrSettings).order(BYTE_ORDER));
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Returns the original position of the fingerprint with the specified index.
+	 * 
+	 * @param iIndex Fingerprint index.
+	 * 
+	 * @return Ordinal.
+	 */
+	private int getOrdinal(final int iIndex) {
+		final long lPos = 4L * iIndex;
+		return m_arrOrdinalSegments[(int)(lPos / MAX_SEGMENT_SIZE)].getInt((int)(lPos % MAX_SEGMENT_SIZE));
+	}
+
+	//
+	// Static Private Methods
+	//
+
+	/**
+	 * Reads a long value from mapped segments of {@link #MAX_SEGMENT_SIZE} bytes.
+	 * 
+	 * @param arrSegments Segments. Must not be null.
+	 * @param lPos Byte position. Must be a multiple of 8.
+	 * 
+	 * @return Long value.
+	 */
+	private static long getLong(final ByteBuffer[] arrSegments, final long lPos) {
+		return arrSegments[(int)(lPos / MAX_SEGMENT_SIZE)].getLong((int)(lPos % MAX_SEGMENT_SIZE));
+	}
+
+	/**
+	 * Maps a section of a file read-only in segments.
+	 * 
+	 * @param channel File channel. Must not be null.
+	 * @param lOffset Start of the section.
+	 * @param lLength Length of the section in bytes.
+	 * @param lSegmentSize Size of every segment but the last one. Must be a multiple of 8.
+	 * 
+	 * @return Mapped segments. The array has at least one element.
+	 * 
+	 * @throws IOException Thrown, if mapping fails.
+	 */
+	private static ByteBuffer[] map(final FileChannel channel, final long lOffset, final long lLength,
+			final long lSegmentSize) throws IOException {
+		final int iSegmentCount = (int)Math.max(1, (lLength + lSegmentSize - 1) / lSegmentSize);
+		final ByteBuffer[] arrSegments = new ByteBuffer[iSegmentCount];
+
+		for (int i = 0; i < iSegmentCount; i++) {
+			final long lStart = i * lSegmentSize;
+			final long lSize = Math.max(0, Math.min(lSegmentSize, lLength - lStart));
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, lOffset + lStart, lSize);
+			arrSegments[i] = buffer.order(BYTE_ORDER);
+		}
+
+		return arrSegments;
+	}
+
+	/**
+	 * Reads a small section of a file into a heap buffer.
+	 * 
+	 * @param channel File channel. Must not be null.
+	 * @param lOffset Start of the section.
+	 * @param iLength Length of the section in bytes.
+	 * 
+	 * @return Buffer positioned at the beginning of the section.
+	 * 
+	 * @throws IOException Thrown, if the section cannot be read completely.
+	 */
+	private static ByteBuffer readFully(final FileChannel channel, final long lOffset, final int iLength) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(iLength).order(BYTE_ORDER);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, lOffset + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of fingerprint index file.");
+			}
+		}
+		buffer.flip();
+
+		return buffer;
+	}
+
+	/**
+	 * Deserializes fingerprint settings written by {@link #writeSettings(FingerprintSettings)}.
+	 * 
+	 * @param buffer Buffer with serialized settings. Must not be null.
+	 * 
+	 * @return Fingerprint settings or null, if no settings were stored.
+	 */
+	private static FingerprintSettingsHeaderProperty readSettings(final ByteBuffer buffer) {
+		FingerprintSettingsHeaderProperty settings = null;
+		final int iCount = (buffer.remaining() >= 4 ? buffer.getInt() : 0);
+
+		if (iCount > 0) {
+			final Map<String, String> mapProps = new LinkedHashMap<String, String>();
+			for (int i = 0; i < iCount; i++) {
+				mapProps.put(readString(buffer), readString(buffer));
+			}
+			final DataColumnSpecCreator creator = new DataColumnSpecCreator("Fingerprint", DenseBitVectorCell.TYPE);
+			creator.setProperties(new DataColumnProperties(mapProps));
+			final DataColumnSpec colSpec = creator.createSpec();
+			settings = new FingerprintSettingsHeaderProperty(colSpec);
+		}
+
+		return settings;
+	}
+
+	/**
+	 * Reads a UTF-8 string that is prefixed with its length.
+	 * 
+	 * @param buffer Buffer. Must not be null.
+	 * 
+	 * @return String.
+	 */
+	private static String readString(final ByteBuffer buffer) {
+		final byte[] arrBytes = new byte[buffer.getInt()];
+		buffer.get(arrBytes);
+		return new String(arrBytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,467 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a {@link FingerprintIndex} file without holding the fingerprints in memory.
+ * Writing happens in two passes over the same fingerprints in the same order:
+ * In the first pass {@link #add(long[], String)} collects the popcount histogram and
+ * the IDs (spooled to a temporary file). After {@link #startSecondPass()} the fingerprints
+ * are passed in again with {@link #addWords(long[])}, which writes them directly to their
+ * final position in popcount order. {@link #finish()} writes all remaining sections and
+ * the header. Only the ordinals (4 bytes per fingerprint) are kept in the heap.
+ * Instances are not thread-safe. Calling {@link #close()} before {@link #finish()}
+ * removes the incomplete index file.
+ * 
+ * @author agent
+ */
+public class FingerprintIndexWriter implements AutoCloseable {
+
+	//
+	// Constants
+	//
+
+	/** Size of the buffer used to copy spooled data into the index file. */
+	private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+	//
+	// Members
+	//
+
+	/** The path of the index file. */
+	private final Path m_pathIndex;
+
+	/** The number of bits of each fingerprint. */
+	private final int m_iNumBits;
+
+	/** The number of long words used for each fingerprint. */
+	private final int m_iWordsPerFingerprint;
+
+	/** The serialized fingerprint settings. */
+	private final byte[] m_arrSettings;
+
+	/** Temporary file for ID data. */
+	private final Path m_pathIdData;
+
+	/** Temporary file for ID offsets. */
+	private final Path m_pathIdOffsets;
+
+	/** Stream for ID data during the first pass. */
+	private OutputStream m_outIdData;
+
+	/** Stream for ID offsets during the first pass. */
+	private OutputStream m_outIdOffsets;
+
+	/** Number of ID data bytes written so far. */
+	private long m_lIdDataLength;
+
+	/** Popcount histogram, later the next free index of every popcount bin. */
+	private final int[] m_arrBinNext;
+
+	/** Popcount bin start indexes. Available after the first pass. */
+	private int[] m_arrBinStarts;
+
+	/** Ordinals in popcount order. Available after the first pass. */
+	private int[] m_arrOrdinals;
+
+	/** Number of fingerprints added in the first pass. */
+	private int m_iSize;
+
+	/** Number of fingerprints added in the second pass. */
+	private int m_iSecondPassSize;
+
+	/** Channel to the index file. Available in the second pass. */
+	private SeekableByteChannel m_channel;
+
+	/** Buffer for a single fingerprint. */
+	private final ByteBuffer m_bufferWords;
+
+	/** Flag to tell that the index was written completely. */
+	private boolean m_bFinished;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Creates a new fingerprint index writer.
+	 * 
+	 * @param pathIndex Path of the index file to be written. Existing files will be overwritten.
+	 * @param iNumBits Number of bits of each fingerprint. Must be > 0.
+	 * @param settings Fingerprint settings to be stored with the index. Can be null.
+	 * 
+	 * @throws IOException Thrown, if temporary files cannot be created.
+	 */
+	public FingerprintIndexWriter(final Path pathIndex, final int iNumBits, final FingerprintSettings settings) throws IOException {
+		if (iNumBits <= 0) {
+			throw new IllegalArgumentException("Number of bits must be a positive number.");
+		}
+
+		m_pathIndex = pathIndex;
+		m_iNumBits = iNumBits;
+		m_iWordsPerFingerprint = (iNumBits + 63) >>> 6;
+		m_arrSettings = FingerprintIndex.writeSettings(settings);
+		m_arrBinNext = new int[iNumBits + 2];
+		m_bufferWords = ByteBuffer.allocate(8 * m_iWordsPerFingerprint).order(FingerprintIndex.BYTE_ORDER);
+
+		m_pathIdData = Files.createTempFile("rdkit-fpi-ids", ".tmp");
+		m_pathIdOffsets = Files.createTempFile("rdkit-fpi-offsets", ".tmp");
+		m_outIdData = new BufferedOutputStream(Files.newOutputStream(m_pathIdData), COPY_BUFFER_SIZE);
+		m_outIdOffsets = new BufferedOutputStream(Files.newOutputStream(m_pathIdOffsets), COPY_BUFFER_SIZE);
+		writeLong(m_outIdOffsets, 0);
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Adds a fingerprint in the first pass.
+	 * 
+	 * @param arrWords Fingerprint words. Must not be null.
+	 * @param strId ID of the fingerprint. Null is stored as empty ID.
+	 * 
+	 * @throws IOException Thrown, if the ID cannot be spooled.
+	 */
+	public void add(final long[] arrWords, final String strId) throws IOException {
+		if (m_outIdData == null) {
+			throw new IllegalStateException("The first pass has been finished already.");
+		}
+		if (m_iSize == Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("A fingerprint index cannot hold more than " + m_iSize + " fingerprints.");
+		}
+
+		m_arrBinNext[getPopCount(arrWords)]++;
+
+		final byte[] arrId = (strId == null ? new byte[0] : strId.getBytes(StandardCharsets.UTF_8));
+		m_outIdData.write(arrId);
+		m_lIdDataLength += arrId.length;
+		writeLong(m_outIdOffsets, m_lIdDataLength);
+		m_iSize++;
+	}
+
+	/**
+	 * Finishes the first pass, calculates the popcount bins and creates the index file.
+	 * 
+	 * @throws IOException Thrown, if the index file cannot be created.
+	 */
+	public void startSecondPass() throws IOException {
+		if (m_outIdData == null) {
+			throw new IllegalStateException("The second pass has been started already.");
+		}
+
+		m_outIdData.close();
+		m_outIdOffsets.close();
+		m_outIdData = null;
+		m_outIdOffsets = null;
+
+		// Convert histogram into bin starts
+		m_arrBinStarts = new int[m_iNumBits + 2];
+		for (int p = 0; p <= m_iNumBits; p++) {
+			m_arrBinStarts[p + 1] = m_arrBinStarts[p] + m_arrBinNext[p];
+		}
+		System.arraycopy(m_arrBinStarts, 0, m_arrBinNext, 0, m_arrBinNext.length);
+
+		m_arrOrdinals = new int[m_iSize];
+		m_channel = Files.newByteChannel(m_pathIndex, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Adds a fingerprint in the second pass. Fingerprints must be passed in
+	 * the same order as in the first pass.
+	 * 
+	 * @param arrWords Fingerprint words. Must not be null.
+	 * 
+	 * @throws IOException Thrown, if the fingerprint cannot be written.
+	 */
+	public void addWords(final long[] arrWords) throws IOException {
+		if (m_channel == null) {
+			throw new IllegalStateException("The second pass has not been started.");
+		}
+		if (m_iSecondPassSize >= m_iSize) {
+			throw new IllegalStateException("More fingerprints passed in than in the first pass.");
+		}
+
+		final int iPopCount = getPopCount(arrWords);
+		final int iIndex = m_arrBinNext[iPopCount]++;
+		if (iIndex >= m_arrBinStarts[iPopCount + 1]) {
+			throw new IllegalStateException("Fingerprints of the second pass differ from the first pass.");
+		}
+
+		m_bufferWords.clear();
+		for (int i = 0; i < m_iWordsPerFingerprint; i++) {
+			m_bufferWords.putLong(i < arrWords.length ? arrWords[i] & getWordMask(i) : 0L);
+		}
+		m_bufferWords.flip();
+		writeFully(FingerprintIndex.HEADER_SIZE + (long)iIndex * m_bufferWords.capacity(), m_bufferWords);
+
+		m_arrOrdinals[iIndex] = m_iSecondPassSize++;
+	}
+
+	/**
+	 * Writes all remaining sections and the header of the index file.
+	 * 
+	 * @throws IOException Thrown, if writing fails.
+	 */
+	public void finish() throws IOException {
+		if (m_channel == null) {
+			throw new IllegalStateException("The second pass has not been started.");
+		}
+		if (m_iSecondPassSize != m_iSize) {
+			throw new IllegalStateException("Fewer fingerprints passed in than in the first pass.");
+		}
+
+		final long lOffsetWords = FingerprintIndex.HEADER_SIZE;
+		final long lOffsetBins = lOffsetWords + (long)m_iSize * 8 * m_iWordsPerFingerprint;
+		final long lOffsetOrdinals = align(lOffsetBins + 4L * (m_iNumBits + 2));
+		final long lOffsetIdOffsets = align(lOffsetOrdinals + 4L * m_iSize);
+		final long lOffsetIdData = lOffsetIdOffsets + 8L * (m_iSize + 1);
+		final long lOffsetSettings = lOffsetIdData + m_lIdDataLength;
+
+		// Bins
+		final ByteBuffer bufferBins = ByteBuffer.allocate(4 * m_arrBinStarts.length).order(FingerprintIndex.BYTE_ORDER);
+		bufferBins.asIntBuffer().put(m_arrBinStarts);
+		writeFully(lOffsetBins, bufferBins);
+
+		// Ordinals
+		final ByteBuffer bufferOrdinals = ByteBuffer.allocate(COPY_BUFFER_SIZE).order(FingerprintIndex.BYTE_ORDER);
+		long lPos = lOffsetOrdinals;
+		for (int i = 0; i < m_iSize; ) {
+			bufferOrdinals.clear();
+			final int iCount = Math.min(m_iSize - i, COPY_BUFFER_SIZE / 4);
+			bufferOrdinals.asIntBuffer().put(m_arrOrdinals, i, iCount);
+			bufferOrdinals.limit(4 * iCount);
+			writeFully(lPos, bufferOrdinals);
+			lPos += 4L * iCount;
+			i += iCount;
+		}
+		m_arrOrdinals = null;
+
+		// IDs
+		copy(m_pathIdOffsets, lOffsetIdOffsets);
+		copy(m_pathIdData, lOffsetIdData);
+
+		// Settings
+		writeFully(lOffsetSettings, ByteBuffer.wrap(m_arrSettings));
+
+		// Header
+		final ByteBuffer header = ByteBuffer.allocate(FingerprintIndex.HEADER_SIZE).order(FingerprintIndex.BYTE_ORDER);
+		header.put(FingerprintIndex.MAGIC);
+		header.putInt(FingerprintIndex.VERSION);
+		header.putInt(m_iNumBits);
+		header.putInt(m_iWordsPerFingerprint);
+		header.putInt(m_iSize);
+		header.putLong(lOffsetWords);
+		header.putLong(lOffsetBins);
+		header.putLong(lOffsetOrdinals);
+		header.putLong(lOffsetIdOffsets);
+		header.putLong(lOffsetIdData);
+		header.putLong(lOffsetSettings);
+		header.clear();
+		writeFully(0, header);
+
+		if (m_channel instanceof FileChannel) {
+			((FileChannel)m_channel).force(false);
+		}
+		m_channel.close();
+		m_channel = null;
+		m_bFinished = true;
+	}
+
+	/**
+	 * Returns the number of fingerprints added in the first pass.
+	 * 
+	 * @return Number of fingerprints.
+	 */
+	public int size() {
+		return m_iSize;
+	}
+
+	/**
+	 * Releases all resources and removes temporary files. If the index has not
+	 * been finished, the incomplete index file is removed as well.
+	 * 
+	 * @throws IOException Thrown, if closing fails.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (m_outIdData != null) {
+				m_outIdData.close();
+				m_outIdData = null;
+			}
+			if (m_outIdOffsets != null) {
+				m_outIdOffsets.close();
+				m_outIdOffsets = null;
+			}
+			if (m_channel != null) {
+				m_channel.close();
+				m_channel = null;
+			}
+		}
+		finally {
+			Files.deleteIfExists(m_pathIdData);
+			Files.deleteIfExists(m_pathIdOffsets);
+			if (!m_bFinished) {
+				Files.deleteIfExists(m_pathIndex);
+			}
+		}
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Calculates the popcount of fingerprint words considering only the valid bits.
+	 * 
+	 * @param arrWords Fingerprint words. Must not be null.
+	 * 
+	 * @return Popcount.
+	 */
+	private int getPopCount(final long[] arrWords) {
+		int iPopCount = 0;
+		final int iCount = Math.min(arrWords.length, m_iWordsPerFingerprint);
+		for (int i = 0; i < iCount; i++) {
+			iPopCount += Long.bitCount(arrWords[i] & getWordMask(i));
+		}
+		return iPopCount;
+	}
+
+	/**
+	 * Returns the mask of valid bits for the specified word.
+	 * 
+	 * @param iWord Word index.
+	 * 
+	 * @return Mask with all valid bits set.
+	 */
+	private long getWordMask(final int iWord) {
+		final int iRest = m_iNumBits & 63;
+		return (iWord == m_iWordsPerFingerprint - 1 && iRest != 0 ? (1L << iRest) - 1 : -1L);
+	}
+
+	/**
+	 * Writes the remaining bytes of a buffer at the specified position of the index file.
+	 * 
+	 * @param lPosition File position.
+	 * @param buffer Buffer. Must not be null.
+	 * 
+	 * @throws IOException Thrown, if writing fails.
+	 */
+	private void writeFully(final long lPosition, final ByteBuffer buffer) throws IOException {
+		m_channel.position(lPosition);
+		while (buffer.hasRemaining()) {
+			m_channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Copies a spooled temporary file into the index file.
+	 * 
+	 * @param pathSource Temporary file. Must not be null.
+	 * @param lPosition Target position in the index file.
+	 * 
+	 * @throws IOException Thrown, if copying fails.
+	 */
+	private void copy(final Path pathSource, final long lPosition) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+		long lPos = lPosition;
+
+		try (final SeekableByteChannel channelSource = Files.newByteChannel(pathSource, StandardOpenOption.READ)) {
+			while (channelSource.read(buffer) >= 0) {
+				buffer.flip();
+				final int iLength = buffer.remaining();
+				writeFully(lPos, buffer);
+				lPos += iLength;
+				buffer.clear();
+			}
+		}
+	}
+
+	//
+	// Static Private Methods
+	//
+
+	/**
+	 * Aligns a file position to 8 bytes.
+	 * 
+	 * @param lPosition Position.
+	 * 
+	 * @return Aligned position.
+	 */
+	private static long align(final long lPosition) {
+		return (lPosition + 7) & ~7L;
+	}
+
+	/**
+	 * Writes a long value in the byte order of the index file.
+	 * 
+	 * @param out Output stream. Must not be null.
+	 * @param lValue Value.
+	 * 
+	 * @throws IOException Thrown, if writing fails.
+	 */
+	private static void writeLong(final OutputStream out, final long lValue) throws IOException {
+		for (int i = 0; i < 8; i++) {
+			out.write((int)(lValue >>> (8 * i)));
+		}
+	}
+}
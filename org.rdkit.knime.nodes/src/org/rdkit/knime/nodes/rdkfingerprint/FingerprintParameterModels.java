@@ -0,0 +1,295 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.knime.core.node.defaultnodesettings.SettingsModel;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+
+/**
+ * The settings models for the parameters of a single fingerprint type. This is used
+ * by nodes that calculate several fingerprint types at once, so that every type
+ * can be configured independently. The settings keys of all models are prefixed by
+ * the name of the fingerprint type. Models are only created for parameters that are
+ * used by the fingerprint type, all other getters return null.
+ *
+ * @author agent
+ */
+public class FingerprintParameterModels {
+
+	//
+	// Members
+	//
+
+	/** The fingerprint type these parameters belong to. */
+	private final FingerprintType m_fpType;
+
+	/** Model for the Torsion path length. Null, if not used by the type. */
+	private final SettingsModelIntegerBounded m_modelTorsionPathLength;
+
+	/** Model for the minimum path length. Null, if not used by the type. */
+	private final SettingsModelIntegerBounded m_modelMinPath;
+
+	/** Model for the maximum path length. Null, if not used by the type. */
+	private final SettingsModelIntegerBounded m_modelMaxPath;
+
+	/** Model for the AtomPair minimum path length. Null, if not used by the type. */
+	private final SettingsModelIntegerBounded m_modelAtomPairMinPath;
+
+	/** Model for the AtomPair maximum path length. Null, if not used by the type. */
+	private final SettingsModelIntegerBounded m_modelAtomPairMaxPath;
+
+	/** Model for the number of fingerprint bits. Null, if not used by the type. */
+	private final SettingsModelIntegerBounded m_modelNumBits;
+
+	/** Model for the radius. Null, if not used by the type. */
+	private final SettingsModelIntegerBounded m_modelRadius;
+
+	/** Model for the layer flags. Null, if not used by the type. */
+	private final SettingsModelIntegerBounded m_modelLayerFlags;
+
+	/** Model for the flag to use chirality. Null, if not used by the type. */
+	private final SettingsModelBoolean m_modelUseChirality;
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Creates the settings models for all parameters used by the specified fingerprint type,
+	 * initialized with the default values of the RDKit Fingerprint node.
+	 *
+	 * @param fpType Fingerprint type. Must not be null.
+	 */
+	public FingerprintParameterModels(final FingerprintType fpType) {
+		if (fpType == null) {
+			throw new IllegalArgumentException("Fingerprint type must not be null.");
+		}
+
+		m_fpType = fpType;
+
+		// Find out which parameters are used by the type
+		final FingerprintSettings dummySettings = fpType.getSpecification(4, 1, 7, 1, 30, 2048, 2, 7,
+				true, false, null, true, false);
+
+		m_modelTorsionPathLength = (dummySettings.isAvailable(dummySettings.getTorsionPathLength()) ?
+				new SettingsModelIntegerBounded(createSettingsKey("torsion_path_length"),
+						AbstractRDKitFingerprintNodeDialog.DEFAULT_TORSION_PATH_LENGTH, 1, 10) : null);
+		m_modelMinPath = (dummySettings.isAvailable(dummySettings.getMinPath()) ?
+				new SettingsModelIntegerBounded(createSettingsKey("min_path"),
+						AbstractRDKitFingerprintNodeDialog.DEFAULT_MIN_PATH, 1, 10) : null);
+		m_modelMaxPath = (dummySettings.isAvailable(dummySettings.getMaxPath()) ?
+				new SettingsModelIntegerBounded(createSettingsKey("max_path"),
+						AbstractRDKitFingerprintNodeDialog.DEFAULT_MAX_PATH, 1, 10) : null);
+		m_modelAtomPairMinPath = (dummySettings.isAvailable(dummySettings.getAtomPairMinPath()) ?
+				new SettingsModelIntegerBounded(createSettingsKey("atompairs_min_path"),
+						AbstractRDKitFingerprintNodeDialog.DEFAULT_ATOMPAIR_MIN_PATH, 1, 30) : null);
+		m_modelAtomPairMaxPath = (dummySettings.isAvailable(dummySettings.getAtomPairMaxPath()) ?
+				new SettingsModelIntegerBounded(createSettingsKey("atompairs_max_path"),
+						AbstractRDKitFingerprintNodeDialog.DEFAULT_ATOMPAIR_MAX_PATH, 1, 30) : null);
+		// MACCS fingerprints have always 166 bits
+		m_modelNumBits = (dummySettings.isAvailable(dummySettings.getNumBits()) && fpType != FingerprintType.maccs ?
+				new SettingsModelIntegerBounded(createSettingsKey("num_bits"),
+						AbstractRDKitFingerprintNodeDialog.DEFAULT_NUM_BITS, 32, Integer.MAX_VALUE) : null);
+		m_modelRadius = (dummySettings.isAvailable(dummySettings.getRadius()) ?
+				new SettingsModelIntegerBounded(createSettingsKey("radius"),
+						AbstractRDKitFingerprintNodeDialog.DEFAULT_RADIUS, 0, 6) : null);
+		m_modelLayerFlags = (dummySettings.isAvailable(dummySettings.getLayerFlags()) ?
+				new SettingsModelIntegerBounded(createSettingsKey("layer_flags"),
+						AbstractRDKitFingerprintNodeDialog.DEFAULT_LAYER_FLAGS, 1, 0xFFFF) : null);
+		// Types without chirality support ignore the passed in flag
+		m_modelUseChirality = (dummySettings.getUseChirality() ?
+				new SettingsModelBoolean(createSettingsKey("use_chirality"),
+						AbstractRDKitFingerprintNodeDialog.DEFAULT_USECHIRALITY_OPTION) : null);
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns the fingerprint type these parameters belong to.
+	 *
+	 * @return Fingerprint type. Never null.
+	 */
+	public FingerprintType getFingerprintType() {
+		return m_fpType;
+	}
+
+	/**
+	 * @return Settings model or null, if not used by the fingerprint type.
+	 */
+	public SettingsModelIntegerBounded getTorsionPathLengthModel() {
+		return m_modelTorsionPathLength;
+	}
+
+	/**
+	 * @return Settings model or null, if not used by the fingerprint type.
+	 */
+	public SettingsModelIntegerBounded getMinPathModel() {
+		return m_modelMinPath;
+	}
+
+	/**
+	 * @return Settings model or null, if not used by the fingerprint type.
+	 */
+	public SettingsModelIntegerBounded getMaxPathModel() {
+		return m_modelMaxPath;
+	}
+
+	/**
+	 * @return Settings model or null, if not used by the fingerprint type.
+	 */
+	public SettingsModelIntegerBounded getAtomPairMinPathModel() {
+		return m_modelAtomPairMinPath;
+	}
+
+	/**
+	 * @return Settings model or null, if not used by the fingerprint type.
+	 */
+	public SettingsModelIntegerBounded getAtomPairMaxPathModel() {
+		return m_modelAtomPairMaxPath;
+	}
+
+	/**
+	 * @return Settings model or null, if not used by the fingerprint type.
+	 */
+	public SettingsModelIntegerBounded getNumBitsModel() {
+		return m_modelNumBits;
+	}
+
+	/**
+	 * @return Settings model or null, if not used by the fingerprint type.
+	 */
+	public SettingsModelIntegerBounded getRadiusModel() {
+		return m_modelRadius;
+	}
+
+	/**
+	 * @return Settings model or null, if not used by the fingerprint type.
+	 */
+	public SettingsModelIntegerBounded getLayerFlagsModel() {
+		return m_modelLayerFlags;
+	}
+
+	/**
+	 * @return Settings model or null, if not used by the fingerprint type.
+	 */
+	public SettingsModelBoolean getUseChiralityModel() {
+		return m_modelUseChirality;
+	}
+
+	/**
+	 * Returns all settings models used by the fingerprint type.
+	 *
+	 * @return Settings models. Never null, but maybe empty.
+	 */
+	public SettingsModel[] getSettingsModels() {
+		final List<SettingsModel> listModels = new ArrayList<SettingsModel>();
+		for (final SettingsModel model : new SettingsModel[] { m_modelNumBits, m_modelRadius,
+				m_modelLayerFlags, m_modelTorsionPathLength, m_modelMinPath, m_modelMaxPath,
+				m_modelAtomPairMinPath, m_modelAtomPairMaxPath, m_modelUseChirality }) {
+			if (model != null) {
+				listModels.add(model);
+			}
+		}
+
+		return listModels.toArray(new SettingsModel[listModels.size()]);
+	}
+
+	/**
+	 * Creates bit-based fingerprint settings for the fingerprint type based on the
+	 * current values of the settings models.
+	 *
+	 * @return Fingerprint settings. Never null.
+	 */
+	public FingerprintSettings createFingerprintSettings() {
+		return m_fpType.getSpecification(
+				getValue(m_modelTorsionPathLength, AbstractRDKitFingerprintNodeDialog.DEFAULT_TORSION_PATH_LENGTH),
+				getValue(m_modelMinPath, AbstractRDKitFingerprintNodeDialog.DEFAULT_MIN_PATH),
+				getValue(m_modelMaxPath, AbstractRDKitFingerprintNodeDialog.DEFAULT_MAX_PATH),
+				getValue(m_modelAtomPairMinPath, AbstractRDKitFingerprintNodeDialog.DEFAULT_ATOMPAIR_MIN_PATH),
+				getValue(m_modelAtomPairMaxPath, AbstractRDKitFingerprintNodeDialog.DEFAULT_ATOMPAIR_MAX_PATH),
+				getValue(m_modelNumBits, AbstractRDKitFingerprintNodeDialog.DEFAULT_NUM_BITS),
+				getValue(m_modelRadius, AbstractRDKitFingerprintNodeDialog.DEFAULT_RADIUS),
+				getValue(m_modelLayerFlags, AbstractRDKitFingerprintNodeDialog.DEFAULT_LAYER_FLAGS),
+				(m_modelUseChirality == null ? false : m_modelUseChirality.getBooleanValue()),
+				false, null, true, false);
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Creates the settings key of a parameter of the fingerprint type.
+	 *
+	 * @param strKey Key of the parameter as used by the RDKit Fingerprint node.
+	 *
+	 * @return Settings key prefixed by the fingerprint type.
+	 */
+	private String createSettingsKey(final String strKey) {
+		return m_fpType.name() + "_" + strKey;
+	}
+
+	/**
+	 * Returns the value of the passed in model or the default value, if the model is null.
+	 *
+	 * @param model Settings model. Can be null.
+	 * @param iDefault Default value.
+	 *
+	 * @return Value of the model or the default value.
+	 */
+	private static int getValue(final SettingsModelIntegerBounded model, final int iDefault) {
+		return (model == null ? iDefault : model.getIntValue());
+	}
+}
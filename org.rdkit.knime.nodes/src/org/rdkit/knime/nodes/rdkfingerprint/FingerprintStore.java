@@ -0,0 +1,148 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+/**
+ * A fingerprint store provides read access to many bit-based fingerprints of
+ * the same length, which are packed into 64 bit words (bit i of a fingerprint
+ * is stored in word i / 64 at bit position i % 64) and sorted by popcount.
+ * Fingerprints are addressed by their index in popcount order. The popcount bins
+ * let similarity searches skip all fingerprints that cannot reach a similarity
+ * threshold. Implementations must allow concurrent reads from multiple threads.
+ * 
+ * @author agent
+ */
+public interface FingerprintStore {
+
+	/**
+	 * Returns the number of fingerprints in this store.
+	 * 
+	 * @return Number of fingerprints.
+	 */
+	int size();
+
+	/**
+	 * Returns the number of bits of each fingerprint.
+	 * 
+	 * @return Number of bits.
+	 */
+	int getNumBits();
+
+	/**
+	 * Returns the number of long words used for each fingerprint.
+	 * 
+	 * @return Words per fingerprint.
+	 */
+	int getWordsPerFingerprint();
+
+	/**
+	 * Returns a copy of the words of the fingerprint with the specified index.
+	 * 
+	 * @param iIndex Fingerprint index.
+	 * 
+	 * @return Copy of the fingerprint words.
+	 */
+	long[] getWords(int iIndex);
+
+	/**
+	 * Returns the popcount of the fingerprint with the specified index.
+	 * 
+	 * @param iIndex Fingerprint index.
+	 * 
+	 * @return Popcount.
+	 */
+	int getPopCount(int iIndex);
+
+	/**
+	 * Returns the tag of the fingerprint with the specified index, normally
+	 * the position of the fingerprint in the originating table or file.
+	 * 
+	 * @param iIndex Fingerprint index.
+	 * 
+	 * @return Tag.
+	 */
+	long getTag(int iIndex);
+
+	/**
+	 * Returns the ID of the fingerprint with the specified index.
+	 * 
+	 * @param iIndex Fingerprint index.
+	 * 
+	 * @return ID or null, if IDs are not stored.
+	 */
+	String getId(int iIndex);
+
+	/**
+	 * Returns the first index of all fingerprints with a popcount of at least the specified value.
+	 * 
+	 * @param iPopCount Popcount. Values out of range are clamped.
+	 * 
+	 * @return Start index of the popcount bin.
+	 */
+	int getBinStart(int iPopCount);
+
+	/**
+	 * Returns the index after the last fingerprint with a popcount of at most the specified value.
+	 * 
+	 * @param iPopCount Popcount. Values out of range are clamped.
+	 * 
+	 * @return End index (exclusive) of the popcount bin.
+	 */
+	int getBinEnd(int iPopCount);
+
+	/**
+	 * Counts the bits that are set in the specified fingerprint and in the passed in query.
+	 * 
+	 * @param iIndex Fingerprint index.
+	 * @param arrQuery Query words. Must have at least {@link #getWordsPerFingerprint()} words.
+	 * 
+	 * @return Number of common bits.
+	 */
+	int getCommonBitCount(int iIndex, long[] arrQuery);
+}
@@ -1212,13 +1212,8 @@ public enum FingerprintType {
 
 		if (fpRdkit != null) {
 			try {
-				final int iCount = (int)fpRdkit.getNumBits();
-				fp = new DenseBitVector(iCount);
-				for (int i = 0; i < iCount; i++) {
-					if (fpRdkit.getBit(i)) {
-						fp.set(i);
-					}
-				}
+				// Transfer all bits with a single native call instead of calling getBit() for every bit
+				fp = convertFromFpsText(RDKFuncs.BitVectToFPSText(fpRdkit), fpRdkit.getNumBits());
 			}
 			finally {
 				fpRdkit.delete();
@@ -1241,27 +1236,22 @@ public enum FingerprintType {
 
 		if (fpRdkit != null) {
 			try {
-				fp = new DenseByteVector((int)fpRdkit.getLength());
+				final byte[] arrCounts = new byte[(int)fpRdkit.getLength()];
 				final UInt_Pair_Vect listOfPairs = fpRdkit.getNonzero();
 				if (listOfPairs != null) {
 					try {
 						final int iCount = (int)listOfPairs.size();
 						for (int i = 0; i < iCount; i++) {
+							// Pairs are non-owning views into the vector, they do not need to be deleted
 							final UInt_Pair pair = listOfPairs.get(i);
-							if (pair != null) {
-								try {
-									fp.set((int)pair.getFirst(), pair.getSecond());
-								}
-								finally {
-									pair.delete();
-								}
-							}
+							setCount(arrCounts, (int)pair.getFirst(), pair.getSecond());
 						}
 					}
 					finally {
 						listOfPairs.delete();
 					}
 				}
+				fp = new DenseByteVector(arrCounts);
 			}
 			finally {
 				fpRdkit.delete();
@@ -1284,27 +1274,22 @@ public enum FingerprintType {
 
 		if (fpRdkit != null) {
 			try {
-				fp = new DenseByteVector(fpRdkit.getLength());
+				final byte[] arrCounts = new byte[fpRdkit.getLength()];
 				final Match_Vect listOfPairs = fpRdkit.getNonzero();
 				if (listOfPairs != null) {
 					try {
 						final int iCount = (int)listOfPairs.size();
 						for (int i = 0; i < iCount; i++) {
+							// Pairs are non-owning views into the vector, they do not need to be deleted
 							final Int_Pair pair = listOfPairs.get(i);
-							if (pair != null) {
-								try {
-									fp.set(pair.getFirst(), pair.getSecond());
-								}
-								finally {
-									pair.delete();
-								}
-							}
+							setCount(arrCounts, pair.getFirst(), pair.getSecond());
 						}
 					}
 					finally {
 						listOfPairs.delete();
 					}
 				}
+				fp = new DenseByteVector(arrCounts);
 			}
 			finally {
 				fpRdkit.delete();
@@ -1327,27 +1312,22 @@ public enum FingerprintType {
 
 		if (fpRdkit != null) {
 			try {
-				fp = new DenseByteVector((int)fpRdkit.getLength());
+				final byte[] arrCounts = new byte[(int)fpRdkit.getLength()];
 				final Long_Pair_Vect listOfPairs = fpRdkit.getNonzero();
 				if (listOfPairs != null) {
 					try {
 						final int iCount = (int)listOfPairs.size();
 						for (int i = 0; i < iCount; i++) {
+							// Pairs are non-owning views into the vector, they do not need to be deleted
 							final Long_Pair pair = listOfPairs.get(i);
-							if (pair != null) {
-								try {
-									fp.set((int)pair.getFirst(), pair.getSecond());
-								}
-								finally {
-									pair.delete();
-								}
-							}
+							setCount(arrCounts, (int)pair.getFirst(), pair.getSecond());
 						}
 					}
 					finally {
 						listOfPairs.delete();
 					}
 				}
+				fp = new DenseByteVector(arrCounts);
 			}
 			finally {
 				fpRdkit.delete();
@@ -1356,4 +1336,48 @@ public enum FingerprintType {
 
 		return fp;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Converts a fingerprint in FPS hex format (as delivered by {@link RDKFuncs#BitVectToFPSText(ExplicitBitVect)})
+	 * into a KNIME fingerprint. In FPS format bit i is stored in byte i / 8 at bit position i % 8,
+	 * and every byte is represented by two hex characters.
+	 * 
+	 * @param strFps Fingerprint in FPS hex format. Must not be null.
+	 * @param lNumBits Number of bits of the fingerprint.
+	 * 
+	 * @return KNIME fingerprint object.
+	 */
+	static DenseBitVector convertFromFpsText(final String strFps, final long lNumBits) {
+		final long[] arrWords = new long[(int)((lNumBits + 63) / 64)];
+		final int iBytes = Math.min(strFps.length() / 2, (int)((lNumBits + 7) / 8));
+
+		for (int iByte = 0; iByte < iBytes; iByte++) {
+			final int iValue = (Character.digit(strFps.charAt(2 * iByte), 16) << 4) |
+					Character.digit(strFps.charAt(2 * iByte + 1), 16);
+			if (iValue != 0) {
+				arrWords[iByte >>> 3] |= ((long)iValue) << ((iByte & 7) << 3);
+			}
+		}
+
+		return new DenseBitVector(arrWords, lNumBits);
+	}
+
+	/**
+	 * Sets a count value in a byte array used for a {@link DenseByteVector}. The
+	 * value range is checked the same way as in {@link DenseByteVector#set(int, int)}.
+	 * 
+	 * @param arrCounts Count array. Must not be null.
+	 * @param iIndex Index of the value.
+	 * @param iCount Count value. Must be between 0 and 255.
+	 * 
+	 * @throws IllegalArgumentException Thrown, if the count is out of range.
+	 * @throws ArrayIndexOutOfBoundsException Thrown, if the index is out of range.
+	 */
+	private static void setCount(final byte[] arrCounts, final int iIndex, final int iCount) {
+		if (iCount < 0 || iCount > 255) {
+			throw new IllegalArgumentException("Count value " + iCount + " at position " + iIndex + 
+					" is out of range (0 - 255).");
+		}
+		arrCounts[iIndex] = (byte)iCount;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,320 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import java.util.Arrays;
+
+/**
+ * Implements the MaxMin diversity picking algorithm (Ashton, M. et al., Quant. Struct.-Act. Relat.,
+ * 21 (2002), 598-604) on a {@link FingerprintStore}, which can be a packed arena in the Java heap
+ * or a memory-mapped fingerprint index. For every candidate only the Tanimoto distance to
+ * its closest picked (or bias) fingerprint is kept in a primitive array, which needs 4 bytes per
+ * candidate beyond the fingerprints. The next pick is always the candidate with the largest
+ * of these minimum distances.
+ * Updating the minimum distances with a new fingerprint can be split into slices, which can
+ * be processed in parallel. A candidate is only compared, if its distance lower bound based on
+ * the popcounts is smaller than its current minimum distance. Picking and updating slices of
+ * the same fingerprint must not happen concurrently.
+ *
+ * @author agent
+ */
+public class MaxMinPicker {
+
+	//
+	// Constants
+	//
+
+	/** Minimum distance marker of candidates that have been picked already. */
+	private static final float PICKED = -1.0f;
+
+	/** Tolerance used when comparing distance lower bounds to avoid skipping candidates due to rounding. */
+	private static final float EPSILON = 1e-6f;
+
+	//
+	// Members
+	//
+
+	/** The candidate fingerprints. */
+	private final FingerprintStore m_store;
+
+	/** Minimum distance of every candidate to all picked and bias fingerprints. */
+	private final float[] m_arrMinDistances;
+
+	/** Indexes of the picked candidates in the order of picking. */
+	private int[] m_arrPicks;
+
+	/** Number of picked candidates. */
+	private int m_iPickCount;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Creates a new picker without any picks.
+	 *
+	 * @param store Candidate fingerprints. Must not be null.
+	 */
+	public MaxMinPicker(final FingerprintStore store) {
+		this(store, null);
+	}
+
+	/**
+	 * Creates a new picker, which continues with previously calculated minimum distances.
+	 *
+	 * @param store Candidate fingerprints. Must not be null.
+	 * @param arrMinDistances Minimum distances of all candidates to fingerprints picked before,
+	 * 		or null to start without picks. Negative values mark candidates that must not be
+	 * 		picked anymore, e.g. because they were picked in an earlier run. The array is used
+	 * 		directly and not copied.
+	 */
+	public MaxMinPicker(final FingerprintStore store, final float[] arrMinDistances) {
+		if (store == null) {
+			throw new IllegalArgumentException("Fingerprint store must not be null.");
+		}
+		if (arrMinDistances != null && arrMinDistances.length != store.size()) {
+			throw new IllegalArgumentException("Number of minimum distances must match the number of candidates.");
+		}
+
+		m_store = store;
+		if (arrMinDistances != null) {
+			m_arrMinDistances = arrMinDistances;
+		}
+		else {
+			m_arrMinDistances = new float[store.size()];
+			Arrays.fill(m_arrMinDistances, Float.MAX_VALUE);
+		}
+		m_arrPicks = new int[16];
+		m_iPickCount = 0;
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns the candidate fingerprints.
+	 *
+	 * @return Fingerprint store.
+	 */
+	public FingerprintStore getStore() {
+		return m_store;
+	}
+
+	/**
+	 * Updates the minimum distances of all not picked candidates of a slice with the distances to
+	 * the specified fingerprint (e.g. a new pick or a bias fingerprint) and determines the best
+	 * candidate of the slice for the next pick.
+	 *
+	 * @param iSlice Slice number between 0 and iSliceCount - 1.
+	 * @param iSliceCount Total number of slices.
+	 * @param arrWords Words of the fingerprint. Must have at least as many words as the candidates.
+	 * 		Can be null to only determine the best candidate.
+	 *
+	 * @return Index of the not picked candidate with the largest minimum distance in the slice
+	 * 		(the smallest index for ties), or -1 if all candidates of the slice are picked.
+	 */
+	public int update(final int iSlice, final int iSliceCount, final long[] arrWords) {
+		final int iSize = m_store.size();
+		final int iStart = (int)((long)iSize * iSlice / iSliceCount);
+		final int iEnd = (int)((long)iSize * (iSlice + 1) / iSliceCount);
+		final float[] arrMinDistances = m_arrMinDistances;
+		final int iPopCount = (arrWords == null ? 0 : FingerprintArena.getPopCount(arrWords));
+		int iBest = -1;
+		float fBest = PICKED;
+
+		for (int i = iStart; i < iEnd; i++) {
+			float fMin = arrMinDistances[i];
+			if (fMin < 0) {
+				continue;
+			}
+
+			if (arrWords != null) {
+				// Compare only, if the distance can be smaller than the current minimum
+				final int iCandidatePopCount = m_store.getPopCount(i);
+				final float fLowerBound = (float)(1.0d - SimilarityMetric.getUpperBound(
+						iPopCount, iCandidatePopCount, 1.0d, 1.0d));
+				if (fLowerBound - EPSILON < fMin) {
+					final float fDistance = (float)(1.0d - SimilarityMetric.calculate(iPopCount, iCandidatePopCount,
+							m_store.getCommonBitCount(i, arrWords), 1.0d, 1.0d));
+					if (fDistance < fMin) {
+						fMin = fDistance;
+						arrMinDistances[i] = fMin;
+					}
+				}
+			}
+
+			if (fMin > fBest) {
+				fBest = fMin;
+				iBest = i;
+			}
+		}
+
+		return iBest;
+	}
+
+	/**
+	 * Selects the best candidate from the results of {@link #update(int, int, long[])} for all slices.
+	 *
+	 * @param arrSliceBests Best candidates of all slices in slice order. Must not be null.
+	 *
+	 * @return Index of the candidate with the largest minimum distance or -1, if all are picked.
+	 */
+	public int selectBest(final int[] arrSliceBests) {
+		int iBest = -1;
+		float fBest = PICKED;
+
+		for (final int iCandidate : arrSliceBests) {
+			if (iCandidate >= 0 && m_arrMinDistances[iCandidate] > fBest) {
+				fBest = m_arrMinDistances[iCandidate];
+				iBest = iCandidate;
+			}
+		}
+
+		return iBest;
+	}
+
+	/**
+	 * Marks a candidate as picked. Afterwards the minimum distances need to be
+	 * updated with the fingerprint of the picked candidate.
+	 *
+	 * @param iIndex Candidate index.
+	 */
+	public void pick(final int iIndex) {
+		if (m_arrMinDistances[iIndex] < 0) {
+			throw new IllegalArgumentException("Candidate " + iIndex + " has been picked already.");
+		}
+
+		if (m_iPickCount == m_arrPicks.length) {
+			m_arrPicks = Arrays.copyOf(m_arrPicks, m_iPickCount * 2);
+		}
+
+		m_arrPicks[m_iPickCount++] = iIndex;
+		m_arrMinDistances[iIndex] = PICKED;
+	}
+
+	/**
+	 * Returns the number of picked candidates.
+	 *
+	 * @return Number of picks.
+	 */
+	public int getPickCount() {
+		return m_iPickCount;
+	}
+
+	/**
+	 * Returns a picked candidate.
+	 *
+	 * @param iPick Pick number between 0 and {@link #getPickCount()} - 1.
+	 *
+	 * @return Candidate index.
+	 */
+	public int getPick(final int iPick) {
+		return m_arrPicks[iPick];
+	}
+
+	/**
+	 * Determines, if a candidate has been picked or must not be picked anymore.
+	 *
+	 * @param iIndex Candidate index.
+	 *
+	 * @return True, if picked. False otherwise.
+	 */
+	public boolean isPicked(final int iIndex) {
+		return m_arrMinDistances[iIndex] < 0;
+	}
+
+	/**
+	 * Returns the current minimum distance of a candidate to all picked and bias fingerprints.
+	 *
+	 * @param iIndex Candidate index.
+	 *
+	 * @return Minimum distance, {@link Float#MAX_VALUE} if nothing was compared yet,
+	 * 		or a negative value, if the candidate has been picked.
+	 */
+	public float getMinDistance(final int iIndex) {
+		return m_arrMinDistances[iIndex];
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Calculates the minimum Tanimoto distance of a fingerprint to all fingerprints of a store,
+	 * e.g. to determine the minimum distance of a new candidate to the picks of an earlier run.
+	 * Fingerprints of the store are only compared, if their distance lower bound based on the
+	 * popcounts is smaller than the minimum found so far.
+	 *
+	 * @param references Fingerprints to compare with. Must not be null.
+	 * @param arrWords Words of the fingerprint. Must have at least as many words as the references.
+	 *
+	 * @return Minimum distance or {@link Float#MAX_VALUE}, if the store is empty.
+	 */
+	public static float getMinDistance(final FingerprintStore references, final long[] arrWords) {
+		final int iSize = references.size();
+		final int iPopCount = FingerprintArena.getPopCount(arrWords);
+		float fMin = Float.MAX_VALUE;
+
+		for (int i = 0; i < iSize && fMin > 0; i++) {
+			final int iReferencePopCount = references.getPopCount(i);
+			final float fLowerBound = (float)(1.0d - SimilarityMetric.getUpperBound(
+					iPopCount, iReferencePopCount, 1.0d, 1.0d));
+			if (fLowerBound - EPSILON < fMin) {
+				final float fDistance = (float)(1.0d - SimilarityMetric.calculate(iPopCount, iReferencePopCount,
+						references.getCommonBitCount(i, arrWords), 1.0d, 1.0d));
+				if (fDistance < fMin) {
+					fMin = fDistance;
+				}
+			}
+		}
+
+		return fMin;
+	}
+}
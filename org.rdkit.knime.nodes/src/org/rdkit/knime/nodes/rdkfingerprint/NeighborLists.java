@@ -0,0 +1,255 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import java.util.Arrays;
+
+import org.rdkit.knime.nodes.rdkfingerprint.SimilarityMatrixCalculator.SimilarityBlock;
+
+/**
+ * Compact, symmetric neighbor lists of fingerprints, which are stored in primitive
+ * arrays (compressed sparse rows). The lists are built in two steps: First the
+ * neighbors with a larger index (upper triangle of the similarity matrix) are added
+ * block by block in the order of the fingerprints, e.g. as calculated by a
+ * {@link SimilarityMatrixCalculator}. Then {@link #complete()} mirrors them into
+ * full neighbor lists. Neighbors of a fingerprint are ordered by index.
+ * Adding is not thread-safe.
+ *
+ * @author agent
+ */
+public class NeighborLists {
+
+	//
+	// Members
+	//
+
+	/** Number of fingerprints. */
+	private final int m_iSize;
+
+	/** Start offsets of the neighbors of every fingerprint. Length is size + 1. */
+	private int[] m_arrOffsets;
+
+	/** Neighbors of all fingerprints. */
+	private int[] m_arrNeighbors;
+
+	/** Number of fingerprints with upper neighbors added so far. */
+	private int m_iAdded;
+
+	/** Number of upper neighbors added so far. */
+	private int m_iPairCount;
+
+	/** Flag to tell that the lists are complete. */
+	private boolean m_bComplete;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Creates new empty neighbor lists.
+	 *
+	 * @param iSize Number of fingerprints.
+	 */
+	public NeighborLists(final int iSize) {
+		m_iSize = iSize;
+		m_arrOffsets = new int[iSize + 1];
+		m_arrNeighbors = new int[Math.max(16, iSize)];
+		m_iAdded = 0;
+		m_iPairCount = 0;
+		m_bComplete = false;
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Adds the upper neighbors of a block of fingerprints. Blocks must be added in order
+	 * and must contain only neighbors with a larger index than the fingerprint itself.
+	 *
+	 * @param block Similarities of a block of fingerprints compared with the larger ones. Must not be null.
+	 */
+	public void addUpperNeighbors(final SimilarityBlock block) {
+		if (m_bComplete) {
+			throw new IllegalStateException("Neighbor lists are complete already.");
+		}
+		if (block.getQueryStart() != m_iAdded) {
+			throw new IllegalArgumentException("Blocks must be added in order.");
+		}
+
+		for (int q = 0; q < block.getQueryCount(); q++) {
+			final int iPairCount = block.getPairCount(q);
+			if (m_iPairCount + iPairCount > m_arrNeighbors.length) {
+				final long lNewLength = Math.max((long)m_iPairCount + iPairCount,
+						(long)m_arrNeighbors.length + (m_arrNeighbors.length >> 1));
+				if (lNewLength > Integer.MAX_VALUE - 8) {
+					throw new IllegalStateException("Too many neighbors for neighbor lists.");
+				}
+				m_arrNeighbors = Arrays.copyOf(m_arrNeighbors, (int)lNewLength);
+			}
+			for (int i = 0; i < iPairCount; i++) {
+				m_arrNeighbors[m_iPairCount++] = block.getTarget(q, i);
+			}
+			m_arrOffsets[++m_iAdded] = m_iPairCount;
+		}
+	}
+
+	/**
+	 * Mirrors all added upper neighbors, so that every fingerprint knows all its neighbors.
+	 * Fingerprints without added neighbors get empty lists.
+	 */
+	public void complete() {
+		if (m_bComplete) {
+			return;
+		}
+
+		// Fingerprints that were never added have no upper neighbors
+		while (m_iAdded < m_iSize) {
+			m_arrOffsets[++m_iAdded] = m_iPairCount;
+		}
+
+		if ((long)m_iPairCount * 2 > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Too many neighbors for neighbor lists.");
+		}
+
+		// Count lower and upper neighbors per fingerprint
+		final int[] arrCounts = new int[m_iSize + 1];
+		for (int i = 0; i < m_iSize; i++) {
+			arrCounts[i + 1] += m_arrOffsets[i + 1] - m_arrOffsets[i];
+			for (int k = m_arrOffsets[i]; k < m_arrOffsets[i + 1]; k++) {
+				arrCounts[m_arrNeighbors[k] + 1]++;
+			}
+		}
+		for (int i = 1; i <= m_iSize; i++) {
+			arrCounts[i] += arrCounts[i - 1];
+		}
+
+		// Fill in lower neighbors first (in increasing order), then upper neighbors
+		final int[] arrNeighbors = new int[m_iPairCount * 2];
+		final int[] arrNext = Arrays.copyOf(arrCounts, m_iSize);
+		for (int i = 0; i < m_iSize; i++) {
+			for (int k = m_arrOffsets[i]; k < m_arrOffsets[i + 1]; k++) {
+				arrNeighbors[arrNext[m_arrNeighbors[k]]++] = i;
+			}
+		}
+		for (int i = 0; i < m_iSize; i++) {
+			final int iCount = m_arrOffsets[i + 1] - m_arrOffsets[i];
+			System.arraycopy(m_arrNeighbors, m_arrOffsets[i], arrNeighbors, arrNext[i], iCount);
+		}
+
+		m_arrOffsets = arrCounts;
+		m_arrNeighbors = arrNeighbors;
+		m_bComplete = true;
+	}
+
+	/**
+	 * Returns the number of fingerprints.
+	 *
+	 * @return Number of fingerprints.
+	 */
+	public int size() {
+		return m_iSize;
+	}
+
+	/**
+	 * Returns the number of neighbors of a fingerprint. The lists must be complete.
+	 *
+	 * @param iIndex Fingerprint index.
+	 *
+	 * @return Number of neighbors, not counting the fingerprint itself.
+	 */
+	public int getNeighborCount(final int iIndex) {
+		checkComplete();
+		return m_arrOffsets[iIndex + 1] - m_arrOffsets[iIndex];
+	}
+
+	/**
+	 * Returns a neighbor of a fingerprint. The lists must be complete.
+	 *
+	 * @param iIndex Fingerprint index.
+	 * @param iNeighbor Neighbor number between 0 and {@link #getNeighborCount(int)} - 1.
+	 *
+	 * @return Index of the neighbor fingerprint.
+	 */
+	public int getNeighbor(final int iIndex, final int iNeighbor) {
+		checkComplete();
+		return m_arrNeighbors[m_arrOffsets[iIndex] + iNeighbor];
+	}
+
+	/**
+	 * Returns the total number of neighbor pairs.
+	 *
+	 * @return Number of pairs. Every pair is counted once.
+	 */
+	public long getPairCount() {
+		return (m_bComplete ? m_arrNeighbors.length / 2 : m_iPairCount);
+	}
+
+	/**
+	 * Returns the approximate memory footprint of the lists.
+	 *
+	 * @return Number of bytes used by the primitive arrays.
+	 */
+	public long getMemoryFootprint() {
+		return 4L * m_arrOffsets.length + 4L * m_arrNeighbors.length;
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Ensures that the lists are complete.
+	 */
+	private void checkComplete() {
+		if (!m_bComplete) {
+			throw new IllegalStateException("Neighbor lists are not complete yet.");
+		}
+	}
+}
@@ -0,0 +1,342 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import java.util.Arrays;
+
+/**
+ * An inverted index over the fingerprints of substructure patterns, which maps every
+ * fingerprint bit to the patterns that have this bit set. A pattern can only be a
+ * substructure of a molecule, if all bits of the pattern fingerprint are also set in the
+ * molecule fingerprint. Screening a molecule walks only over its on-bits and counts for
+ * every pattern how many of its bits were found. Patterns that reach their popcount are
+ * the candidates, which need to be checked with a real substructure match. Patterns without
+ * fingerprint or with an empty fingerprint cannot be screened and are always candidates.
+ * The index is immutable and can be used by multiple threads concurrently, as long as
+ * every thread uses its own {@link Workspace}.
+ *
+ * @author agent
+ */
+public class PatternFingerprintIndex {
+
+	//
+	// Members
+	//
+
+	/** Number of fingerprint bits. */
+	private final int m_iNumBits;
+
+	/** Number of patterns. */
+	private final int m_iPatternCount;
+
+	/** Popcount of every pattern fingerprint, or -1 for patterns that cannot be screened. */
+	private final int[] m_arrPopCounts;
+
+	/** Start offsets of the patterns of every bit. Length is number of bits + 1. */
+	private final int[] m_arrBitOffsets;
+
+	/** Patterns of all bits in the order of the bits. */
+	private final int[] m_arrBitPatterns;
+
+	/** Patterns that cannot be screened and are always candidates. */
+	private final int[] m_arrUnscreenedPatterns;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Creates a new inverted index for the specified pattern fingerprints.
+	 *
+	 * @param iNumBits Number of fingerprint bits. Must be > 0.
+	 * @param arrPatternWords Fingerprint words of all patterns. Must not be null.
+	 * 		Elements can be null for patterns without fingerprint.
+	 */
+	public PatternFingerprintIndex(final int iNumBits, final long[][] arrPatternWords) {
+		if (iNumBits <= 0) {
+			throw new IllegalArgumentException("Number of bits must be > 0.");
+		}
+
+		m_iNumBits = iNumBits;
+		m_iPatternCount = arrPatternWords.length;
+		m_arrPopCounts = new int[m_iPatternCount];
+		m_arrBitOffsets = new int[iNumBits + 1];
+
+		// Count patterns per bit
+		int iUnscreenedCount = 0;
+		for (int p = 0; p < m_iPatternCount; p++) {
+			int iPopCount = 0;
+			if (arrPatternWords[p] != null) {
+				for (int iBit = nextSetBit(arrPatternWords[p], 0); iBit >= 0; iBit = nextSetBit(arrPatternWords[p], iBit + 1)) {
+					m_arrBitOffsets[iBit + 1]++;
+					iPopCount++;
+				}
+			}
+			if (iPopCount == 0) {
+				m_arrPopCounts[p] = -1;
+				iUnscreenedCount++;
+			}
+			else {
+				m_arrPopCounts[p] = iPopCount;
+			}
+		}
+		for (int iBit = 1; iBit <= iNumBits; iBit++) {
+			m_arrBitOffsets[iBit] += m_arrBitOffsets[iBit - 1];
+		}
+
+		// Fill in patterns per bit in increasing pattern order
+		m_arrBitPatterns = new int[m_arrBitOffsets[iNumBits]];
+		m_arrUnscreenedPatterns = new int[iUnscreenedCount];
+		final int[] arrNext = Arrays.copyOf(m_arrBitOffsets, iNumBits);
+		for (int p = 0, u = 0; p < m_iPatternCount; p++) {
+			if (m_arrPopCounts[p] < 0) {
+				m_arrUnscreenedPatterns[u++] = p;
+			}
+			else {
+				for (int iBit = nextSetBit(arrPatternWords[p], 0); iBit >= 0; iBit = nextSetBit(arrPatternWords[p], iBit + 1)) {
+					m_arrBitPatterns[arrNext[iBit]++] = p;
+				}
+			}
+		}
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns the number of fingerprint bits.
+	 *
+	 * @return Number of bits.
+	 */
+	public int getNumBits() {
+		return m_iNumBits;
+	}
+
+	/**
+	 * Returns the number of patterns.
+	 *
+	 * @return Number of patterns.
+	 */
+	public int getPatternCount() {
+		return m_iPatternCount;
+	}
+
+	/**
+	 * Returns the number of patterns that cannot be screened and are always candidates.
+	 *
+	 * @return Number of unscreened patterns.
+	 */
+	public int getUnscreenedPatternCount() {
+		return m_arrUnscreenedPatterns.length;
+	}
+
+	/**
+	 * Returns the approximate memory footprint of the index.
+	 *
+	 * @return Number of bytes used by the primitive arrays.
+	 */
+	public long getMemoryFootprint() {
+		return 4L * (m_arrPopCounts.length + m_arrBitOffsets.length +
+				m_arrBitPatterns.length + m_arrUnscreenedPatterns.length);
+	}
+
+	/**
+	 * Creates a new workspace to be used for screening. A workspace must not be
+	 * shared between threads.
+	 *
+	 * @return New workspace.
+	 */
+	public Workspace createWorkspace() {
+		return new Workspace(m_iPatternCount);
+	}
+
+	/**
+	 * Determines all patterns that may be substructures of a molecule based on its fingerprint.
+	 * The candidates are stored in the workspace in increasing pattern order. Nothing
+	 * gets allocated during screening.
+	 *
+	 * @param arrWords Fingerprint words of the molecule. Can be null, if the molecule has
+	 * 		no fingerprint. In this case only patterns that cannot be screened are candidates.
+	 * @param workspace Workspace created by {@link #createWorkspace()}. Must not be null.
+	 *
+	 * @return Number of candidates, which are available from {@link Workspace#getCandidates()}.
+	 */
+	public int screen(final long[] arrWords, final Workspace workspace) {
+		final int[] arrCounts = workspace.m_arrCounts;
+		final int[] arrStamps = workspace.m_arrStamps;
+		final int[] arrCandidates = workspace.m_arrCandidates;
+		final int iStamp = workspace.nextStamp();
+		int iCandidateCount = 0;
+
+		System.arraycopy(m_arrUnscreenedPatterns, 0, arrCandidates, 0, m_arrUnscreenedPatterns.length);
+		iCandidateCount = m_arrUnscreenedPatterns.length;
+
+		if (arrWords != null) {
+			final int iWords = Math.min(arrWords.length, (m_iNumBits + 63) >>> 6);
+			for (int w = 0; w < iWords; w++) {
+				long lWord = arrWords[w];
+				while (lWord != 0) {
+					final int iBit = (w << 6) + Long.numberOfTrailingZeros(lWord);
+					lWord &= lWord - 1;
+					if (iBit >= m_iNumBits) {
+						break;
+					}
+
+					final int iEnd = m_arrBitOffsets[iBit + 1];
+					for (int k = m_arrBitOffsets[iBit]; k < iEnd; k++) {
+						final int p = m_arrBitPatterns[k];
+						final int iCount = (arrStamps[p] == iStamp ? arrCounts[p] + 1 : 1);
+						arrStamps[p] = iStamp;
+						arrCounts[p] = iCount;
+						if (iCount == m_arrPopCounts[p]) {
+							arrCandidates[iCandidateCount++] = p;
+						}
+					}
+				}
+			}
+
+			if (iCandidateCount > m_arrUnscreenedPatterns.length) {
+				Arrays.sort(arrCandidates, 0, iCandidateCount);
+			}
+		}
+
+		return iCandidateCount;
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Finds the next set bit in the specified words.
+	 *
+	 * @param arrWords Fingerprint words. Must not be null.
+	 * @param iFrom Bit to start from.
+	 *
+	 * @return Next set bit or -1, if there is none, or if it is beyond the number of bits.
+	 */
+	private int nextSetBit(final long[] arrWords, final int iFrom) {
+		int w = iFrom >>> 6;
+		if (w >= arrWords.length) {
+			return -1;
+		}
+
+		long lWord = arrWords[w] & (-1L << (iFrom & 63));
+		while (lWord == 0) {
+			if (++w >= arrWords.length) {
+				return -1;
+			}
+			lWord = arrWords[w];
+		}
+
+		final int iBit = (w << 6) + Long.numberOfTrailingZeros(lWord);
+		return (iBit < m_iNumBits ? iBit : -1);
+	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * Counters and candidate buffer of a single thread that screens molecules.
+	 * Counters are not reset between molecules. Instead, every screening uses
+	 * a new stamp and counters with an older stamp are treated as 0.
+	 */
+	public static class Workspace {
+
+		/** Number of found bits per pattern. */
+		private final int[] m_arrCounts;
+
+		/** Stamp of the screening, which set the counter of a pattern. */
+		private final int[] m_arrStamps;
+
+		/** Candidates of the last screening. */
+		private final int[] m_arrCandidates;
+
+		/** Current stamp. */
+		private int m_iStamp;
+
+		/**
+		 * Creates a new workspace.
+		 *
+		 * @param iPatternCount Number of patterns.
+		 */
+		private Workspace(final int iPatternCount) {
+			m_arrCounts = new int[iPatternCount];
+			m_arrStamps = new int[iPatternCount];
+			m_arrCandidates = new int[iPatternCount];
+			m_iStamp = 0;
+		}
+
+		/**
+		 * Returns the candidates of the last screening. Only the first elements
+		 * up to the number returned by {@link PatternFingerprintIndex#screen(long[], Workspace)}
+		 * are valid.
+		 *
+		 * @return Candidate patterns. Must not be modified.
+		 */
+		public int[] getCandidates() {
+			return m_arrCandidates;
+		}
+
+		/**
+		 * Advances to the next stamp. Stamps are reset when they overflow.
+		 *
+		 * @return New stamp.
+		 */
+		private int nextStamp() {
+			if (++m_iStamp == Integer.MAX_VALUE) {
+				Arrays.fill(m_arrStamps, 0);
+				m_iStamp = 1;
+			}
+			return m_iStamp;
+		}
+	}
+}
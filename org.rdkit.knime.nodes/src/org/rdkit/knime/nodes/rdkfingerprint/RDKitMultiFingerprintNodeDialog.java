@@ -0,0 +1,179 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import java.util.Arrays;
+
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumberEdit;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.rdkit.knime.types.RDKitMolValue;
+import org.rdkit.knime.util.DialogComponentColumnNameSelection;
+import org.rdkit.knime.util.DialogComponentEnumFilterPanel;
+import org.rdkit.knime.util.SettingsModelEnumerationArray;
+
+/**
+ * The dialog to configure the RDKit Multi Fingerprint node.
+ *
+ * @author agent
+ */
+public class RDKitMultiFingerprintNodeDialog extends DefaultNodeSettingsPane {
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Create a new dialog pane with components to select the input column,
+	 * the fingerprint types to be calculated and the parameters of every fingerprint type.
+	 */
+	RDKitMultiFingerprintNodeDialog() {
+		super.addDialogComponent(new DialogComponentColumnNameSelection(
+				createInputColumnNameModel(), "RDKit Mol column: ", 0,
+				RDKitMolValue.class));
+		super.addDialogComponent(new DialogComponentBoolean(
+				createRemoveSourceColumnOptionModel(), "Remove source column"));
+		super.addDialogComponent(new DialogComponentEnumFilterPanel<FingerprintType>(
+				createFingerprintTypesModel(), "Fingerprint types to calculate (one column per type):",
+				Arrays.asList(RDKitFingerprintNodeModel.getBitBasedFingerprintTypes()), false));
+
+		createNewTab(AbstractRDKitFingerprintNodeDialog.ADVANCED_TAB_NAME);
+		for (final FingerprintType fpType : RDKitFingerprintNodeModel.getBitBasedFingerprintTypes()) {
+			addParameterComponents(new FingerprintParameterModels(fpType));
+		}
+	}
+
+	//
+	// Static Methods
+	//
+
+	/**
+	 * @return settings model for molecule column selection
+	 */
+	static final SettingsModelString createInputColumnNameModel() {
+		return AbstractRDKitFingerprintNodeDialog.createSmilesColumnModel();
+	}
+
+	/**
+	 * @return settings model for check box whether to remove source columns.
+	 */
+	static final SettingsModelBoolean createRemoveSourceColumnOptionModel() {
+		return AbstractRDKitFingerprintNodeDialog.createRemoveSourceColumnOptionModel();
+	}
+
+	/**
+	 * Creates the settings model for the fingerprint types to be calculated.
+	 * Morgan, FeatMorgan, AtomPair and Torsion are selected by default.
+	 * 
+	 * @return Settings model for selected fingerprint types.
+	 */
+	static final SettingsModelEnumerationArray<FingerprintType> createFingerprintTypesModel() {
+		return new SettingsModelEnumerationArray<FingerprintType>(FingerprintType.class, "fp_types",
+				new FingerprintType[] { FingerprintType.morgan, FingerprintType.featmorgan,
+						FingerprintType.atompair, FingerprintType.torsion });
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Adds a group with dialog components for all parameters of a fingerprint type.
+	 * Nothing is added for types without parameters.
+	 * 
+	 * @param parameters Parameter models of a fingerprint type. Must not be null.
+	 */
+	private void addParameterComponents(final FingerprintParameterModels parameters) {
+		if (parameters.getSettingsModels().length > 0) {
+			createNewGroup(parameters.getFingerprintType().getName() + " Settings");
+			setHorizontalPlacement(true);
+			if (parameters.getNumBitsModel() != null) {
+				super.addDialogComponent(new DialogComponentNumberEdit(
+						parameters.getNumBitsModel(), "Num Bits: ", 4));
+			}
+			if (parameters.getRadiusModel() != null) {
+				super.addDialogComponent(new DialogComponentNumber(
+						parameters.getRadiusModel(), "Radius: ", 1));
+			}
+			if (parameters.getLayerFlagsModel() != null) {
+				super.addDialogComponent(new DialogComponentNumberEdit(
+						parameters.getLayerFlagsModel(), "Layer Flags: ", 8));
+			}
+			if (parameters.getTorsionPathLengthModel() != null) {
+				super.addDialogComponent(new DialogComponentNumber(
+						parameters.getTorsionPathLengthModel(), "Torsion Path Length: ", 1, 2));
+			}
+			if (parameters.getMinPathModel() != null) {
+				super.addDialogComponent(new DialogComponentNumber(
+						parameters.getMinPathModel(), "Min Path Length: ", 1, 2));
+			}
+			if (parameters.getMaxPathModel() != null) {
+				super.addDialogComponent(new DialogComponentNumber(
+						parameters.getMaxPathModel(), "Max Path Length: ", 1, 2));
+			}
+			if (parameters.getAtomPairMinPathModel() != null) {
+				super.addDialogComponent(new DialogComponentNumber(
+						parameters.getAtomPairMinPathModel(), "AtomPair Min Path Length: ", 1, 2));
+			}
+			if (parameters.getAtomPairMaxPathModel() != null) {
+				super.addDialogComponent(new DialogComponentNumber(
+						parameters.getAtomPairMaxPathModel(), "AtomPair Max Path Length: ", 1, 2));
+			}
+			if (parameters.getUseChiralityModel() != null) {
+				super.addDialogComponent(new DialogComponentBoolean(
+						parameters.getUseChiralityModel(), "Use Chirality"));
+			}
+			setHorizontalPlacement(false);
+			closeCurrentGroup();
+		}
+	}
+}
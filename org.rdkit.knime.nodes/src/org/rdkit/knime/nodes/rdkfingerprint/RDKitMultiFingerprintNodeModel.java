@@ -0,0 +1,402 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.RDKit.RDKFuncs;
+import org.RDKit.ROMol;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.container.ColumnRearranger;
+import org.knime.core.data.vector.bitvector.DenseBitVector;
+import org.knime.core.data.vector.bitvector.DenseBitVectorCell;
+import org.knime.core.data.vector.bitvector.DenseBitVectorCellFactory;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.defaultnodesettings.SettingsModel;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.streamable.PartitionInfo;
+import org.knime.core.node.streamable.StreamableOperator;
+import org.rdkit.knime.nodes.AbstractRDKitCalculatorNodeModel;
+import org.rdkit.knime.nodes.AbstractRDKitCellFactory;
+import org.rdkit.knime.properties.FingerprintSettingsHeaderProperty;
+import org.rdkit.knime.types.RDKitMolValue;
+import org.rdkit.knime.util.InputDataInfo;
+import org.rdkit.knime.util.SettingsModelEnumerationArray;
+import org.rdkit.knime.util.SettingsUtils;
+import org.rdkit.knime.util.StringUtils;
+import org.rdkit.knime.util.WarningConsolidator;
+
+/**
+ * This class implements the node model of the "RDKitMultiFingerprint" node
+ * providing calculations based on the open source RDKit library.
+ * It calculates several bit-based fingerprints in one pass, which means that
+ * every molecule gets read and prepared only once per row, no matter how many
+ * fingerprints are requested. Rows are processed in parallel.
+ * 
+ * @author agent
+ */
+public class RDKitMultiFingerprintNodeModel extends AbstractRDKitCalculatorNodeModel {
+
+	//
+	// Constants
+	//
+
+	/** The logger instance. */
+	protected static final NodeLogger LOGGER = NodeLogger
+			.getLogger(RDKitMultiFingerprintNodeModel.class);
+
+	/** Input data info index for Mol value. */
+	protected static final int INPUT_COLUMN_MOL = 0;
+
+	//
+	// Members
+	//
+
+	/** Model for the molecule input column. */
+	private final SettingsModelString m_modelInputColumnName =
+			registerSettings(RDKitMultiFingerprintNodeDialog.createInputColumnNameModel());
+
+	/** Model for the option to remove the input column. */
+	private final SettingsModelBoolean m_modelRemoveSourceColumns =
+			registerSettings(RDKitMultiFingerprintNodeDialog.createRemoveSourceColumnOptionModel());
+
+	/** Model for the fingerprint types to calculate. */
+	private final SettingsModelEnumerationArray<FingerprintType> m_modelFingerprintTypes =
+			registerSettings(RDKitMultiFingerprintNodeDialog.createFingerprintTypesModel());
+
+	/** Models for the parameters of every fingerprint type, which can be configured independently. */
+	private final Map<FingerprintType, FingerprintParameterModels> m_mapParameterModels =
+			registerParameterModels();
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Create new node model with one data in- and one outport.
+	 */
+	RDKitMultiFingerprintNodeModel() {
+		super(1, 1);
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Enable distribution and streaming for this node.
+	 * {@inheritDoc}
+	 */
+	@Override
+	public StreamableOperator createStreamableOperator(final PartitionInfo partitionInfo, final PortObjectSpec[] inSpecs)
+			throws InvalidSettingsException {
+		return createStreamableOperatorForCalculator(partitionInfo, inSpecs);
+	}
+
+	//
+	// Protected Methods
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs)
+			throws InvalidSettingsException {
+		// Reset warnings and check RDKit library readiness
+		super.configure(inSpecs);
+
+		// Auto guess the input column if not set - fails if no compatible column found
+		SettingsUtils.autoGuessColumn(inSpecs[0], m_modelInputColumnName, RDKitMolValue.class, 0,
+				"Auto guessing: Using column %COLUMN_NAME%.",
+				"No RDKit Mol, SMILES or SDF compatible column in input table. Use the \"RDKit from Molecule\" " +
+						"node to convert SMARTS.", getWarningConsolidator());
+
+		// Determines, if the input column exists - fails if it does not
+		SettingsUtils.checkColumnExistence(inSpecs[0], m_modelInputColumnName, RDKitMolValue.class,
+				"Input column has not been specified yet.",
+				"Input column %COLUMN_NAME% does not exist. Has the input table changed?");
+
+		// Check fingerprint settings
+		final FingerprintSettings[] arrSettings = createFingerprintSettings();
+		if (arrSettings.length == 0) {
+			throw new InvalidSettingsException("No fingerprint type selected yet.");
+		}
+		for (final FingerprintSettings settings : arrSettings) {
+			settings.getRdkitFingerprintType().validateSpecification(settings, inSpecs[0]);
+		}
+
+		// Consolidate all warnings and make them available to the user
+		generateWarnings();
+
+		// Generate output specs
+		return getOutputTableSpecs(inSpecs);
+	}
+
+	/**
+	 * This implementation generates input data info object for the input mol column
+	 * and connects it with the information coming from the appropriate setting model.
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected InputDataInfo[] createInputDataInfos(final int inPort, final DataTableSpec inSpec)
+			throws InvalidSettingsException {
+
+		InputDataInfo[] arrDataInfo = null;
+
+		// Specify input of table 1
+		if (inPort == 0) {
+			arrDataInfo = new InputDataInfo[1]; // We have only one input column
+			arrDataInfo[INPUT_COLUMN_MOL] = new InputDataInfo(inSpec, m_modelInputColumnName,
+					InputDataInfo.EmptyCellPolicy.DeliverEmptyRow, null,
+					RDKitMolValue.class);
+		}
+
+		return (arrDataInfo == null ? new InputDataInfo[0] : arrDataInfo);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * This implementation returns true, because the calculated fingerprints depend only on the molecule and the settings.
+	 * The persistent result cache is not used, because reading a cache entry from disk is
+	 * more expensive than calculating the results again.
+	 */
+	@Override
+	protected boolean isIncrementalExecutionSupported() {
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected AbstractRDKitCellFactory[] createOutputFactories(final int outPort, final DataTableSpec inSpec)
+			throws InvalidSettingsException {
+
+		AbstractRDKitCellFactory[] arrOutputFactories = null;
+
+		// Specify output of table 1
+		if (outPort == 0) {
+			// Allocate space for all factories (usually we have only one)
+			arrOutputFactories = new AbstractRDKitCellFactory[1];
+
+			// Factory 1:
+			// ==========
+			final FingerprintSettings[] arrSettings = createFingerprintSettings();
+			final DataColumnSpec[] arrOutputSpec = createFingerprintColumnSpecs(inSpec, arrSettings);
+			final int iFingerprintCount = arrSettings.length;
+			boolean bAnyChirality = false;
+			for (final FingerprintSettings settings : arrSettings) {
+				bAnyChirality |= settings.getUseChirality();
+			}
+			final boolean bUseChirality = bAnyChirality;
+			final WarningConsolidator warnings = getWarningConsolidator();
+
+			// Generate factory
+			arrOutputFactories[0] = new AbstractRDKitCellFactory(this, AbstractRDKitCellFactory.RowFailurePolicy.DeliverEmptyValues,
+					getWarningConsolidator(), null, arrOutputSpec) {
+
+				@Override
+				/**
+				 * This method implements the calculation logic to generate the new cells based on
+				 * the input made available in the first (and second) parameter.
+				 * {@inheritDoc}
+				 */
+				public DataCell[] process(final InputDataInfo[] arrInputDataInfo, final DataRow row, final long lUniqueWaveId) throws Exception {
+					final DataCell[] arrResults = new DataCell[iFingerprintCount];
+
+					// Get the molecule only once for all fingerprints
+					final ROMol mol = markForCleanup(arrInputDataInfo[INPUT_COLUMN_MOL].getROMol(row), lUniqueWaveId);
+
+					// We need to make sure stereochemistry is assigned if we're using chirality in the fingerprints
+					if (bUseChirality) {
+						RDKFuncs.assignStereochemistry(mol);
+					}
+
+					for (int i = 0; i < iFingerprintCount; i++) {
+						final FingerprintType fpType = arrSettings[i].getRdkitFingerprintType();
+						DataCell outputCell = null;
+
+						try {
+							final DenseBitVector bitVector = fpType.calculateBitBased(mol, arrSettings[i]);
+							if (bitVector != null) {
+								outputCell = new DenseBitVectorCellFactory(bitVector).createDataCell();
+							}
+						}
+						catch (final Exception exc) {
+							final String strError = exc.getMessage();
+							LOGGER.debug("Fingerprint Type '" + fpType + "' could not be calculated for row '" + row.getKey() + "': " +
+									(StringUtils.isEmptyAfterTrimming(strError) ? "An unknown error occurred." : strError), exc);
+						}
+
+						// Check, if fingerprint could not be calculated properly
+						if (outputCell == null) {
+							warnings.saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
+									"Error computing " + fpType + " fingerprint - Setting value as missing cell.");
+							outputCell = DataType.getMissingCell();
+						}
+
+						arrResults[i] = outputCell;
+					}
+
+					return arrResults;
+				}
+			};
+
+			// Enable this factory to allow parallel processing
+			arrOutputFactories[0].setAllowParallelProcessing(true);
+		}
+
+		return (arrOutputFactories == null ? new AbstractRDKitCellFactory[0] : arrOutputFactories);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * This implementation removes additionally the compound source column, if specified in the settings.
+	 */
+	@Override
+	protected ColumnRearranger createColumnRearranger(final int outPort,
+			final DataTableSpec inSpec) throws InvalidSettingsException {
+		// Perform normal work
+		final ColumnRearranger result = super.createColumnRearranger(outPort, inSpec);
+
+		// Remove the input column, if desired
+		if (m_modelRemoveSourceColumns.getBooleanValue()) {
+			result.remove(createInputDataInfos(0, inSpec)[INPUT_COLUMN_MOL].getColumnIndex());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates based on the node's settings models the fingerprint settings for all
+	 * selected fingerprint types. Every type uses its own parameters.
+	 * 
+	 * @return Fingerprint settings in the order of the selected types. Never null, but maybe empty.
+	 */
+	protected FingerprintSettings[] createFingerprintSettings() {
+		final List<FingerprintSettings> listSettings = new ArrayList<FingerprintSettings>();
+		final FingerprintType[] arrTypes = m_modelFingerprintTypes.getValues();
+
+		if (arrTypes != null) {
+			for (final FingerprintType fpType : arrTypes) {
+				final FingerprintParameterModels parameters = (fpType == null ? null : m_mapParameterModels.get(fpType));
+				if (parameters != null) {
+					listSettings.add(parameters.createFingerprintSettings());
+				}
+			}
+		}
+
+		return listSettings.toArray(new FingerprintSettings[listSettings.size()]);
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Creates and registers the parameter models of all fingerprint types this node supports.
+	 * 
+	 * @return Parameter models by fingerprint type.
+	 */
+	private Map<FingerprintType, FingerprintParameterModels> registerParameterModels() {
+		final Map<FingerprintType, FingerprintParameterModels> mapParameterModels =
+				new EnumMap<FingerprintType, FingerprintParameterModels>(FingerprintType.class);
+
+		for (final FingerprintType fpType : RDKitFingerprintNodeModel.getBitBasedFingerprintTypes()) {
+			final FingerprintParameterModels parameters = new FingerprintParameterModels(fpType);
+			for (final SettingsModel model : parameters.getSettingsModels()) {
+				registerSettings(model);
+			}
+			mapParameterModels.put(fpType, parameters);
+		}
+
+		return mapParameterModels;
+	}
+
+	/**
+	 * Returns the column specifications for the new fingerprint columns. Every column
+	 * carries the fingerprint settings as header properties.
+	 * 
+	 * @param inSpec Input table specification to be used to check that new column
+	 * 		names are unique.
+	 * @param arrSettings Fingerprint settings of all columns.
+	 * 
+	 * @return The specification of all fingerprint columns to be created.
+	 */
+	private DataColumnSpec[] createFingerprintColumnSpecs(final DataTableSpec inSpec,
+			final FingerprintSettings[] arrSettings) {
+		final String strInputColumnName = m_modelInputColumnName.getStringValue();
+		final DataColumnSpec[] arrNewColumns = new DataColumnSpec[arrSettings.length];
+		final List<String> listNewNames = new ArrayList<String>();
+
+		for (int i = 0; i < arrSettings.length; i++) {
+			final String strUniqueColumnName = SettingsUtils.makeColumnNameUnique(
+					strInputColumnName + " (" + arrSettings[i].getRdkitFingerprintType().getName() + ")",
+					inSpec, listNewNames);
+			listNewNames.add(strUniqueColumnName);
+			final DataColumnSpecCreator creator = new DataColumnSpecCreator(strUniqueColumnName, DenseBitVectorCell.TYPE);
+			new FingerprintSettingsHeaderProperty(arrSettings[i]).writeToColumnSpec(creator);
+			arrNewColumns[i] = creator.createSpec();
+		}
+
+		return arrNewColumns;
+	}
+}
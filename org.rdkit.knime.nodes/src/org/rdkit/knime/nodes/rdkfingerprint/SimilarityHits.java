@@ -0,0 +1,328 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import java.util.Arrays;
+
+/**
+ * Collects similarity search hits in primitive arrays. If a maximum number
+ * of hits is specified, the collection is a bounded min-heap that keeps only
+ * the best hits, otherwise all added hits are kept. Hits are ordered by
+ * descending similarity and - for equal similarities - by ascending tag,
+ * which makes results independent of the order in which hits were added.
+ * Instances are not thread-safe. Parallel searches use one instance per
+ * thread and merge them afterwards.
+ * 
+ * @author agent
+ */
+public class SimilarityHits {
+
+	//
+	// Constants
+	//
+
+	/** Initial capacity used for unbounded hit collections. */
+	private static final int DEFAULT_CAPACITY = 16;
+
+	//
+	// Members
+	//
+
+	/** The maximal number of hits to keep, or 0 to keep all. */
+	private final int m_iMaxHits;
+
+	/** Similarities of hits. */
+	private double[] m_arrSimilarities;
+
+	/** Store indexes of hits. */
+	private int[] m_arrIndexes;
+
+	/** Tags of hits. */
+	private long[] m_arrTags;
+
+	/** Number of hits. */
+	private int m_iSize;
+
+	/** Flag to tell if the hits are currently organized as heap (true) or sorted (false). */
+	private boolean m_bHeap;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Creates a new empty hit collection.
+	 * 
+	 * @param iMaxHits The maximal number of hits to keep, or 0 to keep all hits.
+	 */
+	public SimilarityHits(final int iMaxHits) {
+		m_iMaxHits = Math.max(0, iMaxHits);
+		final int iCapacity = (m_iMaxHits > 0 ? m_iMaxHits : DEFAULT_CAPACITY);
+		m_arrSimilarities = new double[iCapacity];
+		m_arrIndexes = new int[iCapacity];
+		m_arrTags = new long[iCapacity];
+		m_iSize = 0;
+		m_bHeap = true;
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Adds a hit. If the collection is bounded and full, the hit replaces the worst
+	 * hit if it is better, otherwise it is ignored.
+	 * 
+	 * @param dSimilarity Similarity.
+	 * @param iIndex Store index of the hit.
+	 * @param lTag Tag of the hit (used as tie breaker).
+	 */
+	public void add(final double dSimilarity, final int iIndex, final long lTag) {
+		if (!m_bHeap) {
+			throw new IllegalStateException("Hits have been sorted already.");
+		}
+
+		if (m_iMaxHits == 0) {
+			if (m_iSize == m_arrSimilarities.length) {
+				final int iNewCapacity = m_iSize + (m_iSize >> 1) + 1;
+				m_arrSimilarities = Arrays.copyOf(m_arrSimilarities, iNewCapacity);
+				m_arrIndexes = Arrays.copyOf(m_arrIndexes, iNewCapacity);
+				m_arrTags = Arrays.copyOf(m_arrTags, iNewCapacity);
+			}
+			set(m_iSize++, dSimilarity, iIndex, lTag);
+		}
+		else if (m_iSize < m_iMaxHits) {
+			set(m_iSize, dSimilarity, iIndex, lTag);
+			siftUp(m_iSize++);
+		}
+		else if (isWorse(m_arrSimilarities[0], m_arrTags[0], dSimilarity, lTag)) {
+			set(0, dSimilarity, iIndex, lTag);
+			siftDown(0, m_iSize);
+		}
+	}
+
+	/**
+	 * Adds all hits of another collection.
+	 * 
+	 * @param hits Other hits. Can be null.
+	 */
+	public void addAll(final SimilarityHits hits) {
+		if (hits != null) {
+			for (int i = 0; i < hits.m_iSize; i++) {
+				add(hits.m_arrSimilarities[i], hits.m_arrIndexes[i], hits.m_arrTags[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the similarity a new hit must exceed to be kept. For unbounded
+	 * collections and bounded collections that are not full yet this is negative infinity,
+	 * otherwise it is the similarity of the worst hit.
+	 * 
+	 * @return Cutoff similarity.
+	 */
+	public double getCutoff() {
+		return (m_iMaxHits > 0 && m_iSize == m_iMaxHits && m_bHeap ?
+				m_arrSimilarities[0] : Double.NEGATIVE_INFINITY);
+	}
+
+	/**
+	 * Sorts the hits by descending similarity and ascending tag. After sorting no
+	 * further hits can be added.
+	 */
+	public void sort() {
+		if (m_bHeap) {
+			// Heap sort: The worst hit is at the root and gets moved to the end
+			if (m_iMaxHits == 0) {
+				for (int i = (m_iSize >>> 1) - 1; i >= 0; i--) {
+					siftDown(i, m_iSize);
+				}
+			}
+			for (int iEnd = m_iSize - 1; iEnd > 0; iEnd--) {
+				swap(0, iEnd);
+				siftDown(0, iEnd);
+			}
+			m_bHeap = false;
+		}
+	}
+
+	/**
+	 * Returns the number of hits.
+	 * 
+	 * @return Number of hits.
+	 */
+	public int size() {
+		return m_iSize;
+	}
+
+	/**
+	 * Returns the similarity of a hit. Call {@link #sort()} before to access hits by rank.
+	 * 
+	 * @param i Hit position.
+	 * 
+	 * @return Similarity.
+	 */
+	public double getSimilarity(final int i) {
+		return m_arrSimilarities[i];
+	}
+
+	/**
+	 * Returns the store index of a hit. Call {@link #sort()} before to access hits by rank.
+	 * 
+	 * @param i Hit position.
+	 * 
+	 * @return Store index.
+	 */
+	public int getIndex(final int i) {
+		return m_arrIndexes[i];
+	}
+
+	/**
+	 * Returns the tag of a hit. Call {@link #sort()} before to access hits by rank.
+	 * 
+	 * @param i Hit position.
+	 * 
+	 * @return Tag.
+	 */
+	public long getTag(final int i) {
+		return m_arrTags[i];
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Determines, if hit 1 is worse than hit 2.
+	 * 
+	 * @param dSim1 Similarity of hit 1.
+	 * @param lTag1 Tag of hit 1.
+	 * @param dSim2 Similarity of hit 2.
+	 * @param lTag2 Tag of hit 2.
+	 * 
+	 * @return True, if hit 1 has a lower similarity or the same similarity and a higher tag.
+	 */
+	private static boolean isWorse(final double dSim1, final long lTag1, final double dSim2, final long lTag2) {
+		return dSim1 < dSim2 || (dSim1 == dSim2 && lTag1 > lTag2);
+	}
+
+	/**
+	 * Stores a hit at the specified position.
+	 * 
+	 * @param i Position.
+	 * @param dSimilarity Similarity.
+	 * @param iIndex Store index.
+	 * @param lTag Tag.
+	 */
+	private void set(final int i, final double dSimilarity, final int iIndex, final long lTag) {
+		m_arrSimilarities[i] = dSimilarity;
+		m_arrIndexes[i] = iIndex;
+		m_arrTags[i] = lTag;
+	}
+
+	/**
+	 * Swaps two hits.
+	 * 
+	 * @param i Position of first hit.
+	 * @param j Position of second hit.
+	 */
+	private void swap(final int i, final int j) {
+		final double dSim = m_arrSimilarities[i];
+		final int iIndex = m_arrIndexes[i];
+		final long lTag = m_arrTags[i];
+		set(i, m_arrSimilarities[j], m_arrIndexes[j], m_arrTags[j]);
+		set(j, dSim, iIndex, lTag);
+	}
+
+	/**
+	 * Moves a hit up in the heap until its parent is worse.
+	 * 
+	 * @param i Position of the hit.
+	 */
+	private void siftUp(int i) {
+		while (i > 0) {
+			final int iParent = (i - 1) >>> 1;
+			if (isWorse(m_arrSimilarities[i], m_arrTags[i], m_arrSimilarities[iParent], m_arrTags[iParent])) {
+				swap(i, iParent);
+				i = iParent;
+			}
+			else {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Moves a hit down in the heap until both children are better.
+	 * 
+	 * @param i Position of the hit.
+	 * @param iSize Number of hits that belong to the heap.
+	 */
+	private void siftDown(int i, final int iSize) {
+		while (true) {
+			final int iLeft = 2 * i + 1;
+			if (iLeft >= iSize) {
+				break;
+			}
+			int iWorst = iLeft;
+			final int iRight = iLeft + 1;
+			if (iRight < iSize && isWorse(m_arrSimilarities[iRight], m_arrTags[iRight],
+					m_arrSimilarities[iLeft], m_arrTags[iLeft])) {
+				iWorst = iRight;
+			}
+			if (isWorse(m_arrSimilarities[iWorst], m_arrTags[iWorst], m_arrSimilarities[i], m_arrTags[i])) {
+				swap(i, iWorst);
+				i = iWorst;
+			}
+			else {
+				break;
+			}
+		}
+	}
+}
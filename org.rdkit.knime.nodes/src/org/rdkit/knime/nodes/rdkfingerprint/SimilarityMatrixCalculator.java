@@ -0,0 +1,327 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import java.util.Arrays;
+
+/**
+ * Calculates pairwise similarities between all query and target fingerprints
+ * of two {@link FingerprintArena} objects. The calculation is done in blocks
+ * of consecutive queries, which can be processed independently in parallel.
+ * Inside a block the targets are visited in tiles that fit into the CPU cache,
+ * so that every target tile is compared with all queries of the block before
+ * the next tile is loaded. Based on the popcounts only targets that can reach
+ * the threshold are compared (BitBound pruning), and only pairs that reach
+ * the threshold are kept, which keeps the result sparse.
+ * Arenas must not be sorted by popcount, if results are expected in the
+ * original order. Instances are immutable and can be shared between threads.
+ *
+ * @author agent
+ */
+public class SimilarityMatrixCalculator {
+
+	//
+	// Constants
+	//
+
+	/** Number of target words processed per tile (32 KB), which fits into the L1/L2 cache. */
+	private static final int TILE_WORDS = 4096;
+
+	//
+	// Members
+	//
+
+	/** Weight of bits only set in the query. */
+	private final double m_dAlpha;
+
+	/** Weight of bits only set in the target. */
+	private final double m_dBeta;
+
+	/** The minimal similarity of a pair to be kept. */
+	private final double m_dThreshold;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Creates a new similarity matrix calculator.
+	 *
+	 * @param metric Similarity metric. Must not be null.
+	 * @param dTverskyAlpha Alpha weight, only used for user defined weights (Tversky).
+	 * @param dTverskyBeta Beta weight, only used for user defined weights (Tversky).
+	 * @param dThreshold Minimal similarity of a pair to be kept. 0 to keep all pairs.
+	 */
+	public SimilarityMatrixCalculator(final SimilarityMetric metric, final double dTverskyAlpha,
+			final double dTverskyBeta, final double dThreshold) {
+		if (metric == null) {
+			throw new IllegalArgumentException("Similarity metric must not be null.");
+		}
+
+		m_dAlpha = metric.getAlpha(dTverskyAlpha);
+		m_dBeta = metric.getBeta(dTverskyBeta);
+		m_dThreshold = Math.max(0.0d, dThreshold);
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Calculates the similarities of a block of queries against all targets.
+	 *
+	 * @param queries Query fingerprints. Must not be null.
+	 * @param iQueryStart Index of the first query of the block (inclusive).
+	 * @param iQueryEnd Index of the last query of the block (exclusive).
+	 * @param targets Target fingerprints with the same length as the queries. Must not be null.
+	 * @param bUpperTriangleOnly Set to true to compare query i only with targets with an index
+	 * 		larger than i. This is used when comparing an arena with itself to get every pair only once.
+	 *
+	 * @return Similarities of all pairs that reach the threshold, ordered by query and target index.
+	 */
+	public SimilarityBlock calculate(final FingerprintArena queries, final int iQueryStart, final int iQueryEnd,
+			final FingerprintArena targets, final boolean bUpperTriangleOnly) {
+		return calculate(queries, iQueryStart, iQueryEnd, targets, 0, targets.size(), bUpperTriangleOnly);
+	}
+
+	/**
+	 * Calculates the similarities of a block of queries against a range of targets.
+	 * If the targets are sorted by popcount, the range can be limited to the popcount
+	 * bins that can reach the threshold for the queries of the block.
+	 *
+	 * @param queries Query fingerprints. Must not be null.
+	 * @param iQueryStart Index of the first query of the block (inclusive).
+	 * @param iQueryEnd Index of the last query of the block (exclusive).
+	 * @param targets Target fingerprints with the same length as the queries. Must not be null.
+	 * @param iTargetStart Index of the first target to compare (inclusive).
+	 * @param iTargetEnd Index of the last target to compare (exclusive).
+	 * @param bUpperTriangleOnly Set to true to compare query i only with targets with an index
+	 * 		larger than i. This is used when comparing an arena with itself to get every pair only once.
+	 *
+	 * @return Similarities of all pairs that reach the threshold, ordered by query and target index.
+	 */
+	public SimilarityBlock calculate(final FingerprintArena queries, final int iQueryStart, final int iQueryEnd,
+			final FingerprintArena targets, final int iTargetStart, final int iTargetEnd,
+			final boolean bUpperTriangleOnly) {
+		if (queries.getNumBits() != targets.getNumBits()) {
+			throw new IllegalArgumentException("Query and target fingerprints must have the same length.");
+		}
+
+		final int iWords = queries.getWordsPerFingerprint();
+		final int iNumBits = queries.getNumBits();
+		final int iQueryCount = Math.max(0, iQueryEnd - iQueryStart);
+		final int iTargetCount = Math.min(iTargetEnd, targets.size());
+		final int iTileSize = Math.max(1, TILE_WORDS / Math.max(1, iWords));
+		final long[] arrQueryWords = queries.getWords();
+		final long[] arrTargetWords = targets.getWords();
+
+		// Popcount ranges of all queries of the block
+		final int[] arrQueryPopCounts = new int[iQueryCount];
+		final int[] arrMinTargetCounts = new int[iQueryCount];
+		final int[] arrMaxTargetCounts = new int[iQueryCount];
+		for (int q = 0; q < iQueryCount; q++) {
+			final int iPopCount = queries.getPopCount(iQueryStart + q);
+			arrQueryPopCounts[q] = iPopCount;
+			arrMinTargetCounts[q] = SimilarityMetric.getMinTargetCount(iPopCount, m_dThreshold, m_dAlpha, m_dBeta);
+			arrMaxTargetCounts[q] = SimilarityMetric.getMaxTargetCount(iPopCount, iNumBits, m_dThreshold, m_dAlpha, m_dBeta);
+		}
+
+		final SimilarityBlock block = new SimilarityBlock(iQueryStart, iQueryCount);
+		final long[] arrQuery = new long[iWords];
+
+		for (int iTileStart = Math.max(iTargetStart, bUpperTriangleOnly ? iQueryStart + 1 : 0);
+				iTileStart < iTargetCount; iTileStart += iTileSize) {
+			final int iTileEnd = Math.min(iTargetCount, iTileStart + iTileSize);
+
+			for (int q = 0; q < iQueryCount; q++) {
+				// A local copy of the query words speeds up the inner loop considerably
+				System.arraycopy(arrQueryWords, (iQueryStart + q) * iWords, arrQuery, 0, iWords);
+				final int iQueryPopCount = arrQueryPopCounts[q];
+				final int iMinTargetCount = arrMinTargetCounts[q];
+				final int iMaxTargetCount = arrMaxTargetCounts[q];
+				final int iStart = (bUpperTriangleOnly ? Math.max(iTileStart, iQueryStart + q + 1) : iTileStart);
+
+				for (int t = iStart; t < iTileEnd; t++) {
+					final int iTargetPopCount = targets.getPopCount(t);
+					if (iTargetPopCount < iMinTargetCount || iTargetPopCount > iMaxTargetCount) {
+						continue;
+					}
+
+					final int iTargetOffset = t * iWords;
+					int iCommon = 0;
+					for (int w = 0; w < iWords; w++) {
+						iCommon += Long.bitCount(arrQuery[w] & arrTargetWords[iTargetOffset + w]);
+					}
+
+					final double dSimilarity = SimilarityMetric.calculate(iQueryPopCount, iTargetPopCount,
+							iCommon, m_dAlpha, m_dBeta);
+					if (dSimilarity >= m_dThreshold) {
+						block.add(q, t, dSimilarity);
+					}
+				}
+			}
+		}
+
+		return block;
+	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * Similarities of a block of queries. For every query the pairs are kept in
+	 * primitive arrays in the order of increasing target index.
+	 */
+	public static class SimilarityBlock {
+
+		/** Index of the first query of the block. */
+		private final int m_iQueryStart;
+
+		/** Target indexes of all pairs per query. */
+		private final int[][] m_arrTargets;
+
+		/** Similarities of all pairs per query. */
+		private final double[][] m_arrSimilarities;
+
+		/** Number of pairs per query. */
+		private final int[] m_arrPairCounts;
+
+		/**
+		 * Creates a new empty block.
+		 *
+		 * @param iQueryStart Index of the first query.
+		 * @param iQueryCount Number of queries.
+		 */
+		private SimilarityBlock(final int iQueryStart, final int iQueryCount) {
+			m_iQueryStart = iQueryStart;
+			m_arrTargets = new int[iQueryCount][];
+			m_arrSimilarities = new double[iQueryCount][];
+			m_arrPairCounts = new int[iQueryCount];
+		}
+
+		/**
+		 * Adds a pair.
+		 *
+		 * @param iQuery Query index relative to the block start.
+		 * @param iTarget Target index.
+		 * @param dSimilarity Similarity.
+		 */
+		private void add(final int iQuery, final int iTarget, final double dSimilarity) {
+			final int iCount = m_arrPairCounts[iQuery];
+
+			if (m_arrTargets[iQuery] == null) {
+				m_arrTargets[iQuery] = new int[16];
+				m_arrSimilarities[iQuery] = new double[16];
+			}
+			else if (iCount == m_arrTargets[iQuery].length) {
+				final int iNewLength = iCount + (iCount >> 1);
+				m_arrTargets[iQuery] = Arrays.copyOf(m_arrTargets[iQuery], iNewLength);
+				m_arrSimilarities[iQuery] = Arrays.copyOf(m_arrSimilarities[iQuery], iNewLength);
+			}
+
+			m_arrTargets[iQuery][iCount] = iTarget;
+			m_arrSimilarities[iQuery][iCount] = dSimilarity;
+			m_arrPairCounts[iQuery] = iCount + 1;
+		}
+
+		/**
+		 * Returns the index of the first query of the block.
+		 *
+		 * @return Query index.
+		 */
+		public int getQueryStart() {
+			return m_iQueryStart;
+		}
+
+		/**
+		 * Returns the number of queries of the block.
+		 *
+		 * @return Number of queries.
+		 */
+		public int getQueryCount() {
+			return m_arrPairCounts.length;
+		}
+
+		/**
+		 * Returns the number of pairs that were kept for a query.
+		 *
+		 * @param iQuery Query index relative to the block start.
+		 *
+		 * @return Number of pairs.
+		 */
+		public int getPairCount(final int iQuery) {
+			return m_arrPairCounts[iQuery];
+		}
+
+		/**
+		 * Returns the target index of a pair.
+		 *
+		 * @param iQuery Query index relative to the block start.
+		 * @param iPair Pair index.
+		 *
+		 * @return Target index.
+		 */
+		public int getTarget(final int iQuery, final int iPair) {
+			return m_arrTargets[iQuery][iPair];
+		}
+
+		/**
+		 * Returns the similarity of a pair.
+		 *
+		 * @param iQuery Query index relative to the block start.
+		 * @param iPair Pair index.
+		 *
+		 * @return Similarity.
+		 */
+		public double getSimilarity(final int iQuery, final int iPair) {
+			return m_arrSimilarities[iQuery][iPair];
+		}
+	}
+}
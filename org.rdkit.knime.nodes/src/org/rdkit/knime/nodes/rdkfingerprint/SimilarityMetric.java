@@ -0,0 +1,268 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+/**
+ * This enumeration defines similarity metrics for bit-based fingerprints.
+ * All metrics are special cases of the Tversky index
+ * S = c / (alpha * (a - c) + beta * (b - c) + c), where a is the number of bits
+ * set in the query, b the number of bits set in the target and c the number of
+ * bits set in both. Because c can never be larger than the smaller one of a and b,
+ * the popcounts alone give an upper bound for the similarity, which is used
+ * to determine the range of target popcounts that can reach a threshold (BitBound).
+ * 
+ * @author agent
+ */
+public enum SimilarityMetric {
+
+	Tanimoto("Tanimoto", 1.0d, 1.0d),
+	Dice("Dice", 0.5d, 0.5d),
+	Tversky("Tversky", Double.NaN, Double.NaN);
+
+	//
+	// Constants
+	//
+
+	/** Tolerance used when deriving popcount ranges to avoid excluding candidates due to rounding. */
+	private static final double EPSILON = 1e-9d;
+
+	//
+	// Members
+	//
+
+	/** The name to be shown to the user. */
+	private final String m_strName;
+
+	/** The fixed weight of bits only set in the query, or NaN if user defined. */
+	private final double m_dAlpha;
+
+	/** The fixed weight of bits only set in the target, or NaN if user defined. */
+	private final double m_dBeta;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Creates a new similarity metric enumeration value.
+	 * 
+	 * @param strName Name to be shown as string representation.
+	 * @param dAlpha Fixed weight of bits only set in the query, or NaN if user defined.
+	 * @param dBeta Fixed weight of bits only set in the target, or NaN if user defined.
+	 */
+	private SimilarityMetric(final String strName, final double dAlpha, final double dBeta) {
+		m_strName = strName;
+		m_dAlpha = dAlpha;
+		m_dBeta = dBeta;
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Determines, if this metric uses user defined alpha and beta weights.
+	 * 
+	 * @return True, if alpha and beta are user defined. False otherwise.
+	 */
+	public boolean hasUserDefinedWeights() {
+		return Double.isNaN(m_dAlpha);
+	}
+
+	/**
+	 * Returns the alpha weight (bits only set in the query) to be used for this metric.
+	 * 
+	 * @param dUserAlpha User defined alpha. Only used, if the metric has user defined weights.
+	 * 
+	 * @return Alpha weight.
+	 */
+	public double getAlpha(final double dUserAlpha) {
+		return (hasUserDefinedWeights() ? dUserAlpha : m_dAlpha);
+	}
+
+	/**
+	 * Returns the beta weight (bits only set in the target) to be used for this metric.
+	 * 
+	 * @param dUserBeta User defined beta. Only used, if the metric has user defined weights.
+	 * 
+	 * @return Beta weight.
+	 */
+	public double getBeta(final double dUserBeta) {
+		return (hasUserDefinedWeights() ? dUserBeta : m_dBeta);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return m_strName;
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Calculates the Tversky similarity based on bit counts.
+	 * 
+	 * @param iQueryCount Number of bits set in the query.
+	 * @param iTargetCount Number of bits set in the target.
+	 * @param iCommonCount Number of bits set in both.
+	 * @param dAlpha Weight of bits only set in the query.
+	 * @param dBeta Weight of bits only set in the target.
+	 * 
+	 * @return Similarity between 0 and 1. 0, if no bit is set at all.
+	 */
+	public static double calculate(final int iQueryCount, final int iTargetCount, final int iCommonCount,
+			final double dAlpha, final double dBeta) {
+		final double dDenominator = dAlpha * (iQueryCount - iCommonCount) +
+				dBeta * (iTargetCount - iCommonCount) + iCommonCount;
+		return (dDenominator <= 0.0d ? 0.0d : iCommonCount / dDenominator);
+	}
+
+	/**
+	 * Calculates the highest similarity that a target can reach based on popcounts only.
+	 * 
+	 * @param iQueryCount Number of bits set in the query.
+	 * @param iTargetCount Number of bits set in the target.
+	 * @param dAlpha Weight of bits only set in the query.
+	 * @param dBeta Weight of bits only set in the target.
+	 * 
+	 * @return Upper bound of the similarity.
+	 */
+	public static double getUpperBound(final int iQueryCount, final int iTargetCount,
+			final double dAlpha, final double dBeta) {
+		return calculate(iQueryCount, iTargetCount, Math.min(iQueryCount, iTargetCount), dAlpha, dBeta);
+	}
+
+	/**
+	 * Calculates the smallest target popcount that can reach the specified threshold.
+	 * 
+	 * @param iQueryCount Number of bits set in the query.
+	 * @param dThreshold Similarity threshold. If 0 or smaller, 0 is returned.
+	 * @param dAlpha Weight of bits only set in the query.
+	 * @param dBeta Weight of bits only set in the target.
+	 * 
+	 * @return Minimal target popcount.
+	 */
+	public static int getMinTargetCount(final int iQueryCount, final double dThreshold,
+			final double dAlpha, final double dBeta) {
+		int iMin = 0;
+
+		if (dThreshold > 0.0d) {
+			final double dDenominator = 1.0d - dThreshold + dThreshold * dAlpha;
+			if (dDenominator > 0.0d) {
+				iMin = (int)Math.max(0, Math.ceil(dThreshold * dAlpha * iQueryCount / dDenominator - EPSILON));
+			}
+		}
+
+		return iMin;
+	}
+
+	/**
+	 * Calculates the largest target popcount that can reach the specified threshold.
+	 * 
+	 * @param iQueryCount Number of bits set in the query.
+	 * @param iNumBits Number of bits of the fingerprints. Used as maximum.
+	 * @param dThreshold Similarity threshold. If 0 or smaller, the number of bits is returned.
+	 * @param dAlpha Weight of bits only set in the query.
+	 * @param dBeta Weight of bits only set in the target.
+	 * 
+	 * @return Maximal target popcount.
+	 */
+	public static int getMaxTargetCount(final int iQueryCount, final int iNumBits, final double dThreshold,
+			final double dAlpha, final double dBeta) {
+		int iMax = iNumBits;
+
+		if (dThreshold > 0.0d && dBeta > 0.0d) {
+			final double dMax = Math.floor(iQueryCount * (1.0d - dThreshold + dBeta * dThreshold) /
+					(dBeta * dThreshold) + EPSILON);
+			iMax = (int)Math.min(iNumBits, Math.max(0, dMax));
+		}
+
+		return iMax;
+	}
+
+	/**
+	 * Tries to determine the similarity metric based on the passed in string. First it
+	 * will try to determine it by assuming that the passed in string is the
+	 * name of the metric ({@link #name()}. If this fails, it will compare the
+	 * string representation trying to find a match there ({@link #toString()}.
+	 * If none is found it will return null.
+	 * 
+	 * @param str String to be parsed. Can be null.
+	 * 
+	 * @return Similarity metric or null.
+	 */
+	public static SimilarityMetric parseString(String str) {
+		SimilarityMetric metric = null;
+
+		if (str != null) {
+			try {
+				metric = SimilarityMetric.valueOf(str);
+			}
+			catch (final IllegalArgumentException exc) {
+				// Ignored here
+			}
+
+			if (metric == null) {
+				str = str.trim().toUpperCase();
+				for (final SimilarityMetric metricExisting : SimilarityMetric.values()) {
+					if (str.equals(metricExisting.toString().toUpperCase())) {
+						metric = metricExisting;
+						break;
+					}
+				}
+			}
+		}
+
+		return metric;
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import java.util.Arrays;
+
+/**
+ * Searches a {@link FingerprintStore} for the fingerprints
+ * that are most similar to a query fingerprint. Based on the query popcount
+ * only targets with popcounts that can reach the threshold are considered
+ * (BitBound pruning). The popcount bins are visited in order of decreasing
+ * similarity upper bound starting with the bin of the query popcount, so that
+ * a top-k search fills its hit list with good hits early. As soon as the
+ * upper bound of the remaining bins falls below the similarity of the
+ * worst kept hit, the search stops.
+ * A search can be split into slices, which cover disjoint parts of every
+ * popcount bin and can be executed in parallel. Merging the hits of all
+ * slices delivers the same result as a search without slices.
+ * Instances are immutable and can be shared between threads.
+ * 
+ * @author agent
+ */
+public class SimilarityScanner {
+
+	//
+	// Constants
+	//
+
+	/** Tolerance used when comparing upper bounds to avoid pruning candidates due to rounding. */
+	private static final double EPSILON = 1e-9d;
+
+	//
+	// Members
+	//
+
+	/** The similarity metric. */
+	private final SimilarityMetric m_metric;
+
+	/** Weight of bits only set in the query. */
+	private final double m_dAlpha;
+
+	/** Weight of bits only set in the target. */
+	private final double m_dBeta;
+
+	/** The minimal similarity of a hit. */
+	private final double m_dThreshold;
+
+	/** The maximal number of hits per query, or 0 for all hits. */
+	private final int m_iMaxHits;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Creates a new similarity scanner.
+	 * 
+	 * @param metric Similarity metric. Must not be null.
+	 * @param dTverskyAlpha Alpha weight, only used for user defined weights (Tversky).
+	 * @param dTverskyBeta Beta weight, only used for user defined weights (Tversky).
+	 * @param dThreshold Minimal similarity of a hit. 0 to not apply a threshold.
+	 * @param iMaxHits Maximal number of hits per query. 0 to return all hits above the threshold.
+	 */
+	public SimilarityScanner(final SimilarityMetric metric, final double dTverskyAlpha,
+			final double dTverskyBeta, final double dThreshold, final int iMaxHits) {
+		if (metric == null) {
+			throw new IllegalArgumentException("Similarity metric must not be null.");
+		}
+
+		m_metric = metric;
+		m_dAlpha = metric.getAlpha(dTverskyAlpha);
+		m_dBeta = metric.getBeta(dTverskyBeta);
+		m_dThreshold = Math.max(0.0d, dThreshold);
+		m_iMaxHits = Math.max(0, iMaxHits);
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns the similarity metric of this scanner.
+	 * 
+	 * @return Similarity metric.
+	 */
+	public SimilarityMetric getMetric() {
+		return m_metric;
+	}
+
+	/**
+	 * Determines the number of targets in the store, which have a popcount that can reach the threshold.
+	 * This is the maximal number of fingerprints that would be compared with the query.
+	 * 
+	 * @param store Fingerprint store. Must not be null.
+	 * @param iQueryPopCount Popcount of the query.
+	 * 
+	 * @return Number of candidates.
+	 */
+	public int getCandidateCount(final FingerprintStore store, final int iQueryPopCount) {
+		final int iMin = SimilarityMetric.getMinTargetCount(iQueryPopCount, m_dThreshold, m_dAlpha, m_dBeta);
+		final int iMax = SimilarityMetric.getMaxTargetCount(iQueryPopCount, store.getNumBits(),
+				m_dThreshold, m_dAlpha, m_dBeta);
+		return (iMin > iMax ? 0 : store.getBinEnd(iMax) - store.getBinStart(iMin));
+	}
+
+	/**
+	 * Calculates the similarity of the query to the stored fingerprint with the specified index.
+	 * 
+	 * @param store Fingerprint store. Must not be null.
+	 * @param iIndex Fingerprint index.
+	 * @param arrQuery Query words. Must have at least as many words as the stored fingerprints.
+	 * @param iQueryPopCount Popcount of the query.
+	 * 
+	 * @return Similarity.
+	 */
+	public double calculate(final FingerprintStore store, final int iIndex, final long[] arrQuery, final int iQueryPopCount) {
+		return SimilarityMetric.calculate(iQueryPopCount, store.getPopCount(iIndex),
+				store.getCommonBitCount(iIndex, arrQuery), m_dAlpha, m_dBeta);
+	}
+
+	/**
+	 * Searches the complete store for hits of the query.
+	 * 
+	 * @param store Fingerprint store. Must not be null.
+	 * @param arrQuery Query words. Must not be null.
+	 * 
+	 * @return Sorted hits. Never null.
+	 */
+	public SimilarityHits search(final FingerprintStore store, final long[] arrQuery) {
+		final SimilarityHits hits = search(store, arrQuery, 0, 1);
+		hits.sort();
+		return hits;
+	}
+
+	/**
+	 * Searches one slice of the store for hits of the query. The returned hits are not sorted
+	 * and can be merged with the hits of other slices with {@link SimilarityHits#addAll(SimilarityHits)}.
+	 * 
+	 * @param store Fingerprint store. Must not be null.
+	 * @param arrQuery Query words. Must not be null.
+	 * @param iSlice Slice number, between 0 and iSliceCount - 1.
+	 * @param iSliceCount Total number of slices the search is split into.
+	 * 
+	 * @return Unsorted hits of the slice. Never null.
+	 */
+	public SimilarityHits search(final FingerprintStore store, final long[] arrQuery,
+			final int iSlice, final int iSliceCount) {
+		final SimilarityHits hits = new SimilarityHits(m_iMaxHits);
+		final long[] arrQueryWords = (arrQuery.length >= store.getWordsPerFingerprint() ? arrQuery :
+			Arrays.copyOf(arrQuery, store.getWordsPerFingerprint()));
+		final int a = FingerprintArena.getPopCount(arrQueryWords);
+		final int iMin = SimilarityMetric.getMinTargetCount(a, m_dThreshold, m_dAlpha, m_dBeta);
+		final int iMax = SimilarityMetric.getMaxTargetCount(a, store.getNumBits(), m_dThreshold, m_dAlpha, m_dBeta);
+
+		// Walk bins from the query popcount downwards and upwards, always taking the bin with the higher upper bound
+		int iDown = Math.min(a, iMax);
+		int iUp = iDown + 1;
+
+		while (iDown >= iMin || iUp <= iMax) {
+			final double dUpperBoundDown = (iDown >= iMin ? SimilarityMetric.getUpperBound(a, iDown, m_dAlpha, m_dBeta) : -1.0d);
+			final double dUpperBoundUp = (iUp <= iMax ? SimilarityMetric.getUpperBound(a, iUp, m_dAlpha, m_dBeta) : -1.0d);
+			final boolean bDown = (dUpperBoundDown >= dUpperBoundUp);
+			final double dUpperBound = (bDown ? dUpperBoundDown : dUpperBoundUp);
+
+			// Bins get only worse from here on
+			if (dUpperBound < Math.max(m_dThreshold, hits.getCutoff()) - EPSILON) {
+				break;
+			}
+
+			final int iPopCount = (bDown ? iDown-- : iUp++);
+			final int iBinStart = store.getBinStart(iPopCount);
+			final long lBinLength = store.getBinEnd(iPopCount) - iBinStart;
+			final int iFrom = iBinStart + (int)(lBinLength * iSlice / iSliceCount);
+			final int iTo = iBinStart + (int)(lBinLength * (iSlice + 1) / iSliceCount);
+
+			for (int i = iFrom; i < iTo; i++) {
+				final double dSimilarity = SimilarityMetric.calculate(a, iPopCount,
+						store.getCommonBitCount(i, arrQueryWords), m_dAlpha, m_dBeta);
+				if (dSimilarity >= m_dThreshold) {
+					hits.add(dSimilarity, i, store.getTag(i));
+				}
+			}
+		}
+
+		return hits;
+	}
+}
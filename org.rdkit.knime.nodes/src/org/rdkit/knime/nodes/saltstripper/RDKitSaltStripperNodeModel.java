@@ -56,6 +56,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.RDKit.Int_Vect;
+import org.RDKit.Int_Vect_Vect;
 import org.RDKit.RDKFuncs;
 import org.RDKit.ROMol;
 import org.RDKit.ROMol_Vect;
@@ -156,6 +158,9 @@ public class RDKitSaltStripperNodeModel extends AbstractRDKitCalculatorNodeModel
 	/** Pre-processing result of salt list used during main processing. */
 	private List<ROMol> m_listSalts = null;
 
+	/** Pre-processing result of salt index to find salts matching complete fragments. */
+	private SaltIndex m_saltIndex = null;
+
 	/** Pre-processing result of number of processed salts (maybe not all are valid). */
 	private int m_iProcessedSaltCount = 0;
 
@@ -334,6 +339,7 @@ public class RDKitSaltStripperNodeModel extends AbstractRDKitCalculatorNodeModel
 			.createSpec();
 
 			final int iSaltCount = (m_listSalts == null || m_listSalts.isEmpty() ? 0 : m_listSalts.size());
+			final SaltIndex saltIndex = m_saltIndex;
 			final boolean bKeepOnlyLargest = m_modelKeepOnlyLargestFragmentOption.getBooleanValue();
 
 			// Generate factory
@@ -360,25 +366,58 @@ public class RDKitSaltStripperNodeModel extends AbstractRDKitCalculatorNodeModel
 						final ROMol mol = markForCleanup(arrInputDataInfo[INPUT_COLUMN_MOL].getROMol(row), lUniqueWaveId);
 						ROMol molStripping = mol;
 
-						// Iterate over the salt patterns for each molecule
-						for (int i = 0; i < iSaltCount; i++) {
-
-							// Is there still a molecule with fragments to strip?
-							if (markForCleanup(RDKFuncs.getMolFrags(molStripping), lUniqueWaveId).size() > 1) {
-
-								// Try to strip off the next salt in the list
-								final ROMol molStripped = markForCleanup(RDKFuncs.deleteSubstructs(
-										molStripping, m_listSalts.get(i), true), lUniqueWaveId);
-
-								// If stripped structure is not empty, apply further stripping,
-								// otherwise keep the last structure, even if it still contains a salt now
-								// (subsequent stripping may reduce the structure further)
-								if (molStripped.getNumAtoms() > 0) {
-									molStripping = molStripped;
+						// Split the molecule only once into fragments and look up the salts matching
+						// complete fragments instead of deleting every salt pattern one after the other
+						final Int_Vect vFragAssignments = markForCleanup(new Int_Vect(), lUniqueWaveId);
+						final Int_Vect_Vect vFragAtoms = markForCleanup(new Int_Vect_Vect(), lUniqueWaveId);
+						final ROMol_Vect vFrags = markForCleanup(RDKFuncs.getMolFrags(mol, true,
+								vFragAssignments, vFragAtoms), lUniqueWaveId);
+						final int iFragCount = (int)vFrags.size();
+
+						// Salts with multiple fragments are deleted from the whole molecule as in former versions
+						if (iFragCount > 1 && saltIndex.isWholeMoleculeStrippingRequired(mol)) {
+							for (int i = 0; i < iSaltCount; i++) {
+
+								// Is there still a molecule with fragments to strip?
+								if (markForCleanup(RDKFuncs.getMolFrags(molStripping), lUniqueWaveId).size() > 1) {
+
+									// Try to strip off the next salt in the list
+									final ROMol molStripped = markForCleanup(RDKFuncs.deleteSubstructs(
+											molStripping, m_listSalts.get(i), true), lUniqueWaveId);
+
+									// If stripped structure is not empty, apply further stripping,
+									// otherwise keep the last structure, even if it still contains a salt now
+									if (molStripped.getNumAtoms() > 0) {
+										molStripping = molStripped;
+									}
+								}
+								else {
+									break;
 								}
 							}
-							else {
-								break;
+						}
+						else if (iFragCount > 1) {
+							final int[][] arrMatches = new int[iFragCount][];
+							for (int i = 0; i < iFragCount; i++) {
+								arrMatches[i] = saltIndex.findMatchingSalts(vFrags.get(i));
+							}
+
+							// Strip off the matched fragments, but never all of them
+							final boolean[] arrStripped = SaltIndex.determineStrippedFragments(arrMatches);
+							if (arrStripped != null) {
+								final RWMol molStripped = markForCleanup(new RWMol(mol), lUniqueWaveId);
+								molStripped.beginBatchEdit();
+								for (int i = 0; i < iFragCount; i++) {
+									if (arrStripped[i]) {
+										final Int_Vect vAtoms = vFragAtoms.get(i);
+										final int iAtomCount = (int)vAtoms.size();
+										for (int a = 0; a < iAtomCount; a++) {
+											molStripped.removeAtom(vAtoms.get(a));
+										}
+									}
+								}
+								molStripped.commitBatchEdit();
+								molStripping = molStripped;
 							}
 						}
 						
@@ -503,6 +542,14 @@ public class RDKitSaltStripperNodeModel extends AbstractRDKitCalculatorNodeModel
 			m_listSalts = null;
 		}
 
+		// Hash the salts for looking up complete fragments
+		else {
+			m_saltIndex = new SaltIndex(m_listSalts);
+			LOGGER.debug("Indexed " + m_saltIndex.size() + " salts, of which " +
+					m_saltIndex.getGenericSaltCount() + " are generic query salts and " +
+					m_saltIndex.getMultiFragmentSaltCount() + " consist of multiple fragments.");
+		}
+
 		// Does not do anything by default
 		exec.setProgress(1.0d);
 	}
@@ -517,6 +564,7 @@ public class RDKitSaltStripperNodeModel extends AbstractRDKitCalculatorNodeModel
 			m_listSalts.clear();
 			m_listSalts = null;
 		}
+		m_saltIndex = null;
 		m_iProcessedSaltCount = 0;
 	}
 
@@ -0,0 +1,443 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.saltstripper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.RDKit.Atom;
+import org.RDKit.Int_Vect;
+import org.RDKit.RDKFuncs;
+import org.RDKit.ROMol;
+
+/**
+ * Index of salt definitions, which finds the salts matching a complete molecule fragment
+ * without running a substructure search against every salt. Salts, whose atoms all stand for
+ * exactly one element, are hashed by their element composition, which a fragment must have
+ * as well to be matched completely. Only generic query salts (e.g. atom lists like [Cl,Br,I])
+ * are hashed just by their atom count. The candidates of a fragment are finally
+ * verified with a substructure match, so the result is the same as for a full search.
+ * Salts consisting of multiple fragments (e.g. [Na+].[Cl-]) cannot match a single fragment.
+ * They are not hashed. Molecules they match need to be stripped by deleting the salt
+ * substructures from the whole molecule instead (see {@link #isWholeMoleculeStrippingRequired(ROMol)}).
+ *
+ * @author agent
+ */
+public class SaltIndex {
+
+	//
+	// Constants
+	//
+
+	/** Empty result for fragments without any matching salt. */
+	private static final int[] NO_MATCHES = new int[0];
+
+	//
+	// Members
+	//
+
+	/** The salt definitions in their original order. */
+	private final List<ROMol> m_listSalts;
+
+	/** Salt indexes of element specific salts, hashed by element composition. */
+	private final Map<String, int[]> m_mapSaltsByComposition;
+
+	/** Salt indexes of generic query salts, hashed by number of atoms. */
+	private final Map<Integer, int[]> m_mapGenericSaltsByAtomCount;
+
+	/** Number of generic query salts. */
+	private final int m_iGenericSaltCount;
+
+	/** Salt indexes of salts consisting of multiple fragments. */
+	private final int[] m_arrMultiFragmentSalts;
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Creates a new salt index.
+	 *
+	 * @param listSalts Salt definitions in the order they shall be applied. Must not be null.
+	 * 		The list is used directly and must not be changed afterwards.
+	 */
+	public SaltIndex(final List<ROMol> listSalts) {
+		if (listSalts == null) {
+			throw new IllegalArgumentException("List of salts must not be null.");
+		}
+
+		final Map<String, List<Integer>> mapByComposition = new HashMap<String, List<Integer>>();
+		final Map<Integer, List<Integer>> mapByAtomCount = new HashMap<Integer, List<Integer>>();
+		final List<Integer> listMultiFragmentSalts = new ArrayList<Integer>();
+		int iGenericSaltCount = 0;
+
+		for (int i = 0; i < listSalts.size(); i++) {
+			final ROMol salt = listSalts.get(i);
+			if (getFragmentCount(salt) > 1) {
+				listMultiFragmentSalts.add(i);
+			}
+			else if (isElementSpecific(salt)) {
+				add(mapByComposition, getComposition(salt), i);
+			}
+			else {
+				add(mapByAtomCount, (int)salt.getNumAtoms(), i);
+				iGenericSaltCount++;
+			}
+		}
+
+		m_listSalts = listSalts;
+		m_mapSaltsByComposition = toArrays(mapByComposition);
+		m_mapGenericSaltsByAtomCount = toArrays(mapByAtomCount);
+		m_iGenericSaltCount = iGenericSaltCount;
+		m_arrMultiFragmentSalts = new int[listMultiFragmentSalts.size()];
+		for (int i = 0; i < m_arrMultiFragmentSalts.length; i++) {
+			m_arrMultiFragmentSalts[i] = listMultiFragmentSalts.get(i);
+		}
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns the number of salts in the index.
+	 *
+	 * @return Number of salts.
+	 */
+	public int size() {
+		return m_listSalts.size();
+	}
+
+	/**
+	 * Returns the number of generic query salts, which are only hashed by their atom count.
+	 *
+	 * @return Number of generic query salts.
+	 */
+	public int getGenericSaltCount() {
+		return m_iGenericSaltCount;
+	}
+
+	/**
+	 * Returns the number of salts consisting of multiple fragments, which are not hashed.
+	 *
+	 * @return Number of multi-fragment salts.
+	 */
+	public int getMultiFragmentSaltCount() {
+		return m_arrMultiFragmentSalts.length;
+	}
+
+	/**
+	 * Determines, if a salt consisting of multiple fragments matches the passed in molecule.
+	 * In this case the fragment based stripping with {@link #findMatchingSalts(ROMol)} and
+	 * {@link #determineStrippedFragments(int[][])} would miss that salt. Instead all salts
+	 * need to be deleted from the whole molecule one after the other.
+	 *
+	 * @param mol Complete molecule. Must not be null.
+	 *
+	 * @return True, if a multi-fragment salt matches. False otherwise.
+	 */
+	public boolean isWholeMoleculeStrippingRequired(final ROMol mol) {
+		for (final int iSalt : m_arrMultiFragmentSalts) {
+			if (mol.hasSubstructMatch(m_listSalts.get(iSalt))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Finds all salts consisting of a single fragment, which match the complete passed in fragment.
+	 *
+	 * @param fragment A single molecule fragment. Must not be null.
+	 *
+	 * @return Indexes of the matching salts in ascending order. Never null.
+	 */
+	public int[] findMatchingSalts(final ROMol fragment) {
+		final int[] arrSpecific = m_mapSaltsByComposition.get(getComposition(fragment));
+		final int[] arrGeneric = m_mapGenericSaltsByAtomCount.get((int)fragment.getNumAtoms());
+
+		if (arrSpecific == null && arrGeneric == null) {
+			return NO_MATCHES;
+		}
+
+		final int[] arrCandidates = merge(arrSpecific, arrGeneric);
+		final int[] arrMatches = new int[arrCandidates.length];
+		int iMatchCount = 0;
+
+		// The salt has as many atoms as the fragment, hence every match covers the complete fragment
+		for (final int iSalt : arrCandidates) {
+			if (fragment.hasSubstructMatch(m_listSalts.get(iSalt))) {
+				arrMatches[iMatchCount++] = iSalt;
+			}
+		}
+
+		return (iMatchCount == 0 ? NO_MATCHES : Arrays.copyOf(arrMatches, iMatchCount));
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Determines the fragments of a molecule to be stripped off. Salts are applied in their order.
+	 * Each salt removes all remaining fragments that it matches, unless it would remove
+	 * all of them. Stripping ends, when only a single fragment is left.
+	 *
+	 * @param arrMatches Indexes of matching salts in ascending order for every fragment
+	 * 		as delivered by {@link #findMatchingSalts(ROMol)}. Must not be null.
+	 *
+	 * @return Flags for all fragments, which are true for fragments to be stripped off,
+	 * 		or null, if no fragment shall be stripped off.
+	 */
+	public static boolean[] determineStrippedFragments(final int[][] arrMatches) {
+		final int iFragCount = arrMatches.length;
+
+		// Collect all salts that match at least one fragment
+		int iTotal = 0;
+		for (final int[] arrFragMatches : arrMatches) {
+			iTotal += arrFragMatches.length;
+		}
+
+		if (iTotal == 0 || iFragCount <= 1) {
+			return null;
+		}
+
+		final int[] arrSalts = new int[iTotal];
+		int iPos = 0;
+		for (final int[] arrFragMatches : arrMatches) {
+			System.arraycopy(arrFragMatches, 0, arrSalts, iPos, arrFragMatches.length);
+			iPos += arrFragMatches.length;
+		}
+		Arrays.sort(arrSalts);
+
+		// Apply the salts in their order
+		boolean[] arrStripped = null;
+		int iRemaining = iFragCount;
+
+		for (int i = 0; i < iTotal && iRemaining > 1; i++) {
+			final int iSalt = arrSalts[i];
+			if (i > 0 && arrSalts[i - 1] == iSalt) {
+				continue;
+			}
+
+			int iMatchCount = 0;
+			for (int f = 0; f < iFragCount; f++) {
+				if ((arrStripped == null || !arrStripped[f]) && Arrays.binarySearch(arrMatches[f], iSalt) >= 0) {
+					iMatchCount++;
+				}
+			}
+
+			// Keep the last structure, if the salt would strip off everything
+			if (iMatchCount > 0 && iMatchCount < iRemaining) {
+				if (arrStripped == null) {
+					arrStripped = new boolean[iFragCount];
+				}
+				for (int f = 0; f < iFragCount; f++) {
+					if (!arrStripped[f] && Arrays.binarySearch(arrMatches[f], iSalt) >= 0) {
+						arrStripped[f] = true;
+					}
+				}
+				iRemaining -= iMatchCount;
+			}
+		}
+
+		return arrStripped;
+	}
+
+	//
+	// Static Private Methods
+	//
+
+	/**
+	 * Determines the number of fragments of a salt definition.
+	 *
+	 * @param salt Salt definition. Must not be null.
+	 *
+	 * @return Number of fragments.
+	 */
+	private static int getFragmentCount(final ROMol salt) {
+		final Int_Vect vMapping = new Int_Vect();
+		try {
+			return (int)RDKFuncs.getMolFrags(salt, vMapping);
+		}
+		finally {
+			vMapping.delete();
+		}
+	}
+
+	/**
+	 * Determines, if every atom of a salt matches only atoms of a single element, which
+	 * is then known from the atomic number. Normal atoms (e.g. from SMILES) are element specific.
+	 * Query atoms are considered element specific, if their query is an element restricted
+	 * without any alternatives, negations or recursions. Dummy atoms are never element specific.
+	 *
+	 * @param salt Salt definition. Must not be null.
+	 *
+	 * @return True, if element specific. False, if this is a generic query salt.
+	 */
+	private static boolean isElementSpecific(final ROMol salt) {
+		final int iAtomCount = (int)salt.getNumAtoms();
+
+		for (int i = 0; i < iAtomCount; i++) {
+			final Atom atom = salt.getAtomWithIdx(i);
+			if (atom.getAtomicNum() <= 0) {
+				return false;
+			}
+			if (atom.hasQuery()) {
+				final String strQuery = atom.describeQuery();
+				if (strQuery == null || strQuery.contains("Or") || strQuery.contains("Recursive") ||
+						strQuery.contains("!") || !(strQuery.contains("AtomAtomicNum") || strQuery.contains("AtomType"))) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Calculates the element composition of a molecule as key for hashing. It consists of the
+	 * sorted atomic numbers of all atoms, but does not consider charges or hydrogen counts.
+	 *
+	 * @param mol Molecule. Must not be null.
+	 *
+	 * @return Element composition key.
+	 */
+	private static String getComposition(final ROMol mol) {
+		final int iAtomCount = (int)mol.getNumAtoms();
+		final int[] arrAtomicNumbers = new int[iAtomCount];
+
+		for (int i = 0; i < iAtomCount; i++) {
+			arrAtomicNumbers[i] = mol.getAtomWithIdx(i).getAtomicNum();
+		}
+		Arrays.sort(arrAtomicNumbers);
+
+		final StringBuilder sb = new StringBuilder(iAtomCount * 3);
+		for (final int iAtomicNumber : arrAtomicNumbers) {
+			sb.append(iAtomicNumber).append(',');
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Adds a salt index to the list of the specified key.
+	 *
+	 * @param map Map of lists. Must not be null.
+	 * @param key Key.
+	 * @param iSalt Salt index.
+	 */
+	private static <K> void add(final Map<K, List<Integer>> map, final K key, final int iSalt) {
+		List<Integer> list = map.get(key);
+		if (list == null) {
+			list = new ArrayList<Integer>(2);
+			map.put(key, list);
+		}
+		list.add(iSalt);
+	}
+
+	/**
+	 * Converts a map of lists of salt indexes into a map of arrays.
+	 *
+	 * @param map Map of lists. Must not be null.
+	 *
+	 * @return Map of arrays with salt indexes in ascending order.
+	 */
+	private static <K> Map<K, int[]> toArrays(final Map<K, List<Integer>> map) {
+		final Map<K, int[]> mapArrays = new HashMap<K, int[]>(map.size() * 2);
+
+		for (final Map.Entry<K, List<Integer>> entry : map.entrySet()) {
+			final List<Integer> list = entry.getValue();
+			final int[] arr = new int[list.size()];
+			for (int i = 0; i < arr.length; i++) {
+				arr[i] = list.get(i);
+			}
+			mapArrays.put(entry.getKey(), arr);
+		}
+
+		return mapArrays;
+	}
+
+	/**
+	 * Merges two arrays of salt indexes, which are both in ascending order.
+	 *
+	 * @param arr1 First array or null.
+	 * @param arr2 Second array or null.
+	 *
+	 * @return Merged array in ascending order. Never null.
+	 */
+	private static int[] merge(final int[] arr1, final int[] arr2) {
+		if (arr1 == null) {
+			return (arr2 == null ? NO_MATCHES : arr2);
+		}
+		if (arr2 == null) {
+			return arr1;
+		}
+
+		final int[] arrMerged = new int[arr1.length + arr2.length];
+		int i1 = 0;
+		int i2 = 0;
+		int i = 0;
+		while (i1 < arr1.length && i2 < arr2.length) {
+			arrMerged[i++] = (arr1[i1] < arr2[i2] ? arr1[i1++] : arr2[i2++]);
+		}
+		while (i1 < arr1.length) {
+			arrMerged[i++] = arr1[i1++];
+		}
+		while (i2 < arr2.length) {
+			arrMerged[i++] = arr2[i2++];
+		}
+
+		return arrMerged;
+	}
+}
@@ -0,0 +1,295 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.similaritymatrix;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.node.NotConfigurableException;
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponent;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObjectSpec;
+import org.rdkit.knime.nodes.rdkfingerprint.SimilarityMetric;
+import org.rdkit.knime.util.DialogComponentColumnNameSelection;
+import org.rdkit.knime.util.DialogComponentEnumSelection;
+import org.rdkit.knime.util.SettingsModelEnumeration;
+
+/**
+ * <code>NodeDialog</code> for the "RDKitSimilarityMatrix" Node.
+ *
+ * This node dialog derives from {@link DefaultNodeSettingsPane} which allows
+ * creation of a simple dialog with standard components. If you need a more
+ * complex dialog please derive directly from {@link org.knime.core.node.NodeDialogPane}.
+ *
+ * @author agent
+ */
+public class RDKitSimilarityMatrixNodeDialog extends DefaultNodeSettingsPane {
+
+	//
+	// Constants
+	//
+
+	/** The default similarity metric to be used. */
+	public static final SimilarityMetric DEFAULT_METRIC = SimilarityMetric.Tanimoto;
+
+	/** The default Tversky alpha weight to be used. */
+	public static final double DEFAULT_TVERSKY_ALPHA = 1.0d;
+
+	/** The default Tversky beta weight to be used. */
+	public static final double DEFAULT_TVERSKY_BETA = 1.0d;
+
+	/** The default similarity threshold to be used. */
+	public static final double DEFAULT_THRESHOLD = 0.0d;
+
+	/** The default setting for writing distances instead of similarities. */
+	public static final boolean DEFAULT_OUTPUT_DISTANCE = false;
+
+	/** The default setting for writing every pair only once, if table 1 is compared with itself. */
+	public static final boolean DEFAULT_UNIQUE_PAIRS = true;
+
+	//
+	// Members
+	//
+
+	/** Setting model component for the target column selector. */
+	private final DialogComponent m_compTargetColumnName;
+
+	/** Setting model component for the unique pairs option. */
+	private final DialogComponent m_compUniquePairs;
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Create a new dialog pane with default components to configure the query
+	 * and target fingerprint columns, the similarity metric, the threshold
+	 * and the output format.
+	 */
+	RDKitSimilarityMatrixNodeDialog() {
+		final SettingsModelEnumeration<SimilarityMetric> modelMetric = createMetricModel();
+
+		super.addDialogComponent(new DialogComponentColumnNameSelection(
+				createQueryColumnNameModel(), "Fingerprint column (table 1): ", 0,
+				BitVectorValue.class));
+		super.addDialogComponent(m_compTargetColumnName = new DialogComponentColumnNameSelection(
+				createTargetColumnNameModel(), "Fingerprint column (table 2): ", 1, false, false,
+				BitVectorValue.class) {
+
+			/**
+			 * Shows the target column or the unique pairs option depending on
+			 * the existence of a target table.
+			 */
+			@Override
+			protected void checkConfigurabilityBeforeLoad(
+					final PortObjectSpec[] specs)
+							throws NotConfigurableException {
+
+				final boolean bHasTargetTable =
+						RDKitSimilarityMatrixNodeModel.hasTargetTable(specs);
+
+				// Only check correctness of target table if it is there
+				if (bHasTargetTable) {
+					super.checkConfigurabilityBeforeLoad(specs);
+				}
+
+				// Always show or hide proper components
+				updateVisibilityOfTargetComponents(bHasTargetTable);
+			}
+		});
+		super.addDialogComponent(new DialogComponentEnumSelection<SimilarityMetric>(modelMetric,
+				"Similarity metric: "));
+		super.addDialogComponent(new DialogComponentNumber(createTverskyAlphaModel(modelMetric),
+				"Tversky alpha (weight of table 1): ", 0.1d, 6));
+		super.addDialogComponent(new DialogComponentNumber(createTverskyBetaModel(modelMetric),
+				"Tversky beta (weight of table 2): ", 0.1d, 6));
+		super.addDialogComponent(new DialogComponentNumber(createThresholdModel(),
+				"Similarity threshold: ", 0.05d, 6));
+		super.addDialogComponent(new DialogComponentBoolean(createOutputDistanceModel(),
+				"Output distance (1 - similarity)"));
+		super.addDialogComponent(m_compUniquePairs = new DialogComponentBoolean(createUniquePairsModel(),
+				"Output every pair only once"));
+	}
+
+	//
+	// Protected Methods
+	//
+
+	/**
+	 * Shows the target column selector, if a target table is connected, otherwise
+	 * the option to output every pair of table 1 only once.
+	 *
+	 * @param bHasTargetTable True, if a target table is connected.
+	 */
+	protected void updateVisibilityOfTargetComponents(final boolean bHasTargetTable) {
+		m_compTargetColumnName.getComponentPanel().setVisible(bHasTargetTable);
+		m_compUniquePairs.getComponentPanel().setVisible(!bHasTargetTable);
+	}
+
+	//
+	// Static Methods
+	//
+
+	/**
+	 * Creates the settings model to be used for the query column (table 1).
+	 *
+	 * @return Settings model for query column selection.
+	 */
+	static final SettingsModelString createQueryColumnNameModel() {
+		return new SettingsModelString("query_column", null);
+	}
+
+	/**
+	 * Creates the settings model to be used for the target column (table 2).
+	 *
+	 * @return Settings model for target column selection.
+	 */
+	static final SettingsModelString createTargetColumnNameModel() {
+		return new SettingsModelString("target_column", null);
+	}
+
+	/**
+	 * Creates the settings model to be used for the similarity metric.
+	 *
+	 * @return Settings model for the similarity metric.
+	 */
+	static final SettingsModelEnumeration<SimilarityMetric> createMetricModel() {
+		return new SettingsModelEnumeration<SimilarityMetric>(SimilarityMetric.class, "metric", DEFAULT_METRIC);
+	}
+
+	/**
+	 * Creates the settings model to be used for the Tversky alpha weight.
+	 * It is only enabled, if the Tversky metric is selected.
+	 *
+	 * @param modelMetric The metric model this model depends on. Must not be null.
+	 *
+	 * @return Settings model for the Tversky alpha weight.
+	 */
+	static final SettingsModelDoubleBounded createTverskyAlphaModel(final SettingsModelEnumeration<SimilarityMetric> modelMetric) {
+		return createTverskyWeightModel("tversky_alpha", DEFAULT_TVERSKY_ALPHA, modelMetric);
+	}
+
+	/**
+	 * Creates the settings model to be used for the Tversky beta weight.
+	 * It is only enabled, if the Tversky metric is selected.
+	 *
+	 * @param modelMetric The metric model this model depends on. Must not be null.
+	 *
+	 * @return Settings model for the Tversky beta weight.
+	 */
+	static final SettingsModelDoubleBounded createTverskyBetaModel(final SettingsModelEnumeration<SimilarityMetric> modelMetric) {
+		return createTverskyWeightModel("tversky_beta", DEFAULT_TVERSKY_BETA, modelMetric);
+	}
+
+	/**
+	 * Creates the settings model to be used for the similarity threshold.
+	 *
+	 * @return Settings model for the similarity threshold.
+	 */
+	static final SettingsModelDoubleBounded createThresholdModel() {
+		return new SettingsModelDoubleBounded("threshold", DEFAULT_THRESHOLD, 0.0d, 1.0d);
+	}
+
+	/**
+	 * Creates the settings model to be used for the option to write distances
+	 * instead of similarities.
+	 *
+	 * @return Settings model for the output distance option.
+	 */
+	static final SettingsModelBoolean createOutputDistanceModel() {
+		return new SettingsModelBoolean("output_distance", DEFAULT_OUTPUT_DISTANCE);
+	}
+
+	/**
+	 * Creates the settings model to be used for the option to write every pair
+	 * only once, if table 1 is compared with itself.
+	 *
+	 * @return Settings model for the unique pairs option.
+	 */
+	static final SettingsModelBoolean createUniquePairsModel() {
+		return new SettingsModelBoolean("unique_pairs", DEFAULT_UNIQUE_PAIRS);
+	}
+
+	/**
+	 * Creates a settings model for a Tversky weight, which is only enabled
+	 * if the Tversky metric is selected.
+	 *
+	 * @param strConfigName Config name.
+	 * @param dDefault Default weight.
+	 * @param modelMetric The metric model this model depends on. Must not be null.
+	 *
+	 * @return Settings model for a Tversky weight.
+	 */
+	private static final SettingsModelDoubleBounded createTverskyWeightModel(final String strConfigName,
+			final double dDefault, final SettingsModelEnumeration<SimilarityMetric> modelMetric) {
+		final SettingsModelDoubleBounded modelWithDependency =
+				new SettingsModelDoubleBounded(strConfigName, dDefault, 0.0d, Double.MAX_VALUE);
+
+		// React on any changes
+		modelMetric.addChangeListener(new ChangeListener() {
+
+			@Override
+			public void stateChanged(final ChangeEvent e) {
+				// Enable or disable the model
+				modelWithDependency.setEnabled(modelMetric.getValue() == SimilarityMetric.Tversky);
+			}
+		});
+
+		// Enable this model based on the dependent model's state
+		modelWithDependency.setEnabled(modelMetric.getValue() == SimilarityMetric.Tversky);
+
+		return modelWithDependency;
+	}
+}
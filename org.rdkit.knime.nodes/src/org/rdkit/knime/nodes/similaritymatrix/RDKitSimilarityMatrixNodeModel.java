@@ -0,0 +1,546 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.similaritymatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+import org.knime.core.node.port.PortTypeRegistry;
+import org.knime.core.util.MultiThreadWorker;
+import org.rdkit.knime.nodes.AbstractRDKitNodeModel;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintArena;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintType;
+import org.rdkit.knime.nodes.rdkfingerprint.SimilarityMatrixCalculator;
+import org.rdkit.knime.nodes.rdkfingerprint.SimilarityMatrixCalculator.SimilarityBlock;
+import org.rdkit.knime.nodes.rdkfingerprint.SimilarityMetric;
+import org.rdkit.knime.properties.FingerprintSettingsHeaderProperty;
+import org.rdkit.knime.util.InputDataInfo;
+import org.rdkit.knime.util.SettingsModelEnumeration;
+import org.rdkit.knime.util.SettingsUtils;
+import org.rdkit.knime.util.WarningConsolidator;
+import org.rdkit.knime.util.WarningConsolidator.Context;
+
+/**
+ * This class implements the node model of the RDKitSimilarityMatrix node,
+ * which calculates the similarities between all fingerprints of table 1 and
+ * all fingerprints of table 2 (or of table 1 itself, if table 2 is not connected).
+ * Both fingerprint columns are packed into primitive {@link FingerprintArena} objects.
+ * The matrix is split into blocks of rows, which are calculated in parallel by a
+ * {@link SimilarityMatrixCalculator} in cache-sized tiles. Only pairs that reach the
+ * similarity threshold are written as rows into the result table. Blocks are written
+ * in order as soon as they are finished, so the full matrix is never kept in memory.
+ *
+ * @author agent
+ */
+public class RDKitSimilarityMatrixNodeModel extends AbstractRDKitNodeModel {
+
+	//
+	// Constants
+	//
+
+	/** The logger instance. */
+	protected static final NodeLogger LOGGER = NodeLogger
+			.getLogger(RDKitSimilarityMatrixNodeModel.class);
+
+	/** Input data info index for the fingerprint of table 1. */
+	protected static final int INPUT_COLUMN_QUERY = 0;
+
+	/** Input data info index for the fingerprint of table 2. */
+	protected static final int INPUT_COLUMN_TARGET = 0;
+
+	/** Row context for generating warnings, if something is incorrect in table 2. */
+	protected static final WarningConsolidator.Context ROW_CONTEXT_TABLE_2 = new Context("rowTable2", "row", "rows", true);
+
+	/** The number of pairs a single calculation task should cover. */
+	protected static final int PAIRS_PER_TASK = 1 << 20;
+
+	/** The maximal number of rows of table 1 a single calculation task should cover. */
+	protected static final int MAX_ROWS_PER_TASK = 256;
+
+	//
+	// Members
+	//
+
+	/** Settings model for the column name of the fingerprint column of table 1. */
+	private final SettingsModelString m_modelQueryColumnName =
+			registerSettings(RDKitSimilarityMatrixNodeDialog.createQueryColumnNameModel());
+
+	/** Settings model for the column name of the fingerprint column of table 2. */
+	private final SettingsModelString m_modelTargetColumnName =
+			registerSettings(RDKitSimilarityMatrixNodeDialog.createTargetColumnNameModel());
+
+	/** Settings model for the similarity metric. */
+	private final SettingsModelEnumeration<SimilarityMetric> m_modelMetric =
+			registerSettings(RDKitSimilarityMatrixNodeDialog.createMetricModel());
+
+	/** Settings model for the Tversky alpha weight. */
+	private final SettingsModelDoubleBounded m_modelTverskyAlpha =
+			registerSettings(RDKitSimilarityMatrixNodeDialog.createTverskyAlphaModel(m_modelMetric));
+
+	/** Settings model for the Tversky beta weight. */
+	private final SettingsModelDoubleBounded m_modelTverskyBeta =
+			registerSettings(RDKitSimilarityMatrixNodeDialog.createTverskyBetaModel(m_modelMetric));
+
+	/** Settings model for the similarity threshold. */
+	private final SettingsModelDoubleBounded m_modelThreshold =
+			registerSettings(RDKitSimilarityMatrixNodeDialog.createThresholdModel());
+
+	/** Settings model for the option to write distances instead of similarities. */
+	private final SettingsModelBoolean m_modelOutputDistance =
+			registerSettings(RDKitSimilarityMatrixNodeDialog.createOutputDistanceModel());
+
+	/** Settings model for the option to write every pair of table 1 only once. */
+	private final SettingsModelBoolean m_modelUniquePairs =
+			registerSettings(RDKitSimilarityMatrixNodeDialog.createUniquePairsModel());
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Create new node model with two data in- (second is optional) and one out-port.
+	 */
+	RDKitSimilarityMatrixNodeModel() {
+		super(new PortType[] {
+				// Input ports (2nd port is optional)
+				PortTypeRegistry.getInstance().getPortType(BufferedDataTable.TYPE.getPortObjectClass(), false),
+				PortTypeRegistry.getInstance().getPortType(BufferedDataTable.TYPE.getPortObjectClass(), true) },
+				new PortType[] {
+				// Output ports
+						PortTypeRegistry.getInstance().getPortType(BufferedDataTable.TYPE.getPortObjectClass(), false)
+				});
+
+		registerInputTablesWithSizeLimits(0, 1); // Both tables are kept in memory
+		getWarningConsolidator().registerContext(ROW_CONTEXT_TABLE_2);
+	}
+
+	//
+	// Protected Methods
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs)
+			throws InvalidSettingsException {
+		// Reset warnings and check RDKit library readiness
+		super.configure(inSpecs);
+
+		final WarningConsolidator warnings = getWarningConsolidator();
+
+		// Auto guess the query column if not set - fails if no compatible column found
+		SettingsUtils.autoGuessColumn(inSpecs[0], m_modelQueryColumnName, BitVectorValue.class, 0,
+				"Auto guessing: Using column %COLUMN_NAME% as fingerprints of table 1.",
+				"No fingerprints (Bit Vector compatible column) in table 1.", warnings);
+
+		// Determines, if the query column exists - fails if it does not
+		SettingsUtils.checkColumnExistence(inSpecs[0], m_modelQueryColumnName, BitVectorValue.class,
+				"Fingerprint column of table 1 has not been specified yet.",
+				"Fingerprint column %COLUMN_NAME% does not exist. Has table 1 changed?");
+
+		if (hasTargetTable(inSpecs)) {
+			// Auto guess the target column if not set - fails if no compatible column found
+			SettingsUtils.autoGuessColumn(inSpecs[1], m_modelTargetColumnName, BitVectorValue.class, 0,
+					"Auto guessing: Using column %COLUMN_NAME% as fingerprints of table 2.",
+					"No fingerprints (Bit Vector compatible column) in table 2.", warnings);
+
+			// Determines, if the target column exists - fails if it does not
+			SettingsUtils.checkColumnExistence(inSpecs[1], m_modelTargetColumnName, BitVectorValue.class,
+					"Fingerprint column of table 2 has not been specified yet.",
+					"Fingerprint column %COLUMN_NAME% does not exist. Has table 2 changed?");
+
+			// Compare fingerprint settings, if both sides carry RDKit fingerprint information
+			final FingerprintSettingsHeaderProperty fpSpecQuery = new FingerprintSettingsHeaderProperty(
+					inSpecs[0].getColumnSpec(m_modelQueryColumnName.getStringValue()));
+			final FingerprintSettingsHeaderProperty fpSpecTarget = new FingerprintSettingsHeaderProperty(
+					inSpecs[1].getColumnSpec(m_modelTargetColumnName.getStringValue()));
+			if (fpSpecQuery.getRdkitFingerprintType() != null &&
+					fpSpecTarget.getRdkitFingerprintType() != null &&
+					!FingerprintType.isCompatible(fpSpecQuery, fpSpecTarget)) {
+				warnings.saveWarning("The fingerprints of table 1 and table 2 were generated differently, " +
+						"which may lead to meaningless similarities.");
+			}
+		}
+
+		// Consolidate all warnings and make them available to the user
+		generateWarnings();
+
+		// Generate output specs
+		return getOutputTableSpecs(inSpecs);
+	}
+
+	/**
+	 * This implementation generates input data info objects for the fingerprint
+	 * columns of both tables and connects them with the information coming from the
+	 * appropriate setting models.
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected InputDataInfo[] createInputDataInfos(final int inPort, final DataTableSpec inSpec)
+			throws InvalidSettingsException {
+
+		InputDataInfo[] arrDataInfo = null;
+
+		// Specify input of table 1
+		if (inPort == 0) {
+			arrDataInfo = new InputDataInfo[1]; // We have only one input column
+			arrDataInfo[INPUT_COLUMN_QUERY] = new InputDataInfo(inSpec, m_modelQueryColumnName,
+					InputDataInfo.EmptyCellPolicy.TreatAsNull, null,
+					BitVectorValue.class);
+		}
+
+		// Specify input of optional table 2
+		else if (inPort == 1 && inSpec != null) {
+			arrDataInfo = new InputDataInfo[1]; // We have only one input column
+			arrDataInfo[INPUT_COLUMN_TARGET] = new InputDataInfo(inSpec, m_modelTargetColumnName,
+					InputDataInfo.EmptyCellPolicy.TreatAsNull, null,
+					BitVectorValue.class);
+		}
+
+		return (arrDataInfo == null ? new InputDataInfo[0] : arrDataInfo);
+	}
+
+	/**
+	 * Returns the output table specification of the specified out port.
+	 *
+	 * @param outPort Index of output port in focus. Zero-based.
+	 * @param inSpecs All input table specifications.
+	 *
+	 * @return The specification of all output tables.
+	 *
+	 * @throws InvalidSettingsException Thrown, if the settings are inconsistent with
+	 * 		given DataTableSpec elements.
+	 */
+	@Override
+	protected DataTableSpec getOutputTableSpec(final int outPort,
+			final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+		DataTableSpec spec = null;
+
+		switch (outPort) {
+
+		case 0:
+			// Define output table
+			spec = new DataTableSpec("Similarity Matrix",
+					new DataColumnSpecCreator("Row ID 1", StringCell.TYPE).createSpec(),
+					new DataColumnSpecCreator("Row ID 2", StringCell.TYPE).createSpec(),
+					new DataColumnSpecCreator(m_modelMetric.getValue() +
+							(m_modelOutputDistance.getBooleanValue() ? " Distance" : " Similarity"),
+							DoubleCell.TYPE).createSpec());
+			break;
+		}
+
+		return spec;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected BufferedDataTable[] processing(final BufferedDataTable[] inData, final InputDataInfo[][] arrInputDataInfo,
+			final ExecutionContext exec) throws Exception {
+		final DataTableSpec[] arrOutSpecs = getOutputTableSpecs(inData);
+		final WarningConsolidator warnings = getWarningConsolidator();
+		final boolean bHasTargetTable = hasTargetTable(getInputTableSpecs(inData));
+
+		// Contains the rows with the result column
+		final BufferedDataContainer newTableData = exec.createDataContainer(arrOutSpecs[0]);
+
+		// Create sub execution contexts for processing steps
+		final ExecutionContext subExecReadingQueries = exec.createSubExecutionContext(0.05d);
+		final ExecutionContext subExecReadingTargets = exec.createSubExecutionContext(0.05d);
+		final ExecutionContext subExecCalculating = exec.createSubExecutionContext(0.90d);
+
+		// 1. Pack all fingerprints into arenas, keeping the original order
+		final FingerprintArena queries = readFingerprints(inData[0], arrInputDataInfo[0][INPUT_COLUMN_QUERY], -1,
+				WarningConsolidator.ROW_CONTEXT, "table 1", warnings, subExecReadingQueries);
+		subExecReadingQueries.setProgress(1.0d);
+
+		FingerprintArena targets = queries;
+		if (bHasTargetTable && queries != null) {
+			targets = readFingerprints(inData[1], arrInputDataInfo[1][INPUT_COLUMN_TARGET], queries.getNumBits(),
+					ROW_CONTEXT_TABLE_2, "table 2", warnings, subExecReadingTargets);
+		}
+		subExecReadingTargets.setProgress(1.0d);
+
+		// 2. Calculate the similarities
+		if (queries == null || queries.size() == 0 || targets == null || targets.size() == 0) {
+			warnings.saveWarning("There are no fingerprints to compare - Result table is empty.");
+		}
+		else {
+			calculate(queries, targets, !bHasTargetTable && m_modelUniquePairs.getBooleanValue(),
+					newTableData, subExecCalculating);
+		}
+
+		exec.checkCanceled();
+		exec.setProgress(1.0, "Finished Processing");
+
+		newTableData.close();
+
+		return new BufferedDataTable[] { newTableData.getTable() };
+	}
+
+	/**
+	 * Calculates the similarities between all query and target fingerprints in parallel
+	 * and adds all pairs that reach the threshold to the result table. The result rows
+	 * are ordered by query and target.
+	 *
+	 * @param queries Fingerprints of table 1. Must not be null.
+	 * @param targets Fingerprints of table 2 or of table 1 again. Must not be null.
+	 * @param bUniquePairs Set to true to compare query i only with targets with a larger index.
+	 * @param newTableData Result table. Must not be null.
+	 * @param exec Execution context. Must not be null.
+	 *
+	 * @throws Exception Thrown, if something goes wrong or if the execution was cancelled.
+	 */
+	protected void calculate(final FingerprintArena queries, final FingerprintArena targets,
+			final boolean bUniquePairs, final BufferedDataContainer newTableData,
+			final ExecutionContext exec) throws Exception {
+		final SimilarityMatrixCalculator calculator = new SimilarityMatrixCalculator(m_modelMetric.getValue(),
+				m_modelTverskyAlpha.getDoubleValue(), m_modelTverskyBeta.getDoubleValue(),
+				m_modelThreshold.getDoubleValue());
+		final boolean bOutputDistance = m_modelOutputDistance.getBooleanValue();
+		final int iMaxParallelWorkers = (int)Math.ceil(1.5 * Runtime.getRuntime().availableProcessors());
+		final int iQueueSize = 2 * iMaxParallelWorkers; // Limits the number of finished blocks kept in memory
+		final int iQueryCount = queries.size();
+		final int iRowsPerTask = Math.max(1, Math.min(MAX_ROWS_PER_TASK, PAIRS_PER_TASK / targets.size()));
+
+		// Split the matrix into blocks of rows
+		final List<Integer> listBlockStarts = new ArrayList<Integer>();
+		for (int iStart = 0; iStart < iQueryCount; iStart += iRowsPerTask) {
+			listBlockStarts.add(iStart);
+		}
+
+		final int iTotalTaskCount = listBlockStarts.size();
+
+		new MultiThreadWorker<Integer, SimilarityBlock>(iQueueSize, iMaxParallelWorkers) {
+
+			/** Number of rows written into the result table. */
+			private long m_lRowCount = 0;
+
+			/**
+			 * Calculates the similarities of a block of rows.
+			 *
+			 * @param iStart Index of the first query of the block.
+			 * @param index Index of the block.
+			 *
+			 * @return Similarities of all pairs of the block that reach the threshold.
+			 */
+			@Override
+			protected SimilarityBlock compute(final Integer iStart, final long index) throws Exception {
+				return calculator.calculate(queries, iStart, Math.min(iQueryCount, iStart + iRowsPerTask),
+						targets, bUniquePairs);
+			}
+
+			/**
+			 * Writes all pairs of a finished block into the result table.
+			 *
+			 * @param task Processing result for a block.
+			 */
+			@Override
+			protected void processFinished(final ComputationTask task)
+					throws ExecutionException, CancellationException, InterruptedException {
+				final SimilarityBlock block = task.get();
+
+				for (int q = 0; q < block.getQueryCount(); q++) {
+					final StringCell cellQueryId = new StringCell(queries.getId(block.getQueryStart() + q));
+					final int iPairCount = block.getPairCount(q);
+					for (int i = 0; i < iPairCount; i++) {
+						final double dSimilarity = block.getSimilarity(q, i);
+						newTableData.addRowToTable(new DefaultRow(RowKey.createRowKey(m_lRowCount++),
+								new DataCell[] {
+										cellQueryId,
+										new StringCell(targets.getId(block.getTarget(q, i))),
+										new DoubleCell(bOutputDistance ? 1.0d - dSimilarity : dSimilarity) }));
+					}
+				}
+
+				// Check, if user pressed cancel (however, we will finish the method
+				// nevertheless)
+				// Update the progress only every 10 blocks
+				if (task.getIndex() % 10 == 0) {
+					try {
+						AbstractRDKitNodeModel.reportProgress(exec, task.getIndex(), iTotalTaskCount, null,
+								" - Calculating similarities");
+					}
+					catch (final CanceledExecutionException e) {
+						cancel(true);
+					}
+				}
+			};
+		}.run(listBlockStarts);
+	}
+
+	/**
+	 * Reads all fingerprints of the specified table into a fingerprint arena in the
+	 * order of the table. If no length is given, the length of the first valid
+	 * fingerprint determines the length of all fingerprints. Fingerprints with other
+	 * lengths are ignored.
+	 *
+	 * @param inData Input table. Must not be null.
+	 * @param inputDataInfo Input data definition for the fingerprint column. Must not be null.
+	 * @param iNumBits Expected fingerprint length or -1 to use the length of the first fingerprint.
+	 * @param context Warning context of the table. Must not be null.
+	 * @param strTable Name of the table used in progress messages and warnings.
+	 * @param warnings Warning consolidator. Must not be null.
+	 * @param exec Execution context. Must not be null.
+	 *
+	 * @return Fingerprint arena or null, if there are no fingerprints.
+	 *
+	 * @throws Exception Thrown, if something goes wrong or if the execution was cancelled.
+	 */
+	protected FingerprintArena readFingerprints(final BufferedDataTable inData, final InputDataInfo inputDataInfo,
+			final int iNumBits, final WarningConsolidator.Context context, final String strTable,
+			final WarningConsolidator warnings, final ExecutionContext exec) throws Exception {
+		final long lTotalRowCount = inData.size();
+		FingerprintArena arena = null;
+		long lRowIndex = 0;
+
+		try (final CloseableRowIterator i = inData.iterator()) {
+			for (; i.hasNext(); lRowIndex++) {
+				final DataRow row = i.next();
+				final BitVectorValue fp = (BitVectorValue)inputDataInfo.getCell(row);
+
+				if (fp == null) {
+					warnings.saveWarning(context.getId(),
+							"Encountered empty fingerprint cell in " + strTable + " - ignored it.");
+				}
+				else {
+					if (arena == null) {
+						final long lNumBits = (iNumBits > 0 ? iNumBits : fp.length());
+						if (lNumBits <= 0 || lNumBits > Integer.MAX_VALUE - 1) {
+							throw new InvalidSettingsException("Fingerprints have an unsupported length of " +
+									lNumBits + " bits.");
+						}
+						arena = new FingerprintArena((int)lNumBits, true, lTotalRowCount);
+					}
+
+					if (fp.length() == arena.getNumBits()) {
+						arena.add(FingerprintArena.toWords(fp), lRowIndex, row.getKey().getString());
+					}
+					else {
+						warnings.saveWarning(context.getId(),
+								"Encountered fingerprint with invalid length in " + strTable + " (" + fp.length() +
+								" instead of " + arena.getNumBits() + " bits) - ignored it.");
+					}
+				}
+
+				// Every 1000 iterations report progress and check for cancel
+				if (lRowIndex % 1000 == 0) {
+					AbstractRDKitNodeModel.reportProgress(exec, lRowIndex, lTotalRowCount, row,
+							" - Reading fingerprints of " + strTable);
+				}
+			}
+		}
+
+		if (arena != null) {
+			LOGGER.debug("Packed " + arena.size() + " fingerprints of " + strTable + " into " +
+					arena.getMemoryFootprint() + " bytes.");
+		}
+
+		return arena;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * This implementation adds the number of rows of table 2 for the warning context of table 2.
+	 */
+	@Override
+	protected Map<String, Long> createWarningContextOccurrencesMap(
+			final BufferedDataTable[] inData, final InputDataInfo[][] arrInputDataInfo,
+			final BufferedDataTable[] resultData) {
+
+		final Map<String, Long> mapContextOccurrences = super.createWarningContextOccurrencesMap(inData, arrInputDataInfo,
+				resultData);
+		if (inData.length > 1 && inData[1] != null) {
+			mapContextOccurrences.put(ROW_CONTEXT_TABLE_2.getId(), inData[1].size());
+		}
+
+		return mapContextOccurrences;
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Determines, if a second table is connected to the node according to the passed in specs.
+	 *
+	 * @param inSpecs Port specifications.
+	 *
+	 * @return True, if there is a table present at the second input port.
+	 */
+	public static boolean hasTargetTable(final PortObjectSpec[] inSpecs) {
+		return (inSpecs != null && inSpecs.length >= 2 && inSpecs[1] instanceof DataTableSpec);
+	}
+}
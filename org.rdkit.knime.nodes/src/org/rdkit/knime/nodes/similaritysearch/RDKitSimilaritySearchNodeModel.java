@@ -0,0 +1,661 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.similaritysearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.defaultnodesettings.SettingsModelDoubleBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+import org.knime.core.node.port.PortTypeRegistry;
+import org.knime.core.util.MultiThreadWorker;
+import org.rdkit.knime.nodes.AbstractRDKitNodeModel;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintArena;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintIndex;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintStore;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintType;
+import org.rdkit.knime.nodes.rdkfingerprint.SimilarityHits;
+import org.rdkit.knime.nodes.rdkfingerprint.SimilarityMetric;
+import org.rdkit.knime.nodes.rdkfingerprint.SimilarityScanner;
+import org.rdkit.knime.properties.FingerprintSettingsHeaderProperty;
+import org.rdkit.knime.util.InputDataInfo;
+import org.rdkit.knime.util.SettingsModelEnumeration;
+import org.rdkit.knime.util.SettingsUtils;
+import org.rdkit.knime.util.WarningConsolidator;
+import org.rdkit.knime.util.WarningConsolidator.Context;
+
+/**
+ * This class implements the node model of the RDKitSimilaritySearch node,
+ * which searches for every query fingerprint of table 1 the most similar
+ * target fingerprints of table 2. All target fingerprints are packed into a
+ * primitive {@link FingerprintArena} sorted by popcount, which lets the search
+ * skip all targets that cannot reach the threshold or the similarity of the
+ * worst top-k hit found so far (BitBound pruning). Instead of a target table
+ * a {@link FingerprintIndex} file can be searched, which is memory-mapped and
+ * not loaded into the Java heap. Queries are processed in parallel. If there are fewer queries than processing threads, the search
+ * for a single query is split into slices, which are processed in parallel as well.
+ * 
+ * @author agent
+ */
+public class RDKitSimilaritySearchNodeModel extends AbstractRDKitNodeModel {
+
+	//
+	// Constants
+	//
+
+	/** The logger instance. */
+	protected static final NodeLogger LOGGER = NodeLogger
+			.getLogger(RDKitSimilaritySearchNodeModel.class);
+
+	/** Input data info index for the query fingerprint (table 1). */
+	protected static final int INPUT_COLUMN_QUERY = 0;
+
+	/** Input data info index for the target fingerprint (table 2). */
+	protected static final int INPUT_COLUMN_TARGET = 0;
+
+	/** Row context for generating warnings, if something is incorrect in table 2. */
+	protected static final WarningConsolidator.Context ROW_CONTEXT_TABLE_2 = new Context("rowTable2", "row", "rows", true);
+
+	/** The minimal number of candidates a slice of a single query search should cover. */
+	protected static final int MIN_SLICE_SIZE = 20000;
+
+	//
+	// Members
+	//
+
+	/** Settings model for the column name of the query column. */
+	private final SettingsModelString m_modelQueryColumnName =
+			registerSettings(RDKitSimilaritySearchNodeDialog.createQueryColumnNameModel());
+
+	/** Settings model for the column name of the target column. */
+	private final SettingsModelString m_modelTargetColumnName =
+			registerSettings(RDKitSimilaritySearchNodeDialog.createTargetColumnNameModel());
+
+	/** Settings model for the fingerprint index file used, if no target table is connected. */
+	private final SettingsModelString m_modelTargetIndexFile =
+			registerSettings(RDKitSimilaritySearchNodeDialog.createTargetIndexFileModel());
+
+	/** Settings model for the similarity metric. */
+	private final SettingsModelEnumeration<SimilarityMetric> m_modelMetric =
+			registerSettings(RDKitSimilaritySearchNodeDialog.createMetricModel());
+
+	/** Settings model for the Tversky alpha weight. */
+	private final SettingsModelDoubleBounded m_modelTverskyAlpha =
+			registerSettings(RDKitSimilaritySearchNodeDialog.createTverskyAlphaModel(m_modelMetric));
+
+	/** Settings model for the Tversky beta weight. */
+	private final SettingsModelDoubleBounded m_modelTverskyBeta =
+			registerSettings(RDKitSimilaritySearchNodeDialog.createTverskyBetaModel(m_modelMetric));
+
+	/** Settings model for the maximal number of hits per query. */
+	private final SettingsModelIntegerBounded m_modelMaxHits =
+			registerSettings(RDKitSimilaritySearchNodeDialog.createMaxHitsModel());
+
+	/** Settings model for the similarity threshold. */
+	private final SettingsModelDoubleBounded m_modelThreshold =
+			registerSettings(RDKitSimilaritySearchNodeDialog.createThresholdModel());
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Create new node model with two data in- (second is optional) and one out-port.
+	 */
+	RDKitSimilaritySearchNodeModel() {
+		super(new PortType[] {
+				// Input ports (2nd port is optional)
+				PortTypeRegistry.getInstance().getPortType(BufferedDataTable.TYPE.getPortObjectClass(), false),
+				PortTypeRegistry.getInstance().getPortType(BufferedDataTable.TYPE.getPortObjectClass(), true) },
+				new PortType[] {
+				// Output ports
+						PortTypeRegistry.getInstance().getPortType(BufferedDataTable.TYPE.getPortObjectClass(), false)
+				});
+
+		registerInputTablesWithSizeLimits(0, 1); // Queries and target tables are kept in memory
+		getWarningConsolidator().registerContext(ROW_CONTEXT_TABLE_2);
+	}
+
+	//
+	// Protected Methods
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs)
+			throws InvalidSettingsException {
+		// Reset warnings and check RDKit library readiness
+		super.configure(inSpecs);
+
+		final WarningConsolidator warnings = getWarningConsolidator();
+
+		// Auto guess the query column if not set - fails if no compatible column found
+		SettingsUtils.autoGuessColumn(inSpecs[0], m_modelQueryColumnName, BitVectorValue.class, 0,
+				"Auto guessing: Using column %COLUMN_NAME% as query fingerprints.",
+				"No fingerprints (Bit Vector compatible column) in query table.", warnings);
+
+		// Determines, if the query column exists - fails if it does not
+		SettingsUtils.checkColumnExistence(inSpecs[0], m_modelQueryColumnName, BitVectorValue.class,
+				"Query column has not been specified yet.",
+				"Query column %COLUMN_NAME% does not exist. Has the query table changed?");
+
+		FingerprintSettingsHeaderProperty fpSpecTarget = null;
+
+		if (hasTargetTable(inSpecs)) {
+			// Auto guess the target column if not set - fails if no compatible column found
+			SettingsUtils.autoGuessColumn(inSpecs[1], m_modelTargetColumnName, BitVectorValue.class, 0,
+					"Auto guessing: Using column %COLUMN_NAME% as target fingerprints.",
+					"No fingerprints (Bit Vector compatible column) in target table.", warnings);
+
+			// Determines, if the target column exists - fails if it does not
+			SettingsUtils.checkColumnExistence(inSpecs[1], m_modelTargetColumnName, BitVectorValue.class,
+					"Target column has not been specified yet.",
+					"Target column %COLUMN_NAME% does not exist. Has the target table changed?");
+
+			fpSpecTarget = new FingerprintSettingsHeaderProperty(
+					inSpecs[1].getColumnSpec(m_modelTargetColumnName.getStringValue()));
+		}
+		else {
+			// Without target table we need a fingerprint index file
+			fpSpecTarget = openTargetIndex().getFingerprintSettings();
+		}
+
+		// Compare fingerprint settings, if both sides carry RDKit fingerprint information
+		final FingerprintSettingsHeaderProperty fpSpecQuery = new FingerprintSettingsHeaderProperty(
+				inSpecs[0].getColumnSpec(m_modelQueryColumnName.getStringValue()));
+		if (fpSpecQuery.getRdkitFingerprintType() != null &&
+				fpSpecTarget != null && fpSpecTarget.getRdkitFingerprintType() != null &&
+				!FingerprintType.isCompatible(fpSpecQuery, fpSpecTarget)) {
+			warnings.saveWarning("The query and target fingerprints were generated differently, " +
+					"which may lead to meaningless similarities.");
+		}
+
+		// Consolidate all warnings and make them available to the user
+		generateWarnings();
+
+		// Generate output specs
+		return getOutputTableSpecs(inSpecs);
+	}
+
+	/**
+	 * This implementation generates input data info objects for the query and target
+	 * fingerprint columns and connects them with the information coming from the
+	 * appropriate setting models.
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected InputDataInfo[] createInputDataInfos(final int inPort, final DataTableSpec inSpec)
+			throws InvalidSettingsException {
+
+		InputDataInfo[] arrDataInfo = null;
+
+		// Specify input of table 1
+		if (inPort == 0) {
+			arrDataInfo = new InputDataInfo[1]; // We have only one input column
+			arrDataInfo[INPUT_COLUMN_QUERY] = new InputDataInfo(inSpec, m_modelQueryColumnName,
+					InputDataInfo.EmptyCellPolicy.TreatAsNull, null,
+					BitVectorValue.class);
+		}
+
+		// Specify input of optional table 2
+		else if (inPort == 1 && inSpec != null) {
+			arrDataInfo = new InputDataInfo[1]; // We have only one input column
+			arrDataInfo[INPUT_COLUMN_TARGET] = new InputDataInfo(inSpec, m_modelTargetColumnName,
+					InputDataInfo.EmptyCellPolicy.TreatAsNull, null,
+					BitVectorValue.class);
+		}
+
+		return (arrDataInfo == null ? new InputDataInfo[0] : arrDataInfo);
+	}
+
+	/**
+	 * Returns the output table specification of the specified out port.
+	 * 
+	 * @param outPort Index of output port in focus. Zero-based.
+	 * @param inSpecs All input table specifications.
+	 * 
+	 * @return The specification of all output tables.
+	 * 
+	 * @throws InvalidSettingsException Thrown, if the settings are inconsistent with
+	 * 		given DataTableSpec elements.
+	 */
+	@Override
+	protected DataTableSpec getOutputTableSpec(final int outPort,
+			final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+		DataTableSpec spec = null;
+
+		switch (outPort) {
+
+		case 0:
+			// Define output table
+			spec = new DataTableSpec("Similarity Search Hits",
+					new DataColumnSpecCreator("Query", StringCell.TYPE).createSpec(),
+					new DataColumnSpecCreator("Target", StringCell.TYPE).createSpec(),
+					new DataColumnSpecCreator(m_modelMetric.getValue() + " Similarity", DoubleCell.TYPE).createSpec(),
+					new DataColumnSpecCreator("Rank", IntCell.TYPE).createSpec());
+			break;
+		}
+
+		return spec;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected BufferedDataTable[] processing(final BufferedDataTable[] inData, final InputDataInfo[][] arrInputDataInfo,
+			final ExecutionContext exec) throws Exception {
+		final DataTableSpec[] arrOutSpecs = getOutputTableSpecs(inData);
+		final WarningConsolidator warnings = getWarningConsolidator();
+
+		// Contains the rows with the result column
+		final BufferedDataContainer newTableData = exec.createDataContainer(arrOutSpecs[0]);
+
+		// Create sub execution contexts for processing steps
+		final ExecutionContext subExecReadingTargets = exec.createSubExecutionContext(0.20d);
+		final ExecutionContext subExecReadingQueries = exec.createSubExecutionContext(0.05d);
+		final ExecutionContext subExecSearching = exec.createSubExecutionContext(0.75d);
+
+		// 1. Pack all target fingerprints into an arena sorted by popcount or map the target index
+		final FingerprintIndex index = (hasTargetTable(getInputTableSpecs(inData)) ? null : openTargetIndex());
+		final FingerprintStore store = (index != null ? index :
+			readTargets(inData[1], arrInputDataInfo[1][INPUT_COLUMN_TARGET], warnings, subExecReadingTargets));
+		subExecReadingTargets.setProgress(1.0d);
+
+		// The mapped index is released by the garbage collector, when no worker uses it anymore
+		if (store == null || store.size() == 0) {
+			warnings.saveWarning("There are no target fingerprints - Result table is empty.");
+		}
+		else {
+			search(inData[0], arrInputDataInfo[0][INPUT_COLUMN_QUERY], store, newTableData, warnings,
+					subExecReadingQueries, subExecSearching);
+		}
+
+		exec.checkCanceled();
+		exec.setProgress(1.0, "Finished Processing");
+
+		newTableData.close();
+
+		return new BufferedDataTable[] { newTableData.getTable() };
+	}
+
+	/**
+	 * Searches the most similar target fingerprints for all query fingerprints and adds
+	 * the hits to the result table.
+	 * 
+	 * @param inData Query table. Must not be null.
+	 * @param inputDataInfo Input data definition for the query column. Must not be null.
+	 * @param store Target fingerprints. Must not be null.
+	 * @param newTableData Result table. Must not be null.
+	 * @param warnings Warning consolidator. Must not be null.
+	 * @param subExecReadingQueries Execution context for reading queries. Must not be null.
+	 * @param subExecSearching Execution context for searching. Must not be null.
+	 * 
+	 * @throws Exception Thrown, if something goes wrong or if the execution was cancelled.
+	 */
+	protected void search(final BufferedDataTable inData, final InputDataInfo inputDataInfo,
+			final FingerprintStore store, final BufferedDataContainer newTableData,
+			final WarningConsolidator warnings, final ExecutionContext subExecReadingQueries,
+			final ExecutionContext subExecSearching) throws Exception {
+		// 2. Read all query fingerprints
+		final List<long[]> listQueries = new ArrayList<long[]>();
+		final List<String> listQueryIds = new ArrayList<String>();
+		final long lQueryRowCount = inData.size();
+		long lRowIndex = 0;
+
+		try (final CloseableRowIterator i = inData.iterator()) {
+			for (; i.hasNext(); lRowIndex++) {
+				final DataRow row = i.next();
+				final BitVectorValue fp = (BitVectorValue)inputDataInfo.getCell(row);
+
+				if (fp == null) {
+					warnings.saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
+							"Encountered empty query fingerprint cell - ignored it.");
+				}
+				else if (fp.length() != store.getNumBits()) {
+					warnings.saveWarning(WarningConsolidator.ROW_CONTEXT.getId(),
+							"Encountered query fingerprint with invalid length (" + fp.length() + " instead of " +
+									store.getNumBits() + " bits) - ignored it.");
+				}
+				else {
+					listQueries.add(FingerprintArena.toWords(fp));
+					listQueryIds.add(row.getKey().getString());
+				}
+
+				// Every 1000 iterations report progress and check for cancel
+				if (lRowIndex % 1000 == 0) {
+					AbstractRDKitNodeModel.reportProgress(subExecReadingQueries, lRowIndex, lQueryRowCount, row,
+							" - Reading query fingerprints");
+				}
+			}
+		}
+
+		subExecReadingQueries.setProgress(1.0d);
+
+		// 3. Search in parallel - queries are split into slices, if there are not enough queries to keep all threads busy
+		final SimilarityScanner scanner = new SimilarityScanner(m_modelMetric.getValue(),
+				m_modelTverskyAlpha.getDoubleValue(), m_modelTverskyBeta.getDoubleValue(),
+				m_modelThreshold.getDoubleValue(), m_modelMaxHits.getIntValue());
+		final int iMaxParallelWorkers = (int)Math.ceil(1.5 * Runtime.getRuntime().availableProcessors());
+		final int iQueueSize = 100 * iMaxParallelWorkers;
+		final int iQueryCount = listQueries.size();
+		final List<SearchTask> listTasks = new ArrayList<SearchTask>(iQueryCount);
+
+		for (int iQuery = 0; iQuery < iQueryCount; iQuery++) {
+			int iSliceCount = 1;
+			if (iQueryCount < iMaxParallelWorkers) {
+				final long[] arrQuery = listQueries.get(iQuery);
+				final int iCandidates = scanner.getCandidateCount(store, FingerprintArena.getPopCount(arrQuery));
+				iSliceCount = Math.max(1, Math.min((iMaxParallelWorkers + iQueryCount - 1) / iQueryCount,
+						iCandidates / MIN_SLICE_SIZE));
+			}
+			for (int iSlice = 0; iSlice < iSliceCount; iSlice++) {
+				listTasks.add(new SearchTask(iQuery, iSlice, iSliceCount));
+			}
+		}
+
+		final int iTotalTaskCount = listTasks.size();
+
+		new MultiThreadWorker<SearchTask, SimilarityHits>(iQueueSize, iMaxParallelWorkers) {
+
+			/** Merged hits of the current query. */
+			private SimilarityHits m_hitsOfQuery = null;
+
+			/**
+			 * Searches one slice of the targets for one query.
+			 * 
+			 * @param task Search task.
+			 * @param index Index of the task.
+			 * 
+			 * @return Unsorted hits.
+			 */
+			@Override
+			protected SimilarityHits compute(final SearchTask task, final long index) throws Exception {
+				return scanner.search(store, listQueries.get(task.m_iQuery), task.m_iSlice, task.m_iSliceCount);
+			}
+
+			/**
+			 * Merges the hits of all slices of a query and writes them into the result table,
+			 * when the last slice has been processed.
+			 * 
+			 * @param task Processing result for a search task.
+			 */
+			@Override
+			protected void processFinished(final ComputationTask task)
+					throws ExecutionException, CancellationException, InterruptedException {
+				final SimilarityHits hits = task.get();
+				final SearchTask searchTask = listTasks.get((int)task.getIndex());
+
+				if (searchTask.m_iSliceCount == 1) {
+					m_hitsOfQuery = hits;
+				}
+				else {
+					if (m_hitsOfQuery == null) {
+						m_hitsOfQuery = new SimilarityHits(m_modelMaxHits.getIntValue());
+					}
+					m_hitsOfQuery.addAll(hits);
+				}
+
+				if (searchTask.m_iSlice == searchTask.m_iSliceCount - 1) {
+					final String strQueryId = listQueryIds.get(searchTask.m_iQuery);
+					m_hitsOfQuery.sort();
+					for (int i = 0; i < m_hitsOfQuery.size(); i++) {
+						final int iRank = i + 1;
+						newTableData.addRowToTable(new DefaultRow(new RowKey(strQueryId + "_" + iRank),
+								new DataCell[] {
+										new StringCell(strQueryId),
+										new StringCell(store.getId(m_hitsOfQuery.getIndex(i))),
+										new DoubleCell(m_hitsOfQuery.getSimilarity(i)),
+										new IntCell(iRank) }));
+					}
+					m_hitsOfQuery = null;
+				}
+
+				// Check, if user pressed cancel (however, we will finish the method
+				// nevertheless)
+				// Update the progress only every 100 tasks
+				if (task.getIndex() % 100 == 0) {
+					try {
+						AbstractRDKitNodeModel.reportProgress(subExecSearching, task.getIndex(), iTotalTaskCount, null,
+								" - Searching similar fingerprints");
+					}
+					catch (final CanceledExecutionException e) {
+						cancel(true);
+					}
+				}
+			};
+		}.run(listTasks);
+	}
+
+	/**
+	 * Reads all target fingerprints of the specified table into a fingerprint arena,
+	 * which is sorted by popcount afterwards. The length of the first valid
+	 * fingerprint determines the length of all fingerprints. Fingerprints with other
+	 * lengths are ignored.
+	 * 
+	 * @param inData Target table. Must not be null.
+	 * @param inputDataInfo Input data definition for the target column. Must not be null.
+	 * @param warnings Warning consolidator. Must not be null.
+	 * @param exec Execution context. Must not be null.
+	 * 
+	 * @return Sorted fingerprint arena or null, if there are no target fingerprints.
+	 * 
+	 * @throws Exception Thrown, if something goes wrong or if the execution was cancelled.
+	 */
+	protected FingerprintArena readTargets(final BufferedDataTable inData, final InputDataInfo inputDataInfo,
+			final WarningConsolidator warnings, final ExecutionContext exec) throws Exception {
+		final long lTotalRowCount = inData.size();
+		FingerprintArena arena = null;
+		long lRowIndex = 0;
+
+		try (final CloseableRowIterator i = inData.iterator()) {
+			for (; i.hasNext(); lRowIndex++) {
+				final DataRow row = i.next();
+				final BitVectorValue fp = (BitVectorValue)inputDataInfo.getCell(row);
+
+				if (fp == null) {
+					warnings.saveWarning(ROW_CONTEXT_TABLE_2.getId(),
+							"Encountered empty target fingerprint cell - ignored it.");
+				}
+				else {
+					if (arena == null) {
+						if (fp.length() <= 0 || fp.length() > Integer.MAX_VALUE - 1) {
+							throw new InvalidSettingsException("Target fingerprints have an unsupported length of " +
+									fp.length() + " bits.");
+						}
+						arena = new FingerprintArena((int)fp.length(), true, lTotalRowCount);
+					}
+
+					if (fp.length() == arena.getNumBits()) {
+						arena.add(FingerprintArena.toWords(fp), lRowIndex, row.getKey().getString());
+					}
+					else {
+						warnings.saveWarning(ROW_CONTEXT_TABLE_2.getId(),
+								"Encountered target fingerprint with invalid length (" + fp.length() + " instead of " +
+										arena.getNumBits() + " bits) - ignored it.");
+					}
+				}
+
+				// Every 1000 iterations report progress and check for cancel
+				if (lRowIndex % 1000 == 0) {
+					AbstractRDKitNodeModel.reportProgress(exec, lRowIndex, lTotalRowCount, row,
+							" - Reading target fingerprints");
+				}
+			}
+		}
+
+		if (arena != null) {
+			exec.setMessage("Sorting target fingerprints");
+			arena.sortByPopCount();
+			LOGGER.debug("Packed " + arena.size() + " target fingerprints into " +
+					arena.getMemoryFootprint() + " bytes.");
+		}
+
+		return arena;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * This implementation adds the number of target rows for the warning context of table 2.
+	 */
+	@Override
+	protected Map<String, Long> createWarningContextOccurrencesMap(
+			final BufferedDataTable[] inData, final InputDataInfo[][] arrInputDataInfo,
+			final BufferedDataTable[] resultData) {
+
+		final Map<String, Long> mapContextOccurrences = super.createWarningContextOccurrencesMap(inData, arrInputDataInfo,
+				resultData);
+		if (inData.length > 1 && inData[1] != null) {
+			mapContextOccurrences.put(ROW_CONTEXT_TABLE_2.getId(), inData[1].size());
+		}
+
+		return mapContextOccurrences;
+	}
+
+	/**
+	 * Opens the fingerprint index file that is configured to be used instead of a target table.
+	 * 
+	 * @return Opened fingerprint index. Never null.
+	 * 
+	 * @throws InvalidSettingsException Thrown, if no index file is configured or if it cannot be opened.
+	 */
+	protected FingerprintIndex openTargetIndex() throws InvalidSettingsException {
+		final String strFile = m_modelTargetIndexFile.getStringValue();
+
+		if (strFile == null || strFile.trim().isEmpty()) {
+			throw new InvalidSettingsException("Connect a target table or specify a fingerprint index file.");
+		}
+
+		final File file = new File(strFile.trim());
+		if (!file.isFile()) {
+			throw new InvalidSettingsException("Fingerprint index file " + file + " does not exist.");
+		}
+
+		try {
+			return FingerprintIndex.open(file.toPath());
+		}
+		catch (final IOException exc) {
+			throw new InvalidSettingsException("Fingerprint index file cannot be opened: " + exc.getMessage(), exc);
+		}
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Determines, if a target table is connected to the node according to the passed in specs.
+	 * 
+	 * @param inSpecs Port specifications.
+	 * 
+	 * @return True, if there is a target table present at the second input port.
+	 */
+	public static boolean hasTargetTable(final PortObjectSpec[] inSpecs) {
+		return (inSpecs != null && inSpecs.length >= 2 && inSpecs[1] instanceof DataTableSpec);
+	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * A search task covers one slice of the search for a single query.
+	 */
+	protected static class SearchTask {
+
+		/** Index of the query. */
+		private final int m_iQuery;
+
+		/** Slice number. */
+		private final int m_iSlice;
+
+		/** Total number of slices of the query. */
+		private final int m_iSliceCount;
+
+		/**
+		 * Creates a new search task.
+		 * 
+		 * @param iQuery Index of the query.
+		 * @param iSlice Slice number.
+		 * @param iSliceCount Total number of slices of the query.
+		 */
+		private SearchTask(final int iQuery, final int iSlice, final int iSliceCount) {
+			m_iQuery = iQuery;
+			m_iSlice = iSlice;
+			m_iSliceCount = iSliceCount;
+		}
+	}
+}
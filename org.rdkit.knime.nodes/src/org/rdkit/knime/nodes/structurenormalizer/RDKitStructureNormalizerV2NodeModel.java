@@ -48,14 +48,11 @@
  */
 package org.rdkit.knime.nodes.structurenormalizer;
 
-import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -155,9 +152,20 @@ public class RDKitStructureNormalizerV2NodeModel extends AbstractRDKitNodeModel
 	protected static final String DEFAULT_AUGMENTED_ATOMS_CONFIGURATION_FILE =
 			"/org/rdkit/knime/nodes/structurenormalizer/checkfgs-rdkit.chk";
 
-	/** The lock to ensure that only one thread works with the structure checker at a time. */
+	/**
+	 * The lock, which was used to ensure that only one thread works with the structure checker at a time.
+	 * @deprecated Exclusive access to the structure checker is granted by {@link StructureChecker.Session}s
+	 * 		now. This lock is not used anymore and will be removed in a future release.
+	 */
+	@Deprecated
 	public static final Object STRUCTURE_CHECKER_LOCK = new Object();
 
+	/**
+	 * The number of molecules checked in one session with exclusive access to the structure checker.
+	 * Other normalizer nodes get access in between.
+	 */
+	protected static final int CHECKER_BATCH_SIZE = 500;
+
 	/** Default postfix for output column. */
 	public static final String DEFAULT_POSTFIX_PASSED_CORRECTED = "Corrected";
 
@@ -620,6 +628,7 @@ public class RDKitStructureNormalizerV2NodeModel extends AbstractRDKitNodeModel
 	protected BufferedDataTable[] processing(final BufferedDataTable[] inData, final InputDataInfo[][] arrInputDataInfo,
 			final ExecutionContext exec) throws Exception {
 		final DataTableSpec[] arrOutSpecs = getOutputTableSpecs(inData);
+		final StructureChecker checker = StructureChecker.getInstance();
 
 		// Contains the rows with the result column
 		final BufferedDataContainer port0 = exec.createDataContainer(arrOutSpecs[m_iPassedMoleculesPortIdx]);
@@ -627,30 +636,47 @@ public class RDKitStructureNormalizerV2NodeModel extends AbstractRDKitNodeModel
 		// Contains the input rows if result computation fails
 		final BufferedDataContainer port1 = exec.createDataContainer(arrOutSpecs[m_iFailedMoleculesPortIdx]);
 
-		synchronized (STRUCTURE_CHECKER_LOCK) {
+		// Setup warning/failure treatment
+		final int iErrorCodeMask = StruCheckCode.getErrorCodeMask(m_modelAdditionalFailureCodesConfiguration.getValues());
 
-			// Setup warning/failure treatment
-			final int iErrorCodeMask = StruCheckCode.getErrorCodeMask(m_modelAdditionalFailureCodesConfiguration.getValues());
+		// Initialize - this loads our configuration already to report configuration errors early
+		final StructureChecker.Configuration config = initialize();
 
-			// Initialize (depends on GLOBAL_CONFIGURATION_MODE flag)
-			initialize();
+		// Check input type
+		m_inputType = determineStructureCheckerInputType(arrInputDataInfo[m_iInputTablePortIdx][INPUT_COLUMN_MOL].getDataType());
 
-			// Check input type
-			m_inputType = determineStructureCheckerInputType(arrInputDataInfo[m_iInputTablePortIdx][INPUT_COLUMN_MOL].getDataType());
+		// Get settings and define data specific behavior
+		final long lTotalRowCount = inData[m_iInputTablePortIdx].size();
 
-			// Get settings and define data specific behavior
-			final long lTotalRowCount = inData[m_iInputTablePortIdx].size();
+		// Setup main factory
+		final AbstractRDKitCellFactory factory = createOutputFactory(arrInputDataInfo[m_iInputTablePortIdx]);
 
-			// Setup main factory
-			final AbstractRDKitCellFactory factory = createOutputFactory(arrInputDataInfo[m_iInputTablePortIdx]);
+		// Iterate through all input rows in batches, calculate results and split the output
+		final List<DataRow> listBatch = new ArrayList<>(CHECKER_BATCH_SIZE);
+		final List<DataCell[]> listBatchResults = new ArrayList<>(CHECKER_BATCH_SIZE);
+		long rowIndex = 0;
 
-			// Iterate through all input rows, calculate results and split the output
-			try (final CloseableRowIterator i = inData[m_iInputTablePortIdx].iterator()) {
-				for (long rowIndex = 0; i.hasNext(); rowIndex++) {
-					final DataRow row = i.next();
-					final DataCell[] arrResults = factory.getCells(row);
+		try (final CloseableRowIterator i = inData[m_iInputTablePortIdx].iterator()) {
+			while (i.hasNext()) {
+				listBatch.clear();
+				listBatchResults.clear();
+				while (i.hasNext() && listBatch.size() < CHECKER_BATCH_SIZE) {
+					listBatch.add(i.next());
+				}
+
+				// Check the batch while we have exclusive access to the structure checker (reloads our configuration,
+				// if another normalizer node used a different one in the meantime)
+				try (final StructureChecker.Session session = checker.open(config, null)) {
+					for (final DataRow row : listBatch) {
+						listBatchResults.add(factory.getCells(row));
+					}
+				}
+
+				// Check what goes into the second table (empty cells, failures and warnings treated like failures)
+				for (int iBatchIndex = 0; iBatchIndex < listBatch.size(); iBatchIndex++, rowIndex++) {
+					final DataRow row = listBatch.get(iBatchIndex);
+					final DataCell[] arrResults = listBatchResults.get(iBatchIndex);
 
-					// Check what goes into the second table (empty cells, failures and warnings treated like failures)
 					if (arrResults[1] == null || arrResults[1].isMissing() ||
 							(((IntCell) arrResults[1]).getIntValue() & iErrorCodeMask) != 0) {
 						port1.addRowToTable(AbstractRDKitCellFactory.mergeDataCells(row,
@@ -674,152 +700,99 @@ public class RDKitStructureNormalizerV2NodeModel extends AbstractRDKitNodeModel
 					}
 				}
 			}
+		}
 
-            exec.checkCanceled();
-			exec.setProgress(1.0, "Finished Processing");
+		exec.checkCanceled();
+		exec.setProgress(1.0, "Finished Processing");
 
-			port0.close();
-			port1.close();
-		}
+		port0.close();
+		port1.close();
 
 		return new BufferedDataTable[] { port0.getTable(), port1.getTable() };
 	}
 
 	/**
-	 * Initializes the structure checker.
+	 * Initializes the structure checker. It prepares the configuration of this node, which
+	 * does not block other normalizer nodes, and loads it once to validate it
+	 * and to provide the log file.
+	 * 
+	 * @return The configuration of this node to be used for checking molecules.
 	 * 
 	 * @throws Exception Thrown, if initializing failed.
 	 */
-	protected void initialize() throws Exception {
-		synchronized (STRUCTURE_CHECKER_LOCK) {
-			FileOutputStream outTrans = null;
-			FileOutputStream outAtoms = null;
-
-			// Create temporary transformation configuration file
-			final String strTransformationConfigurationOriginal =
-					(isDefaultConfigurationFile(m_modelTransformationConfigurationPath.getPath()) ?
-							DEFAULT_TRANSFORMATION_CONFIGURATION_FILE :
-								m_modelTransformationConfigurationPath.getPath());
-			String strTransformationConfiguration = getConfiguration(m_modelTransformationConfigurationPath,
-					DEFAULT_TRANSFORMATION_CONFIGURATION_FILE);
-			strTransformationConfiguration = strTransformationConfiguration.replace("\r\n", "\n");
-			final File fileTempTransformationConfigFile = File.createTempFile("checkfgs", ".trn");
-			fileTempTransformationConfigFile.deleteOnExit();
-
-			try {
-				outTrans = new FileOutputStream(fileTempTransformationConfigFile, false);
-				outTrans.write(strTransformationConfiguration.getBytes());
-				outTrans.flush();
-			}
-			catch (final Exception exc) {
-				throw new Exception("Unable to create temporary transformation configuration file for Structure Normalizer.", exc);
-			}
-			finally {
-				FileUtils.close(outTrans);
-			}
-
-			// Create temporary augmented atoms configuration file
-			final String strAugmentedAtomsConfigurationOriginal =
-					(isDefaultConfigurationFile(m_modelAugmentedAtomsConfigurationPath.getPath()) ?
-							DEFAULT_AUGMENTED_ATOMS_CONFIGURATION_FILE :
-								m_modelAugmentedAtomsConfigurationPath.getPath());
-			String strAugmentedAtomsConfiguration = getConfiguration(m_modelAugmentedAtomsConfigurationPath,
-					DEFAULT_AUGMENTED_ATOMS_CONFIGURATION_FILE);
-			strAugmentedAtomsConfiguration = strAugmentedAtomsConfiguration.replace("\r\n", "\n");
-			final File fileTempAugmentedAtomsConfigFile = File.createTempFile("checkfgs", ".chk");
-			fileTempAugmentedAtomsConfigFile.deleteOnExit();
-
-			try {
-				outAtoms = new FileOutputStream(fileTempAugmentedAtomsConfigFile, false);
-				outAtoms.write(strAugmentedAtomsConfiguration.getBytes());
-				outAtoms.flush();
-			}
-			catch (final Exception exc) {
-				throw new Exception("Unable to create temporary augmented atoms configuration file for Structure Normalizer.", exc);
-			}
-			finally {
-				FileUtils.close(outAtoms);
+	protected StructureChecker.Configuration initialize() throws Exception {
+		final StructureChecker checker = StructureChecker.getInstance();
+
+		// Get transformation configuration
+		final String strTransformationConfigurationOriginal =
+				(isDefaultConfigurationFile(m_modelTransformationConfigurationPath.getPath()) ?
+						DEFAULT_TRANSFORMATION_CONFIGURATION_FILE :
+							m_modelTransformationConfigurationPath.getPath());
+		final String strTransformationConfiguration = getConfiguration(m_modelTransformationConfigurationPath,
+				DEFAULT_TRANSFORMATION_CONFIGURATION_FILE);
+
+		// Get augmented atoms configuration
+		final String strAugmentedAtomsConfigurationOriginal =
+				(isDefaultConfigurationFile(m_modelAugmentedAtomsConfigurationPath.getPath()) ?
+						DEFAULT_AUGMENTED_ATOMS_CONFIGURATION_FILE :
+							m_modelAugmentedAtomsConfigurationPath.getPath());
+		final String strAugmentedAtomsConfiguration = getConfiguration(m_modelAugmentedAtomsConfigurationPath,
+				DEFAULT_AUGMENTED_ATOMS_CONFIGURATION_FILE);
+
+		// Define switches and options
+		String strAdvancedOptions = m_modelAdvancedOptions.getStringValue();
+		if (strAdvancedOptions != null) {
+			strAdvancedOptions = strAdvancedOptions.trim();
+			if (!strAdvancedOptions.isEmpty()) {
+				strAdvancedOptions += "\n";
 			}
+		}
+		else {
+			strAdvancedOptions = "";
+		}
 
-			try (final WritePathAccessor pathAccessor = m_modelLogPath.createWritePathAccessor()) {
-				// Create log file
-				Path pathLogFile = pathAccessor.getOutputPath(this::onStatusMessage);
+		// Create the configuration with temporary configuration files
+		final StructureChecker.Configuration config = checker.createConfiguration(
+				StruCheckSwitch.generateSwitches(m_modelSwitchOptions.getValues()) + strAdvancedOptions,
+				strTransformationConfiguration, strAugmentedAtomsConfiguration);
+		LOGGER.info("Initializing StruChk of RDKit with the following options:\n" + config.getOptions());
+		LOGGER.info("Transformation configuration copied from " + strTransformationConfigurationOriginal);
+		LOGGER.info("Augmented atoms configuration copied from " + strAugmentedAtomsConfigurationOriginal);
 
-				// Create missing directories
-				if (pathLogFile != null && !pathLogFile.toString().isBlank()) {
-					if (Files.exists(pathLogFile)) {
-						if (FileOverwritePolicy.FAIL.equals(m_modelLogPath.getFileOverwritePolicy())) {
-							throw new InvalidSettingsException("The specified log file exists already. " +
-									"You may remove the file or switch on the Overwrite option to grant execution.");
-						}
-					}
-					else {
-						final Path pathLogFileParent = pathLogFile.getParent();
-						if (pathLogFileParent != null && !Files.exists(pathLogFileParent)) {
-							if (!m_modelLogPath.isCreateMissingFolders()) {
-								throw new InvalidSettingsException("The specified log file directory does not exist. " +
-										"You may create the directory or switch on the Overwrite option to grant execution.");
-							}
-
-							// Create missing directories
-							Files.createDirectories(pathLogFileParent);
-						}
-					}
-				}
+		try (final WritePathAccessor pathAccessor = m_modelLogPath.createWritePathAccessor()) {
+			// Create log file
+			Path pathLogFile = pathAccessor.getOutputPath(this::onStatusMessage);
 
-				final Path pathLogTmpFile = Files.createTempFile("checkfgs", ".log");
-				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                    try {
-                        Files.delete(pathLogTmpFile);
-                    }
-					catch (IOException e) {
-                        // Ignoring it
-                    }
-                }));
-				Files.delete(pathLogTmpFile); // Deleting it, it will be recreated by StruChk
-
-				// Initialize the structure checker
-				String strAdvancedOptions = m_modelAdvancedOptions.getStringValue();
-				if (strAdvancedOptions != null) {
-					strAdvancedOptions = strAdvancedOptions.trim();
-					if (!strAdvancedOptions.isEmpty()) {
-						strAdvancedOptions += "\n";
+			// Create missing directories
+			if (pathLogFile != null && !pathLogFile.toString().isBlank()) {
+				if (Files.exists(pathLogFile)) {
+					if (FileOverwritePolicy.FAIL.equals(m_modelLogPath.getFileOverwritePolicy())) {
+						throw new InvalidSettingsException("The specified log file exists already. " +
+								"You may remove the file or switch on the Overwrite option to grant execution.");
 					}
 				}
 				else {
-					strAdvancedOptions = "";
-				}
+					final Path pathLogFileParent = pathLogFile.getParent();
+					if (pathLogFileParent != null && !Files.exists(pathLogFileParent)) {
+						if (!m_modelLogPath.isCreateMissingFolders()) {
+							throw new InvalidSettingsException("The specified log file directory does not exist. " +
+									"You may create the directory or switch on the Overwrite option to grant execution.");
+						}
 
-				String strOptions = "StruCheck\n" + // Add this dummy argument to work around an issue
-						// in RDKit/StruCheck that throws the first parameter away
-						StruCheckSwitch.generateSwitches(m_modelSwitchOptions.getValues()) +
-						strAdvancedOptions +
-						"-or\n" +
-						"-ta \"{0}\"\n" +
-						"-ca \"{1}\"\n" +
-						"-l \"{2}\"";
-				strOptions = strOptions.replace("{0}", fileTempTransformationConfigFile.getAbsolutePath());
-				strOptions = strOptions.replace("{1}", fileTempAugmentedAtomsConfigFile.getAbsolutePath());
-				strOptions = strOptions.replace("{2}", pathLogTmpFile.toAbsolutePath().toString());
-				LOGGER.info("Initializing StruChk of RDKit with the following options:\n" + strOptions);
-				LOGGER.info(fileTempTransformationConfigFile.getName() + " copied from " + strTransformationConfigurationOriginal);
-				LOGGER.info(fileTempAugmentedAtomsConfigFile.getName() + " copied from " + strAugmentedAtomsConfigurationOriginal);
-
-				try {
-					final int iError = RDKFuncs.initCheckMol(strOptions);
-
-					if (iError != 0) {
-						throw new Exception("Configuring the Structure Normalizer failed with error code #" + iError +
-								" - Please check your configuration files and settings.");
-					}
-				}
-				finally {
-					if (pathLogFile != null && !pathLogFile.toString().isBlank() && Files.exists(pathLogTmpFile)) {
-						Files.copy(pathLogTmpFile, pathLogFile, StandardCopyOption.REPLACE_EXISTING);
+						// Create missing directories
+						Files.createDirectories(pathLogFileParent);
 					}
 				}
 			}
+			else {
+				pathLogFile = null;
+			}
+
+			// Load the configuration and copy the log
+			checker.load(config, pathLogFile);
 		}
+
+		return config;
 	}
 
 	@Override
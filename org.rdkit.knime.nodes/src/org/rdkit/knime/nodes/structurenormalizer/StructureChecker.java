@@ -0,0 +1,435 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.structurenormalizer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.RDKit.RDKFuncs;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Coordinates the access to the StruCheck structure checker of the RDKit. The checker keeps its
+ * configuration in global native state, hence there can only be one configuration loaded at a time
+ * and checking molecules must never overlap with loading another configuration. Instead of
+ * holding a lock while a node prepares configuration files and processes its complete table,
+ * nodes describe their setup as {@link Configuration} and open short {@link Session}s for
+ * batches of molecules. A session holds the checker exclusively and loads the configuration
+ * only, if another one is currently loaded. Configuration files are written outside of
+ * any lock to files named by a hash of their content, so that equal configurations
+ * of concurrent nodes share files and never overwrite files of others.
+ *
+ * @author agent
+ */
+public final class StructureChecker {
+
+	//
+	// Constants
+	//
+
+	/** The logger instance. */
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(StructureChecker.class);
+
+	/** The single instance, because there is only one native structure checker. */
+	private static final StructureChecker INSTANCE = new StructureChecker();
+
+	//
+	// Members
+	//
+
+	/** Fair lock to grant exclusive access to the native structure checker in turns. */
+	private final ReentrantLock m_lock = new ReentrantLock(true);
+
+	/** Configuration files written so far, keyed by content hash and file extension. */
+	private final Map<String, Path> m_mapConfigurationFiles = new ConcurrentHashMap<>();
+
+	/** Directory for all configuration and log files. Created lazily. */
+	private Path m_dirTemp = null;
+
+	/** The options of the currently loaded configuration or null, if unknown. Guarded by the lock. */
+	private String m_strLoadedOptions = null;
+
+	/** Number of times a configuration was loaded. Guarded by the lock. */
+	private long m_lLoadCount = 0;
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Creates the single instance of the structure checker coordinator.
+	 */
+	private StructureChecker() {
+		// Nothing to do
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Creates a configuration of the structure checker. Configuration files are
+	 * written to temporary files, if they do not exist yet. This does not require
+	 * exclusive access to the structure checker.
+	 *
+	 * @param strSwitchesAndOptions Switches and further options, each terminated by a line feed.
+	 * 		Can be null or empty.
+	 * @param strTransformationConfiguration Content of the transformation configuration file.
+	 * 		Must not be null.
+	 * @param strAugmentedAtomsConfiguration Content of the augmented atoms configuration file.
+	 * 		Must not be null.
+	 *
+	 * @return Configuration to be used to open sessions.
+	 *
+	 * @throws IOException Thrown, if a configuration file could not be written.
+	 */
+	public Configuration createConfiguration(final String strSwitchesAndOptions,
+			final String strTransformationConfiguration, final String strAugmentedAtomsConfiguration)
+					throws IOException {
+		final Path pathTransformation = getConfigurationFile(
+				strTransformationConfiguration.replace("\r\n", "\n"), ".trn");
+		final Path pathAugmentedAtoms = getConfigurationFile(
+				strAugmentedAtomsConfiguration.replace("\r\n", "\n"), ".chk");
+
+		final String strOptionsWithoutLog = "StruCheck\n" + // Add this dummy argument to work around an issue
+				// in RDKit/StruCheck that throws the first parameter away
+				(strSwitchesAndOptions == null ? "" : strSwitchesAndOptions) +
+				"-or\n" +
+				"-ta \"" + pathTransformation.toAbsolutePath() + "\"\n" +
+				"-ca \"" + pathAugmentedAtoms.toAbsolutePath() + "\"\n";
+
+		// Every configuration has its own log file, which is recreated whenever it gets loaded
+		final Path pathLog = getTempDirectory().resolve("checkfgs-" + hash(strOptionsWithoutLog) + ".log");
+		pathLog.toFile().deleteOnExit();
+
+		return new Configuration(strOptionsWithoutLog + "-l \"" + pathLog.toAbsolutePath() + "\"", pathLog);
+	}
+
+	/**
+	 * Opens a session with exclusive access to the structure checker. If another configuration
+	 * is currently loaded, the passed in configuration will be loaded. The session must be
+	 * closed by the same thread, best with a try-with-resources statement. Other sessions
+	 * are blocked until then, so sessions should be kept short.
+	 *
+	 * @param config Configuration to be used. Must not be null.
+	 * @param pathLogCopy Optional file to copy the log of the configuration to. Can be null.
+	 *
+	 * @return Open session. Never null.
+	 *
+	 * @throws Exception Thrown, if the configuration could not be loaded or
+	 * 		if the thread was interrupted while waiting.
+	 */
+	public Session open(final Configuration config, final Path pathLogCopy) throws Exception {
+		m_lock.lockInterruptibly();
+
+		try {
+			try {
+				if (!config.getOptions().equals(m_strLoadedOptions)) {
+					m_strLoadedOptions = null;
+					Files.deleteIfExists(config.getLogFile()); // It will be recreated by StruChk
+					LOGGER.debug("Loading StruChk configuration of RDKit with the following options:\n" +
+							config.getOptions());
+
+					final int iError = RDKFuncs.initCheckMol(config.getOptions());
+					if (iError != 0) {
+						throw new Exception("Configuring the Structure Normalizer failed with error code #" + iError +
+								" - Please check your configuration files and settings.");
+					}
+
+					m_strLoadedOptions = config.getOptions();
+					m_lLoadCount++;
+				}
+			}
+			finally {
+				if (pathLogCopy != null && Files.exists(config.getLogFile())) {
+					Files.copy(config.getLogFile(), pathLogCopy, StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+		}
+		catch (final Exception | Error exc) {
+			m_lock.unlock();
+			throw exc;
+		}
+
+		return new Session();
+	}
+
+	/**
+	 * Loads the passed in configuration into the structure checker, if it is not loaded
+	 * currently, and copies the log of the configuration. This can be used to validate a configuration
+	 * before any molecules need to be checked.
+	 *
+	 * @param config Configuration to be used. Must not be null.
+	 * @param pathLogCopy Optional file to copy the log of the configuration to. Can be null.
+	 *
+	 * @throws Exception Thrown, if the configuration could not be loaded or
+	 * 		if the thread was interrupted while waiting.
+	 */
+	public void load(final Configuration config, final Path pathLogCopy) throws Exception {
+		open(config, pathLogCopy).close();
+	}
+
+	/**
+	 * Opens a session with exclusive access to the structure checker for a caller, which
+	 * loads configurations on its own. The currently loaded configuration is forgotten, so that
+	 * the next session opened with {@link #open(Configuration, Path)} will load its configuration again.
+	 *
+	 * @return Open session. Never null.
+	 *
+	 * @throws InterruptedException Thrown, if the thread was interrupted while waiting.
+	 */
+	public Session openUnmanaged() throws InterruptedException {
+		m_lock.lockInterruptibly();
+		m_strLoadedOptions = null;
+
+		return new Session();
+	}
+
+	/**
+	 * Returns the number of times a configuration was loaded into the structure checker.
+	 *
+	 * @return Number of loaded configurations.
+	 */
+	public long getLoadCount() {
+		m_lock.lock();
+		try {
+			return m_lLoadCount;
+		}
+		finally {
+			m_lock.unlock();
+		}
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Returns the file containing the specified configuration content. The file gets written,
+	 * if it does not exist yet. As the file name depends on the content, files are never changed.
+	 *
+	 * @param strContent Configuration content. Must not be null.
+	 * @param strExtension File extension including the dot.
+	 *
+	 * @return Path of the configuration file.
+	 *
+	 * @throws IOException Thrown, if the file could not be written.
+	 */
+	private Path getConfigurationFile(final String strContent, final String strExtension) throws IOException {
+		final byte[] arrContent = strContent.getBytes();
+		final String strName = "checkfgs-" + hash(arrContent) + strExtension;
+
+		try {
+			return m_mapConfigurationFiles.computeIfAbsent(strName, key -> {
+				try {
+					final Path path = getTempDirectory().resolve(key);
+					path.toFile().deleteOnExit();
+					Files.write(path, arrContent);
+					return path;
+				}
+				catch (final IOException exc) {
+					throw new UncheckedIOException(exc);
+				}
+			});
+		}
+		catch (final UncheckedIOException exc) {
+			throw new IOException("Unable to create temporary configuration file " + strName +
+					" for Structure Normalizer.", exc.getCause());
+		}
+	}
+
+	/**
+	 * Returns the temporary directory for configuration and log files. It gets created when
+	 * called the first time and will be deleted on exit.
+	 *
+	 * @return Temporary directory.
+	 *
+	 * @throws IOException Thrown, if the directory could not be created.
+	 */
+	private synchronized Path getTempDirectory() throws IOException {
+		if (m_dirTemp == null) {
+			m_dirTemp = Files.createTempDirectory("strucheck");
+			m_dirTemp.toFile().deleteOnExit(); // Registered first, hence deleted after its files
+		}
+
+		return m_dirTemp;
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Returns the single instance of the structure checker coordinator.
+	 *
+	 * @return Structure checker coordinator.
+	 */
+	public static StructureChecker getInstance() {
+		return INSTANCE;
+	}
+
+	//
+	// Static Private Methods
+	//
+
+	/**
+	 * Calculates a hash of the specified string.
+	 *
+	 * @param str String to hash. Must not be null.
+	 *
+	 * @return Hexadecimal hash.
+	 */
+	private static String hash(final String str) {
+		return hash(str.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Calculates a hash of the specified bytes.
+	 *
+	 * @param arrBytes Bytes to hash. Must not be null.
+	 *
+	 * @return Hexadecimal hash.
+	 */
+	private static String hash(final byte[] arrBytes) {
+		try {
+			final byte[] arrDigest = MessageDigest.getInstance("SHA-256").digest(arrBytes);
+			final StringBuilder sb = new StringBuilder(32);
+			for (int i = 0; i < 16; i++) {
+				sb.append(String.format("%02x", arrDigest[i]));
+			}
+			return sb.toString();
+		}
+		catch (final NoSuchAlgorithmException exc) {
+			throw new IllegalStateException("SHA-256 is not supported.", exc);
+		}
+	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * An immutable configuration of the structure checker, consisting of the complete
+	 * options including the paths of configuration and log files.
+	 */
+	public static final class Configuration {
+
+		/** The options to be passed to the structure checker. */
+		private final String m_strOptions;
+
+		/** The log file of this configuration. */
+		private final Path m_pathLog;
+
+		/**
+		 * Creates a new configuration.
+		 *
+		 * @param strOptions Options to be passed to the structure checker.
+		 * @param pathLog Log file.
+		 */
+		private Configuration(final String strOptions, final Path pathLog) {
+			m_strOptions = strOptions;
+			m_pathLog = pathLog;
+		}
+
+		/**
+		 * Returns the options to be passed to the structure checker.
+		 *
+		 * @return Options.
+		 */
+		public String getOptions() {
+			return m_strOptions;
+		}
+
+		/**
+		 * Returns the log file the structure checker writes to when loading this configuration.
+		 *
+		 * @return Log file.
+		 */
+		public Path getLogFile() {
+			return m_pathLog;
+		}
+	}
+
+	/**
+	 * A session with exclusive access to the structure checker. While it is open,
+	 * RDKFuncs.checkMolString() can be called. Closing it grants access to the next session.
+	 */
+	public final class Session implements AutoCloseable {
+
+		/** Flag to ensure that the lock is released only once. */
+		private boolean m_bClosed = false;
+
+		/**
+		 * Creates a new session. The lock must be held already.
+		 */
+		private Session() {
+			// Nothing to do
+		}
+
+		/**
+		 * Releases the exclusive access to the structure checker.
+		 */
+		@Override
+		public void close() {
+			if (!m_bClosed) {
+				m_bClosed = true;
+				m_lock.unlock();
+			}
+		}
+	}
+}
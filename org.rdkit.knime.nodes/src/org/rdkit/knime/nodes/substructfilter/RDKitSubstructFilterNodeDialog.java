@@ -51,11 +51,13 @@ package org.rdkit.knime.nodes.substructfilter;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
+import org.knime.core.data.vector.bitvector.BitVectorValue;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
 import org.knime.core.node.defaultnodesettings.DialogComponentString;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.rdkit.knime.nodes.substructfilter.RDKitSubstructFilterNodeModel.FingerprintScreening;
 import org.rdkit.knime.nodes.substructfilter.RDKitSubstructFilterNodeModel.MatchHandling;
 import org.rdkit.knime.types.RDKitMolValue;
 import org.rdkit.knime.util.DialogComponentColumnNameSelection;
@@ -98,6 +100,13 @@ public class RDKitSubstructFilterNodeDialog extends DefaultNodeSettingsPane {
 				"Match handling: "));
 		super.addDialogComponent(new DialogComponentString(createNewMatchColumnNameModel(matchHandlingModel),
 				"Column name for matching atom list: ", true, 20));
+
+		final SettingsModelEnumeration<FingerprintScreening> fingerprintScreeningModel = createFingerprintScreeningModel();
+		super.addDialogComponent(new DialogComponentEnumSelection<FingerprintScreening>(fingerprintScreeningModel,
+				"Fingerprint screening: "));
+		super.addDialogComponent(new DialogComponentColumnNameSelection(
+				createFingerprintColumnNameModel(fingerprintScreeningModel), "Pattern fingerprint column: ", 0, false, true,
+				BitVectorValue.class));
 	}
 
 	//
@@ -176,5 +185,42 @@ public class RDKitSubstructFilterNodeDialog extends DefaultNodeSettingsPane {
 		// Enable this model based on the dependent model's state
 		modelWithDependency.setEnabled(matchHandlingModel.getValue() != MatchHandling.DoNotAddMatchColumn);
 
+		return modelWithDependency;
+	}
+
+	/**
+	 * Creates the settings model for specifying how molecules get pre-screened
+	 * with pattern fingerprints. Added in October 2026.
+	 * 
+	 * @return settings model for the fingerprint screening mode
+	 */
+	static final SettingsModelEnumeration<FingerprintScreening> createFingerprintScreeningModel() {
+		return new SettingsModelEnumeration<FingerprintScreening>(
+				FingerprintScreening.class, "fingerprint_screening", FingerprintScreening.UseColumn);
+	}
+
+	/**
+	 * Creates the settings model to be used for the pattern fingerprint column.
+	 * This model is dependent on the passed in fingerprint screening model.
+	 * Added in October 2026.
+	 * 
+	 * @return settings model for the pattern fingerprint column selection
+	 */
+	static final SettingsModelString createFingerprintColumnNameModel(
+			final SettingsModelEnumeration<FingerprintScreening> fingerprintScreeningModel) {
+		final SettingsModelString modelWithDependency = new SettingsModelString("fingerprint_column", null);
+
+		// React on any changes in fingerprint screening model
+		fingerprintScreeningModel.addChangeListener(new ChangeListener() {
+
+			@Override
+			public void stateChanged(final ChangeEvent e) {
+				modelWithDependency.setEnabled(fingerprintScreeningModel.getValue() != FingerprintScreening.Off);
+			}
+		});
+
+		// Enable this model based on the dependent model's state
+		modelWithDependency.setEnabled(fingerprintScreeningModel.getValue() != FingerprintScreening.Off);
+
 		return modelWithDependency;
 	}}
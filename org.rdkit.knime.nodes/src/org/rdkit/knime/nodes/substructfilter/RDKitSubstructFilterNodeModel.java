@@ -49,6 +49,10 @@
 package org.rdkit.knime.nodes.substructfilter;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.RDKit.Int_Pair;
 import org.RDKit.Match_Vect;
@@ -64,16 +68,31 @@ import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DataType;
 import org.knime.core.data.collection.CollectionCellFactory;
 import org.knime.core.data.collection.ListCell;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.container.filter.TableFilter;
 import org.knime.core.data.def.IntCell;
+import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.data.vector.bitvector.DenseBitVector;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
 import org.rdkit.knime.nodes.AbstractRDKitCellFactory;
 import org.rdkit.knime.nodes.AbstractRDKitNodeModel;
+import org.rdkit.knime.nodes.rdkfingerprint.DefaultFingerprintSettings;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintArena;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintSettings;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintType;
+import org.rdkit.knime.nodes.substructindex.SubstructureIndexPortObject;
+import org.rdkit.knime.nodes.substructindex.SubstructureIndexPortObjectSpec;
+import org.rdkit.knime.properties.FingerprintSettingsHeaderProperty;
 import org.rdkit.knime.types.RDKitMolValue;
 import org.rdkit.knime.util.InputDataInfo;
 import org.rdkit.knime.util.SafeGuardedResource;
@@ -115,6 +134,31 @@ public class RDKitSubstructFilterNodeModel extends AbstractRDKitNodeModel {
 		}
 	}
 
+	/** 
+	 * Defines several modes to pre-screen molecules with pattern fingerprints before matching. 
+	 * Fingerprints are never calculated for screening, because for a single query the calculation 
+	 * of a pattern fingerprint costs more than the substructure match it could save.
+	 */
+	public enum FingerprintScreening {
+		Off, UseColumn;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String toString() {
+
+			switch (this) {
+			case Off:
+				return "Off";
+			case UseColumn:
+				return "Use pattern fingerprint column, if selected";
+			}
+
+			return super.toString();
+		}
+	}
+
 	//
 	// Constants
 	//
@@ -126,6 +170,12 @@ public class RDKitSubstructFilterNodeModel extends AbstractRDKitNodeModel {
 	/** Input data info index for Mol value. */
 	protected static final int INPUT_COLUMN_MOL = 0;
 
+	/** Input data info index for the optional pattern fingerprint value. */
+	protected static final int INPUT_COLUMN_FP = 1;
+
+	/** Index of the optional input port with a substructure index. */
+	protected static final int INPUT_PORT_SUBSTRUCTURE_INDEX = 1;
+
 	protected static final DataCell DATA_CELL_MATCH_WITHOUT_DETAILS =
 			CollectionCellFactory.createListCell(new ArrayList<DataCell>());
 
@@ -157,6 +207,14 @@ public class RDKitSubstructFilterNodeModel extends AbstractRDKitNodeModel {
 	private final SettingsModelString m_modelNewAtomListColumnName =
 			registerSettings(RDKitSubstructFilterNodeDialog.createNewMatchColumnNameModel(m_modelMatchHandling), true);
 
+	/** Settings model for the fingerprint screening mode. Old nodes do not screen. */
+	private final SettingsModelEnumeration<FingerprintScreening> m_modelFingerprintScreening =
+			registerSettings(RDKitSubstructFilterNodeDialog.createFingerprintScreeningModel(), true);
+
+	/** Settings model for the column name of the optional pattern fingerprint column. */
+	private final SettingsModelString m_modelFingerprintColumnName =
+			registerSettings(RDKitSubstructFilterNodeDialog.createFingerprintColumnNameModel(m_modelFingerprintScreening), true);
+
 	//
 	// Internals
 	//
@@ -170,21 +228,55 @@ public class RDKitSubstructFilterNodeModel extends AbstractRDKitNodeModel {
 	/** Defines for execution, if the logger is logging debug information. */
 	private boolean m_bDebug;
 
+	/** Pattern fingerprint of the query used for screening, or null, if no screening happens. */
+	private long[] m_arrQueryFingerprint;
+
+	/** Number of rows that were sorted out by fingerprint screening during execution. */
+	private final AtomicLong m_lScreenedOutRows = new AtomicLong();
+
+	/** Specification of the connected substructure index, or null, if not connected. */
+	private SubstructureIndexPortObjectSpec m_specSubstructureIndex;
+
+	/** The connected substructure index during execution, or null, if not connected. */
+	private SubstructureIndexPortObject m_portSubstructureIndex;
+
+	/**
+	 * Row keys of the candidate rows determined with the substructure index, or null,
+	 * if no substructure index is used for screening.
+	 */
+	private Set<String> m_setIndexCandidates;
+
 	//
 	// Constructor
 	//
 
 	/**
-	 * Create new node model with one data in- and one out-port.
+	 * Create new node model with one data in-port, an optional substructure index in-port
+	 * and two data out-ports.
 	 */
 	RDKitSubstructFilterNodeModel() {
-		super(1, 2);
+		super(new PortType[] { BufferedDataTable.TYPE, SubstructureIndexPortObject.TYPE_OPTIONAL },
+				new PortType[] { BufferedDataTable.TYPE, BufferedDataTable.TYPE });
 	}
 
 	//
 	// Protected Methods
 	//
 
+	/**
+	 * {@inheritDoc}
+	 * This implementation remembers the specification of the optional substructure index.
+	 */
+	@Override
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs)
+			throws InvalidSettingsException {
+		m_specSubstructureIndex = (inSpecs.length > INPUT_PORT_SUBSTRUCTURE_INDEX &&
+				inSpecs[INPUT_PORT_SUBSTRUCTURE_INDEX] instanceof SubstructureIndexPortObjectSpec specIndex ?
+						specIndex : null);
+
+		return super.configure(inSpecs);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -220,6 +312,30 @@ public class RDKitSubstructFilterNodeModel extends AbstractRDKitNodeModel {
 			}
 			cleanupMarkedObjects();
 		}
+
+		// Check the pattern fingerprint column for screening - it is never guessed, because the table
+		// header does not tell, from which molecule column the fingerprints were calculated
+		if (m_modelFingerprintScreening.getValue() != FingerprintScreening.Off &&
+				m_modelFingerprintColumnName.getStringValue() != null) {
+			final String strFpColumnName = m_modelFingerprintColumnName.getStringValue();
+			final DataColumnSpec colSpecFp = inSpecs[0].getColumnSpec(strFpColumnName);
+			if (colSpecFp == null) {
+				throw new InvalidSettingsException("Pattern fingerprint column " + strFpColumnName +
+						" does not exist. Has the input table changed?");
+			}
+			else if (getPatternFingerprintNumBits(colSpecFp) <= 0) {
+				throw new InvalidSettingsException("Column " + strFpColumnName + " does not contain RDKit pattern " +
+						"fingerprints. Please select another column or switch fingerprint screening off.");
+			}
+		}
+
+		// A connected substructure index is used for screening instead of fingerprints
+		if (m_specSubstructureIndex != null && m_specSubstructureIndex.getMoleculeColumnName() != null &&
+				!m_specSubstructureIndex.getMoleculeColumnName().equals(m_modelInputColumnName.getStringValue())) {
+			getWarningConsolidator().saveWarning("The substructure index was built from column " +
+					m_specSubstructureIndex.getMoleculeColumnName() + ", but molecules are taken from column " +
+					m_modelInputColumnName.getStringValue() + ".");
+		}
 		
 		// Determine, if the new column name has been set and if it is really unique
 		if (m_modelNewAtomListColumnName.isEnabled()) {
@@ -254,10 +370,16 @@ public class RDKitSubstructFilterNodeModel extends AbstractRDKitNodeModel {
 
 		// Specify input of table 1
 		if (inPort == 0) {
-			arrDataInfo = new InputDataInfo[1]; // We have only one input column
+			final boolean bUseFingerprintColumn = isUsingFingerprintColumn(inSpec);
+			arrDataInfo = new InputDataInfo[bUseFingerprintColumn ? 2 : 1];
 			arrDataInfo[INPUT_COLUMN_MOL] = new InputDataInfo(inSpec, m_modelInputColumnName,
 					InputDataInfo.EmptyCellPolicy.TreatAsNull, null,
 					RDKitMolValue.class);
+			if (bUseFingerprintColumn) {
+				arrDataInfo[INPUT_COLUMN_FP] = new InputDataInfo(inSpec, m_modelFingerprintColumnName,
+						InputDataInfo.EmptyCellPolicy.TreatAsNull, null,
+						BitVectorValue.class);
+			}
 		}
 
 		return (arrDataInfo == null ? new InputDataInfo[0] : arrDataInfo);
@@ -342,6 +464,25 @@ public class RDKitSubstructFilterNodeModel extends AbstractRDKitNodeModel {
 			 */
 			public DataCell[] process(final InputDataInfo[] arrInputDataInfo, final DataRow row, final long lUniqueWaveId) throws Exception {
 				DataCell outputCell = DataType.getMissingCell();
+				final long[] arrQueryFingerprint = m_arrQueryFingerprint;
+
+				// Screen out rows that are no candidates of the substructure index - saves parsing the molecule
+				final Set<String> setIndexCandidates = m_setIndexCandidates;
+				if (setIndexCandidates != null) {
+					if (!setIndexCandidates.contains(row.getKey().getString())) {
+						m_lScreenedOutRows.incrementAndGet();
+						return new DataCell[] { outputCell };
+					}
+				}
+
+				// Screen out rows with pattern fingerprints lacking bits of the query - saves parsing the molecule
+				if (arrQueryFingerprint != null) {
+					final BitVectorValue fp = (BitVectorValue)arrInputDataInfo[INPUT_COLUMN_FP].getCell(row);
+					if (fp != null && !FingerprintArena.containsAllBits(FingerprintArena.toWords(fp), arrQueryFingerprint)) {
+						m_lScreenedOutRows.incrementAndGet();
+						return new DataCell[] { outputCell };
+					}
+				}
 
 				// Calculate the new cells
 				final ROMol mol = markForCleanup(arrInputDataInfo[INPUT_COLUMN_MOL].getROMol(row), lUniqueWaveId);
@@ -474,6 +615,11 @@ public class RDKitSubstructFilterNodeModel extends AbstractRDKitNodeModel {
 
 		m_bDebug = LOGGER.isDebugEnabled();
 
+		// Prepare the screening with a connected substructure index or with pattern fingerprints, if enabled
+		if (!prepareIndexScreening(inData[0], strSmartsPattern, exec)) {
+			prepareFingerprintScreening(arrInputDataInfo[0], strSmartsPattern);
+		}
+
 		// Setup main factory
 		final AbstractRDKitCellFactory factory = createOutputFactory(arrInputDataInfo[0]);
 		final AbstractRDKitNodeModel.ResultProcessor resultProcessor =
@@ -515,6 +661,11 @@ public class RDKitSubstructFilterNodeModel extends AbstractRDKitNodeModel {
 		matchTable.close();
 		mismatchTable.close();
 
+		if (m_arrQueryFingerprint != null || m_setIndexCandidates != null) {
+			LOGGER.debug("Fingerprint screening sorted out " + m_lScreenedOutRows.get() + " of " +
+					lTotalRowCount + " rows without substructure matching.");
+		}
+
 		return new BufferedDataTable[] { matchTable.getTable(), mismatchTable.getTable() };
 	}
 
@@ -524,5 +675,178 @@ public class RDKitSubstructFilterNodeModel extends AbstractRDKitNodeModel {
 	@Override
 	protected synchronized void cleanupIntermediateResults() {
 		m_pattern = null;
+		m_arrQueryFingerprint = null;
+		m_portSubstructureIndex = null;
+		m_setIndexCandidates = null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * This implementation remembers the optional substructure index for the processing.
+	 */
+	@Override
+	protected PortObject[] processing(final PortObject[] inData, final InputDataInfo[][] arrInputDataInfo,
+			final ExecutionContext exec) throws Exception {
+		m_portSubstructureIndex = (inData.length > INPUT_PORT_SUBSTRUCTURE_INDEX &&
+				inData[INPUT_PORT_SUBSTRUCTURE_INDEX] instanceof SubstructureIndexPortObject portIndex ?
+						portIndex : null);
+
+		return super.processing(inData, arrInputDataInfo, exec);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * This implementation considers the fingerprint screening option, which is
+	 * off for old nodes and on for new nodes.
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings)
+			throws InvalidSettingsException {
+		super.loadValidatedSettingsFrom(settings);
+
+		// Exception: For old nodes we will not screen with fingerprints to keep their behavior
+		try {
+			m_modelFingerprintScreening.loadSettingsFrom(settings);
+		}
+		catch (final InvalidSettingsException excOrig) {
+			m_modelFingerprintScreening.setValue(FingerprintScreening.Off);
+		}
+	}
+
+	/**
+	 * Determines, if the configured pattern fingerprint column shall be used for screening.
+	 * 
+	 * @param inSpec Input table specification. Must not be null.
+	 * 
+	 * @return True, if screening is switched on and the configured column contains pattern fingerprints.
+	 */
+	protected boolean isUsingFingerprintColumn(final DataTableSpec inSpec) {
+		final String strFpColumnName = m_modelFingerprintColumnName.getStringValue();
+		return m_modelFingerprintScreening.getValue() != FingerprintScreening.Off && strFpColumnName != null &&
+				getPatternFingerprintNumBits(inSpec.getColumnSpec(strFpColumnName)) > 0;
+	}
+
+	/**
+	 * Screens the SMARTS query against the connected substructure index, if there is one.
+	 * Before anything gets processed, the row keys of the input table are hashed and compared
+	 * with the row keys of the index, because rows of another table would be screened out
+	 * wrongly. The same pass collects the row keys of the candidate rows for the processing.
+	 * If the query does not set any fingerprint bit, all rows are candidates and no screening happens.
+	 * 
+	 * @param table The input table. Must not be null.
+	 * @param strSmartsPattern The SMARTS query. Must not be null.
+	 * @param exec Execution context to check for cancellation. Must not be null.
+	 * 
+	 * @return True, if a substructure index is connected. False otherwise.
+	 * 
+	 * @throws Exception Thrown, if the index does not fit to the table or cannot be read.
+	 */
+	protected boolean prepareIndexScreening(final BufferedDataTable table, final String strSmartsPattern,
+			final ExecutionContext exec) throws Exception {
+		m_setIndexCandidates = null;
+		m_lScreenedOutRows.set(0);
+
+		final SubstructureIndexPortObject portIndex = m_portSubstructureIndex;
+		if (portIndex == null) {
+			return false;
+		}
+
+		final SubstructureIndexPortObjectSpec specIndex = portIndex.getSpec();
+		if (specIndex.getRowCount() != table.size()) {
+			throw new InvalidSettingsException("The substructure index contains " + specIndex.getRowCount() +
+					" rows, but the input table has " + table.size() + " rows. Please rebuild the index for the input table.");
+		}
+
+		final long lStart = System.currentTimeMillis();
+		final ROMol pattern = markForCleanup(RWMol.MolFromSmarts(strSmartsPattern, 0, true));
+		final DenseBitVector fpQuery = (pattern == null ? null :
+			FingerprintType.pattern.calculateBitBased(pattern, portIndex.getFingerprintSettings()));
+		final BitSet setCandidateRows = (fpQuery == null || fpQuery.cardinality() == 0 ? null :
+			portIndex.getCandidateRows(fpQuery.getAllBits(), exec));
+		final Set<String> setCandidates = (setCandidateRows == null ? null :
+			new HashSet<String>(Math.max(16, (int)(setCandidateRows.cardinality() / 0.75f) + 1)));
+
+		// Verify the row keys without reading any cells and collect the keys of the candidates
+		long lRowKeyHash = SubstructureIndexPortObjectSpec.ROW_KEY_HASH_SEED;
+		int iRow = 0;
+		try (final CloseableRowIterator iterator = table.filter(TableFilter.materializeCols()).iterator()) {
+			while (iterator.hasNext()) {
+				final String strRowKey = iterator.next().getKey().getString();
+				lRowKeyHash = SubstructureIndexPortObjectSpec.hashRowKey(lRowKeyHash, strRowKey);
+				if (setCandidateRows != null && setCandidateRows.get(iRow)) {
+					setCandidates.add(strRowKey);
+				}
+				if ((++iRow & 0xFFFF) == 0) {
+					exec.checkCanceled();
+				}
+			}
+		}
+
+		if (lRowKeyHash != specIndex.getRowKeyHash()) {
+			throw new InvalidSettingsException("The substructure index does not belong to the input table, " +
+					"because row IDs or their order differ. Please rebuild the index for the input table.");
+		}
+
+		m_setIndexCandidates = setCandidates;
+		if (setCandidates != null) {
+			LOGGER.debug("Substructure index delivered " + setCandidates.size() + " of " + table.size() +
+					" rows as candidates in " + (System.currentTimeMillis() - lStart) + "ms.");
+		}
+
+		return true;
+	}
+
+	/**
+	 * Calculates the pattern fingerprint of the SMARTS query for screening with the selected
+	 * pattern fingerprint column. Screening happens only if such a column is used and the
+	 * query sets at least one bit.
+	 * 
+	 * @param arrInputDataInfos Input data information of the input table. Must not be null.
+	 * @param strSmartsPattern The SMARTS query. Must not be null.
+	 */
+	protected void prepareFingerprintScreening(final InputDataInfo[] arrInputDataInfos, final String strSmartsPattern) {
+		m_arrQueryFingerprint = null;
+		m_lScreenedOutRows.set(0);
+
+		int iNumBits = -1;
+		if (arrInputDataInfos.length > INPUT_COLUMN_FP) {
+			iNumBits = getPatternFingerprintNumBits(arrInputDataInfos[INPUT_COLUMN_FP].getColumnSpec());
+		}
+
+		if (iNumBits > 0) {
+			final FingerprintSettings settings = new DefaultFingerprintSettings(FingerprintType.pattern.name(),
+					-1, -1, -1, -1, -1, iNumBits, -1, -1, -1, false);
+			final ROMol pattern = markForCleanup(RWMol.MolFromSmarts(strSmartsPattern, 0, true));
+			final DenseBitVector fpQuery = (pattern == null ? null :
+				FingerprintType.pattern.calculateBitBased(pattern, settings));
+
+			if (fpQuery != null && fpQuery.cardinality() > 0) {
+				m_arrQueryFingerprint = fpQuery.getAllBits();
+			}
+		}
+	}
+
+	//
+	// Static Methods
+	//
+
+	/**
+	 * Determines the number of bits of RDKit pattern fingerprints in the specified column.
+	 * 
+	 * @param colSpec Column specification. Can be null.
+	 * 
+	 * @return Number of bits, or -1, if the column does not contain RDKit pattern fingerprints.
+	 */
+	protected static int getPatternFingerprintNumBits(final DataColumnSpec colSpec) {
+		int iNumBits = -1;
+
+		if (colSpec != null && colSpec.getType().isCompatible(BitVectorValue.class)) {
+			final FingerprintSettingsHeaderProperty fpSpec = new FingerprintSettingsHeaderProperty(colSpec);
+			if (fpSpec.getRdkitFingerprintType() == FingerprintType.pattern && fpSpec.getNumBits() > 0) {
+				iNumBits = fpSpec.getNumBits();
+			}
+		}
+
+		return iNumBits;
 	}
 }
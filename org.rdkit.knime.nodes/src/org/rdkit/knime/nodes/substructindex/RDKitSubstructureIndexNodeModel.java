@@ -0,0 +1,392 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.substructindex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.RDKit.ROMol;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.filestore.FileStore;
+import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.data.vector.bitvector.DenseBitVector;
+import org.knime.core.data.vector.bitvector.DenseBitVectorCell;
+import org.knime.core.data.vector.bitvector.DenseBitVectorCellFactory;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+import org.rdkit.knime.nodes.AbstractRDKitCellFactory;
+import org.rdkit.knime.nodes.AbstractRDKitGenericNodeModel;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintArena;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintIndex;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintIndexWriter;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintSettings;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintType;
+import org.rdkit.knime.types.RDKitMolValue;
+import org.rdkit.knime.util.InputDataInfo;
+import org.rdkit.knime.util.SettingsUtils;
+
+/**
+ * This class implements the node model of the RDKitSubstructureIndex node
+ * providing calculations based on the open source RDKit library.
+ * It calculates the RDKit pattern fingerprints of all molecules in parallel and
+ * writes them together with the row keys into a {@link FingerprintIndex} file in a
+ * file store. The resulting {@link SubstructureIndexPortObject} can be connected to
+ * substructure filter nodes, which screen their queries against the index before
+ * matching, so that the same molecule table can be searched with many queries
+ * without reading or deserializing molecules that cannot match.
+ * Fingerprints are spooled to a temporary file between the two passes of the
+ * {@link FingerprintIndexWriter} and are never held in the heap.
+ *
+ * @author agent
+ */
+public class RDKitSubstructureIndexNodeModel extends AbstractRDKitGenericNodeModel {
+
+	//
+	// Constants
+	//
+
+	/** The logger instance. */
+	protected static final NodeLogger LOGGER = NodeLogger
+			.getLogger(RDKitSubstructureIndexNodeModel.class);
+
+	/** Input data info index for Mol value. */
+	protected static final int INPUT_COLUMN_MOL = 0;
+
+	/** Size of the buffers used to spool fingerprints. */
+	private static final int SPOOL_BUFFER_SIZE = 1 << 16;
+
+	//
+	// Members
+	//
+
+	/** Settings model for the column name of the input column. */
+	private final SettingsModelString m_modelInputColumnName =
+			registerSettings(RDKitSubstructureIndexNodeDialog.createInputColumnNameModel());
+
+	/** Settings model for the number of bits of the pattern fingerprints. */
+	private final SettingsModelIntegerBounded m_modelNumBits =
+			registerSettings(RDKitSubstructureIndexNodeDialog.createNumBitsModel());
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Create new node model with one data in-port and one substructure index out-port.
+	 */
+	RDKitSubstructureIndexNodeModel() {
+		super(new PortType[] { BufferedDataTable.TYPE },
+				new PortType[] { SubstructureIndexPortObject.TYPE });
+
+		registerInputTablesWithSizeLimits(0); // Index positions are integers
+	}
+
+	//
+	// Protected Methods
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs)
+			throws InvalidSettingsException {
+		// Reset warnings and check RDKit library readiness
+		super.configure(inSpecs);
+
+		final DataTableSpec inSpec = (DataTableSpec)inSpecs[0];
+
+		// Auto guess the input column if not set - fails if no compatible column found
+		SettingsUtils.autoGuessColumn(inSpec, m_modelInputColumnName, RDKitMolValue.class, 0,
+				"Auto guessing: Using column %COLUMN_NAME%.",
+				"No RDKit Mol, SMILES or SDF compatible column in input table. Use the \"RDKit from Molecule\" " +
+						"node to convert SMARTS.", getWarningConsolidator());
+
+		// Determines, if the input column exists - fails if it does not
+		SettingsUtils.checkColumnExistence(inSpec, m_modelInputColumnName, RDKitMolValue.class,
+				"Input column has not been specified yet.",
+				"Input column %COLUMN_NAME% does not exist. Has the input table changed?");
+
+		// Consolidate all warnings and make them available to the user
+		generateWarnings();
+
+		return new PortObjectSpec[] { new SubstructureIndexPortObjectSpec(
+				m_modelInputColumnName.getStringValue(), m_modelNumBits.getIntValue(), -1,
+				SubstructureIndexPortObjectSpec.ROW_KEY_HASH_SEED) };
+	}
+
+	/**
+	 * This implementation generates input data info object for the input mol column
+	 * and connects it with the information coming from the appropriate setting model.
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected InputDataInfo[] createInputDataInfos(final int inPort, final DataTableSpec inSpec)
+			throws InvalidSettingsException {
+
+		InputDataInfo[] arrDataInfo = null;
+
+		// Specify input of table 1
+		if (inPort == 0) {
+			arrDataInfo = new InputDataInfo[1]; // We have only one input column
+			arrDataInfo[INPUT_COLUMN_MOL] = new InputDataInfo(inSpec, m_modelInputColumnName,
+					InputDataInfo.EmptyCellPolicy.TreatAsNull, null,
+					RDKitMolValue.class);
+		}
+
+		return (arrDataInfo == null ? new InputDataInfo[0] : arrDataInfo);
+	}
+
+	/**
+	 * This node does not have any output tables.
+	 *
+	 * @return Always null.
+	 */
+	@Override
+	protected DataTableSpec getOutputTableSpec(final int outPort,
+			final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+		return null;
+	}
+
+	/**
+	 * Creates the cell factory, which calculates the pattern fingerprint of a molecule.
+	 * Rows without molecule or with failing calculation deliver a missing cell.
+	 *
+	 * @param arrInputDataInfos Array of input data information that is relevant
+	 * 		for processing.
+	 * @param settings Pattern fingerprint settings. Must not be null.
+	 *
+	 * @return Cell factory. Never null.
+	 */
+	protected AbstractRDKitCellFactory createFingerprintFactory(final InputDataInfo[] arrInputDataInfos,
+			final FingerprintSettings settings) {
+		final DataColumnSpec[] arrOutputSpec = new DataColumnSpec[] {
+				new DataColumnSpecCreator("Pattern Fingerprint", DenseBitVectorCell.TYPE).createSpec() };
+
+		return new AbstractRDKitCellFactory(this, AbstractRDKitCellFactory.RowFailurePolicy.DeliverEmptyValues,
+				getWarningConsolidator(), arrInputDataInfos, arrOutputSpec) {
+
+			@Override
+			/**
+			 * This method implements the calculation logic to generate the new cells based on
+			 * the input made available in the first (and second) parameter.
+			 * {@inheritDoc}
+			 */
+			public DataCell[] process(final InputDataInfo[] arrInputDataInfo, final DataRow row, final long lUniqueWaveId) throws Exception {
+				DataCell outputCell = DataType.getMissingCell();
+
+				final ROMol mol = markForCleanup(arrInputDataInfo[INPUT_COLUMN_MOL].getROMol(row), lUniqueWaveId);
+				if (mol != null) {
+					final DenseBitVector fp = FingerprintType.pattern.calculateBitBased(mol, settings);
+					if (fp != null) {
+						outputCell = new DenseBitVectorCellFactory(fp).createDataCell();
+					}
+				}
+
+				return new DataCell[] { outputCell };
+			}
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * This implementation builds the substructure index in two passes. Rows without
+	 * fingerprint get a fingerprint with all bits set, so that they are never screened out.
+	 */
+	@Override
+	protected PortObject[] processing(final PortObject[] inObjects, final InputDataInfo[][] arrInputDataInfo,
+			final ExecutionContext exec) throws Exception {
+		final BufferedDataTable table = (BufferedDataTable)inObjects[0];
+		final long lTotalRowCount = table.size();
+		final int iNumBits = m_modelNumBits.getIntValue();
+		final int iWords = (iNumBits + 63) >>> 6;
+		final FingerprintSettings settings = SubstructureIndexPortObject.createFingerprintSettings(iNumBits);
+		final long[] arrAllBits = createAllBits(iNumBits);
+
+		// Create sub execution contexts for processing steps
+		final ExecutionContext subExecFingerprints = exec.createSubExecutionContext(0.90d);
+		final ExecutionContext subExecWriting = exec.createSubExecutionContext(0.10d);
+
+		final FileStore fileStore = exec.createFileStore("substructure_index" + FingerprintIndex.FILE_EXTENSION);
+		final Path pathSpool = Files.createTempFile("rdkit-substruct-index", ".tmp");
+		int iSize;
+		final long[] arrRowKeyHash = new long[] { SubstructureIndexPortObjectSpec.ROW_KEY_HASH_SEED };
+
+		try (final FingerprintIndexWriter writer = new FingerprintIndexWriter(
+				fileStore.getFile().toPath(), iNumBits, settings)) {
+
+			// 1. Calculate fingerprints in parallel, collect the first pass and spool the words
+			final AtomicReference<IOException> refFailure = new AtomicReference<IOException>();
+			try (final DataOutputStream outSpool = new DataOutputStream(new BufferedOutputStream(
+					Files.newOutputStream(pathSpool), SPOOL_BUFFER_SIZE))) {
+				final AbstractRDKitCellFactory factory = createFingerprintFactory(arrInputDataInfo[0], settings);
+				final AbstractRDKitGenericNodeModel.ResultProcessor resultProcessor =
+						new AbstractRDKitGenericNodeModel.ResultProcessor() {
+
+					/**
+					 * {@inheritDoc}
+					 * This implementation adds the fingerprint and the row key to the index writer,
+					 * spools the fingerprint words for the second pass and hashes the row key.
+					 * Results are delivered in row order.
+					 */
+					@Override
+					public void processResults(final long rowIndex, final DataRow row, final DataCell[] arrResults) {
+						arrRowKeyHash[0] = SubstructureIndexPortObjectSpec.hashRowKey(
+								arrRowKeyHash[0], row.getKey().getString());
+
+						if (refFailure.get() != null) {
+							return;
+						}
+
+						long[] arrWords = arrAllBits;
+						if (arrResults != null && !arrResults[0].isMissing()) {
+							arrWords = FingerprintArena.toWords((BitVectorValue)arrResults[0]);
+							if (arrWords.length != iWords) {
+								arrWords = Arrays.copyOf(arrWords, iWords);
+							}
+						}
+
+						try {
+							writer.add(arrWords, row.getKey().getString());
+							for (final long lWord : arrWords) {
+								outSpool.writeLong(lWord);
+							}
+						}
+						catch (final IOException exc) {
+							refFailure.compareAndSet(null, exc);
+						}
+					}
+				};
+
+				try {
+					new AbstractRDKitGenericNodeModel.ParallelProcessor(factory, resultProcessor, lTotalRowCount,
+							getWarningConsolidator(), subExecFingerprints).run(table);
+				}
+				catch (final Exception e) {
+					exec.checkCanceled();
+					throw e;
+				}
+			}
+
+			if (refFailure.get() != null) {
+				throw new IOException("The substructure index could not be written: " +
+						refFailure.get().getMessage(), refFailure.get());
+			}
+
+			// 2. Write the spooled fingerprints in popcount order
+			iSize = writer.size();
+			writer.startSecondPass();
+			try (final DataInputStream inSpool = new DataInputStream(new BufferedInputStream(
+					Files.newInputStream(pathSpool), SPOOL_BUFFER_SIZE))) {
+				final long[] arrWords = new long[iWords];
+				for (int i = 0; i < iSize; i++) {
+					for (int w = 0; w < iWords; w++) {
+						arrWords[w] = inSpool.readLong();
+					}
+					writer.addWords(arrWords);
+
+					if (i % 1000 == 0) {
+						AbstractRDKitGenericNodeModel.reportProgress(subExecWriting, i, iSize, null,
+								" - Writing substructure index");
+					}
+				}
+			}
+
+			writer.finish();
+		}
+		finally {
+			Files.deleteIfExists(pathSpool);
+		}
+
+		exec.setProgress(1.0, "Finished Processing");
+		LOGGER.debug("Built substructure index of " + iSize + " molecules with " + iNumBits + " bit pattern fingerprints.");
+
+		return new PortObject[] { new SubstructureIndexPortObject(new SubstructureIndexPortObjectSpec(
+				m_modelInputColumnName.getStringValue(), iNumBits, iSize, arrRowKeyHash[0]), fileStore) };
+	}
+
+	//
+	// Static Methods
+	//
+
+	/**
+	 * Creates the words of a fingerprint with all bits set.
+	 *
+	 * @param iNumBits Number of fingerprint bits.
+	 *
+	 * @return Fingerprint words.
+	 */
+	protected static long[] createAllBits(final int iNumBits) {
+		final long[] arrWords = new long[(iNumBits + 63) >>> 6];
+		Arrays.fill(arrWords, -1L);
+		if ((iNumBits & 63) != 0) {
+			arrWords[arrWords.length - 1] = (1L << (iNumBits & 63)) - 1;
+		}
+		return arrWords;
+	}
+}
@@ -0,0 +1,305 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.substructindex;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.SwingConstants;
+
+import org.knime.core.data.filestore.FileStore;
+import org.knime.core.data.filestore.FileStorePortObject;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortObjectZipInputStream;
+import org.knime.core.node.port.PortObjectZipOutputStream;
+import org.knime.core.node.port.PortType;
+import org.knime.core.node.port.PortTypeRegistry;
+import org.rdkit.knime.nodes.rdkfingerprint.DefaultFingerprintSettings;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintIndex;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintSettings;
+import org.rdkit.knime.nodes.rdkfingerprint.FingerprintType;
+
+/**
+ * A port object with a substructure screening index of a molecule table. The index
+ * contains the RDKit pattern fingerprints of all rows together with their row keys in
+ * the {@link FingerprintIndex} format, sorted by popcount. It is stored in a file store,
+ * which gets mapped into memory when the index is used for the first time. Screening a
+ * query skips all popcount bins below the popcount of the query fingerprint and compares
+ * only the fingerprint words, so that no molecule needs to be read or deserialized.
+ * The rows that pass the screening are the candidates for a real substructure match.
+ * They are delivered as row indexes, so that no row key needs to be decoded.
+ * Screening is thread-safe. The mapped index lives as long as the port object
+ * and is released by the garbage collector together with it.
+ *
+ * @author agent
+ */
+public class SubstructureIndexPortObject extends FileStorePortObject {
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * Serializer of the port object, which is registered in the plugin.xml. The index itself
+	 * lives in the file store, which is persisted by the KNIME framework.
+	 */
+	public static final class Serializer extends PortObjectSerializer<SubstructureIndexPortObject> {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void savePortObject(final SubstructureIndexPortObject portObject, final PortObjectZipOutputStream out,
+				final ExecutionMonitor exec) throws IOException, CanceledExecutionException {
+			out.putNextEntry(new ZipEntry(CONTENT_ENTRY_NAME));
+			final DataOutputStream outData = new DataOutputStream(out);
+			outData.writeInt(VERSION);
+			outData.flush();
+			out.closeEntry();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public SubstructureIndexPortObject loadPortObject(final PortObjectZipInputStream in, final PortObjectSpec spec,
+				final ExecutionMonitor exec) throws IOException, CanceledExecutionException {
+			final ZipEntry entry = in.getNextEntry();
+			if (entry == null || !CONTENT_ENTRY_NAME.equals(entry.getName())) {
+				throw new IOException("Substructure index content is missing.");
+			}
+			final int iVersion = new DataInputStream(in).readInt();
+			if (iVersion != VERSION) {
+				throw new IOException("Unsupported substructure index version " + iVersion + ".");
+			}
+
+			return new SubstructureIndexPortObject((SubstructureIndexPortObjectSpec)spec);
+		}
+	}
+
+	//
+	// Constants
+	//
+
+	/** The port type of substructure indexes. */
+	public static final PortType TYPE =
+			PortTypeRegistry.getInstance().getPortType(SubstructureIndexPortObject.class);
+
+	/** The port type of optional substructure indexes. */
+	public static final PortType TYPE_OPTIONAL =
+			PortTypeRegistry.getInstance().getPortType(SubstructureIndexPortObject.class, true);
+
+	/** Name of the zip entry with the serialized port object content. */
+	private static final String CONTENT_ENTRY_NAME = "substructure_index.dat";
+
+	/** Version of the serialized port object content. */
+	private static final int VERSION = 1;
+
+	//
+	// Members
+	//
+
+	/** The specification of the index. */
+	private final SubstructureIndexPortObjectSpec m_spec;
+
+	/** 
+	 * The opened index, or null, if not opened yet. Like all fingerprint indexes it is
+	 * never unmapped explicitly, but released by the garbage collector.
+	 */
+	private FingerprintIndex m_index;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Creates a new port object for an index file that has been written into the passed in file store.
+	 *
+	 * @param spec Specification of the index. Must not be null.
+	 * @param fileStore File store that contains the index file. Must not be null.
+	 */
+	public SubstructureIndexPortObject(final SubstructureIndexPortObjectSpec spec, final FileStore fileStore) {
+		super(Collections.singletonList(fileStore));
+		m_spec = spec;
+	}
+
+	/**
+	 * Creates a port object while loading it. The file store is restored by the framework.
+	 *
+	 * @param spec Specification of the index. Must not be null.
+	 */
+	private SubstructureIndexPortObject(final SubstructureIndexPortObjectSpec spec) {
+		super();
+		m_spec = spec;
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public SubstructureIndexPortObjectSpec getSpec() {
+		return m_spec;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getSummary() {
+		return "Substructure index of " + m_spec.getRowCount() + " molecules (" +
+				m_spec.getNumBits() + " bit pattern fingerprints)";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JComponent[] getViews() {
+		final JLabel label = new JLabel("<html>" + getSummary() + "<br>Molecule column: " +
+				m_spec.getMoleculeColumnName() + "</html>", SwingConstants.CENTER);
+		label.setName("Substructure Index");
+		return new JComponent[] { label };
+	}
+
+	/**
+	 * Returns the fingerprint settings that must be used to calculate query fingerprints
+	 * for screening with this index.
+	 *
+	 * @return Pattern fingerprint settings. Never null.
+	 */
+	public FingerprintSettings getFingerprintSettings() {
+		return createFingerprintSettings(m_spec.getNumBits());
+	}
+
+	/**
+	 * Determines the rows that may contain the substructure with the passed in pattern
+	 * fingerprint, i.e. all rows whose fingerprint contains all bits of the query fingerprint.
+	 *
+	 * @param arrQueryWords Words of the pattern fingerprint of the query, calculated with the
+	 * 		settings of {@link #getFingerprintSettings()}. Must not be null.
+	 * @param exec Execution monitor to check for cancellation. Can be null.
+	 *
+	 * @return Indexes of all candidate rows in the order of the indexed table. Never null.
+	 *
+	 * @throws IOException Thrown, if the index cannot be opened.
+	 * @throws CanceledExecutionException Thrown, if the execution was cancelled.
+	 */
+	public BitSet getCandidateRows(final long[] arrQueryWords, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+		final FingerprintIndex index = getIndex();
+		final int iWords = index.getWordsPerFingerprint();
+		final long[] arrQuery = Arrays.copyOf(arrQueryWords, iWords);
+		int iQueryPopCount = 0;
+		for (final long lWord : arrQuery) {
+			iQueryPopCount += Long.bitCount(lWord);
+		}
+
+		// Fingerprints with less bits than the query cannot contain all of its bits
+		final int iSize = index.size();
+		final BitSet setCandidates = new BitSet(iSize);
+		for (int i = index.getBinStart(iQueryPopCount); i < iSize; i++) {
+			if (index.getCommonBitCount(i, arrQuery) == iQueryPopCount) {
+				setCandidates.set((int)index.getTag(i));
+			}
+			if (exec != null && (i & 0xFFFF) == 0) {
+				exec.checkCanceled();
+			}
+		}
+
+		return setCandidates;
+	}
+
+	//
+	// Protected Methods
+	//
+
+	/**
+	 * Opens the index file of the file store, if not done yet.
+	 *
+	 * @return Opened index. Never null.
+	 *
+	 * @throws IOException Thrown, if the index cannot be opened.
+	 */
+	protected synchronized FingerprintIndex getIndex() throws IOException {
+		if (m_index == null) {
+			m_index = FingerprintIndex.open(getFileStore(0).getFile().toPath());
+		}
+
+		return m_index;
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Creates the settings for the pattern fingerprints of a substructure index.
+	 *
+	 * @param iNumBits Number of fingerprint bits.
+	 *
+	 * @return Pattern fingerprint settings. Never null.
+	 */
+	public static FingerprintSettings createFingerprintSettings(final int iNumBits) {
+		return new DefaultFingerprintSettings(FingerprintType.pattern.name(),
+				-1, -1, -1, -1, -1, iNumBits, -1, -1, -1, false);
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.substructindex;
+
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.ModelContentRO;
+import org.knime.core.node.ModelContentWO;
+import org.knime.core.node.port.AbstractSimplePortObjectSpec;
+
+/**
+ * Specification of a {@link SubstructureIndexPortObject}. It describes the molecule column
+ * the index was built from, the length of the pattern fingerprints, the number of indexed rows
+ * and a hash of their row keys in table order, which allows to verify that a table is the indexed one.
+ *
+ * @author agent
+ */
+public class SubstructureIndexPortObjectSpec extends AbstractSimplePortObjectSpec {
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * Serializer of the port object specification, which is registered in the plugin.xml.
+	 */
+	public static final class Serializer extends AbstractSimplePortObjectSpecSerializer<SubstructureIndexPortObjectSpec> {
+		// Uses the default implementation
+	}
+
+	//
+	// Constants
+	//
+
+	/** Settings key for the molecule column name. */
+	private static final String KEY_MOLECULE_COLUMN_NAME = "moleculeColumnName";
+
+	/** Settings key for the number of fingerprint bits. */
+	private static final String KEY_NUM_BITS = "numBits";
+
+	/** Settings key for the number of indexed rows. */
+	private static final String KEY_ROW_COUNT = "rowCount";
+
+	/** Settings key for the hash of the row keys of all indexed rows. */
+	private static final String KEY_ROW_KEY_HASH = "rowKeyHash";
+
+	/** Initial value of a row key hash (64 bit FNV-1a offset basis). */
+	public static final long ROW_KEY_HASH_SEED = 0xcbf29ce484222325L;
+
+	/** Prime to mix a character into a row key hash (64 bit FNV-1a prime). */
+	private static final long ROW_KEY_HASH_PRIME = 0x100000001b3L;
+
+	//
+	// Members
+	//
+
+	/** Name of the molecule column the index was built from. */
+	private String m_strMoleculeColumnName;
+
+	/** Number of bits of the pattern fingerprints. */
+	private int m_iNumBits;
+
+	/** Number of indexed rows, or -1, if not known yet. */
+	private long m_lRowCount;
+
+	/** Hash of the row keys of all indexed rows in table order. */
+	private long m_lRowKeyHash;
+
+	//
+	// Constructors
+	//
+
+	/**
+	 * Creates an empty specification. Used only when loading a specification.
+	 */
+	public SubstructureIndexPortObjectSpec() {
+		this(null, -1, -1, ROW_KEY_HASH_SEED);
+	}
+
+	/**
+	 * Creates a new specification.
+	 *
+	 * @param strMoleculeColumnName Name of the molecule column the index is built from.
+	 * @param iNumBits Number of bits of the pattern fingerprints.
+	 * @param lRowCount Number of indexed rows, or -1, if not known yet (during configuration).
+	 * @param lRowKeyHash Hash of the row keys of all indexed rows in table order, calculated with
+	 * 		{@link #hashRowKey(long, String)} starting from {@link #ROW_KEY_HASH_SEED}.
+	 */
+	public SubstructureIndexPortObjectSpec(final String strMoleculeColumnName, final int iNumBits, final long lRowCount,
+			final long lRowKeyHash) {
+		m_strMoleculeColumnName = strMoleculeColumnName;
+		m_iNumBits = iNumBits;
+		m_lRowCount = lRowCount;
+		m_lRowKeyHash = lRowKeyHash;
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns the name of the molecule column the index was built from.
+	 *
+	 * @return Column name. Can be null.
+	 */
+	public String getMoleculeColumnName() {
+		return m_strMoleculeColumnName;
+	}
+
+	/**
+	 * Returns the number of bits of the pattern fingerprints in the index.
+	 *
+	 * @return Number of bits.
+	 */
+	public int getNumBits() {
+		return m_iNumBits;
+	}
+
+	/**
+	 * Returns the number of indexed rows.
+	 *
+	 * @return Number of rows, or -1, if not known yet.
+	 */
+	public long getRowCount() {
+		return m_lRowCount;
+	}
+
+	/**
+	 * Returns the hash of the row keys of all indexed rows in table order.
+	 *
+	 * @return Row key hash. Only meaningful, if the row count is known.
+	 */
+	public long getRowKeyHash() {
+		return m_lRowKeyHash;
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Adds the next row key to a row key hash. The order of the row keys matters.
+	 *
+	 * @param lHash The hash of all previous row keys, or {@link #ROW_KEY_HASH_SEED} for the first row.
+	 * @param strRowKey The next row key. Must not be null.
+	 *
+	 * @return The hash including the passed in row key.
+	 */
+	public static long hashRowKey(final long lHash, final String strRowKey) {
+		long lResult = lHash;
+		final int iLength = strRowKey.length();
+		for (int i = 0; i < iLength; i++) {
+			lResult = (lResult ^ strRowKey.charAt(i)) * ROW_KEY_HASH_PRIME;
+		}
+
+		// Terminate the key to distinguish e.g. "ab", "c" from "a", "bc"
+		return (lResult ^ 0xffff) * ROW_KEY_HASH_PRIME;
+	}
+
+	//
+	// Protected Methods
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void save(final ModelContentWO model) {
+		model.addString(KEY_MOLECULE_COLUMN_NAME, m_strMoleculeColumnName);
+		model.addInt(KEY_NUM_BITS, m_iNumBits);
+		model.addLong(KEY_ROW_COUNT, m_lRowCount);
+		model.addLong(KEY_ROW_KEY_HASH, m_lRowKeyHash);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void load(final ModelContentRO model) throws InvalidSettingsException {
+		m_strMoleculeColumnName = model.getString(KEY_MOLECULE_COLUMN_NAME);
+		m_iNumBits = model.getInt(KEY_NUM_BITS);
+		m_lRowCount = model.getLong(KEY_ROW_COUNT);
+		m_lRowKeyHash = model.getLong(KEY_ROW_KEY_HASH);
+	}
+}
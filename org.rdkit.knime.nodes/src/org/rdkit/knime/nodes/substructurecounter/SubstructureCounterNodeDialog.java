@@ -56,8 +56,10 @@ import org.knime.core.data.DataValue;
 import org.knime.core.data.StringValue;
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
 import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
 import org.knime.core.node.defaultnodesettings.DialogComponentString;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.rdkit.knime.types.RDKitMolValue;
 import org.rdkit.knime.util.DialogComponentColumnNameSelection;
@@ -107,9 +109,17 @@ public class SubstructureCounterNodeDialog extends DefaultNodeSettingsPane {
 		super.addDialogComponent(
 				new DialogComponentBoolean(createUseEnhancedStereoModel(modelUseChiralityOption),
 						"Use enhanced stereochemistry when matching"));
-
+		final SettingsModelBoolean modelLimitCountOption = createLimitCountOptionModel();
+		super.addDialogComponent(
+				new DialogComponentBoolean(modelLimitCountOption,
+						"Stop counting at a maximum number of matches"));
+		super.addDialogComponent(
+				new DialogComponentNumber(createMaxCountModel(modelLimitCountOption),
+						"Maximum count per query: ", 1, 8));
 
 		createNewGroup("Output");
+		super.addDialogComponent(new DialogComponentBoolean(
+				createAddCountColumnsOptionModel(), "Add count column for every query"));
 		// Add query name option settings
 		final SettingsModelBoolean modelUseQueryNameColumnOption = createUseQueryNameColumnModel();
 		super.addDialogComponent(new DialogComponentBoolean(
@@ -314,4 +324,53 @@ public class SubstructureCounterNodeDialog extends DefaultNodeSettingsPane {
 
 		return modelWithDependency;
 	}
+
+	/**
+	 * Creates the settings model to be used to specify the option
+	 * to add a count column for every query.
+	 * Added in October 2026.
+	 * 
+	 * @return Settings model for adding count columns.
+	 */
+	static final SettingsModelBoolean createAddCountColumnsOptionModel() {
+		return new SettingsModelBoolean("addCountColumns", true);
+	}
+
+	/**
+	 * Creates the settings model to be used to specify the option
+	 * to stop counting matches of a query at a maximum.
+	 * Added in October 2026.
+	 * 
+	 * @return Settings model for limiting the count.
+	 */
+	static final SettingsModelBoolean createLimitCountOptionModel() {
+		return new SettingsModelBoolean("limitCount", false);
+	}
+
+	/**
+	 * Creates the settings model to be used to specify the maximum
+	 * number of matches to be counted per query.
+	 * Added in October 2026.
+	 * 
+	 * @return Settings model for the maximum count.
+	 */
+	static final SettingsModelIntegerBounded createMaxCountModel(final SettingsModelBoolean modelLimitCountOption) {
+		final SettingsModelIntegerBounded modelWithDependency =
+				new SettingsModelIntegerBounded("maxCount", 10, 1, Integer.MAX_VALUE);
+
+		// React on any changes
+		modelLimitCountOption.addChangeListener(new ChangeListener() {
+
+			@Override
+			public void stateChanged(final ChangeEvent e) {
+				// Enable or disable the model
+				modelWithDependency.setEnabled(modelLimitCountOption.getBooleanValue());
+			}
+		});
+
+		// Enable this model based on the dependent model's state
+		modelWithDependency.setEnabled(modelLimitCountOption.getBooleanValue());
+
+		return modelWithDependency;
+	}
 }
@@ -55,7 +55,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.RDKit.Match_Vect_Vect;
 import org.RDKit.RDKFuncs;
 import org.RDKit.ROMol;
 import org.RDKit.RWMol;
@@ -79,6 +78,7 @@ import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelIntegerBounded;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.rdkit.knime.headers.HeaderPropertyUtils;
 import org.rdkit.knime.nodes.AbstractRDKitCalculatorNodeModel;
@@ -170,6 +170,18 @@ public class SubstructureCounterNodeModel extends AbstractRDKitCalculatorNodeMod
 	private final SettingsModelString m_modelTrackQueryTagsColumn =
 			registerSettings(SubstructureCounterNodeDialog.createTrackQueryTagsColumnModel(m_modelTrackQueryTagsOption), true);
 
+	/** Settings model for the option to add a count column per query. Added in October 2026. */
+	private final SettingsModelBoolean m_modelAddCountColumnsOption =
+			registerSettings(SubstructureCounterNodeDialog.createAddCountColumnsOptionModel(), true);
+
+	/** Settings model for the option to stop counting at a maximum. Added in October 2026. */
+	private final SettingsModelBoolean m_modelLimitCountOption =
+			registerSettings(SubstructureCounterNodeDialog.createLimitCountOptionModel(), true);
+
+	/** Settings model for the maximum count per query. Added in October 2026. */
+	private final SettingsModelIntegerBounded m_modelMaxCount =
+			registerSettings(SubstructureCounterNodeDialog.createMaxCountModel(m_modelLimitCountOption), true);
+
 	//
 	// Intermediate Results
 	//
@@ -390,6 +402,13 @@ public class SubstructureCounterNodeModel extends AbstractRDKitCalculatorNodeMod
 					"The name %COLUMN_NAME% of the new query tags column exists already in the input.");
 		}
 
+		// Check, if there is anything to output
+		if (!m_modelAddCountColumnsOption.getBooleanValue() && !m_modelCountTotalHitsOption.getBooleanValue() &&
+				!m_modelTrackQueryTagsOption.getBooleanValue()) {
+			throw new InvalidSettingsException("Please select at least one output: " +
+					"Count columns, total hits count column or query tags column.");
+		}
+
 		// Consolidate all warnings and make them available to the user
 		generateWarnings();
 
@@ -503,7 +522,9 @@ public class SubstructureCounterNodeModel extends AbstractRDKitCalculatorNodeMod
 			// query molecules
 			final boolean bCountTotalHits = m_modelCountTotalHitsOption.getBooleanValue();
 			final boolean bTrackQueryTags = m_modelTrackQueryTagsOption.getBooleanValue();
-			final int iResultColumnCount = m_arrResultColumnNames.length;
+			final boolean bAddCountColumns = m_modelAddCountColumnsOption.getBooleanValue();
+			final int iQueryCount = m_arrResultColumnNames.length;
+			final int iResultColumnCount = (bAddCountColumns ? iQueryCount : 0);
 			final int iTotalColumnCount = iResultColumnCount + (bCountTotalHits ? 1 : 0) + (bTrackQueryTags ? 1: 0);
 			final DataColumnSpec[] arrOutputSpec = new DataColumnSpec[iTotalColumnCount];
 			int iColIndex = 0;
@@ -528,7 +549,13 @@ public class SubstructureCounterNodeModel extends AbstractRDKitCalculatorNodeMod
 			ps.setUseChirality(m_modelUseChirality.getBooleanValue());
     		ps.setUseEnhancedStereo(m_modelUseEnhancedStereo.getBooleanValue());
 			ps.setUniquify(m_modelUniqueMatchesOnly.getBooleanValue());
-			
+
+			// If only query tags are requested, it is sufficient to check for the existence of matches
+			final int iMaxCount = (!bAddCountColumns && !bCountTotalHits ? 1 :
+				m_modelLimitCountOption.getBooleanValue() ? m_modelMaxCount.getIntValue() :
+					SubstructureMatchCounter.NO_LIMIT);
+			final SubstructureMatchCounter counter = new SubstructureMatchCounter(ps, iMaxCount);
+
 			// Generate factory
 			arrOutputFactories[0] = new AbstractRDKitCellFactory(this, AbstractRDKitCellFactory.RowFailurePolicy.DeliverEmptyValues,
 					getWarningConsolidator(), null, arrOutputSpec) {
@@ -548,21 +575,21 @@ public class SubstructureCounterNodeModel extends AbstractRDKitCalculatorNodeMod
 
 					final List<StringCell> listTags = (bTrackQueryTags ? new ArrayList<StringCell>() : null);
 					int iTotalHitsCount = 0;
-					int iColIndex;
-					for (iColIndex = 0; iColIndex < iResultColumnCount; iColIndex++) {
-						final ROMol query = m_arrQueriesAsRDKitMols[iColIndex];
+					for (int iQueryIndex = 0; iQueryIndex < iQueryCount; iQueryIndex++) {
+						final ROMol query = m_arrQueriesAsRDKitMols[iQueryIndex];
 						if (mol != null && query != null) {
-							final Match_Vect_Vect ms = markForCleanup(
-									mol.getSubstructMatches(query, ps), lUniqueWaveId);
-							final int iHits = (int)ms.size();
-							arrOutputCells[iColIndex] = new IntCell(iHits);
+							final int iHits = counter.count(mol, query);
+							if (bAddCountColumns) {
+								arrOutputCells[iQueryIndex] = new IntCell(iHits);
+							}
 							iTotalHitsCount += iHits;
 							if (bTrackQueryTags && iHits > 0) {
-								listTags.add(new StringCell(m_arrResultColumnNames[iColIndex]));
+								listTags.add(new StringCell(m_arrResultColumnNames[iQueryIndex]));
 							}
 						}
 					}
 
+					int iColIndex = iResultColumnCount;
 					if (bCountTotalHits) {
 						arrOutputCells[iColIndex++] = new IntCell(iTotalHitsCount);
 					}
@@ -0,0 +1,169 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.nodes.substructurecounter;
+
+import org.RDKit.Match_Vect_Vect;
+import org.RDKit.ROMol;
+import org.RDKit.SubstructMatchParameters;
+
+/**
+ * Counts substructure matches of a query in a molecule without keeping the atom mappings.
+ * The native match vector is freed right after reading its size instead of being
+ * registered for cleanup. Optionally counting stops at a maximum number of matches.
+ * With a maximum of 1 only the existence of a match is checked, which stops at
+ * the first match found. Without unique matching RDKit stops enumerating mappings when
+ * the maximum is reached. With unique matching duplicates can only be removed after
+ * enumeration, therefore the maximum is applied to the result in that case.
+ * Instances can be used concurrently.
+ *
+ * @author agent
+ */
+public class SubstructureMatchCounter {
+
+	//
+	// Constants
+	//
+
+	/** Maximum count value to count all matches. */
+	public static final int NO_LIMIT = 0;
+
+	//
+	// Members
+	//
+
+	/** The match parameters to be used. */
+	private final SubstructMatchParameters m_params;
+
+	/** The maximum count or {@link #NO_LIMIT}. */
+	private final int m_iMaxCount;
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Creates a new counter.
+	 *
+	 * @param params Substructure match parameters. Must not be null. If matching stops early,
+	 * 		the maximum number of matches of these parameters gets changed.
+	 * @param iMaxCount Maximum number of matches to count, 1 to check only for existence of
+	 * 		a match, or {@link #NO_LIMIT} to count all matches.
+	 */
+	public SubstructureMatchCounter(final SubstructMatchParameters params, final int iMaxCount) {
+		if (params == null) {
+			throw new IllegalArgumentException("Substructure match parameters must not be null.");
+		}
+		if (iMaxCount < 0) {
+			throw new IllegalArgumentException("Maximum count must not be negative.");
+		}
+
+		m_params = params;
+		m_iMaxCount = iMaxCount;
+
+		// Let RDKit stop enumerating mappings, if this does not change the result
+		if (iMaxCount > 1 && !params.getUniquify()) {
+			params.setMaxMatches(iMaxCount);
+		}
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Counts the matches of a query in a molecule.
+	 *
+	 * @param mol Molecule. Must not be null.
+	 * @param query Query molecule. Must not be null.
+	 *
+	 * @return Number of matches, but not more than the maximum count (if set).
+	 */
+	public int count(final ROMol mol, final ROMol query) {
+		int iCount;
+
+		if (m_iMaxCount == 1) {
+			iCount = (mol.hasSubstructMatch(query, m_params) ? 1 : 0);
+		}
+		else {
+			final Match_Vect_Vect vecMatches = mol.getSubstructMatches(query, m_params);
+			try {
+				iCount = (vecMatches == null ? 0 : (int)vecMatches.size());
+			}
+			finally {
+				if (vecMatches != null) {
+					vecMatches.delete();
+				}
+			}
+
+			if (m_iMaxCount != NO_LIMIT && iCount > m_iMaxCount) {
+				iCount = m_iMaxCount;
+			}
+		}
+
+		return iCount;
+	}
+
+	/**
+	 * Determines, if this counter checks only the existence of matches.
+	 *
+	 * @return True, if counts are only 0 or 1.
+	 */
+	public boolean isExistenceOnly() {
+		return m_iMaxCount == 1;
+	}
+
+	/**
+	 * Returns the maximum count.
+	 *
+	 * @return Maximum number of matches to count, or {@link #NO_LIMIT}.
+	 */
+	public int getMaxCount() {
+		return m_iMaxCount;
+	}
+}
@@ -0,0 +1,387 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.util;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.RDKit.FilterCatalog;
+import org.RDKit.FilterCatalogParams;
+import org.RDKit.FilterCatalogParams.FilterCatalogs;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * A JVM-wide cache of built RDKit filter catalogs (e.g. PAINS, BRENK, NIH or ZINC).
+ * Building a filter catalog means parsing hundreds of SMARTS patterns, which can take
+ * longer than the actual matching of small tables. Cached catalogs are shared between
+ * all nodes and are keyed by the set of filter catalogs they were built from.
+ * A catalog is acquired by calling {@link #acquire(Set)} and must be released with
+ * {@link #release(FilterCatalog)} when it is not used anymore. Released catalogs
+ * stay in the cache for the next execution, until {@link #clearUnused()} gets called.
+ * Removed catalogs are never deleted explicitly, because worker threads of a cancelled
+ * execution may still match with a catalog after it was released. Their native memory
+ * is freed by the garbage collector, once no thread references them anymore.
+ * Shared catalogs are treated as immutable: Callers may only use them for matching
+ * (which is thread-safe for concurrent readers) and must never modify or delete them.
+ * All methods are thread-safe. A catalog is built only once, even if multiple threads
+ * request it at the same time, and building one catalog does not block access to others.
+ *
+ * @author agent
+ */
+public class FilterCatalogCache {
+
+	//
+	// Constants
+	//
+
+	/** The logger instance. */
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(FilterCatalogCache.class);
+
+	/** The shared cache instance. */
+	private static final FilterCatalogCache INSTANCE = new FilterCatalogCache();
+
+	//
+	// Members
+	//
+
+	/** All cached entries keyed by their set of filter catalogs. Access must be synchronized on this cache. */
+	private final Map<Set<FilterCatalogs>, Entry> m_mapEntries = new HashMap<>();
+
+	/** Number of acquisitions that found an existing catalog. Access must be synchronized on this cache. */
+	private long m_lHits = 0;
+
+	/** Number of acquisitions that had to build a new catalog. Access must be synchronized on this cache. */
+	private long m_lMisses = 0;
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Creates a new empty filter catalog cache. Use {@link #getInstance()} to get the shared cache.
+	 */
+	FilterCatalogCache() {
+		// Nothing to initialize
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Returns the JVM-wide shared filter catalog cache.
+	 *
+	 * @return Shared cache instance. Never null.
+	 */
+	public static FilterCatalogCache getInstance() {
+		return INSTANCE;
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Acquires the filter catalog for a single catalog set.
+	 *
+	 * @param catalog Filter catalog set. Must not be null.
+	 *
+	 * @return Shared filter catalog. Never null. Must be released with {@link #release(FilterCatalog)}.
+	 *
+	 * @see #acquire(Set)
+	 */
+	public FilterCatalog acquire(final FilterCatalogs catalog) {
+		if (catalog == null) {
+			throw new IllegalArgumentException("Filter catalog set must not be null.");
+		}
+
+		return acquire(EnumSet.of(catalog));
+	}
+
+	/**
+	 * Acquires the filter catalog, which contains the entries of all specified catalog sets.
+	 * If it is not cached yet, it will be built. The reference count of the catalog
+	 * gets incremented.
+	 *
+	 * @param setCatalogs Filter catalog sets. Must not be null or empty.
+	 *
+	 * @return Shared filter catalog. Never null. Must be released with {@link #release(FilterCatalog)}
+	 * 		and must never be deleted or modified by the caller.
+	 */
+	public FilterCatalog acquire(final Set<FilterCatalogs> setCatalogs) {
+		if (setCatalogs == null || setCatalogs.isEmpty()) {
+			throw new IllegalArgumentException("Filter catalog sets must not be null or empty.");
+		}
+
+		final Set<FilterCatalogs> setKey = EnumSet.copyOf(setCatalogs);
+		Entry entry;
+
+		synchronized (this) {
+			entry = m_mapEntries.get(setKey);
+			if (entry == null) {
+				entry = new Entry(setKey);
+				m_mapEntries.put(setKey, entry);
+				m_lMisses++;
+			}
+			else {
+				m_lHits++;
+			}
+			entry.m_iReferences++;
+		}
+
+		// Build outside of the cache lock - concurrent requests for the same catalog wait here
+		try {
+			return entry.getCatalog();
+		}
+		catch (final RuntimeException exc) {
+			synchronized (this) {
+				entry.m_iReferences--;
+				if (entry.m_iReferences == 0 && entry.m_catalog == null) {
+					m_mapEntries.remove(setKey);
+				}
+			}
+			throw exc;
+		}
+	}
+
+	/**
+	 * Releases a filter catalog, which was acquired before. The catalog stays cached
+	 * and will be reused by the next acquisition of the same catalog sets.
+	 *
+	 * @param catalog Filter catalog acquired from this cache. Can be null.
+	 */
+	public synchronized void release(final FilterCatalog catalog) {
+		if (catalog == null) {
+			return;
+		}
+
+		for (final Entry entry : m_mapEntries.values()) {
+			if (entry.m_catalog == catalog) {
+				if (entry.m_iReferences > 0) {
+					entry.m_iReferences--;
+				}
+				else {
+					LOGGER.warn("Filter catalog " + entry.m_setCatalogs + " was released more often than acquired.");
+				}
+				return;
+			}
+		}
+
+		LOGGER.warn("Released filter catalog is not known to the filter catalog cache.");
+	}
+
+	/**
+	 * Removes all catalogs that are currently not acquired from the cache. Their native
+	 * resources are not deleted here, but freed by the garbage collector, when the last
+	 * reference to them is gone. This is safe even for threads that still match with a
+	 * catalog after releasing it.
+	 *
+	 * @return Number of removed catalogs.
+	 */
+	public synchronized int clearUnused() {
+		final List<Set<FilterCatalogs>> listRemoved = new ArrayList<>();
+
+		for (final Entry entry : m_mapEntries.values()) {
+			if (entry.m_iReferences == 0) {
+				listRemoved.add(entry.m_setCatalogs);
+			}
+		}
+
+		for (final Set<FilterCatalogs> setKey : listRemoved) {
+			m_mapEntries.remove(setKey);
+		}
+
+		if (!listRemoved.isEmpty()) {
+			LOGGER.debug("Removed " + listRemoved.size() + " unused filter catalogs from the cache.");
+		}
+
+		return listRemoved.size();
+	}
+
+	/**
+	 * Returns the number of cached catalogs.
+	 *
+	 * @return Number of entries.
+	 */
+	public synchronized int getEntryCount() {
+		return m_mapEntries.size();
+	}
+
+	/**
+	 * Returns the number of currently acquired catalog references over all entries.
+	 *
+	 * @return Number of references.
+	 */
+	public synchronized int getReferenceCount() {
+		int iReferences = 0;
+		for (final Entry entry : m_mapEntries.values()) {
+			iReferences += entry.m_iReferences;
+		}
+		return iReferences;
+	}
+
+	/**
+	 * Returns the estimated memory footprint of all cached catalogs. The estimate is based
+	 * on the size of the serialized catalogs, which is measured once when a catalog is built.
+	 * The native in-memory representation is usually somewhat larger.
+	 *
+	 * @return Footprint in bytes. 0, if no catalog is cached or the footprint cannot be estimated.
+	 */
+	public synchronized long getMemoryFootprint() {
+		long lBytes = 0;
+		for (final Entry entry : m_mapEntries.values()) {
+			lBytes += Math.max(0, entry.m_lFootprint);
+		}
+		return lBytes;
+	}
+
+	/**
+	 * Returns a human readable summary of the cache content and statistics.
+	 *
+	 * @return Statistics summary.
+	 */
+	public synchronized String getStatistics() {
+		final StringBuilder sb = new StringBuilder("Filter catalog cache: ")
+				.append(m_mapEntries.size()).append(" catalogs, ")
+				.append(getReferenceCount()).append(" in use, ")
+				.append(m_lHits).append(" hits, ").append(m_lMisses).append(" misses, approx. ")
+				.append((getMemoryFootprint() + 1023) / 1024).append(" KB");
+
+		for (final Entry entry : m_mapEntries.values()) {
+			sb.append("\n").append(entry.m_setCatalogs).append(": ")
+				.append(entry.m_lEntryCount < 0 ? "not built yet" : entry.m_lEntryCount + " entries, " +
+						(entry.m_lFootprint < 0 ? "unknown size" : "approx. " + ((entry.m_lFootprint + 1023) / 1024) + " KB"))
+				.append(", ").append(entry.m_iReferences).append(" references");
+		}
+
+		return sb.toString();
+	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * A cache entry, which builds its catalog lazily.
+	 */
+	private static class Entry {
+
+		/** The catalog sets of the entry. */
+		private final Set<FilterCatalogs> m_setCatalogs;
+
+		/** The built catalog or null, if not built yet. Guarded by the entry for building. */
+		private volatile FilterCatalog m_catalog;
+
+		/** Number of acquired references. Access must be synchronized on the cache. */
+		private int m_iReferences = 0;
+
+		/** Number of catalog entries or -1, if not built yet. */
+		private volatile long m_lEntryCount = -1;
+
+		/** Estimated footprint in bytes or -1, if unknown. */
+		private volatile long m_lFootprint = -1;
+
+		/**
+		 * Creates a new entry for the specified catalog sets.
+		 *
+		 * @param setCatalogs Catalog sets. Must not be null or empty.
+		 */
+		private Entry(final Set<FilterCatalogs> setCatalogs) {
+			m_setCatalogs = setCatalogs;
+		}
+
+		/**
+		 * Returns the catalog of this entry and builds it, if not done yet.
+		 *
+		 * @return Filter catalog. Never null.
+		 */
+		private synchronized FilterCatalog getCatalog() {
+			if (m_catalog == null) {
+				final long lStart = System.currentTimeMillis();
+				FilterCatalog catalog;
+
+				if (m_setCatalogs.size() == 1) {
+					catalog = new FilterCatalog(m_setCatalogs.iterator().next());
+				}
+				else {
+					final FilterCatalogParams params = new FilterCatalogParams();
+					try {
+						for (final FilterCatalogs catalogSet : m_setCatalogs) {
+							params.addCatalog(catalogSet);
+						}
+						catalog = new FilterCatalog(params);
+					}
+					finally {
+						params.delete();
+					}
+				}
+
+				m_lEntryCount = catalog.getNumEntries();
+				try {
+					if (FilterCatalog.canSerialize()) {
+						m_lFootprint = catalog.Serialize().length;
+					}
+				}
+				catch (final Exception exc) {
+					LOGGER.debug("Footprint of filter catalog " + m_setCatalogs + " could not be determined.", exc);
+				}
+
+				m_catalog = catalog;
+				LOGGER.debug("Built filter catalog " + m_setCatalogs + " with " + m_lEntryCount +
+						" entries in " + (System.currentTimeMillis() - lStart) + "ms.");
+			}
+
+			return m_catalog;
+		}
+	}
+}
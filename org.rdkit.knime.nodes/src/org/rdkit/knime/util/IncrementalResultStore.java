@@ -0,0 +1,523 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.RowKey;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * An incremental result store keeps the calculated result cells of the last execution
+ * of a node together with a content hash of the input cells of each row. When the node
+ * gets executed again, the results of rows with unchanged row key and unchanged content hash
+ * can be taken over from the store, and only new or changed rows need to be recalculated.
+ * The store is a single sequential file per node, which is written in the row order of
+ * the output table. Reading happens in the same order with a limited look-ahead window,
+ * which makes it possible to find rows again after rows have been inserted or removed,
+ * without holding the whole previous result in memory.
+ * The file starts with a namespace that describes the calculation context (node type,
+ * settings and software versions). A store with a different namespace is never used.
+ *
+ * @author agent
+ */
+public class IncrementalResultStore {
+
+	//
+	// Constants
+	//
+
+	/** The logger instance. */
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(IncrementalResultStore.class);
+
+	/** Magic number at the beginning of every store file. */
+	private static final int MAGIC_NUMBER = 0x52444B44;
+
+	/** Version of the file format. Files with a different version are ignored. */
+	private static final int FORMAT_VERSION = 1;
+
+	/** File extension of store files. */
+	private static final String STORE_EXTENSION = ".rdkd";
+
+	/** Default number of previous rows that are kept in memory while looking for a row. */
+	public static final int DEFAULT_LOOK_AHEAD_WINDOW = 10000;
+
+	//
+	// Members
+	//
+
+	/** The file that contains the previous results. */
+	private final File m_fileStore;
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Creates a new incremental result store based on the specified file.
+	 *
+	 * @param fileStore Store file. Must not be null. Does not need to exist.
+	 */
+	public IncrementalResultStore(final File fileStore) {
+		if (fileStore == null) {
+			throw new IllegalArgumentException("Store file must not be null.");
+		}
+
+		m_fileStore = fileStore;
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Returns the store for a node identified by the specified string.
+	 *
+	 * @param dirStores Directory that contains all store files. Must not be null.
+	 * @param strNodeIdentity Unique identity of a node instance, e.g. its location. Must not be null.
+	 *
+	 * @return Store for the node. Never null.
+	 */
+	public static IncrementalResultStore getStore(final File dirStores, final String strNodeIdentity) {
+		return new IncrementalResultStore(new File(dirStores,
+				ResultCache.createHash(strNodeIdentity) + STORE_EXTENSION));
+	}
+
+	/**
+	 * Converts a hexadecimal hash value as delivered by {@link ResultCache#createKey(String, DataCell...)}
+	 * into a long value, which is used as content hash.
+	 *
+	 * @param strHexHash Hexadecimal hash with at least 16 characters. Must not be null.
+	 *
+	 * @return Content hash.
+	 */
+	public static long toContentHash(final String strHexHash) {
+		return Long.parseUnsignedLong(strHexHash.substring(0, 16), 16);
+	}
+
+	/**
+	 * Deletes all store files in the specified directory.
+	 *
+	 * @param dirStores Directory that contains store files. Can be null.
+	 */
+	public static void clear(final File dirStores) {
+		final File[] arrFiles = (dirStores == null ? null :
+			dirStores.listFiles((dir, name) -> name.endsWith(STORE_EXTENSION)));
+		if (arrFiles != null) {
+			for (final File file : arrFiles) {
+				if (!file.delete()) {
+					LOGGER.debug("Unable to delete incremental result store " + file);
+				}
+			}
+		}
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns the file of this store.
+	 *
+	 * @return Store file.
+	 */
+	public File getFile() {
+		return m_fileStore;
+	}
+
+	/**
+	 * Opens a reader for previous results, if they exist and were calculated in the
+	 * same calculation context.
+	 *
+	 * @param strNamespace Namespace of the current calculation context. Must not be null.
+	 * @param iCellCount Number of result cells per row. Must match the stored results.
+	 * @param iLookAheadWindow Maximum number of previous rows kept in memory when looking ahead.
+	 *
+	 * @return Reader or null, if no suitable previous results exist.
+	 */
+	public Reader openReader(final String strNamespace, final int iCellCount, final int iLookAheadWindow) {
+		Reader reader = null;
+
+		if (m_fileStore.isFile()) {
+			ResultCache.CellInput in = null;
+			try {
+				in = new ResultCache.CellInput(new BufferedInputStream(new FileInputStream(m_fileStore), 65536));
+				if (in.readInt() == MAGIC_NUMBER && in.readInt() == FORMAT_VERSION &&
+						strNamespace.equals(in.readUTF()) && in.readInt() == iCellCount) {
+					reader = new Reader(in, iCellCount, iLookAheadWindow);
+				}
+				else {
+					LOGGER.debug("Previous results in " + m_fileStore + " were calculated in a different context - Ignoring them.");
+				}
+			}
+			catch (final IOException exc) {
+				LOGGER.debug("Unable to open incremental result store " + m_fileStore + " - Ignoring it.", exc);
+			}
+			finally {
+				if (reader == null && in != null) {
+					try {
+						in.close();
+					}
+					catch (final IOException exc) {
+						// Ignore
+					}
+				}
+			}
+		}
+
+		return reader;
+	}
+
+	/**
+	 * Opens a writer for new results. The results are written into a temporary file,
+	 * which replaces the existing store only when calling {@link Writer#commit()}.
+	 *
+	 * @param strNamespace Namespace of the current calculation context. Must not be null.
+	 * @param iCellCount Number of result cells per row.
+	 *
+	 * @return Writer. Never null.
+	 *
+	 * @throws IOException Thrown, if the temporary file could not be created.
+	 */
+	public Writer openWriter(final String strNamespace, final int iCellCount) throws IOException {
+		m_fileStore.getParentFile().mkdirs();
+		final File fileTemp = new File(m_fileStore.getParentFile(), m_fileStore.getName() + ".tmp");
+		final ResultCache.CellOutput out = new ResultCache.CellOutput(
+				new BufferedOutputStream(new FileOutputStream(fileTemp), 65536));
+		out.writeInt(MAGIC_NUMBER);
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(strNamespace);
+		out.writeInt(iCellCount);
+
+		return new Writer(out, fileTemp, iCellCount);
+	}
+
+	/**
+	 * Deletes the previous results of this store.
+	 */
+	public void delete() {
+		if (m_fileStore.exists() && !m_fileStore.delete()) {
+			LOGGER.debug("Unable to delete incremental result store " + m_fileStore);
+		}
+	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * A single row of previous results.
+	 */
+	private static class Entry {
+
+		/** Row key as string. */
+		private final String m_strKey;
+
+		/** Position of the row in the previous results. */
+		private final long m_lPosition;
+
+		/** Content hash of the input cells of the row. */
+		private final long m_lContentHash;
+
+		/** Result cells of the row. */
+		private final DataCell[] m_arrCells;
+
+		/**
+		 * Creates a new entry.
+		 *
+		 * @param strKey Row key as string.
+		 * @param lPosition Position of the row in the previous results.
+		 * @param lContentHash Content hash of the input cells.
+		 * @param arrCells Result cells.
+		 */
+		private Entry(final String strKey, final long lPosition, final long lContentHash, final DataCell[] arrCells) {
+			m_strKey = strKey;
+			m_lPosition = lPosition;
+			m_lContentHash = lContentHash;
+			m_arrCells = arrCells;
+		}
+	}
+
+	/**
+	 * Reads previous results sequentially and finds rows by row key and content hash.
+	 * Rows, which are read while looking for another row, are kept in a
+	 * look-ahead window. When a row is found, all rows before it in the look-ahead
+	 * window are considered as removed and are discarded. This works well as long as the
+	 * order of rows does not change significantly between executions.
+	 * This class is not thread-safe.
+	 */
+	public static class Reader implements Closeable {
+
+		/** Input stream of the store. */
+		private final ResultCache.CellInput m_in;
+
+		/** Number of result cells per row. */
+		private final int m_iCellCount;
+
+		/** Maximum number of rows in the look-ahead window. */
+		private final int m_iLookAheadWindow;
+
+		/** Rows that were read ahead but not requested yet in the order they were read. */
+		private final LinkedHashMap<String, Entry> m_mapLookAhead = new LinkedHashMap<>();
+
+		/** Position of the next row to be read. */
+		private long m_lNextPosition = 0;
+
+		/** Flag to tell that the end of the store was reached. */
+		private boolean m_bEndReached = false;
+
+		/** Number of rows that were found with unchanged content. */
+		private long m_lUnchanged = 0;
+
+		/**
+		 * Creates a new reader.
+		 *
+		 * @param in Input stream positioned at the first row. Must not be null.
+		 * @param iCellCount Number of result cells per row.
+		 * @param iLookAheadWindow Maximum number of rows in the look-ahead window.
+		 */
+		private Reader(final ResultCache.CellInput in, final int iCellCount, final int iLookAheadWindow) {
+			m_in = in;
+			m_iCellCount = iCellCount;
+			m_iLookAheadWindow = Math.max(1, iLookAheadWindow);
+		}
+
+		/**
+		 * Finds the previous results of the specified row, if its content did not change.
+		 *
+		 * @param rowKey Row key. Must not be null.
+		 * @param lContentHash Content hash of the input cells of the row.
+		 *
+		 * @return Previous result cells or null, if the row is new, has changed or
+		 * 		could not be found within the look-ahead window.
+		 *
+		 * @throws IOException Thrown, if the store could not be read.
+		 */
+		public DataCell[] find(final RowKey rowKey, final long lContentHash) throws IOException {
+			final String strKey = rowKey.getString();
+			Entry entry = m_mapLookAhead.remove(strKey);
+
+			// Read ahead until found or window is full
+			while (entry == null && !m_bEndReached && m_mapLookAhead.size() < m_iLookAheadWindow) {
+				final Entry entryRead = readNext();
+				if (entryRead != null) {
+					if (entryRead.m_strKey.equals(strKey)) {
+						entry = entryRead;
+					}
+					else {
+						m_mapLookAhead.put(entryRead.m_strKey, entryRead);
+					}
+				}
+			}
+
+			DataCell[] arrCells = null;
+
+			if (entry != null) {
+				// Rows before the found row are considered to be removed
+				final Iterator<Entry> i = m_mapLookAhead.values().iterator();
+				while (i.hasNext() && i.next().m_lPosition < entry.m_lPosition) {
+					i.remove();
+				}
+
+				if (entry.m_lContentHash == lContentHash) {
+					arrCells = entry.m_arrCells;
+					m_lUnchanged++;
+				}
+			}
+
+			return arrCells;
+		}
+
+		/**
+		 * Returns the number of rows, which were found with unchanged content.
+		 *
+		 * @return Number of unchanged rows.
+		 */
+		public long getUnchangedRowCount() {
+			return m_lUnchanged;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			m_mapLookAhead.clear();
+			m_in.close();
+		}
+
+		/**
+		 * Reads the next row.
+		 *
+		 * @return Entry or null, if the end was reached.
+		 *
+		 * @throws IOException Thrown, if the store could not be read.
+		 */
+		private Entry readNext() throws IOException {
+			Entry entry = null;
+
+			try {
+				if (m_in.readBoolean()) {
+					final String strKey = m_in.readUTF();
+					final long lContentHash = m_in.readLong();
+					final DataCell[] arrCells = new DataCell[m_iCellCount];
+					for (int i = 0; i < m_iCellCount; i++) {
+						arrCells[i] = m_in.readDataCell();
+					}
+					entry = new Entry(strKey, m_lNextPosition++, lContentHash, arrCells);
+				}
+				else {
+					m_bEndReached = true;
+				}
+			}
+			catch (final EOFException exc) {
+				// Incomplete store - use what we have
+				m_bEndReached = true;
+			}
+
+			return entry;
+		}
+	}
+
+	/**
+	 * Writes new results sequentially into a temporary file, which replaces
+	 * the previous results when committing. This class is not thread-safe.
+	 */
+	public class Writer implements Closeable {
+
+		/** Output stream of the temporary store file. */
+		private final ResultCache.CellOutput m_out;
+
+		/** Temporary store file. */
+		private final File m_fileTemp;
+
+		/** Number of result cells per row. */
+		private final int m_iCellCount;
+
+		/** Flag to tell that the writer was committed or closed. */
+		private boolean m_bClosed = false;
+
+		/**
+		 * Creates a new writer.
+		 *
+		 * @param out Output stream of the temporary file. Must not be null.
+		 * @param fileTemp Temporary file. Must not be null.
+		 * @param iCellCount Number of result cells per row.
+		 */
+		private Writer(final ResultCache.CellOutput out, final File fileTemp, final int iCellCount) {
+			m_out = out;
+			m_fileTemp = fileTemp;
+			m_iCellCount = iCellCount;
+		}
+
+		/**
+		 * Writes the results of a row.
+		 *
+		 * @param rowKey Row key. Must not be null.
+		 * @param lContentHash Content hash of the input cells of the row.
+		 * @param arrCells Result cells. Must not be null and must have the configured number of cells.
+		 *
+		 * @throws IOException Thrown, if writing failed.
+		 */
+		public void write(final RowKey rowKey, final long lContentHash, final DataCell[] arrCells) throws IOException {
+			if (arrCells.length != m_iCellCount) {
+				throw new IOException("Unexpected number of result cells: " + arrCells.length +
+						" instead of " + m_iCellCount);
+			}
+
+			m_out.writeBoolean(true);
+			m_out.writeUTF(rowKey.getString());
+			m_out.writeLong(lContentHash);
+			for (final DataCell cell : arrCells) {
+				m_out.writeDataCell(cell);
+			}
+		}
+
+		/**
+		 * Finishes writing and replaces the previous results with the new results.
+		 *
+		 * @throws IOException Thrown, if the new results could not be stored.
+		 */
+		public void commit() throws IOException {
+			m_out.writeBoolean(false);
+			m_out.close();
+			m_bClosed = true;
+			Files.move(m_fileTemp.toPath(), m_fileStore.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		/**
+		 * Closes the writer. If it was not committed before, the new results are discarded.
+		 */
+		@Override
+		public void close() {
+			if (!m_bClosed) {
+				m_bClosed = true;
+				try {
+					m_out.close();
+				}
+				catch (final IOException exc) {
+					// Ignore
+				}
+				m_fileTemp.delete();
+			}
+		}
+	}
+}
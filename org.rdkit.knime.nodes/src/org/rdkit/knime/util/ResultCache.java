@@ -0,0 +1,749 @@
+/*
+ * ------------------------------------------------------------------
+ * This source code, its documentation and all appendant files
+ * are protected by copyright law. All rights reserved.
+ *
+ * Copyright (C)2023
+ * Novartis Pharma AG, Switzerland
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * ---------------------------------------------------------------------
+ */
+package org.rdkit.knime.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataCellDataInput;
+import org.knime.core.data.DataCellDataOutput;
+import org.knime.core.data.DataCellSerializer;
+import org.knime.core.data.DataType;
+import org.knime.core.data.DataTypeRegistry;
+import org.knime.core.node.NodeLogger;
+import org.rdkit.knime.types.RDKitMolValue;
+import org.rdkit.knime.types.RDKitTypeSerializationUtils;
+
+/**
+ * A persistent result cache, which stores calculated result cells on disk, so that
+ * re-executing a node with identical settings on identical input does not need to
+ * redo expensive RDKit calculations. Every entry is stored as a single file in
+ * a sharded sub directory structure of the cache directory. The key of an entry
+ * is a SHA-256 hash, which is normally calculated from a namespace (describing
+ * the node, its settings and the software versions) and the input cells of a row
+ * (molecules are hashed based on their binary pickle).
+ * The total size of the cache is limited. If the limit gets exceeded, the least recently
+ * used entries (based on the file modification time, which gets updated on every hit)
+ * are evicted until the cache shrinks below 90% of the limit.
+ * The cache collects statistics about hits, misses and the calculation time that was saved.
+ * Only cells with a registered KNIME cell serializer can be cached. Java serialization is
+ * never used, because the cache directory is configurable and its files must not be trusted.
+ * As reading an entry costs a file access per row, the cache should only be used by nodes
+ * with calculations that are considerably more expensive than that.
+ * All methods are thread-safe. Failures when reading or writing entries are never
+ * propagated - they are logged and treated like a cache miss.
+ *
+ * @author agent
+ */
+public class ResultCache {
+
+	//
+	// Constants
+	//
+
+	/** The logger instance. */
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(ResultCache.class);
+
+	/** Version of the file format of a cache entry. Entries with a different version are ignored. */
+	private static final int FORMAT_VERSION = 2;
+
+	/** File extension of cache entries. */
+	private static final String ENTRY_EXTENSION = ".rdkc";
+
+	/** File extension of temporary files, which are written before renaming them into entries. */
+	private static final String TEMP_EXTENSION = ".tmp";
+
+	/** Fill level (in percent of the maximum size) that eviction shrinks the cache to. */
+	private static final int EVICTION_TARGET_PERCENTAGE = 90;
+
+	/** Marker in the cell encoding for a missing cell. */
+	private static final byte MARKER_MISSING_CELL = 0;
+
+	/** Marker in the cell encoding for a cell that was written with a registered KNIME serializer. */
+	private static final byte MARKER_KNIME_SERIALIZER = 1;
+
+	/** Hex characters for key generation. */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	//
+	// Globals
+	//
+
+	/** The currently active shared cache instance. */
+	private static ResultCache g_instance = null;
+
+	//
+	// Members
+	//
+
+	/** The directory that contains all cache entries. */
+	private final File m_dirCache;
+
+	/** The maximum size of all cache entries in bytes. */
+	private final long m_lMaxSizeInBytes;
+
+	/** The current size of all cache entries in bytes. -1, if not determined yet. */
+	private final AtomicLong m_lCurrentSizeInBytes = new AtomicLong(-1);
+
+	/** Lock to ensure that only a single thread determines the size or evicts entries. */
+	private final ReentrantLock m_lockMaintenance = new ReentrantLock();
+
+	/** Number of cache hits. */
+	private final AtomicLong m_lHits = new AtomicLong();
+
+	/** Number of cache misses. */
+	private final AtomicLong m_lMisses = new AtomicLong();
+
+	/** Number of stored entries. */
+	private final AtomicLong m_lStores = new AtomicLong();
+
+	/** Number of evicted entries. */
+	private final AtomicLong m_lEvictions = new AtomicLong();
+
+	/** Calculation time that was saved by cache hits in nanoseconds. */
+	private final AtomicLong m_lSavedNanos = new AtomicLong();
+
+	//
+	// Constructor
+	//
+
+	/**
+	 * Creates a new result cache based on the specified directory.
+	 *
+	 * @param dirCache Cache directory. Must not be null. Will be created, if it does not exist.
+	 * @param lMaxSizeInBytes Maximum size of the cache in bytes. Must be > 0.
+	 */
+	public ResultCache(final File dirCache, final long lMaxSizeInBytes) {
+		if (dirCache == null) {
+			throw new IllegalArgumentException("Cache directory must not be null.");
+		}
+		if (lMaxSizeInBytes <= 0) {
+			throw new IllegalArgumentException("Maximum cache size must be greater than 0.");
+		}
+
+		m_dirCache = dirCache;
+		m_lMaxSizeInBytes = lMaxSizeInBytes;
+	}
+
+	//
+	// Static Public Methods
+	//
+
+	/**
+	 * Returns a shared cache instance for the specified directory and size limit.
+	 * If the currently shared instance is based on a different directory or size
+	 * limit, a new instance will be created and shared from now on.
+	 *
+	 * @param dirCache Cache directory. Must not be null.
+	 * @param lMaxSizeInBytes Maximum size of the cache in bytes. Must be > 0.
+	 *
+	 * @return Shared cache instance. Never null.
+	 */
+	public static synchronized ResultCache getInstance(final File dirCache, final long lMaxSizeInBytes) {
+		if (g_instance == null || !g_instance.m_dirCache.equals(dirCache) ||
+				g_instance.m_lMaxSizeInBytes != lMaxSizeInBytes) {
+			g_instance = new ResultCache(dirCache, lMaxSizeInBytes);
+		}
+
+		return g_instance;
+	}
+
+	/**
+	 * Returns the currently shared cache instance, if there is one.
+	 *
+	 * @return Shared cache instance or null, if {@link #getInstance(File, long)} was never called.
+	 */
+	public static synchronized ResultCache getCurrentInstance() {
+		return g_instance;
+	}
+
+	//
+	// Public Methods
+	//
+
+	/**
+	 * Returns the directory of this cache.
+	 *
+	 * @return Cache directory.
+	 */
+	public File getDirectory() {
+		return m_dirCache;
+	}
+
+	/**
+	 * Returns the maximum size of this cache.
+	 *
+	 * @return Maximum size in bytes.
+	 */
+	public long getMaxSizeInBytes() {
+		return m_lMaxSizeInBytes;
+	}
+
+	/**
+	 * Creates a cache key for the specified namespace and input cells. Molecule cells
+	 * are represented by their binary pickle, all other cells by their serialized form.
+	 * Cells without a registered KNIME cell serializer are hashed based on their Java
+	 * serialization, which is never read back.
+	 *
+	 * @param strNamespace Namespace describing the calculation context, e.g. node type,
+	 * 		settings and software versions. Must not be null.
+	 * @param arrCells Input cells the result depends on. Null values are allowed.
+	 *
+	 * @return Hexadecimal SHA-256 key.
+	 *
+	 * @throws IOException Thrown, if a cell could not be serialized for hashing.
+	 */
+	public static String createKey(final String strNamespace, final DataCell... arrCells) throws IOException {
+		final MessageDigest digest = createDigest();
+		digest.update(strNamespace.getBytes(StandardCharsets.UTF_8));
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		final CellOutput cellOut = new CellOutput(out);
+
+		for (final DataCell cell : arrCells) {
+			out.reset();
+			if (cell == null) {
+				cellOut.writeByte(MARKER_MISSING_CELL);
+			}
+			else if (!cell.isMissing() && cell instanceof RDKitMolValue) {
+				cellOut.writeUTF(RDKitMolValue.class.getName());
+				cellOut.write(RDKitTypeSerializationUtils.serializeMolValue((RDKitMolValue)cell));
+			}
+			else if (!cell.isMissing() && !DataTypeRegistry.getInstance().getSerializer(cell.getClass()).isPresent()) {
+				cellOut.writeUTF(cell.getClass().getName());
+				final ObjectOutputStream outObject = new ObjectOutputStream(cellOut);
+				outObject.writeObject(cell);
+				outObject.flush();
+			}
+			else {
+				cellOut.writeDataCell(cell);
+			}
+			cellOut.flush();
+			digest.update(Integer.toString(out.size()).getBytes(StandardCharsets.US_ASCII));
+			digest.update(out.toByteArray());
+		}
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Creates a hexadecimal SHA-256 hash of the specified strings. This is useful
+	 * to generate namespaces for keys.
+	 *
+	 * @param arrParts Parts to be hashed. Null values are allowed.
+	 *
+	 * @return Hexadecimal SHA-256 hash.
+	 */
+	public static String createHash(final String... arrParts) {
+		final MessageDigest digest = createDigest();
+		for (final String strPart : arrParts) {
+			digest.update(String.valueOf(strPart).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte)0);
+		}
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Looks up result cells in the cache.
+	 *
+	 * @param strKey Key created with {@link #createKey(String, DataCell...)}. Must not be null.
+	 * @param iExpectedCellCount Number of cells that are expected. If an entry is found
+	 * 		with a different number of cells it is treated as a miss.
+	 *
+	 * @return Cached cells or null, if not found.
+	 */
+	public DataCell[] get(final String strKey, final int iExpectedCellCount) {
+		final File fileEntry = getEntryFile(strKey);
+		DataCell[] arrCells = null;
+
+		if (fileEntry.isFile()) {
+			try (final CellInput in = new CellInput(new BufferedInputStream(new FileInputStream(fileEntry)))) {
+				if (in.readInt() == FORMAT_VERSION) {
+					final long lCalculationNanos = in.readLong();
+					final int iCellCount = in.readInt();
+					if (iCellCount == iExpectedCellCount) {
+						final DataCell[] arrRead = new DataCell[iCellCount];
+						for (int i = 0; i < iCellCount; i++) {
+							arrRead[i] = in.readDataCell();
+						}
+						arrCells = arrRead;
+						m_lSavedNanos.addAndGet(lCalculationNanos);
+					}
+				}
+			}
+			catch (final Exception exc) {
+				LOGGER.debug("Unable to read result cache entry " + fileEntry + " - Removing it.", exc);
+				deleteEntry(fileEntry);
+			}
+
+			if (arrCells != null) {
+				// Touch entry for LRU eviction
+				fileEntry.setLastModified(System.currentTimeMillis());
+			}
+		}
+
+		if (arrCells == null) {
+			m_lMisses.incrementAndGet();
+		}
+		else {
+			m_lHits.incrementAndGet();
+		}
+
+		return arrCells;
+	}
+
+	/**
+	 * Stores result cells in the cache. If the cache grows too large
+	 * afterwards, the least recently used entries are evicted.
+	 *
+	 * @param strKey Key created with {@link #createKey(String, DataCell...)}. Must not be null.
+	 * @param arrCells Cells to be stored. Must not be null.
+	 * @param lCalculationNanos Time in nanoseconds that it took to calculate the result cells.
+	 * 		This is used to compute the saved time on future hits.
+	 *
+	 * @return True, if the cells were stored. False, if they could not be stored, e.g.
+	 * 		because a cell has no registered KNIME cell serializer.
+	 */
+	public boolean put(final String strKey, final DataCell[] arrCells, final long lCalculationNanos) {
+		final File fileEntry = getEntryFile(strKey);
+		final File fileTemp = new File(fileEntry.getParentFile(), fileEntry.getName() +
+				"." + Thread.currentThread().getId() + TEMP_EXTENSION);
+		boolean bSuccess = false;
+
+		try {
+			fileEntry.getParentFile().mkdirs();
+			try (final CellOutput out = new CellOutput(new BufferedOutputStream(new FileOutputStream(fileTemp)))) {
+				out.writeInt(FORMAT_VERSION);
+				out.writeLong(lCalculationNanos);
+				out.writeInt(arrCells.length);
+				for (final DataCell cell : arrCells) {
+					out.writeDataCell(cell);
+				}
+			}
+
+			final long lOldLength = fileEntry.length();
+			try {
+				Files.move(fileTemp.toPath(), fileEntry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (final IOException excAtomic) {
+				Files.move(fileTemp.toPath(), fileEntry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			m_lStores.incrementAndGet();
+			if (m_lCurrentSizeInBytes.get() >= 0) {
+				m_lCurrentSizeInBytes.addAndGet(fileEntry.length() - lOldLength);
+			}
+			bSuccess = true;
+		}
+		catch (final Exception exc) {
+			LOGGER.debug("Unable to write result cache entry " + fileEntry + ".", exc);
+			fileTemp.delete();
+		}
+
+		if (bSuccess) {
+			evictIfNecessary();
+		}
+
+		return bSuccess;
+	}
+
+	/**
+	 * Removes all entries from the cache and resets the statistics.
+	 */
+	public void clear() {
+		m_lockMaintenance.lock();
+		try {
+			for (final File file : listEntries()) {
+				deleteEntry(file);
+			}
+			m_lCurrentSizeInBytes.set(0);
+			m_lHits.set(0);
+			m_lMisses.set(0);
+			m_lStores.set(0);
+			m_lEvictions.set(0);
+			m_lSavedNanos.set(0);
+		}
+		finally {
+			m_lockMaintenance.unlock();
+		}
+	}
+
+	/**
+	 * Returns the current size of the cache. If not known yet, it will be determined
+	 * by walking through the cache directory.
+	 *
+	 * @return Size of all cache entries in bytes.
+	 */
+	public long getSizeInBytes() {
+		long lSize = m_lCurrentSizeInBytes.get();
+
+		if (lSize < 0) {
+			m_lockMaintenance.lock();
+			try {
+				lSize = m_lCurrentSizeInBytes.get();
+				if (lSize < 0) {
+					lSize = 0;
+					for (final File file : listEntries()) {
+						lSize += file.length();
+					}
+					m_lCurrentSizeInBytes.set(lSize);
+				}
+			}
+			finally {
+				m_lockMaintenance.unlock();
+			}
+		}
+
+		return lSize;
+	}
+
+	/**
+	 * Returns the number of cache hits since creation or last clearing.
+	 *
+	 * @return Number of hits.
+	 */
+	public long getHits() {
+		return m_lHits.get();
+	}
+
+	/**
+	 * Returns the number of cache misses since creation or last clearing.
+	 *
+	 * @return Number of misses.
+	 */
+	public long getMisses() {
+		return m_lMisses.get();
+	}
+
+	/**
+	 * Returns the number of stored entries since creation or last clearing.
+	 *
+	 * @return Number of stored entries.
+	 */
+	public long getStores() {
+		return m_lStores.get();
+	}
+
+	/**
+	 * Returns the number of evicted entries since creation or last clearing.
+	 *
+	 * @return Number of evicted entries.
+	 */
+	public long getEvictions() {
+		return m_lEvictions.get();
+	}
+
+	/**
+	 * Returns the calculation time that was saved by cache hits since creation or last clearing.
+	 *
+	 * @return Saved time in milliseconds.
+	 */
+	public long getSavedTimeInMillis() {
+		return m_lSavedNanos.get() / 1000000L;
+	}
+
+	/**
+	 * Returns a human readable summary of the cache statistics.
+	 *
+	 * @return Statistics summary.
+	 */
+	public String getStatistics() {
+		final long lHits = getHits();
+		final long lTotal = lHits + getMisses();
+		return "Result cache: " + lHits + " hits, " + getMisses() + " misses" +
+				(lTotal > 0 ? " (" + (lHits * 100 / lTotal) + "% hit rate)" : "") +
+				", " + getStores() + " stored, " + getEvictions() + " evicted, " +
+				getSavedTimeInMillis() + "ms saved, " + (getSizeInBytes() / 1024 / 1024) + " of " +
+				(m_lMaxSizeInBytes / 1024 / 1024) + " MB used";
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Evicts least recently used entries, if the cache is larger than its maximum size.
+	 * If another thread is already doing maintenance work, this method returns immediately.
+	 */
+	private void evictIfNecessary() {
+		if (getSizeInBytes() <= m_lMaxSizeInBytes || !m_lockMaintenance.tryLock()) {
+			return;
+		}
+
+		try {
+			final List<File> listEntries = listEntries();
+			final List<long[]> listInfos = new ArrayList<>(listEntries.size());
+			long lSize = 0;
+			for (int i = 0; i < listEntries.size(); i++) {
+				final File file = listEntries.get(i);
+				final long lLength = file.length();
+				lSize += lLength;
+				listInfos.add(new long[] { file.lastModified(), lLength, i });
+			}
+
+			// Oldest first
+			Collections.sort(listInfos, (a, b) -> Long.compare(a[0], b[0]));
+
+			final long lTargetSize = m_lMaxSizeInBytes / 100 * EVICTION_TARGET_PERCENTAGE;
+			for (final long[] arrInfo : listInfos) {
+				if (lSize <= lTargetSize) {
+					break;
+				}
+				if (deleteEntry(listEntries.get((int)arrInfo[2]))) {
+					lSize -= arrInfo[1];
+					m_lEvictions.incrementAndGet();
+				}
+			}
+
+			m_lCurrentSizeInBytes.set(lSize);
+		}
+		finally {
+			m_lockMaintenance.unlock();
+		}
+	}
+
+	/**
+	 * Returns the file for the specified key. Entries are spread over 256 sub directories
+	 * based on the first two characters of the key to keep directories small.
+	 *
+	 * @param strKey Cache key. Must not be null.
+	 *
+	 * @return File of the entry.
+	 */
+	private File getEntryFile(final String strKey) {
+		return new File(new File(m_dirCache, strKey.substring(0, 2)), strKey.substring(2) + ENTRY_EXTENSION);
+	}
+
+	/**
+	 * Lists all entry files of the cache.
+	 *
+	 * @return List of entry files. Never null.
+	 */
+	private List<File> listEntries() {
+		final List<File> listEntries = new ArrayList<>();
+		final File[] arrDirs = m_dirCache.listFiles(File::isDirectory);
+
+		if (arrDirs != null) {
+			for (final File dir : arrDirs) {
+				final File[] arrFiles = dir.listFiles((d, name) -> name.endsWith(ENTRY_EXTENSION));
+				if (arrFiles != null) {
+					Collections.addAll(listEntries, arrFiles);
+				}
+			}
+		}
+
+		return listEntries;
+	}
+
+	/**
+	 * Deletes the specified entry file.
+	 *
+	 * @param fileEntry Entry file. Must not be null.
+	 *
+	 * @return True, if deleted. False otherwise.
+	 */
+	private boolean deleteEntry(final File fileEntry) {
+		final boolean bDeleted = fileEntry.delete();
+		if (!bDeleted) {
+			LOGGER.debug("Unable to delete result cache entry " + fileEntry);
+		}
+		return bDeleted;
+	}
+
+	//
+	// Static Private Methods
+	//
+
+	/**
+	 * Creates a SHA-256 message digest.
+	 *
+	 * @return Message digest.
+	 */
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (final NoSuchAlgorithmException exc) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(exc);
+		}
+	}
+
+	/**
+	 * Converts the specified bytes into a lower case hexadecimal string.
+	 *
+	 * @param arrBytes Bytes. Must not be null.
+	 *
+	 * @return Hexadecimal string.
+	 */
+	private static String toHex(final byte[] arrBytes) {
+		final char[] arrChars = new char[arrBytes.length * 2];
+		for (int i = 0; i < arrBytes.length; i++) {
+			arrChars[i * 2] = HEX[(arrBytes[i] >> 4) & 0x0F];
+			arrChars[i * 2 + 1] = HEX[arrBytes[i] & 0x0F];
+		}
+		return new String(arrChars);
+	}
+
+	//
+	// Inner Classes
+	//
+
+	/**
+	 * Data output, which writes data cells using registered KNIME cell serializers.
+	 * Cells without a serializer cannot be written.
+	 */
+	static class CellOutput extends DataOutputStream implements DataCellDataOutput {
+
+		/**
+		 * Creates a new cell output stream.
+		 *
+		 * @param out Underlying output stream. Must not be null.
+		 */
+		public CellOutput(final OutputStream out) {
+			super(out);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		public void writeDataCell(final DataCell cell) throws IOException {
+			if (cell == null || cell.isMissing()) {
+				writeByte(MARKER_MISSING_CELL);
+				return;
+			}
+
+			final Optional<DataCellSerializer<DataCell>> serializer =
+					DataTypeRegistry.getInstance().getSerializer((Class)cell.getClass());
+			if (serializer.isPresent()) {
+				writeByte(MARKER_KNIME_SERIALIZER);
+				writeUTF(cell.getClass().getName());
+				serializer.get().serialize(cell, this);
+			}
+			else {
+				throw new IOException("No serializer found for cell class " + cell.getClass().getName());
+			}
+		}
+	}
+
+	/**
+	 * Data input, which reads data cells written by {@link CellOutput}.
+	 */
+	static class CellInput extends DataInputStream implements DataCellDataInput {
+
+		/**
+		 * Creates a new cell input stream.
+		 *
+		 * @param in Underlying input stream. Must not be null.
+		 */
+		public CellInput(final InputStream in) {
+			super(in);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public DataCell readDataCell() throws IOException {
+			final byte marker = readByte();
+			DataCell cell;
+
+			switch (marker) {
+			case MARKER_MISSING_CELL:
+				cell = DataType.getMissingCell();
+				break;
+
+			case MARKER_KNIME_SERIALIZER:
+				final String strClassName = readUTF();
+				final Optional<Class<? extends DataCell>> cellClass =
+						DataTypeRegistry.getInstance().getCellClass(strClassName);
+				if (!cellClass.isPresent()) {
+					throw new IOException("Unknown cell class " + strClassName);
+				}
+				final Optional<? extends DataCellSerializer<? extends DataCell>> serializer =
+						DataTypeRegistry.getInstance().getSerializer(cellClass.get());
+				if (!serializer.isPresent()) {
+					throw new IOException("No serializer found for cell class " + strClassName);
+				}
+				cell = serializer.get().deserialize(this);
+				break;
+
+			default:
+				throw new IOException("Unknown cell marker " + marker);
+			}
+
+			return cell;
+		}
+	}
+}
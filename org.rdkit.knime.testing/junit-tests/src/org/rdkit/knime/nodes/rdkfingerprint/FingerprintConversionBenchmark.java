@@ -0,0 +1,256 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C)2023
+ *  Novartis Pharma AG, Switzerland
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * -------------------------------------------------------------------
+ *
+ */
+
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.RDKit.ExplicitBitVect;
+import org.RDKit.ROMol;
+import org.RDKit.RWMol;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.knime.core.data.vector.bitvector.DenseBitVector;
+import org.rdkit.knime.RDKitTypesPluginActivator;
+
+/**
+ * Benchmark for the conversion of RDKit fingerprints into KNIME fingerprints. For all
+ * bit-based fingerprint types it measures the calculation, the former bit by bit conversion
+ * (one native call per bit) and the bulk conversion of {@link FingerprintType#convertAndDispose(ExplicitBitVect)},
+ * prints the times per molecule and asserts that both conversions deliver identical results.
+ * The benchmark is skipped in the default test run. It runs only, if the system property
+ * {@value #PROPERTY_RUN_BENCHMARKS} is set to true. The number of repetitions can be set
+ * with the system property {@value #PROPERTY_REPETITIONS}.
+ *
+ * @author agent
+ */
+public class FingerprintConversionBenchmark {
+
+	//
+	// Constants
+	//
+
+	/** System property, which needs to be set to true to run benchmarks. */
+	public static final String PROPERTY_RUN_BENCHMARKS = "rdkit.knime.benchmarks";
+
+	/** System property to set the number of repetitions. */
+	public static final String PROPERTY_REPETITIONS = "rdkit.knime.benchmarks.repetitions";
+
+	/** Default number of repetitions. */
+	private static final int DEFAULT_REPETITIONS = 200;
+
+	/** Molecules used for the benchmark. */
+	private static final String[] SMILES = new String[] {
+		"CC(=O)Oc1ccccc1C(=O)O",
+		"CN1CCC[C@H]1c1cccnc1",
+		"CC(C)Cc1ccc(cc1)[C@@H](C)C(=O)O",
+		"CN1C(=O)CN=C(c2ccccc2)c2cc(Cl)ccc12",
+		"COc1ccc2[nH]cc(CCN(C)C)c2c1",
+		"O=C(O)c1ccccc1O",
+		"CC1(C)S[C@@H]2[C@H](NC(=O)Cc3ccccc3)C(=O)N2[C@H]1C(=O)O",
+		"Clc1ccc(cc1)C(c1ccccc1)n1ccnc1",
+		"CCN(CC)C(=O)[C@H]1CN(C)[C@@H]2Cc3c[nH]c4cccc(C2=C1)c34",
+		"C[C@]12CC[C@H]3[C@@H](CC=C4C[C@@H](O)CC[C@]34C)[C@@H]1CC[C@@H]2O",
+		"Cc1onc(-c2ccccc2Cl)c1C(=O)N[C@@H]1C(=O)N2[C@@H](C(=O)O)C(C)(C)S[C@H]12",
+		"CC(C)NCC(O)COc1cccc2ccccc12",
+		"OC(=O)CCCc1ccc(N(CCCl)CCCl)cc1",
+		"Nc1nc(N)c2nc(-c3ccccc3)c(N)nc2n1",
+		"CC(=O)Nc1ccc(O)cc1"
+	};
+
+	//
+	// Global Variables
+	//
+
+	/** Molecules created from the SMILES. */
+	private static List<ROMol> g_listMols;
+
+	//
+	// Static Methods
+	//
+
+	/**
+	 * Skips the benchmark, if not requested, makes sure that the RDKit libraries
+	 * are loaded and creates the molecules.
+	 *
+	 * @throws Exception Thrown, if the RDKit libraries could not be loaded.
+	 */
+	@BeforeClass
+	public static void setUp() throws Exception {
+		Assume.assumeTrue("Benchmarks are only run with -D" + PROPERTY_RUN_BENCHMARKS + "=true",
+				Boolean.getBoolean(PROPERTY_RUN_BENCHMARKS));
+		RDKitTypesPluginActivator.checkErrorState();
+
+		g_listMols = new ArrayList<>();
+		for (final String strSmiles : SMILES) {
+			final RWMol mol = RWMol.MolFromSmiles(strSmiles);
+			assertNotNull("Benchmark molecule could not be parsed: " + strSmiles, mol);
+			g_listMols.add(mol);
+		}
+	}
+
+	/**
+	 * Frees the molecules.
+	 */
+	@AfterClass
+	public static void tearDown() {
+		if (g_listMols != null) {
+			for (final ROMol mol : g_listMols) {
+				mol.delete();
+			}
+			g_listMols = null;
+		}
+	}
+
+	//
+	// Tests
+	//
+
+	/**
+	 * Measures calculation, bit by bit conversion and bulk conversion of all
+	 * bit-based fingerprint types.
+	 */
+	@Test
+	public void benchmarkBitBasedConversion() {
+		final int iRepetitions = Integer.getInteger(PROPERTY_REPETITIONS, DEFAULT_REPETITIONS);
+		System.out.println("Molecules: " + g_listMols.size() + ", Repetitions: " + iRepetitions);
+		System.out.println(String.format("%-12s %14s %16s %14s %8s",
+				"Type", "Calc [us/mol]", "Former [us/mol]", "Bulk [us/mol]", "Speedup"));
+
+		for (final FingerprintType type : FingerprintType.values()) {
+			final FingerprintSettings settings = createSettings(type);
+			long lCalcNanos = 0;
+			long lFormerNanos = 0;
+			long lBulkNanos = 0;
+			int iCount = 0;
+
+			try {
+				for (int r = 0; r < iRepetitions; r++) {
+					for (final ROMol mol : g_listMols) {
+						long lStart = System.nanoTime();
+						final ExplicitBitVect fpRdkit = type.calculate(mol, settings);
+						lCalcNanos += System.nanoTime() - lStart;
+						if (fpRdkit == null) {
+							continue;
+						}
+
+						lStart = System.nanoTime();
+						final DenseBitVector fpFormer = convertBitByBit(fpRdkit);
+						lFormerNanos += System.nanoTime() - lStart;
+
+						lStart = System.nanoTime();
+						final DenseBitVector fpBulk = type.convertAndDispose(fpRdkit);
+						lBulkNanos += System.nanoTime() - lStart;
+
+						assertEquals(type.getName() + " fingerprint of " + mol.MolToSmiles(), fpFormer, fpBulk);
+						iCount++;
+					}
+				}
+			}
+			catch (final UnsupportedOperationException exc) {
+				// Type cannot be calculated without further input
+				System.out.println(String.format("%-12s %s", type.getName(), exc.getMessage()));
+				continue;
+			}
+
+			final double dDivisor = Math.max(1, iCount) * 1000.0d;
+			System.out.println(String.format("%-12s %14.2f %16.2f %14.2f %8.1f",
+					type.getName(), lCalcNanos / dDivisor, lFormerNanos / dDivisor, lBulkNanos / dDivisor,
+					(double)lFormerNanos / Math.max(1, lBulkNanos)));
+		}
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Creates fingerprint settings with the default values of the fingerprint node dialog.
+	 *
+	 * @param type Fingerprint type. Must not be null.
+	 *
+	 * @return Fingerprint settings.
+	 */
+	private FingerprintSettings createSettings(final FingerprintType type) {
+		return type.getSpecification(
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_TORSION_PATH_LENGTH,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_MIN_PATH,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_MAX_PATH,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_ATOMPAIR_MIN_PATH,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_ATOMPAIR_MAX_PATH,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_NUM_BITS,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_RADIUS,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_LAYER_FLAGS,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_USECHIRALITY_OPTION,
+				false, null, true, false);
+	}
+
+	/**
+	 * Converts an RDKit fingerprint into a KNIME fingerprint bit by bit,
+	 * the way it was done before the bulk conversion was introduced.
+	 *
+	 * @param fpRdkit RDKit fingerprint. Must not be null. Will not be disposed.
+	 *
+	 * @return KNIME fingerprint.
+	 */
+	private DenseBitVector convertBitByBit(final ExplicitBitVect fpRdkit) {
+		final int iCount = (int)fpRdkit.getNumBits();
+		final DenseBitVector fp = new DenseBitVector(iCount);
+		for (int i = 0; i < iCount; i++) {
+			if (fpRdkit.getBit(i)) {
+				fp.set(i);
+			}
+		}
+		return fp;
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C)2023
+ *  Novartis Pharma AG, Switzerland
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * -------------------------------------------------------------------
+ *
+ */
+
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.RDKit.ExplicitBitVect;
+import org.RDKit.ROMol;
+import org.RDKit.RWMol;
+import org.RDKit.SparseIntVect32;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.knime.core.data.vector.bitvector.DenseBitVector;
+import org.knime.core.data.vector.bytevector.DenseByteVector;
+import org.rdkit.knime.RDKitTypesPluginActivator;
+
+/**
+ * Tests the bulk conversion of RDKit fingerprints into KNIME fingerprints
+ * against the former conversion, which transferred every bit or count with
+ * a separate native call.
+ *
+ * @author agent
+ */
+public class FingerprintConversionTest {
+
+	//
+	// Constants
+	//
+
+	/** Molecules used for the tests. */
+	private static final String[] SMILES = new String[] {
+		"CC(=O)Oc1ccccc1C(=O)O",
+		"CN1CCC[C@H]1c1cccnc1",
+		"CC(C)Cc1ccc(cc1)[C@@H](C)C(=O)O",
+		"CN1C(=O)CN=C(c2ccccc2)c2cc(Cl)ccc12",
+		"COc1ccc2[nH]cc(CCN(C)C)c2c1",
+		"CC1(C)S[C@@H]2[C@H](NC(=O)Cc3ccccc3)C(=O)N2[C@H]1C(=O)O",
+		"C[C@]12CC[C@H]3[C@@H](CC=C4C[C@@H](O)CC[C@]34C)[C@@H]1CC[C@@H]2O",
+		"Nc1nc(N)c2nc(-c3ccccc3)c(N)nc2n1",
+		"[Na+].[Cl-]",
+		"C"
+	};
+
+	//
+	// Global Variables
+	//
+
+	/** Molecules created from the SMILES. */
+	private static List<ROMol> g_listMols;
+
+	//
+	// Static Methods
+	//
+
+	/**
+	 * Makes sure that the RDKit libraries are loaded and creates the test molecules.
+	 *
+	 * @throws Exception Thrown, if the RDKit libraries could not be loaded.
+	 */
+	@BeforeClass
+	public static void setUp() throws Exception {
+		RDKitTypesPluginActivator.checkErrorState();
+
+		g_listMols = new ArrayList<>();
+		for (final String strSmiles : SMILES) {
+			final RWMol mol = RWMol.MolFromSmiles(strSmiles);
+			assertNotNull("Test molecule could not be parsed: " + strSmiles, mol);
+			g_listMols.add(mol);
+		}
+	}
+
+	/**
+	 * Frees the test molecules.
+	 */
+	@AfterClass
+	public static void tearDown() {
+		if (g_listMols != null) {
+			for (final ROMol mol : g_listMols) {
+				mol.delete();
+			}
+			g_listMols = null;
+		}
+	}
+
+	//
+	// Tests
+	//
+
+	/**
+	 * Tests that the bulk conversion delivers the same bits as the bit by bit
+	 * conversion for all fingerprint types.
+	 */
+	@Test
+	public void testBitBasedConversion() {
+		for (final FingerprintType type : FingerprintType.values()) {
+			final FingerprintSettings settings = createSettings(type, false);
+			for (final ROMol mol : g_listMols) {
+				final ExplicitBitVect fpRdkit;
+				try {
+					fpRdkit = type.calculate(mol, settings);
+				}
+				catch (final UnsupportedOperationException exc) {
+					// Type cannot be calculated without further input
+					break;
+				}
+				if (fpRdkit != null) {
+					final DenseBitVector fpExpected = convertBitByBit(fpRdkit);
+					assertEquals(type.getName() + " fingerprint of " + mol.MolToSmiles(), 
+							fpExpected, type.convertAndDispose(fpRdkit));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests the bulk conversion of bit vectors with sizes, which are not a 
+	 * multiple of 8 or 64, and with the first and last bits set.
+	 */
+	@Test
+	public void testBitBasedConversionOfOddSizes() {
+		for (final int iNumBits : new int[] { 1, 7, 8, 9, 63, 64, 65, 1000, 2047 }) {
+			final ExplicitBitVect fpRdkit = new ExplicitBitVect(iNumBits);
+			fpRdkit.setBit(0);
+			fpRdkit.setBit(iNumBits - 1);
+			fpRdkit.setBit(iNumBits / 2);
+			final DenseBitVector fpExpected = convertBitByBit(fpRdkit);
+			assertEquals("Fingerprint with " + iNumBits + " bits", 
+					fpExpected, FingerprintType.morgan.convertAndDispose(fpRdkit));
+		}
+	}
+
+	/**
+	 * Tests that the conversion of count-based fingerprints delivers the same
+	 * counts as setting every count separately.
+	 */
+	@Test
+	public void testCountBasedConversion() {
+		final SparseIntVect32 fpRdkit = new SparseIntVect32(1024);
+		fpRdkit.setVal(0, 1);
+		fpRdkit.setVal(17, 255);
+		fpRdkit.setVal(512, 3);
+		fpRdkit.setVal(1023, 42);
+		final DenseByteVector fpExpected = new DenseByteVector(fpRdkit.getLength());
+		for (int i = 0; i < fpRdkit.getLength(); i++) {
+			fpExpected.set(i, fpRdkit.getVal(i));
+		}
+		assertEquals(fpExpected, FingerprintType.morgan.convertAndDispose(fpRdkit));
+	}
+
+	/**
+	 * Tests that all count-based fingerprints can be calculated and converted.
+	 */
+	@Test
+	public void testCountBasedCalculation() {
+		for (final FingerprintType type : FingerprintType.values()) {
+			if (type.canCalculateCountBasedFingerprint()) {
+				final FingerprintSettings settings = createSettings(type, true);
+				for (final ROMol mol : g_listMols) {
+					final DenseByteVector fp = type.calculateCountBased(mol, settings);
+					assertNotNull(type.getName() + " count-based fingerprint of " + mol.MolToSmiles(), fp);
+				}
+			}
+		}
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Creates fingerprint settings with the default values of the fingerprint node dialog.
+	 *
+	 * @param type Fingerprint type. Must not be null.
+	 * @param bCountBased Set to true to create settings for count-based fingerprints.
+	 *
+	 * @return Fingerprint settings.
+	 */
+	private FingerprintSettings createSettings(final FingerprintType type, final boolean bCountBased) {
+		return type.getSpecification(
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_TORSION_PATH_LENGTH,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_MIN_PATH,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_MAX_PATH,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_ATOMPAIR_MIN_PATH,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_ATOMPAIR_MAX_PATH,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_NUM_BITS,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_RADIUS,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_LAYER_FLAGS,
+				AbstractRDKitFingerprintNodeDialog.DEFAULT_USECHIRALITY_OPTION,
+				false, null, true, bCountBased);
+	}
+
+	/**
+	 * Converts an RDKit fingerprint into a KNIME fingerprint bit by bit,
+	 * the way it was done before the bulk conversion was introduced.
+	 *
+	 * @param fpRdkit RDKit fingerprint. Must not be null. Will not be disposed.
+	 *
+	 * @return KNIME fingerprint.
+	 */
+	private DenseBitVector convertBitByBit(final ExplicitBitVect fpRdkit) {
+		final int iCount = (int)fpRdkit.getNumBits();
+		final DenseBitVector fp = new DenseBitVector(iCount);
+		for (int i = 0; i < iCount; i++) {
+			if (fpRdkit.getBit(i)) {
+				fp.set(i);
+			}
+		}
+		return fp;
+	}
+}
@@ -0,0 +1,292 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C)2023
+ *  Novartis Pharma AG, Switzerland
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * -------------------------------------------------------------------
+ *
+ */
+
+package org.rdkit.knime.nodes.rdkfingerprint;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the popcount-bounded search of the {@link SimilarityScanner} against
+ * a brute-force scan, which calculates the similarity of the query to every target.
+ *
+ * @author agent
+ */
+public class SimilarityScannerTest {
+
+	//
+	// Constants
+	//
+
+	/** Number of target fingerprints. */
+	private static final int TARGET_COUNT = 2000;
+
+	/** Number of query fingerprints. */
+	private static final int QUERY_COUNT = 25;
+
+	/** Tolerance for comparing similarities. */
+	private static final double TOLERANCE = 1e-12d;
+
+	//
+	// Tests
+	//
+
+	/**
+	 * Tests a Tanimoto search for all hits above a threshold.
+	 */
+	@Test
+	public void testTanimotoThreshold() {
+		checkSearch(1024, SimilarityMetric.Tanimoto, 0.15d, 0, 1);
+	}
+
+	/**
+	 * Tests a Tanimoto search for the top k hits without threshold.
+	 */
+	@Test
+	public void testTanimotoTopK() {
+		checkSearch(1024, SimilarityMetric.Tanimoto, 0.0d, 10, 1);
+	}
+
+	/**
+	 * Tests a Dice search for all hits above a threshold.
+	 */
+	@Test
+	public void testDiceThreshold() {
+		checkSearch(1024, SimilarityMetric.Dice, 0.25d, 0, 1);
+	}
+
+	/**
+	 * Tests a Dice search for the top k hits above a threshold.
+	 */
+	@Test
+	public void testDiceTopK() {
+		checkSearch(1024, SimilarityMetric.Dice, 0.3d, 5, 1);
+	}
+
+	/**
+	 * Tests searches with a fingerprint length, which is not a multiple of 64.
+	 */
+	@Test
+	public void testOddFingerprintLength() {
+		checkSearch(1000, SimilarityMetric.Tanimoto, 0.15d, 20, 1);
+		checkSearch(1000, SimilarityMetric.Dice, 0.0d, 0, 1);
+	}
+
+	/**
+	 * Tests that searches split into slices deliver the same hits as a brute-force scan.
+	 */
+	@Test
+	public void testSlices() {
+		checkSearch(1024, SimilarityMetric.Tanimoto, 0.15d, 0, 7);
+		checkSearch(1024, SimilarityMetric.Tanimoto, 0.0d, 10, 4);
+		checkSearch(1024, SimilarityMetric.Dice, 0.0d, 3, 3);
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Searches random queries in random targets with the scanner and compares the hits
+	 * with the result of a brute-force scan.
+	 *
+	 * @param iNumBits Fingerprint length.
+	 * @param metric Tanimoto or Dice.
+	 * @param dThreshold Similarity threshold.
+	 * @param iMaxHits Maximal number of hits or 0 for all.
+	 * @param iSliceCount Number of slices the search is split into.
+	 */
+	private void checkSearch(final int iNumBits, final SimilarityMetric metric, final double dThreshold,
+			final int iMaxHits, final int iSliceCount) {
+		final Random random = new Random(42);
+		final List<BitSet> listTargets = new ArrayList<BitSet>();
+		final FingerprintArena arena = new FingerprintArena(iNumBits, false, TARGET_COUNT);
+
+		for (int i = 0; i < TARGET_COUNT; i++) {
+			// Every fifth target is a variation of an earlier one to get also high similarities
+			final BitSet target = (i % 5 == 4 ? mutate(listTargets.get(random.nextInt(i)), iNumBits, 10, random) :
+				createRandomFingerprint(iNumBits, random));
+			listTargets.add(target);
+			arena.add(toWords(target, iNumBits), i, null);
+		}
+		arena.sortByPopCount();
+
+		final SimilarityScanner scanner = new SimilarityScanner(metric, Double.NaN, Double.NaN, dThreshold, iMaxHits);
+
+		for (int q = 0; q < QUERY_COUNT; q++) {
+			final BitSet query = (q % 2 == 0 ? mutate(listTargets.get(random.nextInt(TARGET_COUNT)), iNumBits, 20, random) :
+				createRandomFingerprint(iNumBits, random));
+			final long[] arrQuery = toWords(query, iNumBits);
+
+			final SimilarityHits hits;
+			if (iSliceCount == 1) {
+				hits = scanner.search(arena, arrQuery);
+			}
+			else {
+				hits = new SimilarityHits(iMaxHits);
+				for (int iSlice = 0; iSlice < iSliceCount; iSlice++) {
+					hits.addAll(scanner.search(arena, arrQuery, iSlice, iSliceCount));
+				}
+				hits.sort();
+			}
+
+			final List<double[]> listExpected = searchBruteForce(listTargets, query, metric, dThreshold, iMaxHits);
+			final String strContext = metric + " query " + q + ": ";
+			assertEquals(strContext + "Number of hits", listExpected.size(), hits.size());
+			for (int i = 0; i < listExpected.size(); i++) {
+				assertEquals(strContext + "Tag of hit " + i, (long)listExpected.get(i)[1], hits.getTag(i));
+				assertEquals(strContext + "Similarity of hit " + i, listExpected.get(i)[0], hits.getSimilarity(i), TOLERANCE);
+			}
+		}
+	}
+
+	/**
+	 * Calculates the similarity of the query to every target and returns the hits
+	 * sorted by descending similarity and ascending tag.
+	 *
+	 * @param listTargets Target fingerprints. The list index is used as tag.
+	 * @param query Query fingerprint.
+	 * @param metric Tanimoto or Dice.
+	 * @param dThreshold Similarity threshold.
+	 * @param iMaxHits Maximal number of hits or 0 for all.
+	 *
+	 * @return Hits as pairs of similarity and tag.
+	 */
+	private List<double[]> searchBruteForce(final List<BitSet> listTargets, final BitSet query,
+			final SimilarityMetric metric, final double dThreshold, final int iMaxHits) {
+		final List<double[]> listHits = new ArrayList<double[]>();
+		final int a = query.cardinality();
+
+		for (int i = 0; i < listTargets.size(); i++) {
+			final BitSet target = listTargets.get(i);
+			final BitSet common = (BitSet)query.clone();
+			common.and(target);
+			final int b = target.cardinality();
+			final int c = common.cardinality();
+			final double dSimilarity;
+			if (metric == SimilarityMetric.Dice) {
+				dSimilarity = (a + b == 0 ? 0.0d : 2.0d * c / (a + b));
+			}
+			else {
+				dSimilarity = (a + b - c == 0 ? 0.0d : (double)c / (a + b - c));
+			}
+			if (dSimilarity >= dThreshold) {
+				listHits.add(new double[] { dSimilarity, i });
+			}
+		}
+
+		Collections.sort(listHits, new Comparator<double[]>() {
+			@Override
+			public int compare(final double[] hit1, final double[] hit2) {
+				final int iResult = Double.compare(hit2[0], hit1[0]);
+				return (iResult != 0 ? iResult : Double.compare(hit1[1], hit2[1]));
+			}
+		});
+
+		return (iMaxHits > 0 && listHits.size() > iMaxHits ? listHits.subList(0, iMaxHits) : listHits);
+	}
+
+	/**
+	 * Creates a random fingerprint with a random bit density between 2% and 30%.
+	 *
+	 * @param iNumBits Fingerprint length.
+	 * @param random Random generator.
+	 *
+	 * @return Fingerprint.
+	 */
+	private BitSet createRandomFingerprint(final int iNumBits, final Random random) {
+		final BitSet fp = new BitSet(iNumBits);
+		final double dDensity = 0.02d + 0.28d * random.nextDouble();
+		for (int i = 0; i < iNumBits; i++) {
+			if (random.nextDouble() < dDensity) {
+				fp.set(i);
+			}
+		}
+		return fp;
+	}
+
+	/**
+	 * Creates a copy of a fingerprint with some random bits flipped.
+	 *
+	 * @param fp Fingerprint. Will not be changed.
+	 * @param iNumBits Fingerprint length.
+	 * @param iFlips Number of bits to flip.
+	 * @param random Random generator.
+	 *
+	 * @return Changed copy of the fingerprint.
+	 */
+	private BitSet mutate(final BitSet fp, final int iNumBits, final int iFlips, final Random random) {
+		final BitSet result = (BitSet)fp.clone();
+		for (int i = 0; i < iFlips; i++) {
+			result.flip(random.nextInt(iNumBits));
+		}
+		return result;
+	}
+
+	/**
+	 * Converts a fingerprint into the word format of the {@link FingerprintArena}.
+	 *
+	 * @param fp Fingerprint.
+	 * @param iNumBits Fingerprint length.
+	 *
+	 * @return Words.
+	 */
+	private long[] toWords(final BitSet fp, final int iNumBits) {
+		final long[] arrWords = new long[(iNumBits + 63) / 64];
+		final long[] arrSet = fp.toLongArray();
+		System.arraycopy(arrSet, 0, arrWords, 0, Math.min(arrSet.length, arrWords.length));
+		return arrWords;
+	}
+}
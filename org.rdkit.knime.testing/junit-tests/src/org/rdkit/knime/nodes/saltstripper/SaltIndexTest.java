@@ -0,0 +1,233 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C)2023
+ *  Novartis Pharma AG, Switzerland
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * -------------------------------------------------------------------
+ *
+ */
+
+package org.rdkit.knime.nodes.saltstripper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.RDKit.RDKFuncs;
+import org.RDKit.ROMol;
+import org.RDKit.ROMol_Vect;
+import org.RDKit.RWMol;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.rdkit.knime.RDKitTypesPluginActivator;
+
+/**
+ * Tests the {@link SaltIndex} with element specific, generic query and multi-fragment salts
+ * as well as the order in which {@link SaltIndex#determineStrippedFragments(int[][])}
+ * strips off matched fragments.
+ *
+ * @author agent
+ */
+public class SaltIndexTest {
+
+	//
+	// Global Variables
+	//
+
+	/** Molecules created during a test, which get freed afterwards. */
+	private final List<ROMol> m_listCleanup = new ArrayList<>();
+
+	//
+	// Static Methods
+	//
+
+	/**
+	 * Makes sure that the RDKit libraries are loaded.
+	 *
+	 * @throws Exception Thrown, if the RDKit libraries could not be loaded.
+	 */
+	@BeforeClass
+	public static void setUp() throws Exception {
+		RDKitTypesPluginActivator.checkErrorState();
+	}
+
+	//
+	// Tests
+	//
+
+	/**
+	 * Frees all molecules created during a test.
+	 */
+	@After
+	public void tearDown() {
+		for (final ROMol mol : m_listCleanup) {
+			mol.delete();
+		}
+		m_listCleanup.clear();
+	}
+
+	/**
+	 * Tests that element specific and generic query salts match complete fragments only.
+	 */
+	@Test
+	public void testSingleFragmentSalts() {
+		final SaltIndex index = createIndex("[Cl,Br,I]", "[Na+]", "[#8]");
+		assertEquals(3, index.size());
+		assertEquals(1, index.getGenericSaltCount());
+		assertEquals(0, index.getMultiFragmentSaltCount());
+
+		final ROMol_Vect vFrags = getFragments("OC(=O)c1ccccc1.[Br-].[Na+].O");
+		assertArrayEquals(new int[0], index.findMatchingSalts(vFrags.get(0)));
+		assertArrayEquals(new int[] { 0 }, index.findMatchingSalts(vFrags.get(1)));
+		assertArrayEquals(new int[] { 1 }, index.findMatchingSalts(vFrags.get(2)));
+		assertArrayEquals(new int[] { 2 }, index.findMatchingSalts(vFrags.get(3)));
+		vFrags.delete();
+
+		assertFalse(index.isWholeMoleculeStrippingRequired(createMol("OC(=O)c1ccccc1.[Br-]")));
+	}
+
+	/**
+	 * Tests that salts with multiple fragments are not matched against single fragments,
+	 * but require stripping of the whole molecule, which deletes them like former versions.
+	 */
+	@Test
+	public void testMultiFragmentSalts() {
+		final SaltIndex index = createIndex("[Cl]", "[Na+].[Cl-]");
+		assertEquals(0, index.getGenericSaltCount());
+		assertEquals(1, index.getMultiFragmentSaltCount());
+
+		final ROMol mol = createMol("CC(=O)O.[Na+].[Cl-]");
+		final ROMol_Vect vFrags = getFragments("CC(=O)O.[Na+].[Cl-]");
+		assertArrayEquals(new int[0], index.findMatchingSalts(vFrags.get(1)));
+		assertArrayEquals(new int[] { 0 }, index.findMatchingSalts(vFrags.get(2)));
+		vFrags.delete();
+
+		assertTrue(index.isWholeMoleculeStrippingRequired(mol));
+		assertFalse(index.isWholeMoleculeStrippingRequired(createMol("CC(=O)O.[K+].[Cl-]")));
+
+		final ROMol molStripped = RDKFuncs.deleteSubstructs(mol, createSalt("[Na+].[Cl-]"), true);
+		m_listCleanup.add(molStripped);
+		assertEquals(4, molStripped.getNumAtoms());
+	}
+
+	/**
+	 * Tests that salts are applied in their order and that the last fragment is never stripped off.
+	 */
+	@Test
+	public void testDetermineStrippedFragments() {
+		assertArrayEquals(new boolean[] { false, true, true },
+				SaltIndex.determineStrippedFragments(new int[][] { {}, { 0 }, { 0 } }));
+		assertArrayEquals(new boolean[] { true, true, false },
+				SaltIndex.determineStrippedFragments(new int[][] { { 0 }, { 1 }, {} }));
+		assertArrayEquals(new boolean[] { true, false },
+				SaltIndex.determineStrippedFragments(new int[][] { { 0 }, { 1 } }));
+		assertArrayEquals(new boolean[] { true, false, true },
+				SaltIndex.determineStrippedFragments(new int[][] { { 0, 2 }, { 1 }, { 0, 2 } }));
+		assertNull(SaltIndex.determineStrippedFragments(new int[][] { { 0 }, { 0 } }));
+		assertNull(SaltIndex.determineStrippedFragments(new int[][] { {}, {} }));
+		assertNull(SaltIndex.determineStrippedFragments(new int[][] { { 0 } }));
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Creates a salt index for the passed in salt definitions.
+	 *
+	 * @param arrSmarts SMARTS of the salts.
+	 *
+	 * @return Salt index. Never null.
+	 */
+	private SaltIndex createIndex(final String... arrSmarts) {
+		final List<ROMol> listSalts = new ArrayList<>();
+		for (final String strSmarts : arrSmarts) {
+			listSalts.add(createSalt(strSmarts));
+		}
+		return new SaltIndex(listSalts);
+	}
+
+	/**
+	 * Creates a salt definition, which gets freed after the test.
+	 *
+	 * @param strSmarts SMARTS of the salt.
+	 *
+	 * @return Salt. Never null.
+	 */
+	private ROMol createSalt(final String strSmarts) {
+		final ROMol salt = RWMol.MolFromSmarts(strSmarts);
+		assertNotNull("Test salt could not be parsed: " + strSmarts, salt);
+		m_listCleanup.add(salt);
+		return salt;
+	}
+
+	/**
+	 * Creates a molecule, which gets freed after the test.
+	 *
+	 * @param strSmiles SMILES of the molecule.
+	 *
+	 * @return Molecule. Never null.
+	 */
+	private ROMol createMol(final String strSmiles) {
+		final ROMol mol = RWMol.MolFromSmiles(strSmiles);
+		assertNotNull("Test molecule could not be parsed: " + strSmiles, mol);
+		m_listCleanup.add(mol);
+		return mol;
+	}
+
+	/**
+	 * Splits a molecule into its fragments in atom order.
+	 *
+	 * @param strSmiles SMILES of the molecule.
+	 *
+	 * @return Fragments. Must be deleted by the caller.
+	 */
+	private ROMol_Vect getFragments(final String strSmiles) {
+		return RDKFuncs.getMolFrags(createMol(strSmiles));
+	}
+}
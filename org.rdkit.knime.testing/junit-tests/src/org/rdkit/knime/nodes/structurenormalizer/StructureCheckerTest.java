@@ -0,0 +1,289 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C)2023
+ *  Novartis Pharma AG, Switzerland
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * -------------------------------------------------------------------
+ *
+ */
+
+package org.rdkit.knime.nodes.structurenormalizer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.RDKit.RDKFuncs;
+import org.RDKit.StringInt_Pair;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.rdkit.knime.RDKitTypesPluginActivator;
+
+/**
+ * Tests the {@link StructureChecker} with several concurrent Structure Normalizer nodes using
+ * different configurations. Every thread simulates a normalizer node: It checks molecules in short
+ * sessions of the shared structure checker, so that the loaded configuration needs to be switched
+ * frequently. All results must be identical to reference results, which are determined beforehand
+ * without the shared session by loading every configuration directly, as the node did before.
+ * Any mismatch means that a node checked molecules with a configuration of another node.
+ *
+ * @author agent
+ */
+public class StructureCheckerTest {
+
+	//
+	// Constants
+	//
+
+	/** Molecules to be checked, which lead to different results depending on the configuration. */
+	private static final String[] SMILES = new String[] {
+		"c1ccccn1",
+		"CC(=O)O.[Na]",
+		"C[N+](=O)[O-]",
+		"CN(=O)=O",
+		"[Na+].[Cl-]",
+		"OC(=O)c1ccccc1.CCN",
+		"C1=CC=CC=C1N(=O)=O",
+		"CC[N+](C)(C)C.[Br-]",
+		"C[C@H](N)C(=O)O",
+		"[NH4+].[O-]C(=O)C"
+	};
+
+	/** Switches of the simulated nodes. */
+	private static final StruCheckSwitch[][] SWITCHES = new StruCheckSwitch[][] {
+		RDKitStructureNormalizerV2NodeModel.DEFAULT_SWITCHES,
+		new StruCheckSwitch[] { StruCheckSwitch.tm },
+		new StruCheckSwitch[] { StruCheckSwitch.cc },
+		new StruCheckSwitch[0]
+	};
+
+	/** Advanced options of the simulated nodes. */
+	private static final String[] ADVANCED_OPTIONS = new String[] {
+		RDKitStructureNormalizerV2NodeModel.DEFAULT_ADVANCED_OPTIONS + "\n",
+		"",
+		"-cl 3\n",
+		"-cn 999\n"
+	};
+
+	/** Number of concurrent simulated nodes. */
+	private static final int THREAD_COUNT = 8;
+
+	/** Number of batches per simulated node. */
+	private static final int BATCH_COUNT = 50;
+
+	/** Number of molecules per batch. */
+	private static final int BATCH_SIZE = 25;
+
+	//
+	// Global Variables
+	//
+
+	/** Configurations of the simulated nodes. */
+	private static StructureChecker.Configuration[] g_arrConfigs;
+
+	/** Reference results per configuration, determined without the shared session. */
+	private static String[][] g_arrReferences;
+
+	//
+	// Static Methods
+	//
+
+	/**
+	 * Makes sure that the RDKit libraries are loaded, creates the configurations and determines
+	 * the reference results by loading every configuration directly into the structure checker.
+	 *
+	 * @throws Exception Thrown, if the RDKit libraries or a configuration could not be loaded.
+	 */
+	@BeforeClass
+	public static void setUp() throws Exception {
+		RDKitTypesPluginActivator.checkErrorState();
+
+		final StructureChecker checker = StructureChecker.getInstance();
+		final String strTransformationConfiguration = RDKitStructureNormalizerV2NodeModel.getConfiguration(null,
+				RDKitStructureNormalizerV2NodeModel.DEFAULT_TRANSFORMATION_CONFIGURATION_FILE);
+		final String strAugmentedAtomsConfiguration = RDKitStructureNormalizerV2NodeModel.getConfiguration(null,
+				RDKitStructureNormalizerV2NodeModel.DEFAULT_AUGMENTED_ATOMS_CONFIGURATION_FILE);
+
+		final int iConfigCount = SWITCHES.length;
+		g_arrConfigs = new StructureChecker.Configuration[iConfigCount];
+		g_arrReferences = new String[iConfigCount][];
+
+		for (int c = 0; c < iConfigCount; c++) {
+			g_arrConfigs[c] = checker.createConfiguration(
+					StruCheckSwitch.generateSwitches(SWITCHES[c]) + ADVANCED_OPTIONS[c],
+					strTransformationConfiguration, strAugmentedAtomsConfiguration);
+			g_arrReferences[c] = new String[SMILES.length];
+			try (final StructureChecker.Session session = checker.openUnmanaged()) {
+				assertEquals("Loading configuration #" + c + " failed.", 0,
+						RDKFuncs.initCheckMol(g_arrConfigs[c].getOptions()));
+				for (int m = 0; m < SMILES.length; m++) {
+					g_arrReferences[c][m] = check(SMILES[m]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks a SMILES with the currently loaded configuration. A session must be open.
+	 *
+	 * @param strSmiles SMILES to check.
+	 *
+	 * @return Flags and corrected structure as single string to compare results.
+	 */
+	private static String check(final String strSmiles) {
+		final StringInt_Pair results = RDKFuncs.checkMolString(strSmiles, true);
+		try {
+			return results.getSecond() + ":" + results.getFirst();
+		}
+		finally {
+			results.delete();
+		}
+	}
+
+	//
+	// Tests
+	//
+
+	/**
+	 * Makes sure that the configurations lead to different results, otherwise
+	 * mixed up configurations could not be detected by the other tests.
+	 */
+	@Test
+	public void testConfigurationsDiffer() {
+		final Set<String> setDistinct = new HashSet<>();
+		for (final String[] arrReference : g_arrReferences) {
+			setDistinct.add(String.join("|", arrReference));
+		}
+
+		assertTrue("All configurations deliver the same results.", setDistinct.size() > 1);
+	}
+
+	/**
+	 * Checks all molecules one configuration after the other in shared sessions.
+	 *
+	 * @throws Exception Thrown, if a configuration could not be loaded.
+	 */
+	@Test
+	public void testSequentialSessions() throws Exception {
+		final StructureChecker checker = StructureChecker.getInstance();
+
+		for (int c = 0; c < g_arrConfigs.length; c++) {
+			final String[] arrResults = new String[SMILES.length];
+			try (final StructureChecker.Session session = checker.open(g_arrConfigs[c], null)) {
+				for (int m = 0; m < SMILES.length; m++) {
+					arrResults[m] = check(SMILES[m]);
+				}
+			}
+
+			assertArrayEquals("Results of configuration #" + c + " differ.", g_arrReferences[c], arrResults);
+		}
+	}
+
+	/**
+	 * Opens several sessions with the same configuration, which must load it only once.
+	 *
+	 * @throws Exception Thrown, if the configuration could not be loaded.
+	 */
+	@Test
+	public void testConfigurationLoadedOnce() throws Exception {
+		final StructureChecker checker = StructureChecker.getInstance();
+		final long lLoadsBefore = checker.getLoadCount();
+
+		for (int i = 0; i < 10; i++) {
+			try (final StructureChecker.Session session = checker.open(g_arrConfigs[0], null)) {
+				assertEquals(g_arrReferences[0][0], check(SMILES[0]));
+			}
+		}
+
+		assertTrue("Configuration was loaded more than once.", checker.getLoadCount() - lLoadsBefore <= 1);
+	}
+
+	/**
+	 * Simulates concurrent nodes with different configurations, which check molecules
+	 * in batches of shared sessions. All results must match the reference results.
+	 *
+	 * @throws Exception Thrown, if a configuration could not be loaded.
+	 */
+	@Test
+	public void testConcurrentSessions() throws Exception {
+		final StructureChecker checker = StructureChecker.getInstance();
+		final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		final List<Future<Long>> listFutures = new ArrayList<>();
+
+		try {
+			for (int t = 0; t < THREAD_COUNT; t++) {
+				final int iConfig = t % g_arrConfigs.length;
+				listFutures.add(executor.submit(() -> {
+					long lMismatches = 0;
+					int iMol = 0;
+					for (int b = 0; b < BATCH_COUNT; b++) {
+						try (final StructureChecker.Session session = checker.open(g_arrConfigs[iConfig], null)) {
+							for (int m = 0; m < BATCH_SIZE; m++, iMol = (iMol + 1) % SMILES.length) {
+								if (!g_arrReferences[iConfig][iMol].equals(check(SMILES[iMol]))) {
+									lMismatches++;
+								}
+							}
+						}
+					}
+					return lMismatches;
+				}));
+			}
+
+			long lMismatches = 0;
+			for (final Future<Long> future : listFutures) {
+				lMismatches += future.get();
+			}
+
+			assertEquals("Results of concurrent sessions differ from the reference results.", 0, lMismatches);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,335 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C)2023
+ *  Novartis Pharma AG, Switzerland
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * -------------------------------------------------------------------
+ *
+ */
+
+package org.rdkit.knime.nodes.substructurecounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.RDKit.Match_Vect_Vect;
+import org.RDKit.ROMol;
+import org.RDKit.RWMol;
+import org.RDKit.SubstructMatchParameters;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.rdkit.knime.RDKitTypesPluginActivator;
+
+/**
+ * Benchmark for counting substructure matches the way the Substructure Counter node does it.
+ * It compares the former counting (materializing all matches and freeing them afterwards
+ * per molecule) with the {@link SubstructureMatchCounter} counting all matches, counting up
+ * to a maximum and checking only the existence of matches. Molecules are taken repeatedly
+ * from a small set of parsed molecules, so that parsing is not measured, and are processed
+ * in parallel chunks. Capped counts and existence checks are asserted against the full counts.
+ * The benchmark is skipped in the default test run. It runs only, if the system property
+ * {@value #PROPERTY_RUN_BENCHMARKS} is set to true. The number of molecules and queries can be
+ * set with the system properties {@value #PROPERTY_MOLECULE_COUNT} and {@value #PROPERTY_QUERY_COUNT}.
+ *
+ * @author agent
+ */
+public class SubstructureMatchCounterBenchmark {
+
+	//
+	// Constants
+	//
+
+	/** System property, which needs to be set to true to run benchmarks. */
+	public static final String PROPERTY_RUN_BENCHMARKS = "rdkit.knime.benchmarks";
+
+	/** System property to set the number of molecules. */
+	public static final String PROPERTY_MOLECULE_COUNT = "rdkit.knime.benchmarks.molecules";
+
+	/** System property to set the number of queries. */
+	public static final String PROPERTY_QUERY_COUNT = "rdkit.knime.benchmarks.queries";
+
+	/** Default number of molecules. */
+	private static final int DEFAULT_MOLECULE_COUNT = 100000;
+
+	/** Default number of queries. */
+	private static final int DEFAULT_QUERY_COUNT = 100;
+
+	/** Maximum count for capped counting. */
+	private static final int MAX_COUNT = 10;
+
+	/** Number of molecules processed as one task. */
+	private static final int CHUNK_SIZE = 1000;
+
+	/** Molecules used for the benchmark. */
+	private static final String[] SMILES = new String[] {
+		"CC(=O)Oc1ccccc1C(=O)O",
+		"CN1CCC[C@H]1c1cccnc1",
+		"CC(C)Cc1ccc(cc1)[C@@H](C)C(=O)O",
+		"CN1C(=O)CN=C(c2ccccc2)c2cc(Cl)ccc12",
+		"COc1ccc2[nH]cc(CCN(C)C)c2c1",
+		"CC1(C)S[C@@H]2[C@H](NC(=O)Cc3ccccc3)C(=O)N2[C@H]1C(=O)O",
+		"Clc1ccc(cc1)C(c1ccccc1)n1ccnc1",
+		"CCN(CC)C(=O)[C@H]1CN(C)[C@@H]2Cc3c[nH]c4cccc(C2=C1)c34",
+		"C[C@]12CC[C@H]3[C@@H](CC=C4C[C@@H](O)CC[C@]34C)[C@@H]1CC[C@@H]2O",
+		"Cc1onc(-c2ccccc2Cl)c1C(=O)N[C@@H]1C(=O)N2[C@@H](C(=O)O)C(C)(C)S[C@H]12",
+		"c1ccc2cc3ccccc3cc2c1",
+		"C1CC2CCC3CCCC4CCC(C1)C2C34",
+		"OC(=O)CCCc1ccc(N(CCCl)CCCl)cc1",
+		"Nc1nc(N)c2nc(-c3ccccc3)c(N)nc2n1",
+		"CC(=O)Nc1ccc(O)cc1"
+	};
+
+	/** Queries used for the benchmark. */
+	private static final String[] SMARTS = new String[] {
+		"[#6]~[#6]",
+		"[#6]~[#6]~[#6]",
+		"[#6]~[#6]~[#6]~[#6]",
+		"[R]~[R]~[R]",
+		"[#6;R]@[#6;R]",
+		"c1ccccc1",
+		"[#6]1~[#6]~[#6]~[#6]~[#6]~[#6]~1",
+		"[#7]",
+		"[#8]~[#6]",
+		"[#6](=O)[#8]",
+		"[NX3;H2,H1;!$(NC=O)]",
+		"[CX3](=O)[OX2H1]",
+		"[#6]~[#7]~[#6]",
+		"[Cl,Br,I]",
+		"[$([#6]~[#7]),$([#6]~[#8])]",
+		"*~*~*~*~*"
+	};
+
+	//
+	// Global Variables
+	//
+
+	/** Molecules created from the SMILES. */
+	private static ROMol[] g_arrMols;
+
+	/** Queries created from the SMARTS. */
+	private static ROMol[] g_arrQueries;
+
+	/** Executor to process chunks of molecules in parallel. */
+	private static ExecutorService g_executor;
+
+	//
+	// Static Methods
+	//
+
+	/**
+	 * Skips the benchmark, if not requested, makes sure that the RDKit libraries
+	 * are loaded and creates the molecules and queries.
+	 *
+	 * @throws Exception Thrown, if the RDKit libraries could not be loaded.
+	 */
+	@BeforeClass
+	public static void setUp() throws Exception {
+		Assume.assumeTrue("Benchmarks are only run with -D" + PROPERTY_RUN_BENCHMARKS + "=true",
+				Boolean.getBoolean(PROPERTY_RUN_BENCHMARKS));
+		RDKitTypesPluginActivator.checkErrorState();
+
+		g_arrMols = new ROMol[SMILES.length];
+		for (int i = 0; i < SMILES.length; i++) {
+			g_arrMols[i] = RWMol.MolFromSmiles(SMILES[i]);
+			assertNotNull("Benchmark molecule could not be parsed: " + SMILES[i], g_arrMols[i]);
+		}
+
+		g_arrQueries = new ROMol[SMARTS.length];
+		for (int i = 0; i < SMARTS.length; i++) {
+			g_arrQueries[i] = RWMol.MolFromSmarts(SMARTS[i], 0, true);
+			assertNotNull("Benchmark query could not be parsed: " + SMARTS[i], g_arrQueries[i]);
+		}
+
+		g_executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Frees the molecules and queries and stops the executor.
+	 */
+	@AfterClass
+	public static void tearDown() {
+		if (g_executor != null) {
+			g_executor.shutdownNow();
+			g_executor = null;
+		}
+		for (final ROMol[] arrMols : new ROMol[][] { g_arrMols, g_arrQueries }) {
+			if (arrMols != null) {
+				for (final ROMol mol : arrMols) {
+					if (mol != null) {
+						mol.delete();
+					}
+				}
+			}
+		}
+		g_arrMols = null;
+		g_arrQueries = null;
+	}
+
+	//
+	// Tests
+	//
+
+	/**
+	 * Measures all counting modes for unique and non-unique matches.
+	 *
+	 * @throws Exception Thrown, if counting failed.
+	 */
+	@Test
+	public void benchmarkCounting() throws Exception {
+		final int iMoleculeCount = Integer.getInteger(PROPERTY_MOLECULE_COUNT, DEFAULT_MOLECULE_COUNT);
+		final int iQueryCount = Integer.getInteger(PROPERTY_QUERY_COUNT, DEFAULT_QUERY_COUNT);
+		final ROMol[] arrQueries = new ROMol[iQueryCount];
+		for (int i = 0; i < iQueryCount; i++) {
+			arrQueries[i] = g_arrQueries[i % g_arrQueries.length];
+		}
+
+		System.out.println("Molecules: " + iMoleculeCount + " (" + g_arrMols.length + " distinct), Queries: " +
+				iQueryCount + " (" + g_arrQueries.length + " distinct), Maximum count: " + MAX_COUNT);
+		System.out.println(String.format("%-10s %-10s %14s %16s %18s",
+				"Unique", "Mode", "Time [s]", "Matches [M/s]", "Total hits"));
+
+		for (final boolean bUnique : new boolean[] { true, false }) {
+			final long[] arrFullCounts = new long[g_arrMols.length * iQueryCount];
+			benchmark("former", bUnique, -1, arrQueries, iMoleculeCount, null);
+			benchmark("all", bUnique, SubstructureMatchCounter.NO_LIMIT, arrQueries, iMoleculeCount, arrFullCounts);
+			benchmark("max " + MAX_COUNT, bUnique, MAX_COUNT, arrQueries, iMoleculeCount, arrFullCounts);
+			benchmark("exists", bUnique, 1, arrQueries, iMoleculeCount, arrFullCounts);
+		}
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Measures counting all molecules against all queries in parallel chunks and prints the result.
+	 *
+	 * @param strMode Mode description.
+	 * @param bUnique Set to true to count unique matches only.
+	 * @param iMaxCount Maximum count of the counter, or -1 to count the former way.
+	 * @param arrQueries Queries. Must not be null.
+	 * @param iMoleculeCount Number of molecules to be processed.
+	 * @param arrFullCounts Counts of all distinct molecule and query combinations. They are
+	 * 		recorded when counting all matches and asserted otherwise. Can be null to skip this.
+	 *
+	 * @throws Exception Thrown, if counting failed.
+	 */
+	private void benchmark(final String strMode, final boolean bUnique, final int iMaxCount,
+			final ROMol[] arrQueries, final int iMoleculeCount, final long[] arrFullCounts) throws Exception {
+		final SubstructMatchParameters ps = new SubstructMatchParameters();
+		ps.setUniquify(bUnique);
+		final SubstructureMatchCounter counter = (iMaxCount < 0 ? null : new SubstructureMatchCounter(ps, iMaxCount));
+		final boolean bRecord = (iMaxCount == SubstructureMatchCounter.NO_LIMIT);
+		final List<Future<long[]>> listResults = new ArrayList<>();
+
+		try {
+			final long lStart = System.nanoTime();
+			for (int iChunkStart = 0; iChunkStart < iMoleculeCount; iChunkStart += CHUNK_SIZE) {
+				final int iFrom = iChunkStart;
+				final int iTo = Math.min(iMoleculeCount, iChunkStart + CHUNK_SIZE);
+				listResults.add(g_executor.submit(() -> {
+					long lTotalHits = 0;
+					long lInvalid = 0;
+					for (int m = iFrom; m < iTo; m++) {
+						final int iMol = m % g_arrMols.length;
+						final ROMol mol = g_arrMols[iMol];
+						final List<Match_Vect_Vect> listMatches = (counter == null ? new ArrayList<>() : null);
+						for (int q = 0; q < arrQueries.length; q++) {
+							int iHits;
+							if (counter == null) {
+								// Former way: All matches stay alive until the molecule has been processed
+								final Match_Vect_Vect vecMatches = mol.getSubstructMatches(arrQueries[q], ps);
+								listMatches.add(vecMatches);
+								iHits = (int)vecMatches.size();
+							}
+							else {
+								iHits = counter.count(mol, arrQueries[q]);
+							}
+							lTotalHits += iHits;
+
+							// Record and verify based on the first occurrence of every distinct molecule
+							if (arrFullCounts != null && m < g_arrMols.length) {
+								final int iIndex = iMol * arrQueries.length + q;
+								if (bRecord) {
+									arrFullCounts[iIndex] = iHits;
+								}
+								else if (iHits != Math.min(arrFullCounts[iIndex], counter.getMaxCount())) {
+									lInvalid++;
+								}
+							}
+						}
+						if (listMatches != null) {
+							for (final Match_Vect_Vect vecMatches : listMatches) {
+								vecMatches.delete();
+							}
+						}
+					}
+					return new long[] { lTotalHits, lInvalid };
+				}));
+			}
+
+			long lTotalHits = 0;
+			long lInvalid = 0;
+			for (final Future<long[]> result : listResults) {
+				final long[] arrResult = result.get();
+				lTotalHits += arrResult[0];
+				lInvalid += arrResult[1];
+			}
+			final double dSeconds = (System.nanoTime() - lStart) / 1.0e9d;
+
+			System.out.println(String.format("%-10s %-10s %14.2f %16.3f %18d",
+					bUnique, strMode, dSeconds, (double)iMoleculeCount * arrQueries.length / dSeconds / 1.0e6d,
+					lTotalHits));
+			assertEquals("Counts of mode " + strMode + " differ from the full counts.", 0, lInvalid);
+		}
+		finally {
+			ps.delete();
+		}
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * ------------------------------------------------------------------------
+ *
+ *  Copyright (C)2023
+ *  Novartis Pharma AG, Switzerland
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License, Version 3, as
+ *  published by the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ *  Additional permission under GNU GPL version 3 section 7:
+ *
+ *  KNIME interoperates with ECLIPSE solely via ECLIPSE's plug-in APIs.
+ *  Hence, KNIME and ECLIPSE are both independent programs and are not
+ *  derived from each other. Should, however, the interpretation of the
+ *  GNU GPL Version 3 ("License") under any applicable laws result in
+ *  KNIME and ECLIPSE being a combined program, KNIME GMBH herewith grants
+ *  you the additional permission to use and propagate KNIME together with
+ *  ECLIPSE with only the license terms in place for ECLIPSE applying to
+ *  ECLIPSE and the GNU GPL Version 3 applying for KNIME, provided the
+ *  license terms of ECLIPSE themselves allow for the respective use and
+ *  propagation of ECLIPSE together with KNIME.
+ *
+ *  Additional permission relating to nodes for KNIME that extend the Node
+ *  Extension (and in particular that are based on subclasses of NodeModel,
+ *  NodeDialog, and NodeView) and that only interoperate with KNIME through
+ *  standard APIs ("Nodes"):
+ *  Nodes are deemed to be separate and independent programs and to not be
+ *  covered works.  Notwithstanding anything to the contrary in the
+ *  License, the License does not apply to Nodes, you are not required to
+ *  license Nodes under the License, and you are granted a license to
+ *  prepare and propagate Nodes, in each case even if such Nodes are
+ *  propagated with or for interoperation with KNIME.  The owner of a Node
+ *  may freely choose the license terms applicable to such Node, including
+ *  when such Node is propagated with or for interoperation with KNIME.
+ * -------------------------------------------------------------------
+ *
+ */
+
+package org.rdkit.knime.nodes.substructurecounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.RDKit.Match_Vect_Vect;
+import org.RDKit.ROMol;
+import org.RDKit.RWMol;
+import org.RDKit.SubstructMatchParameters;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.rdkit.knime.RDKitTypesPluginActivator;
+
+/**
+ * Tests the {@link SubstructureMatchCounter} against the former counting of the
+ * Substructure Counter node, which materialized all matches of a query.
+ * Capped counts and existence checks must be the full counts limited to the maximum.
+ *
+ * @author agent
+ */
+public class SubstructureMatchCounterTest {
+
+	//
+	// Constants
+	//
+
+	/** Molecules used for the tests. */
+	private static final String[] SMILES = new String[] {
+		"CC(=O)Oc1ccccc1C(=O)O",
+		"CN1CCC[C@H]1c1cccnc1",
+		"CC(C)Cc1ccc(cc1)[C@@H](C)C(=O)O",
+		"CN1C(=O)CN=C(c2ccccc2)c2cc(Cl)ccc12",
+		"COc1ccc2[nH]cc(CCN(C)C)c2c1",
+		"CC1(C)S[C@@H]2[C@H](NC(=O)Cc3ccccc3)C(=O)N2[C@H]1C(=O)O",
+		"Clc1ccc(cc1)C(c1ccccc1)n1ccnc1",
+		"C[C@]12CC[C@H]3[C@@H](CC=C4C[C@@H](O)CC[C@]34C)[C@@H]1CC[C@@H]2O",
+		"c1ccc2cc3ccccc3cc2c1",
+		"OC(=O)CCCc1ccc(N(CCCl)CCCl)cc1",
+		"Nc1nc(N)c2nc(-c3ccccc3)c(N)nc2n1",
+		"[Na+].[Cl-]",
+		"C"
+	};
+
+	/** Queries used for the tests. */
+	private static final String[] SMARTS = new String[] {
+		"[#6]~[#6]",
+		"[#6]~[#6]~[#6]",
+		"[R]~[R]~[R]",
+		"[#6;R]@[#6;R]",
+		"c1ccccc1",
+		"[#6]1~[#6]~[#6]~[#6]~[#6]~[#6]~1",
+		"[#7]",
+		"[#6](=O)[#8]",
+		"[NX3;H2,H1;!$(NC=O)]",
+		"[Cl,Br,I]",
+		"[$([#6]~[#7]),$([#6]~[#8])]",
+		"[#15]"
+	};
+
+	/** Maximum number of matches of the match parameters, which is never reached by the test data. */
+	private static final int MAX_MATCHES = 100000;
+
+	//
+	// Global Variables
+	//
+
+	/** Molecules created from the SMILES. */
+	private static List<ROMol> g_listMols;
+
+	/** Queries created from the SMARTS. */
+	private static List<ROMol> g_listQueries;
+
+	//
+	// Static Methods
+	//
+
+	/**
+	 * Makes sure that the RDKit libraries are loaded and creates the test molecules and queries.
+	 *
+	 * @throws Exception Thrown, if the RDKit libraries could not be loaded.
+	 */
+	@BeforeClass
+	public static void setUp() throws Exception {
+		RDKitTypesPluginActivator.checkErrorState();
+
+		g_listMols = new ArrayList<>();
+		for (final String strSmiles : SMILES) {
+			final RWMol mol = RWMol.MolFromSmiles(strSmiles);
+			assertNotNull("Test molecule could not be parsed: " + strSmiles, mol);
+			g_listMols.add(mol);
+		}
+
+		g_listQueries = new ArrayList<>();
+		for (final String strSmarts : SMARTS) {
+			final RWMol query = RWMol.MolFromSmarts(strSmarts, 0, true);
+			assertNotNull("Test query could not be parsed: " + strSmarts, query);
+			g_listQueries.add(query);
+		}
+	}
+
+	/**
+	 * Frees the test molecules and queries.
+	 */
+	@AfterClass
+	public static void tearDown() {
+		if (g_listMols != null) {
+			for (final ROMol mol : g_listMols) {
+				mol.delete();
+			}
+			g_listMols = null;
+		}
+		if (g_listQueries != null) {
+			for (final ROMol query : g_listQueries) {
+				query.delete();
+			}
+			g_listQueries = null;
+		}
+	}
+
+	//
+	// Tests
+	//
+
+	/**
+	 * Tests that counting all matches delivers the number of matches of the former counting.
+	 */
+	@Test
+	public void testCountAll() {
+		checkCounts(true, SubstructureMatchCounter.NO_LIMIT);
+		checkCounts(false, SubstructureMatchCounter.NO_LIMIT);
+	}
+
+	/**
+	 * Tests that capped counting delivers the number of matches of the former counting
+	 * limited to the maximum count, with and without unique matching.
+	 */
+	@Test
+	public void testCountCapped() {
+		for (final int iMaxCount : new int[] { 2, 3, 10 }) {
+			checkCounts(true, iMaxCount);
+			checkCounts(false, iMaxCount);
+		}
+	}
+
+	/**
+	 * Tests that the existence check delivers 1 for every query with at least one match
+	 * and 0 otherwise.
+	 */
+	@Test
+	public void testExistenceOnly() {
+		final SubstructMatchParameters ps = createParameters(true);
+		try {
+			assertTrue(new SubstructureMatchCounter(ps, 1).isExistenceOnly());
+		}
+		finally {
+			ps.delete();
+		}
+
+		checkCounts(true, 1);
+		checkCounts(false, 1);
+	}
+
+	/**
+	 * Tests that the test data contains queries with more matches than the tested maximum counts,
+	 * so that capping is really tested.
+	 */
+	@Test
+	public void testDataExceedsMaximumCounts() {
+		final SubstructMatchParameters ps = createParameters(true);
+		int iMaxFullCount = 0;
+
+		try {
+			for (final ROMol mol : g_listMols) {
+				for (final ROMol query : g_listQueries) {
+					iMaxFullCount = Math.max(iMaxFullCount, countFormerWay(mol, query, ps));
+				}
+			}
+		}
+		finally {
+			ps.delete();
+		}
+
+		assertTrue("Test data has not enough matches: " + iMaxFullCount, iMaxFullCount > 10);
+	}
+
+	//
+	// Private Methods
+	//
+
+	/**
+	 * Compares the counts of a counter with the former counts for all molecules and queries.
+	 *
+	 * @param bUnique Set to true to count unique matches only.
+	 * @param iMaxCount Maximum count of the counter or {@link SubstructureMatchCounter#NO_LIMIT}.
+	 */
+	private void checkCounts(final boolean bUnique, final int iMaxCount) {
+		final SubstructMatchParameters psFormer = createParameters(bUnique);
+		final SubstructMatchParameters psCounter = createParameters(bUnique);
+
+		try {
+			final SubstructureMatchCounter counter = new SubstructureMatchCounter(psCounter, iMaxCount);
+			assertEquals(iMaxCount, counter.getMaxCount());
+
+			for (int m = 0; m < g_listMols.size(); m++) {
+				for (int q = 0; q < g_listQueries.size(); q++) {
+					final ROMol mol = g_listMols.get(m);
+					final ROMol query = g_listQueries.get(q);
+					final int iFullCount = countFormerWay(mol, query, psFormer);
+					final int iExpected = (iMaxCount == SubstructureMatchCounter.NO_LIMIT ?
+							iFullCount : Math.min(iFullCount, iMaxCount));
+					assertEquals("Wrong count for " + SMARTS[q] + " in " + SMILES[m] + " (unique=" + bUnique +
+							", max=" + iMaxCount + ")", iExpected, counter.count(mol, query));
+				}
+			}
+		}
+		finally {
+			psFormer.delete();
+			psCounter.delete();
+		}
+	}
+
+	/**
+	 * Counts the matches of a query the former way by materializing all matches.
+	 *
+	 * @param mol Molecule. Must not be null.
+	 * @param query Query. Must not be null.
+	 * @param ps Match parameters. Must not be null.
+	 *
+	 * @return Number of matches.
+	 */
+	private int countFormerWay(final ROMol mol, final ROMol query, final SubstructMatchParameters ps) {
+		final Match_Vect_Vect vecMatches = mol.getSubstructMatches(query, ps);
+		try {
+			return (int)vecMatches.size();
+		}
+		finally {
+			vecMatches.delete();
+		}
+	}
+
+	/**
+	 * Creates match parameters, which allow more matches than the test data has.
+	 *
+	 * @param bUnique Set to true to count unique matches only.
+	 *
+	 * @return Match parameters. Must be deleted by the caller.
+	 */
+	private SubstructMatchParameters createParameters(final boolean bUnique) {
+		final SubstructMatchParameters ps = new SubstructMatchParameters();
+		ps.setUniquify(bUnique);
+		ps.setMaxMatches(MAX_MATCHES);
+		return ps;
+	}
+}
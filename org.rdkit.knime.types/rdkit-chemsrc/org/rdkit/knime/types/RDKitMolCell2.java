@@ -111,6 +111,16 @@ public class RDKitMolCell2 extends DataCell implements RDKitMolValue,
 	 * @param smiles smiles for the molecule.
 	 */
 	RDKitMolCell2(final ROMol mol, final String smiles) {
+		this(mol, smiles, false);
+	}
+
+	/** Package scope constructor that wraps the argument molecule.
+	 * @param mol The molecule to wrap.
+	 * @param smiles smiles for the molecule.
+	 * @param smilesIsCanonical true, if the passed in SMILES is known to be the
+	 * 		canonical RDKit SMILES of the molecule.
+	 */
+	RDKitMolCell2(final ROMol mol, final String smiles, final boolean smilesIsCanonical) {
 		if(smiles == null || smiles.length() == 0) {
 		   // For empty molecules we create an empty SMILES and still set the canonical flag
 		   if (mol.getNumAtoms() > 0) {
@@ -123,7 +133,7 @@ public class RDKitMolCell2 extends DataCell implements RDKitMolValue,
 		} 
 		else {
 			m_smilesString = smiles;
-			m_smilesIsCanonical = false;
+			m_smilesIsCanonical = smilesIsCanonical;
 		}
 		m_byteContent = toByteArray(mol);
 	}
@@ -162,6 +162,29 @@ public final class RDKitMolCellFactory implements DataCellFactory {
         return new RDKitAdapterCell(new RDKitMolCell2(mol, smiles)); 
     }
 
+    /**
+     * Creates a new RDKit Adapter Cell with an RDKit Mol Cell
+     * based on the given molecule and SMILES, which may be known to be canonical
+     * already, e.g. when it was written by the RDKit before. This avoids the
+     * expensive generation of a canonicalized SMILES. The argument
+     * can (and should) be {@link ROMol#delete() deleted} after this method
+     * returns.
+     * @param mol the ROMol value to store
+     * @param smiles SMILES for the molecule. This SMILES will be taken as is.
+     * @param smilesIsCanonical true to flag the SMILES as canonical in the inner RDKit Cell.
+     *      Only set this, if the SMILES is really the canonical RDKit SMILES of the molecule.
+     * @return A data cell implementing RDKitMolValue interface. Currently this
+     * is a {@link RDKitAdapterCell} but this may change in future versions.
+     * @throws NullPointerException if argument is <code>null</code>
+     */
+    public static DataCell createRDKitAdapterCell(final ROMol mol,final String smiles,
+          final boolean smilesIsCanonical) {
+        if (mol == null) {
+            throw new NullPointerException("Mol value must not be null.");
+        }
+        return new RDKitAdapterCell(new RDKitMolCell2(mol, smiles, smilesIsCanonical));
+    }
+
     /**
      * Creates a new RDKit Adapter Cell based on the given molecule and discards the
      * argument using the {@link ROMol#delete()} method. A canonicalized SMILES will be